@@ -48,6 +48,7 @@ import androidx.preference.Preference;
 import androidx.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.transition.TransitionManager;
+import android.util.ArrayMap;
 import android.util.FeatureFlagUtils;
 import android.util.Log;
 import android.view.View;
@@ -56,12 +57,14 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.Toolbar;
 
+import com.android.internal.telephony.TelephonyIntents;
 import com.android.internal.util.ArrayUtils;
 import com.android.settings.Settings.WifiSettingsActivity;
 import com.android.settings.applications.manageapplications.ManageApplications;
 import com.android.settings.backup.BackupSettingsActivity;
 import com.android.settings.core.FeatureFlags;
 import com.android.settings.core.SubSettingLauncher;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.core.gateway.SettingsGateway;
 import com.android.settings.dashboard.DashboardFeatureProvider;
 import com.android.settings.dashboard.DashboardSummary;
@@ -79,6 +82,7 @@ import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.codeaurora.internal.IExtTelephony;
 
@@ -92,6 +96,18 @@ public class SettingsActivity extends SettingsDrawerActivity
     // Constants for state save/restore
     private static final String SAVE_KEY_CATEGORIES = ":settings:categories";
 
+    // Inputs of the tile states, see doUpdateTilesList().
+    private static final String INPUT_WIFI = "wifi";
+    private static final String INPUT_BLUETOOTH = "bluetooth";
+    private static final String INPUT_BANDWIDTH_CONTROL = "bandwidth_control";
+    private static final String INPUT_WIFI_DISPLAY = "wifi_display";
+    private static final String INPUT_SIM_CARDS = "sim_cards";
+    private static final String INPUT_SMQ = "smq";
+    private static final String INPUT_DEMO_MODE = "demo_mode";
+    private static final String INPUT_DATA_USAGE_V2 = "data_usage_v2";
+    private static final String INPUT_DEVELOPMENT_SETTINGS = "development_settings";
+    private static final String INPUT_ABOUT_PHONE_V2 = "about_phone_v2";
+
     /**
      * When starting this activity, the invoking Intent can contain this extra
      * string to specify which fragment should be initially displayed.
@@ -241,6 +257,7 @@ public class SettingsActivity extends SettingsDrawerActivity
         super.onCreate(savedState);
         Log.d(LOG_TAG, "Starting onCreate");
         long startTime = System.currentTimeMillis();
+        final long createStartTime = LatencyTracker.now();
 
         final FeatureFactory factory = FeatureFactory.getFactory(this);
 
@@ -368,6 +385,7 @@ public class SettingsActivity extends SettingsDrawerActivity
             }
         }
 
+        LatencyTracker.record("SettingsActivity.onCreate", createStartTime);
         if (DEBUG_TIMING) {
             Log.d(LOG_TAG, "onCreate took " + (System.currentTimeMillis() - startTime) + " ms");
         }
@@ -649,107 +667,116 @@ public class SettingsActivity extends SettingsDrawerActivity
     }
 
     private void doUpdateTilesList() {
-        PackageManager pm = getPackageManager();
+        final long startTime = LatencyTracker.now();
+        final Context appContext = getApplicationContext();
         final UserManager um = UserManager.get(this);
         final boolean isAdmin = um.isAdminUser();
         final FeatureFactory featureFactory = FeatureFactory.getFactory(this);
-        boolean somethingChanged = false;
         final String packageName = getPackageName();
-        final StringBuilder changedList = new StringBuilder();
-        somethingChanged = setTileEnabled(changedList,
+        final TileStateEngine engine = TileStateEngine.getInstance(this);
+
+        final List<TileStateEngine.Input> inputs = new ArrayList<>();
+        inputs.add(TileStateEngine.Input.memoized(INPUT_WIFI,
+                () -> appContext.getPackageManager().hasSystemFeature(
+                        PackageManager.FEATURE_WIFI), null /* invalidateAction */));
+        inputs.add(TileStateEngine.Input.memoized(INPUT_BLUETOOTH,
+                () -> appContext.getPackageManager().hasSystemFeature(
+                        PackageManager.FEATURE_BLUETOOTH), null /* invalidateAction */));
+        inputs.add(TileStateEngine.Input.memoized(INPUT_BANDWIDTH_CONTROL,
+                Utils::isBandwidthControlEnabled, null /* invalidateAction */));
+        inputs.add(TileStateEngine.Input.memoized(INPUT_WIFI_DISPLAY,
+                () -> WifiDisplaySettings.isAvailable(appContext), null /* invalidateAction */));
+        inputs.add(TileStateEngine.Input.memoized(INPUT_SIM_CARDS,
+                () -> Utils.showSimCardTile(appContext),
+                TelephonyIntents.ACTION_SIM_STATE_CHANGED));
+        inputs.add(TileStateEngine.Input.of(INPUT_SMQ, mSMQ::isShowSmqSettings));
+        inputs.add(TileStateEngine.Input.of(INPUT_DEMO_MODE,
+                () -> UserManager.isDeviceInDemoMode(appContext)));
+        inputs.add(TileStateEngine.Input.of(INPUT_DATA_USAGE_V2,
+                () -> FeatureFlagUtils.isEnabled(appContext, FeatureFlags.DATA_USAGE_SETTINGS_V2)));
+        inputs.add(TileStateEngine.Input.of(INPUT_DEVELOPMENT_SETTINGS,
+                () -> DevelopmentSettingsEnabler.isDevelopmentSettingsEnabled(appContext)));
+        inputs.add(TileStateEngine.Input.of(INPUT_ABOUT_PHONE_V2,
+                () -> featureFactory.getAccountFeatureProvider()
+                        .isAboutPhoneV2Enabled(appContext)));
+        final Map<String, Boolean> values = engine.evaluate(inputs);
+
+        // Later states of a component override earlier ones.
+        final Map<ComponentName, Boolean> states = new ArrayMap<>();
+        putTileState(states,
                 new ComponentName(packageName, WifiSettingsActivity.class.getName()),
-                pm.hasSystemFeature(PackageManager.FEATURE_WIFI), isAdmin) || somethingChanged;
+                values.get(INPUT_WIFI), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.BluetoothSettingsActivity.class.getName()),
-                pm.hasSystemFeature(PackageManager.FEATURE_BLUETOOTH), isAdmin)
-                || somethingChanged;
+                values.get(INPUT_BLUETOOTH), isAdmin);
 
-        if(mSMQ.isShowSmqSettings()){
-            somethingChanged = setTileEnabled(changedList, new ComponentName(packageName, Settings.SMQQtiFeedbackActivity.class.getName()), mSMQ.isShowSmqSettings(), isAdmin) || somethingChanged;
+        if (values.get(INPUT_SMQ)) {
+            putTileState(states, new ComponentName(packageName,
+                    Settings.SMQQtiFeedbackActivity.class.getName()), true, isAdmin);
         }
 
-        // Enable DataUsageSummaryActivity if the data plan feature flag is turned on otherwise
-        // enable DataPlanUsageSummaryActivity.
-        somethingChanged = setTileEnabled(changedList,
-                new ComponentName(packageName, Settings.DataUsageSummaryActivity.class.getName()),
-                Utils.isBandwidthControlEnabled() /* enabled */,
-                isAdmin) || somethingChanged;
-
-        somethingChanged = setTileEnabled(changedList,
+        final boolean isDemoMode = values.get(INPUT_DEMO_MODE);
+        putTileState(states,
                 new ComponentName(packageName,
                         Settings.ConnectedDeviceDashboardActivity.class.getName()),
-                !UserManager.isDeviceInDemoMode(this) /* enabled */,
-                isAdmin) || somethingChanged;
+                !isDemoMode /* enabled */, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.SimSettingsActivity.class.getName()),
-                Utils.showSimCardTile(this), isAdmin)
-                || somethingChanged;
+                values.get(INPUT_SIM_CARDS), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.PowerUsageSummaryActivity.class.getName()),
-                mBatteryPresent, isAdmin) || somethingChanged;
+                mBatteryPresent, isAdmin);
 
-        final boolean isDataUsageSettingsV2Enabled =
-                FeatureFlagUtils.isEnabled(this, FeatureFlags.DATA_USAGE_SETTINGS_V2);
+        final boolean isBandwidthControlEnabled = values.get(INPUT_BANDWIDTH_CONTROL);
+        final boolean isDataUsageSettingsV2Enabled = values.get(INPUT_DATA_USAGE_V2);
         // Enable new data usage page if v2 enabled
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.DataUsageSummaryActivity.class.getName()),
-                Utils.isBandwidthControlEnabled() && isDataUsageSettingsV2Enabled, isAdmin)
-                || somethingChanged;
+                isBandwidthControlEnabled && isDataUsageSettingsV2Enabled, isAdmin);
         // Enable legacy data usage page if v2 disabled
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.DataUsageSummaryLegacyActivity.class.getName()),
-                Utils.isBandwidthControlEnabled() && !isDataUsageSettingsV2Enabled, isAdmin)
-                || somethingChanged;
+                isBandwidthControlEnabled && !isDataUsageSettingsV2Enabled, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.UserSettingsActivity.class.getName()),
                 UserHandle.MU_ENABLED && UserManager.supportsMultipleUsers()
-                        && !Utils.isMonkeyRunning(), isAdmin)
-                || somethingChanged;
+                        && !Utils.isMonkeyRunning(), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.NetworkDashboardActivity.class.getName()),
-                !UserManager.isDeviceInDemoMode(this), isAdmin)
-                || somethingChanged;
+                !isDemoMode, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.DateTimeSettingsActivity.class.getName()),
-                !UserManager.isDeviceInDemoMode(this), isAdmin)
-                || somethingChanged;
+                !isDemoMode, isAdmin);
 
-        final boolean showDev = DevelopmentSettingsEnabler.isDevelopmentSettingsEnabled(this)
+        final boolean showDev = values.get(INPUT_DEVELOPMENT_SETTINGS)
                 && !Utils.isMonkeyRunning();
         final boolean isAdminOrDemo = um.isAdminUser() || um.isDemoUser();
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.DevelopmentSettingsDashboardActivity.class.getName()),
-                showDev, isAdminOrDemo)
-                || somethingChanged;
+                showDev, isAdminOrDemo);
 
         // Enable/disable backup settings depending on whether the user is admin.
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
-                BackupSettingsActivity.class.getName()), true, isAdmin)
-                || somethingChanged;
+        putTileState(states, new ComponentName(packageName,
+                BackupSettingsActivity.class.getName()), true, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(states, new ComponentName(packageName,
                         Settings.WifiDisplaySettingsActivity.class.getName()),
-                WifiDisplaySettings.isAvailable(this), isAdmin)
-                || somethingChanged;
+                values.get(INPUT_WIFI_DISPLAY), isAdmin);
 
         // Enable/disable the Me Card page.
-        final boolean aboutPhoneV2Enabled = featureFactory
-                .getAccountFeatureProvider()
-                .isAboutPhoneV2Enabled(this);
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        final boolean aboutPhoneV2Enabled = values.get(INPUT_ABOUT_PHONE_V2);
+        putTileState(states, new ComponentName(packageName,
                         Settings.MyDeviceInfoActivity.class.getName()),
-                aboutPhoneV2Enabled, isAdmin)
-                || somethingChanged;
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+                aboutPhoneV2Enabled, isAdmin);
+        putTileState(states, new ComponentName(packageName,
                         Settings.DeviceInfoSettingsActivity.class.getName()),
-                !aboutPhoneV2Enabled, isAdmin)
-                || somethingChanged;
+                !aboutPhoneV2Enabled, isAdmin);
 
         if (UserHandle.MU_ENABLED && !isAdmin) {
 
@@ -767,40 +794,38 @@ public class SettingsActivity extends SettingsDrawerActivity
                                 .equals(name));
                         if (packageName.equals(component.getPackageName())
                                 && !isEnabledForRestricted) {
-                            somethingChanged =
-                                    setTileEnabled(changedList, component, false, isAdmin)
-                                            || somethingChanged;
+                            putTileState(states, component, false, isAdmin);
                         }
                     }
                 }
             }
         }
 
+        final List<ComponentName> changed = engine.apply(states, this::setTileEnabled);
+
         // Final step, refresh categories.
-        if (somethingChanged) {
+        if (!changed.isEmpty()) {
+            final StringBuilder changedList = new StringBuilder();
+            for (ComponentName component : changed) {
+                changedList.append(component.toShortString()).append(",");
+            }
             Log.d(LOG_TAG, "Enabled state changed for some tiles, reloading all categories "
                     + changedList.toString());
             updateCategories();
         } else {
             Log.d(LOG_TAG, "No enabled state changed, skipping updateCategory call");
         }
+        LatencyTracker.record("SettingsActivity.doUpdateTilesList", startTime);
     }
 
-    /**
-     * @return whether or not the enabled state actually changed.
-     */
-    private boolean setTileEnabled(StringBuilder changedList, ComponentName component,
+    private void putTileState(Map<ComponentName, Boolean> states, ComponentName component,
             boolean enabled, boolean isAdmin) {
         if (UserHandle.MU_ENABLED && !isAdmin && getPackageName().equals(component.getPackageName())
                 && !ArrayUtils.contains(SettingsGateway.SETTINGS_FOR_RESTRICTED,
                 component.getClassName())) {
             enabled = false;
         }
-        boolean changed = setTileEnabled(component, enabled);
-        if (changed) {
-            changedList.append(component.toShortString()).append(",");
-        }
-        return changed;
+        states.put(component, enabled);
     }
 
     private void getMetaData() {
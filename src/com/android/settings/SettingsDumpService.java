@@ -31,7 +31,9 @@ import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.settings.applications.AppLabelIconCache;
 import com.android.settings.applications.ProcStatsData;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.fuelgauge.batterytip.AnomalyConfigJobService;
 import com.android.settingslib.net.DataUsageController;
 
@@ -57,6 +59,10 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting
     static final String KEY_ANOMALY_DETECTION = "anomaly_detection";
     @VisibleForTesting
+    static final String KEY_APP_LABEL_ICON_CACHE = "app_label_icon_cache";
+    @VisibleForTesting
+    static final String KEY_LATENCY = "latency";
+    @VisibleForTesting
     static final Intent BROWSER_INTENT =
             new Intent("android.intent.action.VIEW", Uri.parse("http://"));
 
@@ -76,6 +82,8 @@ public class SettingsDumpService extends Service {
             dump.put(KEY_MEMORY, dumpMemory());
             dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
             dump.put(KEY_ANOMALY_DETECTION, dumpAnomalyDetection());
+            dump.put(KEY_APP_LABEL_ICON_CACHE, AppLabelIconCache.getInstance(this).dump());
+            dump.put(KEY_LATENCY, LatencyTracker.dump());
         } catch (Exception e) {
             e.printStackTrace();
         }
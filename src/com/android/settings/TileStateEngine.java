@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Computes and applies the enabled state of the Settings tiles.
+ *
+ * The inputs the tile states depend on are evaluated concurrently, on a few threads owned by the
+ * engine. Inputs that only change with a broadcast, or not at all while the process lives, are
+ * memoized until that broadcast. The enabled state last applied to each component is
+ * remembered, so only the components whose state changed go to the package manager.
+ *
+ * There is one engine per process rather than per activity: the component states it remembers
+ * are shared by all the Settings activities, which each update the tiles when resumed.
+ */
+class TileStateEngine {
+
+    private static final String TAG = "TileStateEngine";
+
+    // Most inputs are quick, a couple of threads keep the slow ones from adding up.
+    @VisibleForTesting
+    static final int EVALUATION_THREADS = 2;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    private static TileStateEngine sInstance;
+
+    /**
+     * A named condition the tile states depend on.
+     */
+    static final class Input {
+        final String key;
+        final BooleanSupplier condition;
+        final boolean memoize;
+        // Broadcast that invalidates the memoized value, or null if the value never changes.
+        final String invalidateAction;
+
+        private Input(String key, BooleanSupplier condition, boolean memoize,
+                String invalidateAction) {
+            this.key = key;
+            this.condition = condition;
+            this.memoize = memoize;
+            this.invalidateAction = invalidateAction;
+        }
+
+        /**
+         * An input evaluated on every update.
+         */
+        static Input of(String key, BooleanSupplier condition) {
+            return new Input(key, condition, false /* memoize */, null /* invalidateAction */);
+        }
+
+        /**
+         * An input evaluated once, then only again after {@code invalidateAction} is broadcast.
+         * The value is kept as long as the process lives if {@code invalidateAction} is null.
+         */
+        static Input memoized(String key, BooleanSupplier condition, String invalidateAction) {
+            return new Input(key, condition, true /* memoize */, invalidateAction);
+        }
+    }
+
+    interface TileSetter {
+        /**
+         * @return whether the enabled state of {@code component} actually changed
+         */
+        boolean setTileEnabled(ComponentName component, boolean enabled);
+    }
+
+    private final Context mAppContext;
+    private final ArrayMap<String, Memo> mMemos = new ArrayMap<>();
+    private final ArraySet<String> mRegisteredActions = new ArraySet<>();
+    private final ArrayMap<ComponentName, Boolean> mAppliedStates = new ArrayMap<>();
+    private final ThreadPoolExecutor mExecutor;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate(intent.getAction());
+        }
+    };
+
+    /**
+     * Returns the engine of the application {@code context} belongs to.
+     */
+    static synchronized TileStateEngine getInstance(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (sInstance == null || sInstance.mAppContext != appContext) {
+            sInstance = new TileStateEngine(appContext);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    TileStateEngine(Context appContext) {
+        mAppContext = appContext;
+        mExecutor = new ThreadPoolExecutor(EVALUATION_THREADS, EVALUATION_THREADS,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Evaluates {@code inputs} concurrently, and waits for them.
+     *
+     * @return the value of each input, by key
+     */
+    @WorkerThread
+    Map<String, Boolean> evaluate(List<Input> inputs) {
+        final List<Future<Boolean>> futures = new ArrayList<>(inputs.size());
+        for (int i = 0, size = inputs.size(); i < size; i++) {
+            final Input input = inputs.get(i);
+            futures.add(mExecutor.submit(() -> getValue(input)));
+        }
+        final Map<String, Boolean> result = new ArrayMap<>(inputs.size());
+        for (int i = 0, size = inputs.size(); i < size; i++) {
+            final Input input = inputs.get(i);
+            boolean value;
+            try {
+                value = futures.get(i).get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Failed to evaluate " + input.key, e.getCause());
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted, evaluating " + input.key + " on this thread");
+                Thread.currentThread().interrupt();
+                value = getValue(input);
+            }
+            result.put(input.key, value);
+        }
+        return result;
+    }
+
+    private boolean getValue(Input input) {
+        if (!input.memoize) {
+            return input.condition.getAsBoolean();
+        }
+        synchronized (mMemos) {
+            final Memo memo = mMemos.get(input.key);
+            if (memo != null) {
+                return memo.value;
+            }
+        }
+        final boolean value = input.condition.getAsBoolean();
+        synchronized (mMemos) {
+            mMemos.put(input.key, new Memo(value, input.invalidateAction));
+            if (input.invalidateAction != null && mRegisteredActions.add(input.invalidateAction)) {
+                mAppContext.registerReceiver(mReceiver,
+                        new IntentFilter(input.invalidateAction));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops the memoized inputs invalidated by {@code action}.
+     */
+    @VisibleForTesting
+    void invalidate(String action) {
+        synchronized (mMemos) {
+            for (int i = mMemos.size() - 1; i >= 0; i--) {
+                if (action.equals(mMemos.valueAt(i).invalidateAction)) {
+                    mMemos.removeAt(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the enabled state of each component in {@code states} with {@code setter},
+     * skipping the components already in the state last applied to them.
+     *
+     * @return the components whose enabled state changed
+     */
+    @WorkerThread
+    List<ComponentName> apply(Map<ComponentName, Boolean> states, TileSetter setter) {
+        final List<ComponentName> changed = new ArrayList<>();
+        synchronized (mAppliedStates) {
+            for (Map.Entry<ComponentName, Boolean> entry : states.entrySet()) {
+                final ComponentName component = entry.getKey();
+                final Boolean enabled = entry.getValue();
+                if (enabled.equals(mAppliedStates.get(component))) {
+                    continue;
+                }
+                if (setter.setTileEnabled(component, enabled)) {
+                    changed.add(component);
+                }
+                mAppliedStates.put(component, enabled);
+            }
+        }
+        return changed;
+    }
+
+    private static final class Memo {
+        final boolean value;
+        final String invalidateAction;
+
+        Memo(boolean value, String invalidateAction) {
+            this.value = value;
+            this.invalidateAction = invalidateAction;
+        }
+    }
+}
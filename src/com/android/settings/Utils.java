@@ -96,6 +96,7 @@ import android.widget.TabWidget;
 import com.android.internal.app.UnlaunchableAppActivity;
 import com.android.internal.util.ArrayUtils;
 import com.android.internal.widget.LockPatternUtils;
+import com.android.settings.applications.AppLabelIconCache;
 import com.android.settings.password.ChooseLockSettingsHelper;
 
 import java.net.InetAddress;
@@ -772,11 +773,12 @@ public final class Utils extends com.android.settingslib.Utils {
 
     public static CharSequence getApplicationLabel(Context context, String packageName) {
         try {
-            final ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(
+            final PackageManager pm = context.getPackageManager();
+            final ApplicationInfo appInfo = pm.getApplicationInfo(
                     packageName,
                     PackageManager.MATCH_DISABLED_COMPONENTS
                     | PackageManager.MATCH_ANY_USER);
-            return appInfo.loadLabel(context.getPackageManager());
+            return AppLabelIconCache.getInstance(context).getLabel(pm, appInfo);
         } catch (PackageManager.NameNotFoundException e) {
             Log.w(TAG, "Unable to find info for package: " + packageName);
         }
@@ -22,6 +22,8 @@ import android.accessibilityservice.AccessibilityServiceInfo;
 import android.app.admin.DevicePolicyManager;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
 import android.content.res.Resources;
@@ -42,6 +44,8 @@ import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceScreen;
 import android.text.TextUtils;
 import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.view.Choreographer;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.accessibility.AccessibilityManager;
@@ -54,6 +58,7 @@ import com.android.internal.view.RotationPolicy.RotationPolicyListener;
 import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.Utils;
+import com.android.settings.applications.AppLabelIconCache;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.search.Indexable;
 import com.android.settingslib.RestrictedLockUtils;
@@ -83,7 +88,8 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
     private static final String CATEGORY_DISPLAY = "display_category";
     private static final String CATEGORY_INTERACTION_CONTROL = "interaction_control_category";
     private static final String CATEGORY_EXPERIMENTAL = "experimental_category";
-    private static final String CATEGORY_DOWNLOADED_SERVICES = "user_installed_services_category";
+    @VisibleForTesting
+    static final String CATEGORY_DOWNLOADED_SERVICES = "user_installed_services_category";
 
     private static final String[] CATEGORIES = new String[] {
             CATEGORY_SCREEN_READER, CATEGORY_AUDIO_AND_CAPTIONS, CATEGORY_DISPLAY,
@@ -158,7 +164,7 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
     private final Runnable mUpdateRunnable = new Runnable() {
         @Override
         public void run() {
-            if (getActivity() != null) {
+            if (getContext() != null) {
                 updateServicePreferences();
             }
         }
@@ -167,26 +173,43 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
     private final PackageMonitor mSettingsPackageMonitor = new PackageMonitor() {
         @Override
         public void onPackageAdded(String packageName, int uid) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
         @Override
         public void onPackageAppeared(String packageName, int reason) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
         @Override
         public void onPackageDisappeared(String packageName, int reason) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
         @Override
         public void onPackageRemoved(String packageName, int uid) {
-            sendUpdate();
+            sendUpdate(packageName);
         }
 
-        private void sendUpdate() {
-            mHandler.postDelayed(mUpdateRunnable, DELAY_UPDATE_SERVICES_MILLIS);
+        private void sendUpdate(String packageName) {
+            onServicePackageChanged(packageName);
+        }
+    };
+
+    // Packages added, changed or removed since the service preferences were last updated.
+    private final ArraySet<String> mChangedPackages = new ArraySet<>();
+
+    private boolean mStateUpdateScheduled;
+
+    private final Choreographer.FrameCallback mStateUpdateCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mStateUpdateScheduled = false;
+            if (getContext() != null) {
+                updateSystemPreferences();
+                updateServiceStates();
+            }
         }
     };
 
@@ -199,10 +222,9 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
         }
     };
 
-    private final Map<String, PreferenceCategory> mCategoryToPrefCategoryMap =
-            new ArrayMap<>();
-    private final Map<Preference, PreferenceCategory> mServicePreferenceToPreferenceCategoryMap =
-            new ArrayMap<>();
+    @VisibleForTesting
+    final Map<String, PreferenceCategory> mCategoryToPrefCategoryMap = new ArrayMap<>();
+    private final ArrayMap<ComponentName, ServiceEntry> mServiceEntries = new ArrayMap<>();
     private final Map<ComponentName, PreferenceCategory> mPreBundledServiceComponentToCategoryMap =
             new ArrayMap<>();
 
@@ -248,7 +270,8 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
         mSettingsContentObserver = new SettingsContentObserver(mHandler, shortcutFeatureKeys) {
             @Override
             public void onChange(boolean selfChange, Uri uri) {
-                updateAllPreferences();
+                // Several settings often change together, so refresh once per frame.
+                scheduleStateUpdate();
             }
         };
     }
@@ -287,6 +310,8 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
 
     @Override
     public void onPause() {
+        Choreographer.getInstance().removeFrameCallback(mStateUpdateCallback);
+        mStateUpdateScheduled = false;
         mSettingsPackageMonitor.unregister();
         mSettingsContentObserver.unregister(getContentResolver());
         if (RotationPolicy.isRotationSupported(getActivity())) {
@@ -346,10 +371,15 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
 
     public static CharSequence getServiceSummary(Context context, AccessibilityServiceInfo info,
             boolean serviceEnabled) {
+        return getServiceSummary(context, info.loadSummary(context.getPackageManager()),
+                serviceEnabled);
+    }
+
+    private static CharSequence getServiceSummary(Context context, CharSequence serviceSummary,
+            boolean serviceEnabled) {
         final String serviceState = serviceEnabled
                 ? context.getString(R.string.accessibility_summary_state_enabled)
                 : context.getString(R.string.accessibility_summary_state_disabled);
-        final CharSequence serviceSummary = info.loadSummary(context.getPackageManager());
         final String stateSummaryCombo = context.getString(
                 R.string.preference_summary_default_combination,
                 serviceState, serviceSummary);
@@ -403,6 +433,15 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
             mCategoryToPrefCategoryMap.put(CATEGORIES[i], prefCategory);
         }
 
+        initializePreBundledServicesMapFromArray(CATEGORY_SCREEN_READER,
+                R.array.config_preinstalled_screen_reader_services);
+        initializePreBundledServicesMapFromArray(CATEGORY_AUDIO_AND_CAPTIONS,
+                R.array.config_preinstalled_audio_and_caption_services);
+        initializePreBundledServicesMapFromArray(CATEGORY_DISPLAY,
+                R.array.config_preinstalled_display_services);
+        initializePreBundledServicesMapFromArray(CATEGORY_INTERACTION_CONTROL,
+                R.array.config_preinstalled_interaction_control_services);
+
         // Text contrast.
         mToggleHighTextContrastPreference =
                 (SwitchPreference) findPreference(TOGGLE_HIGH_TEXT_CONTRAST_PREFERENCE);
@@ -484,33 +523,144 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
         updateServicePreferences();
     }
 
+    @VisibleForTesting
+    void onServicePackageChanged(String packageName) {
+        mChangedPackages.add(packageName);
+        if (!mHandler.hasCallbacks(mUpdateRunnable)) {
+            mHandler.postDelayed(mUpdateRunnable, DELAY_UPDATE_SERVICES_MILLIS);
+        }
+    }
+
+    @VisibleForTesting
+    void scheduleStateUpdate() {
+        if (!mStateUpdateScheduled) {
+            mStateUpdateScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mStateUpdateCallback);
+        }
+    }
+
     protected void updateServicePreferences() {
         // Since services category is auto generated we have to do a pass
         // to generate it since services can come and go and then based on
         // the global accessibility state to decided whether it is enabled.
+        // Preferences are keyed by service, and only created again for new services and
+        // changed packages.
+        final AppLabelIconCache cache = AppLabelIconCache.getInstance(getContext());
+        for (int i = 0; i < mChangedPackages.size(); i++) {
+            cache.invalidate(mChangedPackages.valueAt(i));
+        }
 
-        // Generate.
-        ArrayList<Preference> servicePreferences =
-                new ArrayList<>(mServicePreferenceToPreferenceCategoryMap.keySet());
-        for (int i = 0; i < servicePreferences.size(); i++) {
-            Preference service = servicePreferences.get(i);
-            PreferenceCategory category = mServicePreferenceToPreferenceCategoryMap.get(service);
-            category.removePreference(service);
+        final List<AccessibilityServiceInfo> installedServices = getInstalledServices();
+        final ArraySet<ComponentName> installedComponents = new ArraySet<>();
+        for (int i = 0, count = installedServices.size(); i < count; ++i) {
+            final AccessibilityServiceInfo info = installedServices.get(i);
+            final ServiceInfo serviceInfo = info.getResolveInfo().serviceInfo;
+            final ComponentName componentName =
+                    new ComponentName(serviceInfo.packageName, serviceInfo.name);
+            installedComponents.add(componentName);
+
+            final ServiceEntry entry = mServiceEntries.get(componentName);
+            if (entry != null) {
+                if (!mChangedPackages.contains(serviceInfo.packageName)
+                        && entry.isSamePackageVersion(serviceInfo.applicationInfo)) {
+                    continue;
+                }
+                removeServiceEntry(mServiceEntries.indexOfKey(componentName));
+            }
+            addServiceEntry(componentName, info);
         }
+        for (int i = mServiceEntries.size() - 1; i >= 0; i--) {
+            if (!installedComponents.contains(mServiceEntries.keyAt(i))) {
+                removeServiceEntry(i);
+            }
+        }
+        mChangedPackages.clear();
 
-        initializePreBundledServicesMapFromArray(CATEGORY_SCREEN_READER,
-                R.array.config_preinstalled_screen_reader_services);
-        initializePreBundledServicesMapFromArray(CATEGORY_AUDIO_AND_CAPTIONS,
-                R.array.config_preinstalled_audio_and_caption_services);
-        initializePreBundledServicesMapFromArray(CATEGORY_DISPLAY,
-                R.array.config_preinstalled_display_services);
-        initializePreBundledServicesMapFromArray(CATEGORY_INTERACTION_CONTROL,
-                R.array.config_preinstalled_interaction_control_services);
+        updateServiceStates();
+    }
 
-        AccessibilityManager accessibilityManager = AccessibilityManager.getInstance(getActivity());
+    @VisibleForTesting
+    List<AccessibilityServiceInfo> getInstalledServices() {
+        return AccessibilityManager.getInstance(getActivity())
+                .getInstalledAccessibilityServiceList();
+    }
+
+    private void addServiceEntry(ComponentName componentName, AccessibilityServiceInfo info) {
+        final ResolveInfo resolveInfo = info.getResolveInfo();
+        final String packageName = componentName.getPackageName();
+        final PackageManager pm = getContext().getPackageManager();
+        final PreferenceCategory downloadedServicesCategory =
+                mCategoryToPrefCategoryMap.get(CATEGORY_DOWNLOADED_SERVICES);
 
-        List<AccessibilityServiceInfo> installedServices =
-                accessibilityManager.getInstalledAccessibilityServiceList();
+        final RestrictedPreference preference =
+                new RestrictedPreference(downloadedServicesCategory.getContext());
+        preference.setKey(componentName.flattenToString());
+        preference.setFragment(ToggleAccessibilityServicePreferenceFragment.class.getName());
+        preference.setPersistent(true);
+
+        final Bundle extras = preference.getExtras();
+        extras.putString(EXTRA_PREFERENCE_KEY, preference.getKey());
+        extras.putParcelable(EXTRA_RESOLVE_INFO, resolveInfo);
+
+        final String settingsClassName = info.getSettingsActivityName();
+        if (!TextUtils.isEmpty(settingsClassName)) {
+            extras.putString(EXTRA_SETTINGS_TITLE,
+                    getString(R.string.accessibility_menu_item_settings));
+            extras.putString(EXTRA_SETTINGS_COMPONENT_NAME,
+                    new ComponentName(packageName, settingsClassName).flattenToString());
+        }
+        extras.putParcelable(EXTRA_COMPONENT_NAME, componentName);
+
+        PreferenceCategory prefCategory = downloadedServicesCategory;
+        // Set the appropriate category if the service comes pre-installed.
+        if (mPreBundledServiceComponentToCategoryMap.containsKey(componentName)) {
+            prefCategory = mPreBundledServiceComponentToCategoryMap.get(componentName);
+        }
+        preference.setOrder(FIRST_PREFERENCE_IN_CATEGORY_INDEX);
+
+        String description = info.loadDescription(pm);
+        if (TextUtils.isEmpty(description)) {
+            description = getString(R.string.accessibility_service_default_description);
+        }
+        final ServiceEntry entry = new ServiceEntry(info, preference, prefCategory,
+                info.loadSummary(pm), description);
+        mServiceEntries.put(componentName, entry);
+
+        // The preference is only added once it has a title, so that it is sorted by title.
+        AppLabelIconCache.getInstance(getContext()).getServiceAsync(pm,
+                resolveInfo, loaded -> {
+                    if (getContext() == null || mServiceEntries.get(componentName) != entry) {
+                        return;
+                    }
+                    final String title = loaded.label.toString();
+                    preference.setTitle(title);
+                    extras.putString(EXTRA_TITLE, title);
+                    final Drawable icon = loaded.hasIcon ? loaded.getIcon()
+                            : ContextCompat.getDrawable(getContext(),
+                                    R.mipmap.ic_accessibility_generic);
+                    Utils.setSafeIcon(preference, icon);
+
+                    // Add the downloaded services category back if it was previously removed.
+                    if (entry.category == downloadedServicesCategory
+                            && findPreference(CATEGORY_DOWNLOADED_SERVICES) == null) {
+                        getPreferenceScreen().addPreference(downloadedServicesCategory);
+                    }
+                    entry.category.addPreference(preference);
+                });
+    }
+
+    private void removeServiceEntry(int index) {
+        final ServiceEntry entry = mServiceEntries.removeAt(index);
+        entry.category.removePreference(entry.preference);
+    }
+
+    /**
+     * Updates the enabled state and summary of the service preferences, which only depend on
+     * settings, without reloading the installed services.
+     */
+    @VisibleForTesting
+    void updateServiceStates() {
+        AccessibilityManager accessibilityManager = AccessibilityManager.getInstance(getActivity());
         List<AccessibilityServiceInfo> enabledServiceInfos = accessibilityManager
                 .getEnabledAccessibilityServiceList(AccessibilityServiceInfo.FEEDBACK_ALL_MASK);
         Set<ComponentName> enabledServices = AccessibilityUtils.getEnabledServicesFromSettings(
@@ -518,50 +668,23 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
         List<String> permittedServices = mDpm.getPermittedAccessibilityServices(
                 UserHandle.myUserId());
 
-        PreferenceCategory downloadedServicesCategory =
-                mCategoryToPrefCategoryMap.get(CATEGORY_DOWNLOADED_SERVICES);
-        // Temporarily add the downloaded services category back if it was previously removed.
-        if (findPreference(CATEGORY_DOWNLOADED_SERVICES) == null) {
-            getPreferenceScreen().addPreference(downloadedServicesCategory);
-        }
-
-        for (int i = 0, count = installedServices.size(); i < count; ++i) {
-            final AccessibilityServiceInfo info = installedServices.get(i);
-            final ResolveInfo resolveInfo = info.getResolveInfo();
-
-            final RestrictedPreference preference =
-                    new RestrictedPreference(downloadedServicesCategory.getContext());
-            final String title = resolveInfo.loadLabel(getPackageManager()).toString();
-
-            Drawable icon;
-            if (resolveInfo.getIconResource() == 0) {
-                icon = ContextCompat.getDrawable(getContext(), R.mipmap.ic_accessibility_generic);
-            } else {
-                icon = resolveInfo.loadIcon(getPackageManager());
-            }
-
-            final ServiceInfo serviceInfo = resolveInfo.serviceInfo;
-            final String packageName = serviceInfo.packageName;
-            final ComponentName componentName = new ComponentName(packageName, serviceInfo.name);
-
-            preference.setKey(componentName.flattenToString());
+        for (int i = 0, count = mServiceEntries.size(); i < count; ++i) {
+            final ComponentName componentName = mServiceEntries.keyAt(i);
+            final ServiceEntry entry = mServiceEntries.valueAt(i);
+            final RestrictedPreference preference = entry.preference;
+            final String packageName = componentName.getPackageName();
 
-            preference.setTitle(title);
-            Utils.setSafeIcon(preference, icon);
             final boolean serviceEnabled = enabledServices.contains(componentName);
-            String description = info.loadDescription(getPackageManager());
-            if (TextUtils.isEmpty(description)) {
-                description = getString(R.string.accessibility_service_default_description);
-            }
+            String description = entry.description;
 
             if (serviceEnabled && AccessibilityUtils.hasServiceCrashed(
-                    packageName, serviceInfo.name, enabledServiceInfos)) {
+                    packageName, componentName.getClassName(), enabledServiceInfos)) {
                 // Update the summaries for services that have crashed.
                 preference.setSummary(R.string.accessibility_summary_state_stopped);
                 description = getString(R.string.accessibility_description_state_stopped);
             } else {
-                final CharSequence serviceSummary = getServiceSummary(getContext(), info,
-                        serviceEnabled);
+                final CharSequence serviceSummary = getServiceSummary(getContext(),
+                        entry.summary, serviceEnabled);
                 preference.setSummary(serviceSummary);
             }
 
@@ -581,36 +704,14 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
                 preference.setEnabled(true);
             }
 
-            preference.setFragment(ToggleAccessibilityServicePreferenceFragment.class.getName());
-            preference.setPersistent(true);
-
             final Bundle extras = preference.getExtras();
-            extras.putString(EXTRA_PREFERENCE_KEY, preference.getKey());
             extras.putBoolean(EXTRA_CHECKED, serviceEnabled);
-            extras.putString(EXTRA_TITLE, title);
-            extras.putParcelable(EXTRA_RESOLVE_INFO, resolveInfo);
             extras.putString(EXTRA_SUMMARY, description);
-
-            final String settingsClassName = info.getSettingsActivityName();
-            if (!TextUtils.isEmpty(settingsClassName)) {
-                extras.putString(EXTRA_SETTINGS_TITLE,
-                        getString(R.string.accessibility_menu_item_settings));
-                extras.putString(EXTRA_SETTINGS_COMPONENT_NAME,
-                        new ComponentName(packageName, settingsClassName).flattenToString());
-            }
-            extras.putParcelable(EXTRA_COMPONENT_NAME, componentName);
-
-            PreferenceCategory prefCategory = downloadedServicesCategory;
-            // Set the appropriate category if the service comes pre-installed.
-            if (mPreBundledServiceComponentToCategoryMap.containsKey(componentName)) {
-                prefCategory = mPreBundledServiceComponentToCategoryMap.get(componentName);
-            }
-            preference.setOrder(FIRST_PREFERENCE_IN_CATEGORY_INDEX);
-            prefCategory.addPreference(preference);
-            mServicePreferenceToPreferenceCategoryMap.put(preference, prefCategory);
         }
 
         // If the user has not installed any additional services, hide the category.
+        final PreferenceCategory downloadedServicesCategory =
+                mCategoryToPrefCategoryMap.get(CATEGORY_DOWNLOADED_SERVICES);
         if (downloadedServicesCategory.getPreferenceCount() == 0) {
             final PreferenceScreen screen = getPreferenceScreen();
             screen.removePreference(downloadedServicesCategory);
@@ -889,4 +990,32 @@ public class AccessibilitySettings extends SettingsPreferenceFragment implements
                     return keys;
                 }
             };
+
+    /**
+     * An installed accessibility service and its preference.
+     */
+    private static final class ServiceEntry {
+        final RestrictedPreference preference;
+        final PreferenceCategory category;
+        final CharSequence summary;
+        final String description;
+        private final long mVersionCode;
+        private final String mSourceDir;
+
+        ServiceEntry(AccessibilityServiceInfo info, RestrictedPreference preference,
+                PreferenceCategory category, CharSequence summary, String description) {
+            this.preference = preference;
+            this.category = category;
+            this.summary = summary;
+            this.description = description;
+            final ApplicationInfo appInfo = info.getResolveInfo().serviceInfo.applicationInfo;
+            mVersionCode = appInfo.longVersionCode;
+            mSourceDir = appInfo.sourceDir;
+        }
+
+        boolean isSamePackageVersion(ApplicationInfo appInfo) {
+            return mVersionCode == appInfo.longVersionCode
+                    && TextUtils.equals(mSourceDir, appInfo.sourceDir);
+        }
+    }
 }
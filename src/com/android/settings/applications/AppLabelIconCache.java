@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.content.res.Configuration;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.IconDrawableFactory;
+import android.util.LruCache;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.utils.ThreadUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of app labels and icons, keyed by (package, user, density), shared by the
+ * Settings screens that list apps so each label and icon is only loaded and decoded once. The
+ * labels and icons of services, such as accessibility services, are cached the same way.
+ *
+ * Callers that only show a label get it from a separate label cache, which does not load icons
+ * and does not compete with them for space.
+ *
+ * Entries are evicted by LRU once their estimated size exceeds {@link #MAX_SIZE_BYTES}, and
+ * packages are dropped from the cache when they are added, changed or removed. Labels are
+ * dropped when the locale changes.
+ *
+ * The cache lives as long as the process rather than a screen, since going from one app list
+ * to another is what it speeds up. To keep that cheap, it shrinks when no Settings screen is
+ * visible or memory runs low, and is emptied once Settings is in the background.
+ */
+public class AppLabelIconCache {
+
+    @VisibleForTesting
+    static final int MAX_SIZE_BYTES = 4 * 1024 * 1024;
+    @VisibleForTesting
+    static final int MAX_LABELS_SIZE_BYTES = 256 * 1024;
+
+    // Rough in-memory cost of an entry besides its icon pixels and label characters.
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private static AppLabelIconCache sInstance;
+
+    /**
+     * Label and icon of an app.
+     */
+    public static final class Entry {
+        public final CharSequence label;
+        /** Whether the app has an icon of its own, rather than the default app icon. */
+        public final boolean hasIcon;
+        private final Drawable mIcon;
+        private final int mSizeBytes;
+
+        @VisibleForTesting
+        Entry(CharSequence label, Drawable icon, boolean hasIcon) {
+            this.label = label;
+            this.hasIcon = hasIcon;
+            mIcon = icon;
+            mSizeBytes = ENTRY_OVERHEAD_BYTES + (label != null ? label.length() * 2 : 0)
+                    + getIconBytes(icon);
+        }
+
+        /**
+         * @return a new drawable of the icon, since drawables cannot be shared between views
+         */
+        public Drawable getIcon() {
+            if (mIcon == null) {
+                return null;
+            }
+            final Drawable.ConstantState state = mIcon.getConstantState();
+            return state != null ? state.newDrawable() : mIcon;
+        }
+    }
+
+    public interface Callback {
+        void onLoaded(Entry entry);
+    }
+
+    private interface Loader {
+        Entry load();
+    }
+
+    private final Context mAppContext;
+    private final LruCache<Key, Entry> mCache = new LruCache<Key, Entry>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Entry entry) {
+            return entry.mSizeBytes;
+        }
+    };
+    private final LruCache<Key, CharSequence> mLabels =
+            new LruCache<Key, CharSequence>(MAX_LABELS_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(Key key, CharSequence label) {
+                    return ENTRY_OVERHEAD_BYTES + label.length() * 2;
+                }
+            };
+    // Incremented by each invalidation, so loads started before one are not cached.
+    private int mGeneration;
+    // Callbacks waiting on an asynchronous load, keyed by the entry being loaded.
+    private final ArrayMap<Key, List<Callback>> mInFlight = new ArrayMap<>();
+
+    private final ComponentCallbacks2 mMemoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+                invalidateAll();
+                return;
+            }
+            final Uri data = intent.getData();
+            if (data != null) {
+                invalidate(data.getSchemeSpecificPart());
+            }
+        }
+    };
+
+    /**
+     * Returns the cache of the application {@code context} belongs to. If {@code context} is
+     * not attached to an application, a new cache only living as long as the caller keeps it
+     * is returned.
+     */
+    public static synchronized AppLabelIconCache getInstance(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            return new AppLabelIconCache(null);
+        }
+        if (sInstance == null || sInstance.mAppContext != appContext) {
+            if (sInstance != null) {
+                sInstance.mAppContext.unregisterReceiver(sInstance.mReceiver);
+                sInstance.mAppContext.unregisterComponentCallbacks(sInstance.mMemoryCallbacks);
+            }
+            sInstance = new AppLabelIconCache(appContext);
+            sInstance.registerReceiver();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    AppLabelIconCache(Context appContext) {
+        mAppContext = appContext;
+    }
+
+    private void registerReceiver() {
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        mAppContext.registerReceiver(mReceiver, packageFilter);
+        mAppContext.registerReceiver(mReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+        mAppContext.registerComponentCallbacks(mMemoryCallbacks);
+    }
+
+    /**
+     * Returns the label and icon of {@code info}, loading them with {@code pm} on a cache miss.
+     * Blocks on a miss, so only call from a background thread or when a miss is unlikely.
+     */
+    public Entry get(PackageManager pm, ApplicationInfo info) {
+        final Key key = new Key(info.packageName, null /* className */,
+                UserHandle.getUserId(info.uid), getDensityDpi(), false /* badged */);
+        return get(key, () -> loadEntry(pm, info));
+    }
+
+    /**
+     * Returns the label of {@code info}, loading only the label with {@code pm} on a cache miss.
+     * Use this rather than {@link #get(PackageManager, ApplicationInfo)} when the icon is not
+     * shown.
+     */
+    public CharSequence getLabel(PackageManager pm, ApplicationInfo info) {
+        final Key key = new Key(info.packageName, null /* className */,
+                UserHandle.getUserId(info.uid), 0 /* densityDpi */, false /* badged */);
+        CharSequence label = mLabels.get(key);
+        if (label == null) {
+            final int generation = getGeneration();
+            label = info.loadLabel(pm);
+            putIfValid(mLabels, key, label, generation);
+        }
+        return label;
+    }
+
+    /**
+     * Asynchronous version of {@link #get(PackageManager, ApplicationInfo)}. {@code callback}
+     * is called on the main thread, right away on a cache hit. Concurrent requests for the same
+     * app share a single load.
+     */
+    public void getAsync(PackageManager pm, ApplicationInfo info, Callback callback) {
+        final Key key = new Key(info.packageName, null /* className */,
+                UserHandle.getUserId(info.uid), getDensityDpi(), false /* badged */);
+        getAsync(key, () -> loadEntry(pm, info), callback);
+    }
+
+    /**
+     * Asynchronously gets the label and icon of the service {@code info} resolves to, which fall
+     * back to those of its app. {@code callback} is called on the main thread, right away on a
+     * cache hit.
+     */
+    public void getServiceAsync(PackageManager pm, ResolveInfo info, Callback callback) {
+        final ServiceInfo si = info.serviceInfo;
+        final Key key = new Key(si.packageName, si.name,
+                UserHandle.getUserId(si.applicationInfo.uid), getDensityDpi(),
+                false /* badged */);
+        getAsync(key, () -> new Entry(info.loadLabel(pm), info.loadIcon(pm),
+                info.getIconResource() != 0), callback);
+    }
+
+    /**
+     * Returns the icon of {@code info} badged for its user, loading it with {@code factory} on
+     * a cache miss. The entry has no label.
+     */
+    public Drawable getBadgedIcon(IconDrawableFactory factory, ApplicationInfo info) {
+        final Key key = new Key(info.packageName, null /* className */,
+                UserHandle.getUserId(info.uid), getDensityDpi(), true /* badged */);
+        return get(key, () -> loadBadgedEntry(factory, info)).getIcon();
+    }
+
+    /**
+     * Asynchronous version of {@link #getBadgedIcon(IconDrawableFactory, ApplicationInfo)}.
+     */
+    public void getBadgedIconAsync(IconDrawableFactory factory, ApplicationInfo info,
+            Callback callback) {
+        final Key key = new Key(info.packageName, null /* className */,
+                UserHandle.getUserId(info.uid), getDensityDpi(), true /* badged */);
+        getAsync(key, () -> loadBadgedEntry(factory, info), callback);
+    }
+
+    private Entry get(Key key, Loader loader) {
+        Entry entry = mCache.get(key);
+        if (entry == null) {
+            final int generation = getGeneration();
+            entry = loader.load();
+            putIfValid(mCache, key, entry, generation);
+        }
+        return entry;
+    }
+
+    private void getAsync(Key key, Loader loader, Callback callback) {
+        final Entry cached = mCache.get(key);
+        if (cached != null) {
+            callback.onLoaded(cached);
+            return;
+        }
+        synchronized (mInFlight) {
+            List<Callback> callbacks = mInFlight.get(key);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            mInFlight.put(key, callbacks);
+        }
+        final int generation = getGeneration();
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final Entry entry = loader.load();
+            putIfValid(mCache, key, entry, generation);
+            ThreadUtils.postOnMainThread(() -> {
+                final List<Callback> callbacks;
+                synchronized (mInFlight) {
+                    callbacks = mInFlight.remove(key);
+                }
+                if (callbacks != null) {
+                    for (Callback c : callbacks) {
+                        c.onLoaded(entry);
+                    }
+                }
+            });
+        });
+    }
+
+    private synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches {@code value} loaded at {@code generation}, unless the cache was invalidated since.
+     */
+    private synchronized <V> void putIfValid(LruCache<Key, V> cache, Key key, V value,
+            int generation) {
+        if (generation == mGeneration && value != null) {
+            cache.put(key, value);
+        }
+    }
+
+    private static Entry loadEntry(PackageManager pm, ApplicationInfo info) {
+        return new Entry(info.loadLabel(pm), info.loadIcon(pm), info.icon != 0);
+    }
+
+    private static Entry loadBadgedEntry(IconDrawableFactory factory, ApplicationInfo info) {
+        return new Entry(null /* label */, factory.getBadgedIcon(info), info.icon != 0);
+    }
+
+    /**
+     * Drops all entries of the package and its services, for all users and densities.
+     */
+    public synchronized void invalidate(String packageName) {
+        mGeneration++;
+        for (Key key : mCache.snapshot().keySet()) {
+            if (Objects.equals(key.packageName, packageName)) {
+                mCache.remove(key);
+            }
+        }
+        for (Key key : mLabels.snapshot().keySet()) {
+            if (Objects.equals(key.packageName, packageName)) {
+                mLabels.remove(key);
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mCache.evictAll();
+        mLabels.evictAll();
+    }
+
+    /**
+     * Frees memory as requested by {@link ComponentCallbacks2#onTrimMemory(int)}. The entries
+     * are still valid, so loads in flight may cache theirs.
+     */
+    @VisibleForTesting
+    synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mCache.evictAll();
+            mLabels.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // Labels are small, icons are what takes the memory.
+            mCache.trimToSize(MAX_SIZE_BYTES / 4);
+        }
+    }
+
+    /**
+     * @return hit rates and memory use of the cache, for dumpsys
+     */
+    public JSONObject dump() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        final int hits = mCache.hitCount();
+        final int misses = mCache.missCount();
+        obj.put("entries", mCache.snapshot().size());
+        obj.put("bytes", mCache.size());
+        obj.put("max_bytes", mCache.maxSize());
+        obj.put("hits", hits);
+        obj.put("misses", misses);
+        obj.put("hit_rate", hits + misses > 0 ? (float) hits / (hits + misses) : 0f);
+        obj.put("evictions", mCache.evictionCount());
+        obj.put("label_entries", mLabels.snapshot().size());
+        obj.put("label_hits", mLabels.hitCount());
+        obj.put("label_misses", mLabels.missCount());
+        return obj;
+    }
+
+    private int getDensityDpi() {
+        return mAppContext != null
+                ? mAppContext.getResources().getDisplayMetrics().densityDpi : 0;
+    }
+
+    private static int getIconBytes(Drawable icon) {
+        if (icon == null) {
+            return 0;
+        }
+        if (icon instanceof BitmapDrawable && ((BitmapDrawable) icon).getBitmap() != null) {
+            return ((BitmapDrawable) icon).getBitmap().getAllocationByteCount();
+        }
+        // Assume the drawable gets rasterized at its intrinsic size.
+        return Math.max(icon.getIntrinsicWidth(), 0) * Math.max(icon.getIntrinsicHeight(), 0) * 4;
+    }
+
+    private static final class Key {
+        final String packageName;
+        // Name of the service, or null for the app.
+        final String className;
+        final int userId;
+        final int densityDpi;
+        final boolean badged;
+
+        Key(String packageName, String className, int userId, int densityDpi, boolean badged) {
+            this.packageName = packageName;
+            this.className = className;
+            this.userId = userId;
+            this.densityDpi = densityDpi;
+            this.badged = badged;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return userId == other.userId && densityDpi == other.densityDpi
+                    && badged == other.badged && Objects.equals(packageName, other.packageName)
+                    && Objects.equals(className, other.className);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(packageName, className, userId, densityDpi, badged);
+        }
+    }
+}
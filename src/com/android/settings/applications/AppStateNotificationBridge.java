@@ -51,7 +51,8 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
     private IUsageStatsManager mUsageStatsManager;
     protected List<Integer> mUserIds;
     private NotificationBackend mBackend;
-    private static final int DAYS_TO_CHECK = 7;
+    private final NotificationUsageAggregator mUsageAggregator;
+    static final int DAYS_TO_CHECK = 7;
 
     public AppStateNotificationBridge(Context context, ApplicationsState appState,
             Callback callback, IUsageStatsManager usageStatsManager,
@@ -60,6 +61,7 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
         mContext = context;
         mUsageStatsManager = usageStatsManager;
         mBackend = backend;
+        mUsageAggregator = NotificationUsageAggregator.create(context);
         mUserIds = new ArrayList<>();
         mUserIds.add(mContext.getUserId());
         int workUserId = Utils.getManagedProfileId(userManager, mContext.getUserId());
@@ -129,35 +131,11 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
         ArrayMap<String, NotificationsSentState> aggregatedStats = new ArrayMap<>();
 
         long now = System.currentTimeMillis();
-        long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
         for (int userId : mUserIds) {
-            UsageEvents events = null;
-            try {
-                events = mUsageStatsManager.queryEventsForUser(
-                        startTime, now, userId, mContext.getPackageName());
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-            if (events != null) {
-                UsageEvents.Event event = new UsageEvents.Event();
-                while (events.hasNextEvent()) {
-                    events.getNextEvent(event);
-                    NotificationsSentState stats =
-                            aggregatedStats.get(getKey(userId, event.getPackageName()));
-                    if (stats == null) {
-                        stats = new NotificationsSentState();
-                        aggregatedStats.put(getKey(userId, event.getPackageName()), stats);
-                    }
-
-                    if (event.getEventType() == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
-                        if (event.getTimeStamp() > stats.lastSent) {
-                            stats.lastSent = event.getTimeStamp();
-                        }
-                        stats.sentCount++;
-                    }
-
-                }
-            }
+            mUsageAggregator.update(userId, now, (startTime, endTime) ->
+                    mUsageStatsManager.queryEventsForUser(
+                            startTime, endTime, userId, mContext.getPackageName()));
+            mUsageAggregator.getSentStates(userId, now, aggregatedStats);
         }
         return aggregatedStats;
     }
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.android.settings.applications.AppStateNotificationBridge.DAYS_TO_CHECK;
+
+import android.app.usage.UsageEvents;
+import android.content.Context;
+import android.os.RemoteException;
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settings.applications.AppStateNotificationBridge.NotificationsSentState;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Rolling count of the notifications each app sent over the last {@link
+ * AppStateNotificationBridge#DAYS_TO_CHECK} days, per user.
+ *
+ * Counts are kept in daily buckets, so moving the window forward only drops the buckets of the
+ * days that fell out of it. Each user has a checkpoint: the end of the last queried range of
+ * usage events. An update only queries the events since the checkpoint, and the aggregate is
+ * persisted so that this holds across process restarts too.
+ *
+ * Each owner creates its own aggregator, which loads the persisted aggregate on first use. The
+ * file is shared, so reading and writing it is serialized across aggregators.
+ *
+ * All the methods may do disk IO and should be called on a background thread.
+ */
+class NotificationUsageAggregator {
+    private static final String TAG = "NotificationUsage";
+    private static final String FILE_NAME = "notification_usage";
+    private static final int VERSION = 1;
+
+    // The window of DAYS_TO_CHECK days ending now overlaps DAYS_TO_CHECK + 1 calendar days.
+    @VisibleForTesting
+    static final int BUCKET_COUNT = DAYS_TO_CHECK + 1;
+
+    private static final Object sFileLock = new Object();
+
+    /**
+     * Queries the usage events from {@code startTime} inclusive to {@code endTime} exclusive.
+     */
+    interface EventQuery {
+        UsageEvents query(long startTime, long endTime) throws RemoteException;
+    }
+
+    private final AtomicFile mFile;
+    private final SparseArray<UserUsage> mUsers = new SparseArray<>();
+    private final UsageEvents.Event mEvent = new UsageEvents.Event();
+    private boolean mLoaded;
+    private boolean mDirty;
+
+    /**
+     * Returns a new aggregator of the usage persisted for the application {@code context}
+     * belongs to.
+     */
+    static NotificationUsageAggregator create(Context context) {
+        return new NotificationUsageAggregator(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    @VisibleForTesting
+    NotificationUsageAggregator(File file) {
+        mFile = new AtomicFile(file);
+    }
+
+    /**
+     * Folds the events of {@code userId} since its checkpoint into the aggregate, then moves the
+     * checkpoint to {@code now}. The checkpoint is left as is if the query fails.
+     */
+    @WorkerThread
+    synchronized void update(int userId, long now, EventQuery query) {
+        ensureLoaded();
+        final long windowStart = now - DAYS_TO_CHECK * DateUtils.DAY_IN_MILLIS;
+        UserUsage user = mUsers.get(userId);
+        if (user == null || user.checkpoint < windowStart || user.checkpoint > now) {
+            // Nothing left in the window, or the clock went back: start over.
+            user = new UserUsage(windowStart);
+            mUsers.put(userId, user);
+            mDirty = true;
+        }
+
+        UsageEvents events = null;
+        try {
+            events = query.query(user.checkpoint, now);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to query usage events of user " + userId, e);
+        }
+        if (events != null) {
+            while (events.hasNextEvent()) {
+                events.getNextEvent(mEvent);
+                addEvent(user, mEvent.getPackageName(), mEvent.getEventType(),
+                        mEvent.getTimeStamp());
+            }
+            user.checkpoint = now;
+            mDirty = true;
+        }
+        writeIfDirty();
+    }
+
+    @VisibleForTesting
+    synchronized void addEvent(int userId, String packageName, int eventType, long timestamp) {
+        ensureLoaded();
+        UserUsage user = mUsers.get(userId);
+        if (user == null) {
+            user = new UserUsage(timestamp);
+            mUsers.put(userId, user);
+        }
+        addEvent(user, packageName, eventType, timestamp);
+        user.checkpoint = Math.max(user.checkpoint, timestamp + 1);
+        mDirty = true;
+    }
+
+    private static void addEvent(UserUsage user, String packageName, int eventType,
+            long timestamp) {
+        PackageUsage usage = user.packages.get(packageName);
+        if (usage == null) {
+            usage = new PackageUsage();
+            user.packages.put(packageName, usage);
+        }
+        final long day = getDay(timestamp);
+        usage.lastEventDay = Math.max(usage.lastEventDay, day);
+        if (eventType == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
+            usage.addSent(day, timestamp);
+        }
+    }
+
+    /**
+     * Puts the state of each app of {@code userId} with events in the window ending at
+     * {@code now} into {@code out}, keyed by {@link AppStateNotificationBridge#getKey}.
+     */
+    @WorkerThread
+    synchronized void getSentStates(int userId, long now,
+            Map<String, NotificationsSentState> out) {
+        ensureLoaded();
+        final UserUsage user = mUsers.get(userId);
+        if (user == null) {
+            return;
+        }
+        final long today = getDay(now);
+        final long windowStart = now - DAYS_TO_CHECK * DateUtils.DAY_IN_MILLIS;
+        for (int i = user.packages.size() - 1; i >= 0; i--) {
+            final PackageUsage usage = user.packages.valueAt(i);
+            if (usage.lastEventDay <= today - BUCKET_COUNT) {
+                user.packages.removeAt(i);
+                mDirty = true;
+                continue;
+            }
+            usage.advanceTo(today);
+            final NotificationsSentState state = new NotificationsSentState();
+            state.sentCount = usage.windowCount;
+            // An app kept by its other events may have last sent a notification long ago.
+            state.lastSent = usage.lastSent >= windowStart ? usage.lastSent : 0;
+            out.put(AppStateNotificationBridge.getKey(userId, user.packages.keyAt(i)), state);
+        }
+        writeIfDirty();
+    }
+
+    @VisibleForTesting
+    synchronized void clear() {
+        mUsers.clear();
+        mLoaded = true;
+        mDirty = false;
+        synchronized (sFileLock) {
+            mFile.delete();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        synchronized (sFileLock) {
+            readLocked();
+        }
+    }
+
+    private void readLocked() {
+        try (DataInputStream in = new DataInputStream(mFile.openRead())) {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            for (int userCount = in.readInt(); userCount > 0; userCount--) {
+                final int userId = in.readInt();
+                final UserUsage user = new UserUsage(in.readLong());
+                for (int packageCount = in.readInt(); packageCount > 0; packageCount--) {
+                    final String packageName = in.readUTF();
+                    final PackageUsage usage = new PackageUsage();
+                    usage.headDay = in.readLong();
+                    usage.lastEventDay = in.readLong();
+                    usage.lastSent = in.readLong();
+                    for (int i = 0; i < BUCKET_COUNT; i++) {
+                        usage.dailyCounts[i] = in.readInt();
+                        usage.windowCount += usage.dailyCounts[i];
+                    }
+                    user.packages.put(packageName, usage);
+                }
+                mUsers.put(userId, user);
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing aggregated yet.
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + mFile.getBaseFile(), e);
+            mUsers.clear();
+        }
+    }
+
+    private void writeIfDirty() {
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+        synchronized (sFileLock) {
+            writeLocked();
+        }
+    }
+
+    private void writeLocked() {
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            final DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(VERSION);
+            data.writeInt(mUsers.size());
+            for (int i = 0; i < mUsers.size(); i++) {
+                final UserUsage user = mUsers.valueAt(i);
+                data.writeInt(mUsers.keyAt(i));
+                data.writeLong(user.checkpoint);
+                data.writeInt(user.packages.size());
+                for (int j = 0; j < user.packages.size(); j++) {
+                    final PackageUsage usage = user.packages.valueAt(j);
+                    data.writeUTF(user.packages.keyAt(j));
+                    data.writeLong(usage.headDay);
+                    data.writeLong(usage.lastEventDay);
+                    data.writeLong(usage.lastSent);
+                    for (int count : usage.dailyCounts) {
+                        data.writeInt(count);
+                    }
+                }
+            }
+            data.flush();
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + mFile.getBaseFile(), e);
+            mFile.failWrite(out);
+        }
+    }
+
+    private static long getDay(long timestamp) {
+        return timestamp / DateUtils.DAY_IN_MILLIS;
+    }
+
+    private static final class UserUsage {
+        final ArrayMap<String, PackageUsage> packages = new ArrayMap<>();
+        // End of the last queried range of events.
+        long checkpoint;
+
+        UserUsage(long checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+    }
+
+    private static final class PackageUsage {
+        // Notifications sent per day, indexed by day modulo BUCKET_COUNT.
+        final int[] dailyCounts = new int[BUCKET_COUNT];
+        // Sum of dailyCounts.
+        int windowCount;
+        // Latest day held in dailyCounts.
+        long headDay;
+        // Day of the latest event of any type.
+        long lastEventDay;
+        long lastSent;
+
+        void addSent(long day, long timestamp) {
+            advanceTo(day);
+            if (day > headDay - BUCKET_COUNT) {
+                dailyCounts[getBucket(day)]++;
+                windowCount++;
+            }
+            lastSent = Math.max(lastSent, timestamp);
+        }
+
+        /**
+         * Moves the window forward to end on {@code day}, dropping the days that fell out of it.
+         */
+        void advanceTo(long day) {
+            if (day <= headDay) {
+                return;
+            }
+            if (day - headDay >= BUCKET_COUNT) {
+                Arrays.fill(dailyCounts, 0);
+                windowCount = 0;
+            } else {
+                for (long d = headDay + 1; d <= day; d++) {
+                    final int bucket = getBucket(d);
+                    windowCount -= dailyCounts[bucket];
+                    dailyCounts[bucket] = 0;
+                }
+            }
+            headDay = day;
+        }
+
+        private static int getBucket(long day) {
+            return (int) (day % BUCKET_COUNT);
+        }
+    }
+}
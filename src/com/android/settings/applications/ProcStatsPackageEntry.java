@@ -125,7 +125,8 @@ public class ProcStatsPackageEntry implements Parcelable {
                         PackageManager.MATCH_DISABLED_COMPONENTS |
                         PackageManager.MATCH_DISABLED_UNTIL_USED_COMPONENTS |
                         PackageManager.MATCH_ANY_USER);
-                mUiLabel = mUiTargetApp.loadLabel(pm).toString();
+                mUiLabel = AppLabelIconCache.getInstance(context).getLabel(pm, mUiTargetApp)
+                        .toString();
             }
         } catch (PackageManager.NameNotFoundException e) {
             Log.d(TAG, "could not find package: " + mPackage);
@@ -238,7 +238,14 @@ public class RecentAppsPreferenceController extends AbstractPreferenceController
             }
             pref.setKey(pkgName);
             pref.setTitle(appEntry.label);
-            pref.setIcon(mIconDrawableFactory.getBadgedIcon(appEntry.info));
+            final Preference appPref = pref;
+            AppLabelIconCache.getInstance(mContext).getBadgedIconAsync(mIconDrawableFactory,
+                    appEntry.info, entry -> {
+                        // The preference may have been rebound to another app meanwhile.
+                        if (TextUtils.equals(pkgName, appPref.getKey())) {
+                            appPref.setIcon(entry.getIcon());
+                        }
+                    });
             pref.setSummary(StringUtil.formatRelativeTime(mContext,
                     System.currentTimeMillis() - stat.getLastTimeUsed(), false));
             pref.setOrder(i);
@@ -413,16 +413,17 @@ public class RunningState {
             mProcessName = processName;
         }
         
-        void ensureLabel(PackageManager pm) {
+        void ensureLabel(Context context, PackageManager pm) {
             if (mLabel != null) {
                 return;
             }
+            final AppLabelIconCache cache = AppLabelIconCache.getInstance(context);
             
             try {
                 ApplicationInfo ai = pm.getApplicationInfo(mProcessName,
                         PackageManager.MATCH_ANY_USER);
                 if (ai.uid == mUid) {
-                    mDisplayLabel = ai.loadLabel(pm);
+                    mDisplayLabel = cache.getLabel(pm, ai);
                     mLabel = mDisplayLabel.toString();
                     mPackageInfo = ai;
                     return;
@@ -439,7 +440,7 @@ public class RunningState {
                 try {
                     ApplicationInfo ai = pm.getApplicationInfo(pkgs[0],
                             PackageManager.MATCH_ANY_USER);
-                    mDisplayLabel = ai.loadLabel(pm);
+                    mDisplayLabel = cache.getLabel(pm, ai);
                     mLabel = mDisplayLabel.toString();
                     mPackageInfo = ai;
                     return;
@@ -472,7 +473,7 @@ public class RunningState {
                 ApplicationInfo ai = mServices.values().iterator().next()
                         .mServiceInfo.applicationInfo;
                 mPackageInfo = ai;
-                mDisplayLabel = mPackageInfo.loadLabel(pm);
+                mDisplayLabel = cache.getLabel(pm, mPackageInfo);
                 mLabel = mDisplayLabel.toString();
                 return;
             }
@@ -481,7 +482,7 @@ public class RunningState {
             try {
                 ApplicationInfo ai = pm.getApplicationInfo(pkgs[0],
                         PackageManager.MATCH_ANY_USER);
-                mDisplayLabel = ai.loadLabel(pm);
+                mDisplayLabel = cache.getLabel(pm, ai);
                 mLabel = mDisplayLabel.toString();
                 mPackageInfo = ai;
                 return;
@@ -574,7 +575,7 @@ public class RunningState {
                     proc.mClient = this;
                 }
                 proc.mCurSeq = curSeq;
-                proc.ensureLabel(pm);
+                proc.ensureLabel(context, pm);
                 changed |= proc.buildDependencyChain(context, pm, curSeq);
             }
             
@@ -1048,7 +1049,7 @@ public class RunningState {
                 }
                 proc.mCurSeq = mSequence;
                 proc.mInteresting = true;
-                proc.ensureLabel(pm);
+                proc.ensureLabel(context, pm);
             } else {
                 proc.mInteresting = false;
             }
@@ -1117,7 +1118,7 @@ public class RunningState {
             while (pit.hasNext()) {
                 ProcessItem pi = pit.next();
                 if (pi.mCurSeq == mSequence) {
-                    pi.ensureLabel(pm);
+                    pi.ensureLabel(context, pm);
                     if (pi.mPid == 0) {
                         // Sanity: a non-process can't be dependent on
                         // anything.
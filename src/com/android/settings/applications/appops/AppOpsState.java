@@ -35,6 +35,7 @@ import com.android.settings.R;
 import java.io.File;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -504,23 +505,30 @@ public class AppOpsState {
             final String packageName, ApplicationInfo appInfo) {
         AppEntry appEntry = appEntries.get(packageName);
         if (appEntry == null) {
-            if (appInfo == null) {
-                try {
-                    appInfo = mPm.getApplicationInfo(packageName,
-                            PackageManager.MATCH_DISABLED_COMPONENTS
-                            | PackageManager.MATCH_ANY_USER);
-                } catch (PackageManager.NameNotFoundException e) {
-                    Log.w(TAG, "Unable to find info for package " + packageName);
-                    return null;
-                }
+            appEntry = newAppEntry(context, packageName, appInfo);
+            if (appEntry != null) {
+                appEntries.put(packageName, appEntry);
             }
-            appEntry = new AppEntry(this, appInfo);
-            appEntry.loadLabel(context);
-            appEntries.put(packageName, appEntry);
         }
         return appEntry;
     }
 
+    private AppEntry newAppEntry(Context context, String packageName, ApplicationInfo appInfo) {
+        if (appInfo == null) {
+            try {
+                appInfo = mPm.getApplicationInfo(packageName,
+                        PackageManager.MATCH_DISABLED_COMPONENTS
+                        | PackageManager.MATCH_ANY_USER);
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Unable to find info for package " + packageName);
+                return null;
+            }
+        }
+        AppEntry appEntry = new AppEntry(this, appInfo);
+        appEntry.loadLabel(context);
+        return appEntry;
+    }
+
     public List<AppOpEntry> buildState(OpsTemplate tpl, int uid, String packageName) {
         return buildState(tpl, uid, packageName, RECENCY_COMPARATOR);
     }
@@ -532,15 +540,20 @@ public class AppOpsState {
         final HashMap<String, AppEntry> appEntries = new HashMap<String, AppEntry>();
         final List<AppOpEntry> entries = new ArrayList<AppOpEntry>();
 
-        final ArrayList<String> perms = new ArrayList<String>();
-        final ArrayList<Integer> permOps = new ArrayList<Integer>();
+        // Index of each permission to show, in perms and permOps.
+        final HashMap<String, Integer> permIndex = new HashMap<String, Integer>();
+        final String[] perms = new String[tpl.ops.length];
+        final int[] permOps = new int[tpl.ops.length];
         final int[] opToOrder = new int[AppOpsManager._NUM_OP];
+        int permCount = 0;
         for (int i=0; i<tpl.ops.length; i++) {
             if (tpl.showPerms[i]) {
                 String perm = AppOpsManager.opToPermission(tpl.ops[i]);
-                if (perm != null && !perms.contains(perm)) {
-                    perms.add(perm);
-                    permOps.add(tpl.ops[i]);
+                if (perm != null && !permIndex.containsKey(perm)) {
+                    permIndex.put(perm, permCount);
+                    perms[permCount] = perm;
+                    permOps[permCount] = tpl.ops[i];
+                    permCount++;
                     opToOrder[tpl.ops[i]] = i;
                 }
             }
@@ -577,53 +590,39 @@ public class AppOpsState {
             } catch (NameNotFoundException e) {
             }
         } else {
-            String[] permsArray = new String[perms.size()];
-            perms.toArray(permsArray);
-            apps = mPm.getPackagesHoldingPermissions(permsArray, 0);
+            apps = mPm.getPackagesHoldingPermissions(Arrays.copyOf(perms, permCount), 0);
         }
+
         for (int i=0; i<apps.size(); i++) {
             PackageInfo appInfo = apps.get(i);
-            AppEntry appEntry = getAppEntry(context, appEntries, appInfo.packageName,
-                    appInfo.applicationInfo);
-            if (appEntry == null) {
+            PackagePermOps permOpsOfPackage = getPackagePermOps(context, appEntries, appInfo,
+                    permIndex, permOps);
+            if (permOpsOfPackage == null) {
                 continue;
             }
+            AppEntry appEntry = appEntries.get(appInfo.packageName);
+            if (appEntry == null) {
+                appEntry = permOpsOfPackage.appEntry;
+                appEntries.put(appInfo.packageName, appEntry);
+            }
             List<AppOpsManager.OpEntry> dummyOps = null;
             AppOpsManager.PackageOps pkgOps = null;
-            if (appInfo.requestedPermissions != null) {
-                for (int j=0; j<appInfo.requestedPermissions.length; j++) {
-                    if (appInfo.requestedPermissionsFlags != null) {
-                        if ((appInfo.requestedPermissionsFlags[j]
-                                & PackageInfo.REQUESTED_PERMISSION_GRANTED) == 0) {
-                            if (DEBUG) Log.d(TAG, "Pkg " + appInfo.packageName + " perm "
-                                    + appInfo.requestedPermissions[j] + " not granted; skipping");
-                            continue;
-                        }
-                    }
-                    if (DEBUG) Log.d(TAG, "Pkg " + appInfo.packageName + ": requested perm "
-                            + appInfo.requestedPermissions[j]);
-                    for (int k=0; k<perms.size(); k++) {
-                        if (!perms.get(k).equals(appInfo.requestedPermissions[j])) {
-                            continue;
-                        }
-                        if (DEBUG) Log.d(TAG, "Pkg " + appInfo.packageName + " perm " + perms.get(k)
-                                + " has op " + permOps.get(k) + ": " + appEntry.hasOp(permOps.get(k)));
-                        if (appEntry.hasOp(permOps.get(k))) {
-                            continue;
-                        }
-                        if (dummyOps == null) {
-                            dummyOps = new ArrayList<AppOpsManager.OpEntry>();
-                            pkgOps = new AppOpsManager.PackageOps(
-                                    appInfo.packageName, appInfo.applicationInfo.uid, dummyOps);
-
-                        }
-                        AppOpsManager.OpEntry opEntry = new AppOpsManager.OpEntry(
-                                permOps.get(k), AppOpsManager.MODE_ALLOWED, 0, 0, 0, -1, null);
-                        dummyOps.add(opEntry);
-                        addOp(entries, pkgOps, appEntry, opEntry, packageName == null,
-                                packageName == null ? 0 : opToOrder[opEntry.getOp()]);
-                    }
+            for (int j=0; j<permOpsOfPackage.opCount; j++) {
+                final int op = permOpsOfPackage.ops[j];
+                if (appEntry.hasOp(op)) {
+                    continue;
                 }
+                if (dummyOps == null) {
+                    dummyOps = new ArrayList<AppOpsManager.OpEntry>();
+                    pkgOps = new AppOpsManager.PackageOps(
+                            appInfo.packageName, appInfo.applicationInfo.uid, dummyOps);
+
+                }
+                AppOpsManager.OpEntry opEntry = new AppOpsManager.OpEntry(
+                        op, AppOpsManager.MODE_ALLOWED, 0, 0, 0, -1, null);
+                dummyOps.add(opEntry);
+                addOp(entries, pkgOps, appEntry, opEntry, packageName == null,
+                        packageName == null ? 0 : opToOrder[opEntry.getOp()]);
             }
         }
 
@@ -633,4 +632,62 @@ public class AppOpsState {
         // Done!
         return entries;
     }
+
+    /**
+     * Returns the ops of the granted permissions of {@code appInfo} to show, except those its
+     * app entry already has, or null if the app is not found. Only reads {@code appEntries}, the
+     * caller adds a new app entry.
+     */
+    private PackagePermOps getPackagePermOps(Context context,
+            HashMap<String, AppEntry> appEntries, PackageInfo appInfo,
+            HashMap<String, Integer> permIndex, int[] permOps) {
+        AppEntry appEntry = appEntries.get(appInfo.packageName);
+        final boolean newEntry = appEntry == null;
+        if (newEntry) {
+            appEntry = newAppEntry(context, appInfo.packageName, appInfo.applicationInfo);
+            if (appEntry == null) {
+                return null;
+            }
+        }
+        final PackagePermOps result = new PackagePermOps(appEntry);
+        if (appInfo.requestedPermissions == null) {
+            return result;
+        }
+        result.ops = new int[appInfo.requestedPermissions.length];
+        for (int j=0; j<appInfo.requestedPermissions.length; j++) {
+            if (appInfo.requestedPermissionsFlags != null) {
+                if ((appInfo.requestedPermissionsFlags[j]
+                        & PackageInfo.REQUESTED_PERMISSION_GRANTED) == 0) {
+                    if (DEBUG) Log.d(TAG, "Pkg " + appInfo.packageName + " perm "
+                            + appInfo.requestedPermissions[j] + " not granted; skipping");
+                    continue;
+                }
+            }
+            final Integer index = permIndex.get(appInfo.requestedPermissions[j]);
+            if (index == null) {
+                continue;
+            }
+            final int op = permOps[index];
+            if (DEBUG) Log.d(TAG, "Pkg " + appInfo.packageName + " perm "
+                    + appInfo.requestedPermissions[j] + " has op " + op + ": "
+                    + (!newEntry && appEntry.hasOp(op)));
+            if (newEntry || !appEntry.hasOp(op)) {
+                result.ops[result.opCount++] = op;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The app entry of a package and the ops of its permissions it is missing.
+     */
+    private static final class PackagePermOps {
+        final AppEntry appEntry;
+        int[] ops;
+        int opCount;
+
+        PackagePermOps(AppEntry appEntry) {
+            this.appEntry = appEntry;
+        }
+    }
 }
@@ -19,12 +19,15 @@ package com.android.settings.bluetooth;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemProperties;
 import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceGroup;
 import android.text.BidiFormatter;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import com.android.settings.R;
@@ -35,7 +38,10 @@ import com.android.settingslib.bluetooth.CachedBluetoothDevice;
 import com.android.settingslib.bluetooth.LocalBluetoothAdapter;
 import com.android.settingslib.bluetooth.LocalBluetoothManager;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.WeakHashMap;
 
 /**
@@ -52,6 +58,12 @@ public abstract class DeviceListPreferenceFragment extends
 
     private static final String KEY_BT_SCAN = "bt_scan";
 
+    /**
+     * How long discovery events are buffered before they are applied to the device list.
+     */
+    @VisibleForTesting
+    static final long DEVICE_BATCH_WINDOW_MS = 250;
+
     // Copied from BluetoothDeviceNoNamePreferenceController.java
     private static final String BLUETOOTH_SHOW_DEVICES_WITHOUT_NAMES_PROPERTY =
             "persist.bluetooth.showdeviceswithoutnames";
@@ -74,6 +86,21 @@ public abstract class DeviceListPreferenceFragment extends
 
     boolean mShowDevicesWithoutNames;
 
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Discovery events not applied to the list yet, keyed by device address. A device is in at
+    // most one of the two maps, the last event received for an address wins.
+    private final ArrayMap<String, CachedBluetoothDevice> mPendingAddedDevices = new ArrayMap<>();
+    private final ArrayMap<String, CachedBluetoothDevice> mPendingDeletedDevices =
+            new ArrayMap<>();
+    private final Runnable mApplyPendingDevicesRunnable = this::applyPendingDevices;
+
+    // Discovery events received vs. preference insertions and removals performed.
+    @VisibleForTesting
+    int mDeviceEventCount;
+    @VisibleForTesting
+    int mDeviceOperationCount;
+
     DeviceListPreferenceFragment(String restrictedKey) {
         super(restrictedKey);
         mFilter = BluetoothDeviceFilter.ALL_FILTER;
@@ -130,6 +157,7 @@ public abstract class DeviceListPreferenceFragment extends
     }
 
     void removeAllDevices() {
+        clearPendingDevices();
         mDevicePreferenceMap.clear();
         mDeviceListGroup.removeAll();
     }
@@ -138,7 +166,7 @@ public abstract class DeviceListPreferenceFragment extends
         Collection<CachedBluetoothDevice> cachedDevices =
                 mLocalManager.getCachedDeviceManager().getCachedDevicesCopy();
         for (CachedBluetoothDevice cachedDevice : cachedDevices) {
-            onDeviceAdded(cachedDevice);
+            addDevice(cachedDevice);
         }
     }
 
@@ -166,6 +194,60 @@ public abstract class DeviceListPreferenceFragment extends
 
     @Override
     public void onDeviceAdded(CachedBluetoothDevice cachedDevice) {
+        final String address = cachedDevice.getDevice().getAddress();
+        mDeviceEventCount++;
+        mPendingDeletedDevices.remove(address);
+        mPendingAddedDevices.put(address, cachedDevice);
+        schedulePendingDevices();
+    }
+
+    @Override
+    public void onDeviceDeleted(CachedBluetoothDevice cachedDevice) {
+        final String address = cachedDevice.getDevice().getAddress();
+        mDeviceEventCount++;
+        mPendingAddedDevices.remove(address);
+        mPendingDeletedDevices.put(address, cachedDevice);
+        schedulePendingDevices();
+    }
+
+    private void schedulePendingDevices() {
+        if (!mHandler.hasCallbacks(mApplyPendingDevicesRunnable)) {
+            mHandler.postDelayed(mApplyPendingDevicesRunnable, DEVICE_BATCH_WINDOW_MS);
+        }
+    }
+
+    private void clearPendingDevices() {
+        mHandler.removeCallbacks(mApplyPendingDevicesRunnable);
+        mPendingAddedDevices.clear();
+        mPendingDeletedDevices.clear();
+    }
+
+    /**
+     * Applies the buffered discovery events to the device list: removals first, then the added
+     * devices in their sorted order.
+     */
+    @VisibleForTesting
+    void applyPendingDevices() {
+        mHandler.removeCallbacks(mApplyPendingDevicesRunnable);
+        for (int i = 0, size = mPendingDeletedDevices.size(); i < size; i++) {
+            removeDevice(mPendingDeletedDevices.valueAt(i));
+        }
+        final List<CachedBluetoothDevice> addedDevices =
+                new ArrayList<>(mPendingAddedDevices.values());
+        mPendingAddedDevices.clear();
+        mPendingDeletedDevices.clear();
+
+        Collections.sort(addedDevices);
+        for (CachedBluetoothDevice cachedDevice : addedDevices) {
+            addDevice(cachedDevice);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Device events received: " + mDeviceEventCount
+                    + ", list operations: " + mDeviceOperationCount);
+        }
+    }
+
+    void addDevice(CachedBluetoothDevice cachedDevice) {
         if (mDevicePreferenceMap.get(cachedDevice) != null) {
             return;
         }
@@ -193,6 +275,7 @@ public abstract class DeviceListPreferenceFragment extends
                     mShowDevicesWithoutNames);
             preference.setKey(key);
             mDeviceListGroup.addPreference(preference);
+            mDeviceOperationCount++;
         } else {
             // Tell the preference it is being re-used in case there is new info in the
             // cached device.
@@ -216,11 +299,11 @@ public abstract class DeviceListPreferenceFragment extends
                 bidiFormatter.unicodeWrap(mLocalAdapter.getAddress())));
     }
 
-    @Override
-    public void onDeviceDeleted(CachedBluetoothDevice cachedDevice) {
+    void removeDevice(CachedBluetoothDevice cachedDevice) {
         BluetoothDevicePreference preference = mDevicePreferenceMap.remove(cachedDevice);
         if (preference != null) {
             mDeviceListGroup.removePreference(preference);
+            mDeviceOperationCount++;
         }
     }
 
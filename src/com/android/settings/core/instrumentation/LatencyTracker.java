@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Always-on latency tracking of named spans, such as a fragment opening or a controller
+ * updating its preference, reported as percentiles by the settings dumpsys.
+ *
+ * Each span keeps its latest {@link #SAMPLE_CAPACITY} samples in a ring buffer. Recording is
+ * lock-free and allocation-free once a span exists, so it is cheap enough for the main thread.
+ * <pre>
+ *     final long startTime = LatencyTracker.now();
+ *     ...
+ *     LatencyTracker.record("MyFragment.onCreate", startTime);
+ * </pre>
+ */
+public final class LatencyTracker {
+
+    @VisibleForTesting
+    static final int SAMPLE_CAPACITY = 128;
+    // Upper bound on the number of span names, samples of further names are dropped.
+    @VisibleForTesting
+    static final int MAX_SPANS = 256;
+
+    private static final Map<String, Span> sSpans = new ConcurrentHashMap<>();
+    private static final AtomicLong sDroppedSamples = new AtomicLong();
+
+    private LatencyTracker() {
+    }
+
+    /**
+     * @return the start time to pass to {@link #record(String, long)}
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records a sample of the span {@code name}, from {@code startTime} until now.
+     *
+     * @param startTime a time returned by {@link #now()}
+     */
+    public static void record(String name, long startTime) {
+        recordDuration(name, now() - startTime);
+    }
+
+    /**
+     * Records a sample of the span {@code name}, for callers that measured it themselves.
+     */
+    public static void recordDuration(String name, long durationNanos) {
+        Span span = sSpans.get(name);
+        if (span == null) {
+            if (sSpans.size() >= MAX_SPANS) {
+                sDroppedSamples.incrementAndGet();
+                return;
+            }
+            span = sSpans.computeIfAbsent(name, key -> new Span());
+        }
+        span.add(durationNanos);
+    }
+
+    /**
+     * @return count, p50, p95, p99 and max latency in milliseconds of each span
+     */
+    public static JSONObject dump() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        for (Map.Entry<String, Span> entry : sSpans.entrySet()) {
+            obj.put(entry.getKey(), entry.getValue().dump());
+        }
+        obj.put("dropped_samples", sDroppedSamples.get());
+        return obj;
+    }
+
+    @VisibleForTesting
+    static void reset() {
+        sSpans.clear();
+        sDroppedSamples.set(0);
+    }
+
+    @VisibleForTesting
+    static long getPercentile(String name, int percentile) {
+        final Span span = sSpans.get(name);
+        return span != null ? Span.percentile(span.snapshot(), percentile) : -1;
+    }
+
+    private static final class Span {
+        private final AtomicLongArray mSamples = new AtomicLongArray(SAMPLE_CAPACITY);
+        private final AtomicLong mCount = new AtomicLong();
+
+        void add(long durationNanos) {
+            final long index = mCount.getAndIncrement();
+            mSamples.set((int) (index % SAMPLE_CAPACITY), durationNanos);
+        }
+
+        /**
+         * @return the samples in the ring buffer, sorted. Samples written concurrently with the
+         * snapshot may or may not be included.
+         */
+        long[] snapshot() {
+            final int size = (int) Math.min(mCount.get(), SAMPLE_CAPACITY);
+            final long[] samples = new long[size];
+            for (int i = 0; i < size; i++) {
+                samples[i] = mSamples.get(i);
+            }
+            Arrays.sort(samples);
+            return samples;
+        }
+
+        JSONObject dump() throws JSONException {
+            final long[] samples = snapshot();
+            final JSONObject obj = new JSONObject();
+            obj.put("count", mCount.get());
+            obj.put("p50_ms", toMillis(percentile(samples, 50)));
+            obj.put("p95_ms", toMillis(percentile(samples, 95)));
+            obj.put("p99_ms", toMillis(percentile(samples, 99)));
+            obj.put("max_ms", toMillis(samples.length > 0 ? samples[samples.length - 1] : 0));
+            return obj;
+        }
+
+        /**
+         * Nearest-rank percentile of sorted {@code samples}.
+         */
+        static long percentile(long[] samples, int percentile) {
+            if (samples.length == 0) {
+                return 0;
+            }
+            final int rank = (int) Math.ceil(percentile / 100.0 * samples.length);
+            return samples[Math.max(rank, 1) - 1];
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -39,6 +39,7 @@ import android.widget.TextView;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
 import com.android.settings.R.id;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.dashboard.DashboardData.ConditionHeaderData;
 import com.android.settings.dashboard.conditional.Condition;
 import com.android.settings.dashboard.conditional.ConditionAdapter;
@@ -54,6 +55,7 @@ import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.drawer.TileUtils;
 import com.android.settingslib.suggestions.SuggestionControllerMixin;
 import com.android.settingslib.utils.IconCache;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.List;
 
@@ -77,6 +79,13 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
     private int mNormalColor;
     private int mAccentColor;
 
+    // Time spent binding view holders since the last frame, reported once the frame is done.
+    private long mFrameBindNanos;
+    private final Runnable mReportBindCostRunnable = () -> {
+        LatencyTracker.recordDuration(TAG + ".bindPerFrame", mFrameBindNanos);
+        mFrameBindNanos = 0;
+    };
+
     @VisibleForTesting
     DashboardData mDashboardData;
 
@@ -180,7 +189,7 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
         if (position != DashboardData.POSITION_NOT_FOUND) {
             // Since usually tile in parameter and tile in mCategories are same instance,
             // which is hard to be detected by DiffUtil, so we notifyItemChanged directly.
-            notifyItemChanged(position, mDashboardData.getItemTypeByPosition(position));
+            notifyItemChanged(position, DashboardData.PAYLOAD_SUMMARY);
         }
     }
 
@@ -202,6 +211,84 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
         return new DashboardItemHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(DashboardItemHolder holder, int position,
+            List<Object> payloads) {
+        final long startTime = LatencyTracker.now();
+        final int payload = getPayload(payloads);
+        if (payload == 0 || !onBindViewHolderPartially(holder, position, payload)) {
+            onBindViewHolder(holder, position);
+        }
+        if (mFrameBindNanos == 0) {
+            // Binds happen during the layout of a frame, this runs once the frame is done.
+            ThreadUtils.postOnMainThread(mReportBindCostRunnable);
+        }
+        mFrameBindNanos += Math.max(LatencyTracker.now() - startTime, 1);
+    }
+
+    /**
+     * @return the combined {@link DashboardData.Payload} of {@code payloads}, or 0 to rebind the
+     * whole item
+     */
+    private static int getPayload(List<Object> payloads) {
+        int combined = 0;
+        for (Object payload : payloads) {
+            if (!(payload instanceof Integer)) {
+                return 0;
+            }
+            combined |= (Integer) payload;
+        }
+        return combined;
+    }
+
+    /**
+     * Rebinds the views of the item at {@code position} that {@code payload} says changed.
+     *
+     * @return false if the item cannot be partially rebound
+     */
+    @VisibleForTesting
+    boolean onBindViewHolderPartially(DashboardItemHolder holder, int position,
+            @DashboardData.Payload int payload) {
+        final int type = mDashboardData.getItemTypeByPosition(position);
+        switch (type) {
+            case R.layout.dashboard_tile:
+                final Tile tile = (Tile) mDashboardData.getItemEntityByPosition(position);
+                if ((payload & DashboardData.PAYLOAD_ICON) != 0) {
+                    bindTileIcon(holder, tile);
+                }
+                if ((payload & DashboardData.PAYLOAD_SUMMARY) != 0) {
+                    bindTileSummary(holder, tile);
+                }
+                holder.itemView.setTag(tile);
+                return true;
+            case R.layout.condition_header:
+                bindConditionHeaderContent((ConditionHeaderHolder) holder,
+                        (ConditionHeaderData) mDashboardData.getItemEntityByPosition(position));
+                return true;
+            case R.layout.condition_container:
+                final RecyclerView.Adapter conditionAdapter =
+                        ((ConditionContainerHolder) holder).data.getAdapter();
+                if (!(conditionAdapter instanceof ConditionAdapter)) {
+                    return false;
+                }
+                ((ConditionAdapter) conditionAdapter).setConditions(
+                        (List<Condition>) mDashboardData.getItemEntityByPosition(position));
+                return true;
+            case R.layout.suggestion_container:
+                final List<Suggestion> suggestions =
+                        (List<Suggestion>) mDashboardData.getItemEntityByPosition(position);
+                if (((SuggestionContainerHolder) holder).data.getAdapter() != mSuggestionAdapter
+                        || suggestions == null || suggestions.isEmpty()) {
+                    return false;
+                }
+                mSuggestionAdapter.setSuggestions(suggestions);
+                mSuggestionAdapter.notifyDataSetChanged();
+                return true;
+            default:
+                return false;
+        }
+    }
+
     @Override
     public void onBindViewHolder(DashboardItemHolder holder, int position) {
         final int type = mDashboardData.getItemTypeByPosition(position);
@@ -286,6 +373,21 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
 
     @VisibleForTesting
     void onBindConditionHeader(final ConditionHeaderHolder holder, ConditionHeaderData data) {
+        bindConditionHeaderContent(holder, data);
+
+        holder.itemView.setOnClickListener(v -> {
+            mMetricsFeatureProvider.action(mContext,
+                    MetricsEvent.ACTION_SETTINGS_CONDITION_EXPAND, true);
+            final DashboardData prevData = mDashboardData;
+            mDashboardData = new DashboardData.Builder(prevData)
+                    .setConditionExpanded(true).build();
+            notifyDashboardDataChanged(prevData);
+            scrollToTopOfConditions();
+        });
+    }
+
+    private void bindConditionHeaderContent(ConditionHeaderHolder holder,
+            ConditionHeaderData data) {
         holder.icon.setImageDrawable(data.conditionIcons.get(0));
         if (data.conditionCount == 1) {
             holder.title.setText(data.title);
@@ -298,16 +400,6 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
             updateConditionIcons(data.conditionIcons, holder.icons);
             holder.icons.setVisibility(View.VISIBLE);
         }
-
-        holder.itemView.setOnClickListener(v -> {
-            mMetricsFeatureProvider.action(mContext,
-                    MetricsEvent.ACTION_SETTINGS_CONDITION_EXPAND, true);
-            final DashboardData prevData = mDashboardData;
-            mDashboardData = new DashboardData.Builder(prevData)
-                    .setConditionExpanded(true).build();
-            notifyDashboardDataChanged(prevData);
-            scrollToTopOfConditions();
-        });
     }
 
     @VisibleForTesting
@@ -337,6 +429,12 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
 
     @VisibleForTesting
     void onBindTile(DashboardItemHolder holder, Tile tile) {
+        bindTileIcon(holder, tile);
+        holder.title.setText(tile.title);
+        bindTileSummary(holder, tile);
+    }
+
+    private void bindTileIcon(DashboardItemHolder holder, Tile tile) {
         Drawable icon = mCache.getIcon(tile.icon);
         if (!TextUtils.equals(tile.icon.getResPackage(), mContext.getPackageName())
                 && !(icon instanceof RoundedHomepageIcon)) {
@@ -370,9 +468,14 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
             mCache.updateIcon(tile.icon, icon);
         }
         holder.icon.setImageDrawable(icon);
-        holder.title.setText(tile.title);
+    }
+
+    private void bindTileSummary(DashboardItemHolder holder, Tile tile) {
         if (!TextUtils.isEmpty(tile.summary)) {
-            holder.summary.setText(tile.summary);
+            // Setting the same text still requests a layout.
+            if (!TextUtils.equals(holder.summary.getText(), tile.summary)) {
+                holder.summary.setText(tile.summary);
+            }
             holder.summary.setVisibility(View.VISIBLE);
         } else {
             holder.summary.setVisibility(View.GONE);
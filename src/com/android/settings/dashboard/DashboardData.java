@@ -17,6 +17,7 @@ package com.android.settings.dashboard;
 
 import android.annotation.IntDef;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
 import android.service.settings.suggestions.Suggestion;
 import androidx.annotation.VisibleForTesting;
 import androidx.recyclerview.widget.DiffUtil;
@@ -43,6 +44,25 @@ public class DashboardData {
     public static final int POSITION_NOT_FOUND = -1;
     public static final int MAX_SUGGESTION_COUNT = 2;
 
+    /**
+     * Change payloads of an item, so that only the views of what changed are rebound. A payload
+     * is a combination of these flags.
+     */
+    @IntDef(flag = true, value = {PAYLOAD_SUMMARY, PAYLOAD_ICON, PAYLOAD_CONDITIONS,
+            PAYLOAD_SUGGESTIONS})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Payload {
+    }
+
+    /** The summary of a tile changed. */
+    public static final int PAYLOAD_SUMMARY = 1;
+    /** The icon of a tile changed. */
+    public static final int PAYLOAD_ICON = 1 << 1;
+    /** The conditions of the condition header, or of the expanded condition container, changed. */
+    public static final int PAYLOAD_CONDITIONS = 1 << 2;
+    /** The suggestions of the suggestion container changed. */
+    public static final int PAYLOAD_SUGGESTIONS = 1 << 3;
+
     // stable id for different type of items.
     @VisibleForTesting
     static final int STABLE_ID_SUGGESTION_CONTAINER = 0;
@@ -335,6 +355,40 @@ public class DashboardData {
             return mOldItems.get(oldItemPosition).equals(mNewItems.get(newItemPosition));
         }
 
+        /**
+         * @return the {@link Payload} of the change, or null to rebind the whole item
+         */
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            final Item oldItem = mOldItems.get(oldItemPosition);
+            final Item newItem = mNewItems.get(newItemPosition);
+            switch (newItem.type) {
+                case Item.TYPE_DASHBOARD_TILE:
+                    final Tile oldTile = (Tile) oldItem.entity;
+                    final Tile newTile = (Tile) newItem.entity;
+                    // The tiles of a homepage snapshot have other click targets than live ones.
+                    if (HomepageSnapshot.isSnapshot(oldTile)
+                            != HomepageSnapshot.isSnapshot(newTile)) {
+                        return null;
+                    }
+                    int payload = 0;
+                    if (!TextUtils.equals(oldTile.summary, newTile.summary)) {
+                        payload |= PAYLOAD_SUMMARY;
+                    }
+                    if (!Item.isSameIcon(oldTile.icon, newTile.icon)) {
+                        payload |= PAYLOAD_ICON;
+                    }
+                    return payload != 0 ? payload : null;
+                case Item.TYPE_CONDITION_HEADER:
+                case Item.TYPE_CONDITION_CONTAINER:
+                    return PAYLOAD_CONDITIONS;
+                case Item.TYPE_SUGGESTION_CONTAINER:
+                    return PAYLOAD_SUGGESTIONS;
+                default:
+                    return null;
+            }
+        }
+
     }
 
     /**
@@ -410,9 +464,13 @@ public class DashboardData {
                     final Tile localTile = (Tile) entity;
                     final Tile targetTile = (Tile) targetItem.entity;
 
-                    // Only check title and summary for dashboard tile
+                    // Only check title, summary and icon for dashboard tile, and rebind the tiles of a
+                    // homepage snapshot once the live ones replace them.
                     return TextUtils.equals(localTile.title, targetTile.title)
-                        && TextUtils.equals(localTile.summary, targetTile.summary);
+                        && TextUtils.equals(localTile.summary, targetTile.summary)
+                        && isSameIcon(localTile.icon, targetTile.icon)
+                        && HomepageSnapshot.isSnapshot(localTile)
+                                == HomepageSnapshot.isSnapshot(targetTile);
                 case TYPE_SUGGESTION_CONTAINER:
                 case TYPE_CONDITION_CONTAINER:
                     // If entity is suggestion and contains remote view, force refresh
@@ -430,6 +488,10 @@ public class DashboardData {
                             : entity.equals(targetItem.entity);
             }
         }
+
+        private static boolean isSameIcon(Icon icon, Icon other) {
+            return icon == other || (icon != null && other != null && icon.sameAs(other));
+        }
     }
 
     /**
@@ -450,6 +512,41 @@ public class DashboardData {
                 conditionIcons.add(condition.getIcon());
             }
         }
+
+        /**
+         * Compares the title, count and icons, so the header is only rebound when they change.
+         * Icons are the same when they share their drawable state, as drawables loaded from the
+         * same resource do.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ConditionHeaderData)) {
+                return false;
+            }
+            final ConditionHeaderData other = (ConditionHeaderData) obj;
+            if (conditionCount != other.conditionCount || !TextUtils.equals(title, other.title)
+                    || conditionIcons.size() != other.conditionIcons.size()) {
+                return false;
+            }
+            for (int i = 0; i < conditionIcons.size(); i++) {
+                final Drawable icon = conditionIcons.get(i);
+                final Drawable otherIcon = other.conditionIcons.get(i);
+                if (icon != otherIcon && (icon == null || otherIcon == null
+                        || icon.getConstantState() == null
+                        || icon.getConstantState() != otherIcon.getConstantState())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(title, conditionCount);
+        }
     }
 
 }
@@ -54,6 +54,17 @@ public interface DashboardFeatureProvider {
      */
     List<DashboardCategory> getAllCategories();
 
+    /**
+     * Returns the tile graph if it is up to date with the categories, or null otherwise.
+     */
+    DashboardTileGraph getTileGraph();
+
+    /**
+     * Gets the tile graph, building it in the background first if it is not up to date with
+     * the categories. The callback is called on the main thread.
+     */
+    void getTileGraphAsync(DashboardTileGraph.Callback callback);
+
     /**
      * Whether or not we should tint icons in setting pages.
      * @deprecated in favor of color icons in homepage
@@ -70,6 +70,8 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     private final MetricsFeatureProvider mMetricsFeatureProvider;
     private final CategoryManager mCategoryManager;
     private final PackageManager mPackageManager;
+    private final List<DashboardTileGraph.Callback> mTileGraphCallbacks = new ArrayList<>();
+    private volatile DashboardTileGraph mTileGraph;
 
     public DashboardFeatureProviderImpl(Context context) {
         mContext = context.getApplicationContext();
@@ -111,6 +113,41 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
         return mCategoryManager.getCategories(mContext);
     }
 
+    @Override
+    public DashboardTileGraph getTileGraph() {
+        final DashboardTileGraph graph = mTileGraph;
+        return graph != null && graph.isBuiltFrom(getAllCategories()) ? graph : null;
+    }
+
+    @Override
+    public void getTileGraphAsync(DashboardTileGraph.Callback callback) {
+        final DashboardTileGraph graph = getTileGraph();
+        if (graph != null) {
+            callback.onTileGraphLoaded(graph);
+            return;
+        }
+        mTileGraphCallbacks.add(callback);
+        if (mTileGraphCallbacks.size() > 1) {
+            // A build is already running.
+            return;
+        }
+        final List<DashboardCategory> categories = getAllCategories();
+        final DashboardTileGraph previous = mTileGraph;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final DashboardTileGraph built =
+                    DashboardTileGraph.build(mContext, this, categories, previous);
+            ThreadUtils.postOnMainThread(() -> {
+                mTileGraph = built;
+                final List<DashboardTileGraph.Callback> callbacks =
+                        new ArrayList<>(mTileGraphCallbacks);
+                mTileGraphCallbacks.clear();
+                for (DashboardTileGraph.Callback c : callbacks) {
+                    c.onTileGraphLoaded(built);
+                }
+            });
+        });
+    }
+
     @Override
     public boolean shouldTintIcon() {
         return mContext.getResources().getBoolean(R.bool.config_tintSettingIcon);
@@ -142,8 +179,11 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
         } else {
             pref.setKey(getDashboardKeyForTile(tile));
         }
-        bindSummary(pref, tile);
-        bindIcon(pref, tile);
+        // Without a graph of the current tiles, the summary and icon are loaded for this tile.
+        final DashboardTileGraph graph = getTileGraph();
+        final DashboardTileGraph.TileNode node = graph != null ? graph.getTileNode(tile) : null;
+        bindSummary(pref, tile, node);
+        bindIcon(pref, tile, node);
         final Bundle metadata = tile.metaData;
         String clsName = null;
         String action = null;
@@ -216,9 +256,12 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
         launchIntentOrSelectProfile(activity, tile, intent, MetricsEvent.DASHBOARD_SUMMARY);
     }
 
-    private void bindSummary(Preference preference, Tile tile) {
+    private void bindSummary(Preference preference, Tile tile, DashboardTileGraph.TileNode node) {
         if (tile.summary != null) {
             preference.setSummary(tile.summary);
+        } else if (node != null && node.summary != null) {
+            // Already loaded with the tile graph.
+            preference.setSummary(node.summary);
         } else if (tile.metaData != null
                 && tile.metaData.containsKey(META_DATA_PREFERENCE_SUMMARY_URI)) {
             // Set a placeholder summary before  starting to fetch real summary, this is necessary
@@ -238,25 +281,19 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     }
 
     @VisibleForTesting
-    void bindIcon(Preference preference, Tile tile) {
+    void bindIcon(Preference preference, Tile tile, DashboardTileGraph.TileNode node) {
         if (tile.icon != null) {
             preference.setIcon(tile.icon.loadDrawable(preference.getContext()));
+        } else if (node != null && node.icon != null) {
+            // Already loaded with the tile graph.
+            preference.setIcon(node.icon.loadDrawable(preference.getContext()));
         } else if (tile.metaData != null
                 && tile.metaData.containsKey(META_DATA_PREFERENCE_ICON_URI)) {
             ThreadUtils.postOnBackgroundThread(() -> {
-                String packageName = null;
-                if (tile.intent != null) {
-                    Intent intent = tile.intent;
-                    if (!TextUtils.isEmpty(intent.getPackage())) {
-                        packageName = intent.getPackage();
-                    } else if (intent.getComponent() != null) {
-                        packageName = intent.getComponent().getPackageName();
-                    }
-                }
                 final Map<String, IContentProvider> providerMap = new ArrayMap<>();
                 final String uri = tile.metaData.getString(META_DATA_PREFERENCE_ICON_URI);
                 final Pair<String, Integer> iconInfo = TileUtils.getIconFromUri(
-                        mContext, packageName, uri, providerMap);
+                        mContext, getTilePackageName(tile), uri, providerMap);
                 if (iconInfo == null) {
                     Log.w(TAG, "Failed to get icon from uri " + uri);
                     return;
@@ -269,6 +306,20 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
         }
     }
 
+    /**
+     * @return the package the intent of {@code tile} goes to, or null if it has no intent
+     */
+    static String getTilePackageName(Tile tile) {
+        final Intent intent = tile.intent;
+        if (intent == null) {
+            return null;
+        }
+        if (!TextUtils.isEmpty(intent.getPackage())) {
+            return intent.getPackage();
+        }
+        return intent.getComponent() != null ? intent.getComponent().getPackageName() : null;
+    }
+
     private void launchIntentOrSelectProfile(Activity activity, Tile tile, Intent intent,
             int sourceMetricCategory) {
         if (!isIntentResolvable(intent)) {
@@ -31,6 +31,7 @@ import android.util.Log;
 import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.core.BasePreferenceController;
 import com.android.settings.core.PreferenceControllerListHelper;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.Indexable;
 import com.android.settingslib.core.AbstractPreferenceController;
@@ -63,9 +64,16 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
     private boolean mListeningToCategoryChange;
     private SummaryLoader mSummaryLoader;
+    // Time the fragment started opening, reset once it is first resumed.
+    private long mOpenStartTime;
+    // Version of the tile graph category the dashboard tiles were last refreshed from.
+    private int mDashboardTilesVersion = UNKNOWN_TILES_VERSION;
+
+    private static final int UNKNOWN_TILES_VERSION = -1;
 
     @Override
     public void onAttach(Context context) {
+        mOpenStartTime = LatencyTracker.now();
         super.onAttach(context);
         mDashboardFeatureProvider = FeatureFactory.getFactory(context).
                 getDashboardFeatureProvider(context);
@@ -123,7 +131,17 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         if (category == null) {
             return;
         }
-        refreshDashboardTiles(getLogTag());
+        mDashboardFeatureProvider.getTileGraphAsync(graph -> {
+            if (getActivity() == null) {
+                return;
+            }
+            final DashboardTileGraph.CategoryNode node = graph.getCategory(getCategoryKey());
+            if (node != null && node.version == mDashboardTilesVersion) {
+                Log.d(getLogTag(), "Dashboard tiles did not change, skipping refresh");
+                return;
+            }
+            refreshDashboardTiles(getLogTag());
+        });
     }
 
     @Override
@@ -167,6 +185,10 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     public void onResume() {
         super.onResume();
         updatePreferenceStates();
+        if (mOpenStartTime != 0) {
+            LatencyTracker.record(getClass().getSimpleName() + ".open", mOpenStartTime);
+            mOpenStartTime = 0;
+        }
     }
 
     @Override
@@ -288,6 +310,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
      * Update state of each preference managed by PreferenceController.
      */
     protected void updatePreferenceStates() {
+        final long startTime = LatencyTracker.now();
         final PreferenceScreen screen = getPreferenceScreen();
         Collection<List<AbstractPreferenceController>> controllerLists =
                 mPreferenceControllers.values();
@@ -304,9 +327,12 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                             key, controller.getClass().getSimpleName()));
                     continue;
                 }
+                final long updateStartTime = LatencyTracker.now();
                 controller.updateState(preference);
+                LatencyTracker.record("PreferenceController.updateState", updateStartTime);
             }
         }
+        LatencyTracker.record(getClass().getSimpleName() + ".updatePreferenceStates", startTime);
     }
 
     /**
@@ -344,6 +370,10 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
             Log.d(TAG, "tile list is empty, skipping category " + category.title);
             return;
         }
+        final DashboardTileGraph graph = mDashboardFeatureProvider.getTileGraph();
+        final DashboardTileGraph.CategoryNode node =
+                graph != null ? graph.getCategory(getCategoryKey()) : null;
+        mDashboardTilesVersion = node != null ? node.version : UNKNOWN_TILES_VERSION;
         // Create a list to track which tiles are to be removed.
         final List<String> remove = new ArrayList<>(mDashboardTilePrefKeys);
 
@@ -21,11 +21,13 @@ import android.app.LoaderManager;
 import android.content.Context;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Process;
 import android.service.settings.suggestions.Suggestion;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -33,11 +35,13 @@ import android.view.ViewGroup;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
 import com.android.settings.core.InstrumentedFragment;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.dashboard.conditional.Condition;
 import com.android.settings.dashboard.conditional.ConditionManager;
 import com.android.settings.dashboard.conditional.ConditionManager.ConditionListener;
 import com.android.settings.dashboard.conditional.FocusRecyclerView;
 import com.android.settings.dashboard.conditional.FocusRecyclerView.FocusListener;
+import com.android.settings.dashboard.suggestions.SuggestionCache;
 import com.android.settings.dashboard.suggestions.SuggestionFeatureProvider;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.widget.ActionBarShadowController;
@@ -49,10 +53,12 @@ import com.android.settingslib.suggestions.SuggestionControllerMixin;
 import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class DashboardSummary extends InstrumentedFragment
         implements CategoryListener, ConditionListener,
-        FocusListener, SuggestionControllerMixin.SuggestionControllerHost {
+        FocusListener, SuggestionControllerMixin.SuggestionControllerHost,
+        SuggestionCache.Listener {
     public static final boolean DEBUG = false;
     private static final boolean DEBUG_TIMING = false;
     private static final int MAX_WAIT_MILLIS = 3000;
@@ -61,6 +67,9 @@ public class DashboardSummary extends InstrumentedFragment
     private static final String STATE_SCROLL_POSITION = "scroll_position";
     private static final String STATE_CATEGORIES_CHANGE_CALLED = "categories_change_called";
 
+    // Whether a homepage was created in this process, only the first one uses the snapshot.
+    private static boolean sHomepageCreated;
+
     private final Handler mHandler = new Handler();
 
     private FocusRecyclerView mDashboard;
@@ -69,13 +78,25 @@ public class DashboardSummary extends InstrumentedFragment
     private ConditionManager mConditionManager;
     private LinearLayoutManager mLayoutManager;
     private SuggestionControllerMixin mSuggestionControllerMixin;
+    private SuggestionCache mSuggestionCache;
     private DashboardFeatureProvider mDashboardFeatureProvider;
     @VisibleForTesting
     boolean mIsOnCategoriesChangedCalled;
     private boolean mOnConditionsChangedCalled;
 
     private DashboardCategory mStagingCategory;
-    private List<Suggestion> mStagingSuggestions;
+    // Set on the main thread, from the suggestion cache or service, and read in updateCategory().
+    private volatile List<Suggestion> mStagingSuggestions;
+
+    // Tiles of the homepage snapshot, shown until the live category is.
+    private DashboardCategory mSnapshotCategory;
+    private boolean mLiveCategoryShown;
+    private boolean mColdStart;
+
+    private long mCreateTime;
+    private boolean mFirstFrameScheduled;
+    private boolean mFirstMeaningfulFrameScheduled;
+    private boolean mSuggestionLoadRecorded;
 
     @Override
     public int getMetricsCategory() {
@@ -93,6 +114,7 @@ public class DashboardSummary extends InstrumentedFragment
             mSuggestionControllerMixin = new SuggestionControllerMixin(context, this /* host */,
                     getLifecycle(), suggestionFeatureProvider
                     .getSuggestionServiceComponent());
+            mSuggestionCache = SuggestionCache.getInstance(context);
         }
     }
 
@@ -101,12 +123,20 @@ public class DashboardSummary extends InstrumentedFragment
         if (!isAdded()) {
             return null;
         }
+        // Only the suggestion controller mixin uses the loader manager. There is no need to load
+        // the suggestions again while the cached ones the dashboard shows are fresh.
+        if (mStagingSuggestions != null && mSuggestionCache != null
+                && mSuggestionCache.isFresh()) {
+            Log.d(TAG, "Cached suggestions are fresh, skipping suggestion load");
+            return null;
+        }
         return super.getLoaderManager();
     }
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         long startTime = System.currentTimeMillis();
+        mCreateTime = LatencyTracker.now();
         super.onCreate(savedInstanceState);
         Log.d(TAG, "Starting DashboardSummary");
         final Activity activity = getActivity();
@@ -121,6 +151,19 @@ public class DashboardSummary extends InstrumentedFragment
             mIsOnCategoriesChangedCalled =
                     savedInstanceState.getBoolean(STATE_CATEGORIES_CHANGE_CALLED);
         }
+        if (!sHomepageCreated) {
+            sHomepageCreated = true;
+            mColdStart = true;
+            if (savedInstanceState == null) {
+                final Context appContext = activity.getApplicationContext();
+                ThreadUtils.postOnBackgroundThread(() -> {
+                    final DashboardCategory snapshot = HomepageSnapshot.read(appContext);
+                    if (snapshot != null) {
+                        ThreadUtils.postOnMainThread(() -> showSnapshot(snapshot));
+                    }
+                });
+            }
+        }
         if (DEBUG_TIMING) {
             Log.d(TAG, "onCreate took " + (System.currentTimeMillis() - startTime) + " ms");
         }
@@ -139,6 +182,9 @@ public class DashboardSummary extends InstrumentedFragment
 
         ((SettingsDrawerActivity) getActivity()).addCategoryListener(this);
         mSummaryLoader.setListening(true);
+        if (mSuggestionCache != null) {
+            mSuggestionCache.setListener(this);
+        }
         final int metricsCategory = getMetricsCategory();
         for (Condition c : mConditionManager.getConditions()) {
             if (c.shouldShow()) {
@@ -159,6 +205,9 @@ public class DashboardSummary extends InstrumentedFragment
         mConditionManager.remListener(this);
         ((SettingsDrawerActivity) getActivity()).remCategoryListener(this);
         mSummaryLoader.setListening(false);
+        if (mSuggestionCache != null) {
+            mSuggestionCache.setListener(null);
+        }
         for (Condition c : mConditionManager.getConditions()) {
             if (c.shouldShow()) {
                 mMetricsFeatureProvider.hidden(getContext(), c.getMetricsConstant());
@@ -166,6 +215,14 @@ public class DashboardSummary extends InstrumentedFragment
         }
     }
 
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (mLiveCategoryShown && mStagingCategory != null) {
+            HomepageSnapshot.write(getContext(), mStagingCategory);
+        }
+    }
+
     @Override
     public void onWindowFocusChanged(boolean hasWindowFocus) {
         long startTime = System.currentTimeMillis();
@@ -211,6 +268,18 @@ public class DashboardSummary extends InstrumentedFragment
         mDashboard.setItemAnimator(new DashboardItemAnimator());
         mAdapter = new DashboardAdapter(getContext(), bundle,
                 mConditionManager.getConditions(), mSuggestionControllerMixin, getLifecycle());
+        if (mSuggestionCache != null) {
+            // Show the cached suggestions right away, the loaded ones are diffed against them.
+            final List<Suggestion> cached = mSuggestionCache.get();
+            if (cached != null) {
+                mStagingSuggestions = cached;
+                mAdapter.setSuggestions(cached);
+            }
+        }
+        if (mSnapshotCategory != null && !mLiveCategoryShown) {
+            mAdapter.setCategory(mSnapshotCategory);
+            scheduleFirstMeaningfulFrame();
+        }
         mDashboard.setAdapter(mAdapter);
         mSummaryLoader.setSummaryConsumer(mAdapter);
         ActionBarShadowController.attachToRecyclerView(
@@ -262,15 +331,80 @@ public class DashboardSummary extends InstrumentedFragment
 
     @Override
     public void onSuggestionReady(List<Suggestion> suggestions) {
-        mStagingSuggestions = suggestions;
-        mAdapter.setSuggestions(suggestions);
+        if (!mSuggestionLoadRecorded) {
+            mSuggestionLoadRecorded = true;
+            LatencyTracker.record(TAG + ".suggestionLoad", mCreateTime);
+        }
+        if (suggestions != null) {
+            mSuggestionCache.put(suggestions);
+            mStagingSuggestions = suggestions;
+            mAdapter.setSuggestions(suggestions);
+        } else {
+            // The suggestion service failed or is not bound, keep the suggestions shown.
+            Log.d(TAG, "No suggestions loaded, keeping the shown ones");
+        }
         if (mStagingCategory != null) {
             Log.d(TAG, "Category has loaded, setting category from suggestionReady");
             mHandler.removeCallbacksAndMessages(null);
-            mAdapter.setCategory(mStagingCategory);
+            setCategory(mStagingCategory);
         }
     }
 
+    @Override
+    public void onSuggestionCacheInvalidated() {
+        // Until the mixin loaded suggestions, the service is not connected yet, and the mixin
+        // loads fresh suggestions once it is.
+        if (!mSuggestionControllerMixin.isSuggestionLoaded()) {
+            return;
+        }
+        // Restarts the suggestion loader, the loaded suggestions come to onSuggestionReady().
+        mSuggestionControllerMixin.onServiceConnected();
+    }
+
+    private void setCategory(DashboardCategory category) {
+        mLiveCategoryShown = true;
+        mSnapshotCategory = null;
+        mAdapter.setCategory(category);
+        if (!mFirstFrameScheduled) {
+            mFirstFrameScheduled = true;
+            runAfterNextFrame(() -> LatencyTracker.record(TAG + ".timeToFirstFrame", mCreateTime));
+        }
+        scheduleFirstMeaningfulFrame();
+    }
+
+    private void showSnapshot(DashboardCategory snapshot) {
+        mSnapshotCategory = snapshot;
+        if (mAdapter != null && !mLiveCategoryShown) {
+            Log.d(TAG, "Showing homepage snapshot");
+            mAdapter.setCategory(snapshot);
+            scheduleFirstMeaningfulFrame();
+        }
+    }
+
+    /**
+     * Records the first frame showing tiles, either from the snapshot or the live ones.
+     */
+    private void scheduleFirstMeaningfulFrame() {
+        if (mFirstMeaningfulFrameScheduled) {
+            return;
+        }
+        mFirstMeaningfulFrameScheduled = true;
+        runAfterNextFrame(() -> {
+            LatencyTracker.record(TAG + ".firstMeaningfulFrame", mCreateTime);
+            if (mColdStart) {
+                // The process start time has the same time base as LatencyTracker.now().
+                LatencyTracker.record(TAG + ".processStartToFirstMeaningfulFrame",
+                        TimeUnit.MILLISECONDS.toNanos(Process.getStartElapsedRealtime()));
+            }
+        });
+    }
+
+    private static void runAfterNextFrame(Runnable runnable) {
+        // Frame callbacks run before the frame is drawn, run once it is done.
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos ->
+                ThreadUtils.postOnMainThread(runnable));
+    }
+
     @WorkerThread
     void updateCategory() {
         final DashboardCategory category = mDashboardFeatureProvider.getTilesForCategory(
@@ -278,20 +412,20 @@ public class DashboardSummary extends InstrumentedFragment
         mSummaryLoader.updateSummaryToCache(category);
         mStagingCategory = category;
         if (mSuggestionControllerMixin == null) {
-            ThreadUtils.postOnMainThread(() -> mAdapter.setCategory(mStagingCategory));
+            ThreadUtils.postOnMainThread(() -> setCategory(mStagingCategory));
             return;
         }
-        if (mSuggestionControllerMixin.isSuggestionLoaded()) {
-            Log.d(TAG, "Suggestion has loaded, setting suggestion/category");
+        if (mSuggestionControllerMixin.isSuggestionLoaded() || mStagingSuggestions != null) {
+            Log.d(TAG, "Suggestion has loaded or is cached, setting suggestion/category");
             ThreadUtils.postOnMainThread(() -> {
                 if (mStagingSuggestions != null) {
                     mAdapter.setSuggestions(mStagingSuggestions);
                 }
-                mAdapter.setCategory(mStagingCategory);
+                setCategory(mStagingCategory);
             });
         } else {
             Log.d(TAG, "Suggestion NOT loaded, delaying setCategory by " + MAX_WAIT_MILLIS + "ms");
-            mHandler.postDelayed(() -> mAdapter.setCategory(mStagingCategory), MAX_WAIT_MILLIS);
+            mHandler.postDelayed(() -> setCategory(mStagingCategory), MAX_WAIT_MILLIS);
         }
     }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_ICON_URI;
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY;
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY_URI;
+
+import android.content.Context;
+import android.content.IContentProvider;
+import android.content.Intent;
+import android.graphics.drawable.Icon;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.drawer.DashboardCategory;
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.drawer.TileUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the dashboard categories and their tiles, with the key, intent, and
+ * the summary and icon from content providers of each tile resolved.
+ *
+ * Each category has the version of the graph its tiles last changed in, so that screens can
+ * skip rebinding a category that did not change since they last displayed it.
+ */
+public final class DashboardTileGraph {
+    private static final String TAG = "DashboardTileGraph";
+
+    public interface Callback {
+        void onTileGraphLoaded(DashboardTileGraph graph);
+    }
+
+    /**
+     * A category and its tiles.
+     */
+    public static final class CategoryNode {
+        public final String key;
+        /** Version of the graph the tiles of this category last changed in. */
+        public final int version;
+        public final List<TileNode> tiles;
+
+        private CategoryNode(String key, int version, List<TileNode> tiles) {
+            this.key = key;
+            this.version = version;
+            this.tiles = tiles;
+        }
+
+        private boolean hasSameTiles(CategoryNode other) {
+            if (other == null || tiles.size() != other.tiles.size()) {
+                return false;
+            }
+            for (int i = 0; i < tiles.size(); i++) {
+                if (!tiles.get(i).hasSameContent(other.tiles.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A tile with its resolved data.
+     */
+    public static final class TileNode {
+        public final Tile tile;
+        public final String key;
+        public final Intent intent;
+        /** Summary from the summary content provider of the tile, if it has one. */
+        public final String summary;
+        /** Icon from the icon content provider of the tile, if it has one. */
+        public final Icon icon;
+
+        private TileNode(Tile tile, String key, String summary, Icon icon) {
+            this.tile = tile;
+            this.key = key;
+            this.intent = tile.intent != null ? new Intent(tile.intent) : null;
+            this.summary = summary;
+            this.icon = icon;
+        }
+
+        private boolean hasSameContent(TileNode other) {
+            return TextUtils.equals(key, other.key)
+                    && TextUtils.equals(tile.title, other.tile.title)
+                    && TextUtils.equals(tile.summary, other.tile.summary)
+                    && TextUtils.equals(summary, other.summary)
+                    && tile.priority == other.tile.priority
+                    && (intent == null ? other.intent == null : intent.filterEquals(other.intent))
+                    && isSameIcon(tile.icon, other.tile.icon)
+                    && isSameIcon(icon, other.icon);
+        }
+
+        private static boolean isSameIcon(Icon icon, Icon other) {
+            return icon == other || (icon != null && other != null && icon.sameAs(other));
+        }
+    }
+
+    public final int version;
+    private final Map<String, CategoryNode> mCategories;
+    // Nodes by tile instance, since the tiles of the category manager have no identity otherwise.
+    private final Map<Tile, TileNode> mTileNodes;
+    private final List<DashboardCategory> mSource;
+    private final Tile[] mSourceTiles;
+
+    private DashboardTileGraph(int version, Map<String, CategoryNode> categories,
+            Map<Tile, TileNode> tileNodes, List<DashboardCategory> source, Tile[] sourceTiles) {
+        this.version = version;
+        mCategories = categories;
+        mTileNodes = tileNodes;
+        mSource = source;
+        mSourceTiles = sourceTiles;
+    }
+
+    /**
+     * @return the category of {@code key}, or null if the graph has no such category
+     */
+    public CategoryNode getCategory(String key) {
+        return mCategories.get(key);
+    }
+
+    /**
+     * @return the node of {@code tile}, or null if the graph was not built from it
+     */
+    public TileNode getTileNode(Tile tile) {
+        return mTileNodes.get(tile);
+    }
+
+    /**
+     * @return whether the graph was built from {@code categories} in their current state
+     */
+    public boolean isBuiltFrom(List<DashboardCategory> categories) {
+        if (categories != mSource) {
+            return false;
+        }
+        synchronized (categories) {
+            int index = 0;
+            for (DashboardCategory category : categories) {
+                final int tileCount = category.getTilesCount();
+                for (int i = 0; i < tileCount; i++) {
+                    if (index >= mSourceTiles.length
+                            || category.getTile(i) != mSourceTiles[index++]) {
+                        return false;
+                    }
+                }
+            }
+            return index == mSourceTiles.length;
+        }
+    }
+
+    /**
+     * Builds the graph of {@code categories}. The summaries and icons from content providers of
+     * each category are resolved together, sharing the provider connections.
+     *
+     * @param previous the graph built before, to carry over the version of unchanged categories
+     */
+    @WorkerThread
+    static DashboardTileGraph build(Context context, DashboardFeatureProvider provider,
+            List<DashboardCategory> categories, DashboardTileGraph previous) {
+        final int version = previous != null ? previous.version + 1 : 1;
+        final List<DashboardCategory> snapshot = new ArrayList<>();
+        final List<Tile> sourceTiles = new ArrayList<>();
+        synchronized (categories) {
+            for (DashboardCategory category : categories) {
+                final DashboardCategory copy = new DashboardCategory();
+                copy.key = category.key;
+                final int tileCount = category.getTilesCount();
+                for (int i = 0; i < tileCount; i++) {
+                    copy.addTile(category.getTile(i));
+                    sourceTiles.add(category.getTile(i));
+                }
+                snapshot.add(copy);
+            }
+        }
+
+        final Map<String, CategoryNode> categoryNodes = new ArrayMap<>();
+        final Map<Tile, TileNode> tileNodes = new IdentityHashMap<>();
+        for (DashboardCategory category : snapshot) {
+            final Map<String, IContentProvider> providerMap = new ArrayMap<>();
+            final List<TileNode> nodes = new ArrayList<>();
+            for (Tile tile : category.getTiles()) {
+                final TileNode node = new TileNode(tile, provider.getDashboardKeyForTile(tile),
+                        loadSummary(context, tile, providerMap),
+                        loadIcon(context, tile, providerMap));
+                nodes.add(node);
+                tileNodes.put(tile, node);
+            }
+            CategoryNode node = new CategoryNode(category.key, version,
+                    Collections.unmodifiableList(nodes));
+            final CategoryNode previousNode =
+                    previous != null ? previous.getCategory(category.key) : null;
+            if (node.hasSameTiles(previousNode)) {
+                node = new CategoryNode(category.key, previousNode.version, node.tiles);
+            }
+            categoryNodes.put(category.key, node);
+        }
+        return new DashboardTileGraph(version, Collections.unmodifiableMap(categoryNodes),
+                Collections.unmodifiableMap(tileNodes), categories,
+                sourceTiles.toArray(new Tile[sourceTiles.size()]));
+    }
+
+    private static String loadSummary(Context context, Tile tile,
+            Map<String, IContentProvider> providerMap) {
+        if (tile.summary != null || tile.metaData == null
+                || !tile.metaData.containsKey(META_DATA_PREFERENCE_SUMMARY_URI)) {
+            return null;
+        }
+        final String uri = tile.metaData.getString(META_DATA_PREFERENCE_SUMMARY_URI);
+        return TileUtils.getTextFromUri(context, uri, providerMap, META_DATA_PREFERENCE_SUMMARY);
+    }
+
+    private static Icon loadIcon(Context context, Tile tile,
+            Map<String, IContentProvider> providerMap) {
+        if (tile.icon != null || tile.metaData == null
+                || !tile.metaData.containsKey(META_DATA_PREFERENCE_ICON_URI)) {
+            return null;
+        }
+        final String uri = tile.metaData.getString(META_DATA_PREFERENCE_ICON_URI);
+        final Pair<String, Integer> iconInfo = TileUtils.getIconFromUri(context,
+                DashboardFeatureProviderImpl.getTilePackageName(tile), uri, providerMap);
+        if (iconInfo == null) {
+            Log.w(TAG, "Failed to get icon from uri " + uri);
+            return null;
+        }
+        return Icon.createWithResource(iconInfo.first, iconInfo.second);
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_ICON_BACKGROUND_HINT;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.UserHandle;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.drawer.DashboardCategory;
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.utils.ThreadUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the homepage tiles as last shown, with their titles, summaries, icons and
+ * intents, so that a cold started homepage can show them before the category manager has
+ * loaded the tiles and the summary loader their summaries.
+ *
+ * Icons are kept as resource ids, so a snapshot is only used with the build and locale it was
+ * taken with, and while the packages of the icons were not updated since.
+ */
+class HomepageSnapshot {
+    private static final String TAG = "HomepageSnapshot";
+
+    @VisibleForTesting
+    static final String FILE_NAME = "homepage_snapshot.json";
+    private static final int VERSION = 1;
+
+    // Marks the tiles of a snapshot in their meta data, so they are not mistaken for live ones.
+    private static final String META_DATA_SNAPSHOT = "com.android.settings.homepage_snapshot";
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_LOCALES = "locales";
+    private static final String KEY_PACKAGES = "packages";
+    private static final String KEY_TILES = "tiles";
+    private static final String KEY_TITLE = "title";
+    private static final String KEY_SUMMARY = "summary";
+    private static final String KEY_ICON_PACKAGE = "icon_package";
+    private static final String KEY_ICON_RES = "icon_res";
+    private static final String KEY_ICON_BACKGROUND_HINT = "icon_background_hint";
+    private static final String KEY_INTENT = "intent";
+    private static final String KEY_USERS = "users";
+    private static final String KEY_KEY = "key";
+    private static final String KEY_PRIORITY = "priority";
+
+    // Snapshot last written or read by this process, to skip writing an unchanged one.
+    private static String sLastSnapshot;
+
+    private HomepageSnapshot() {
+    }
+
+    /**
+     * @return whether {@code tile} comes from a snapshot rather than the category manager
+     */
+    static boolean isSnapshot(Tile tile) {
+        return tile.metaData != null && tile.metaData.getBoolean(META_DATA_SNAPSHOT);
+    }
+
+    /**
+     * Reads the snapshot.
+     *
+     * @return the homepage category of the snapshot, or null if there is no usable snapshot
+     */
+    @WorkerThread
+    static DashboardCategory read(Context context) {
+        final AtomicFile file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final String snapshot = new String(file.readFully(), StandardCharsets.UTF_8);
+            final DashboardCategory category = fromJson(context, new JSONObject(snapshot));
+            if (category != null) {
+                synchronized (HomepageSnapshot.class) {
+                    sLastSnapshot = snapshot;
+                }
+            }
+            return category;
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Failed to read homepage snapshot", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of {@code category} in the background, unless it did not change
+     * since it was last written or read.
+     */
+    static void write(Context context, DashboardCategory category) {
+        final Context appContext = context.getApplicationContext();
+        final List<Tile> tiles = new ArrayList<>(category.getTiles());
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final String snapshot;
+            try {
+                snapshot = toJson(appContext, tiles).toString();
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed to create homepage snapshot", e);
+                return;
+            }
+            synchronized (HomepageSnapshot.class) {
+                if (TextUtils.equals(snapshot, sLastSnapshot)) {
+                    return;
+                }
+                sLastSnapshot = snapshot;
+                final AtomicFile file = getFile(appContext);
+                FileOutputStream out = null;
+                try {
+                    out = file.startWrite();
+                    out.write(snapshot.getBytes(StandardCharsets.UTF_8));
+                    file.finishWrite(out);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to write homepage snapshot", e);
+                    file.failWrite(out);
+                }
+            }
+        });
+    }
+
+    @VisibleForTesting
+    static JSONObject toJson(Context context, List<Tile> tiles) throws JSONException {
+        final PackageManager pm = context.getPackageManager();
+        final Map<String, Long> packages = new ArrayMap<>();
+        final JSONArray tileArray = new JSONArray();
+        for (Tile tile : tiles) {
+            // Only resource icons can be kept, skip the tiles with other icons.
+            if (tile.icon == null || tile.icon.getType() != Icon.TYPE_RESOURCE
+                    || tile.intent == null) {
+                continue;
+            }
+            final String iconPackage = tile.icon.getResPackage();
+            if (!packages.containsKey(iconPackage)) {
+                try {
+                    packages.put(iconPackage, pm.getPackageInfo(iconPackage, 0).lastUpdateTime);
+                } catch (PackageManager.NameNotFoundException e) {
+                    continue;
+                }
+            }
+            final JSONObject tileObject = new JSONObject();
+            tileObject.put(KEY_TITLE, toString(tile.title));
+            tileObject.put(KEY_SUMMARY, toString(tile.summary));
+            tileObject.put(KEY_ICON_PACKAGE, iconPackage);
+            tileObject.put(KEY_ICON_RES, tile.icon.getResId());
+            if (tile.metaData != null) {
+                tileObject.put(KEY_ICON_BACKGROUND_HINT,
+                        tile.metaData.getInt(META_DATA_PREFERENCE_ICON_BACKGROUND_HINT, 0));
+            }
+            tileObject.put(KEY_INTENT, tile.intent.toUri(Intent.URI_INTENT_SCHEME));
+            if (tile.userHandle != null) {
+                final JSONArray users = new JSONArray();
+                for (UserHandle user : tile.userHandle) {
+                    users.put(user.getIdentifier());
+                }
+                tileObject.put(KEY_USERS, users);
+            }
+            tileObject.put(KEY_KEY, tile.key);
+            tileObject.put(KEY_PRIORITY, tile.priority);
+            tileArray.put(tileObject);
+        }
+
+        final JSONObject packageObject = new JSONObject();
+        for (Map.Entry<String, Long> entry : packages.entrySet()) {
+            packageObject.put(entry.getKey(), entry.getValue());
+        }
+        final JSONObject snapshot = new JSONObject();
+        snapshot.put(KEY_VERSION, VERSION);
+        snapshot.put(KEY_FINGERPRINT, Build.FINGERPRINT);
+        snapshot.put(KEY_LOCALES, getLocales(context));
+        snapshot.put(KEY_PACKAGES, packageObject);
+        snapshot.put(KEY_TILES, tileArray);
+        return snapshot;
+    }
+
+    /**
+     * @return the homepage category of {@code snapshot}, or null if it is stale
+     */
+    @VisibleForTesting
+    static DashboardCategory fromJson(Context context, JSONObject snapshot)
+            throws JSONException {
+        if (snapshot.getInt(KEY_VERSION) != VERSION
+                || !TextUtils.equals(snapshot.getString(KEY_FINGERPRINT), Build.FINGERPRINT)
+                || !TextUtils.equals(snapshot.getString(KEY_LOCALES), getLocales(context))) {
+            Log.d(TAG, "Homepage snapshot is stale");
+            return null;
+        }
+        final PackageManager pm = context.getPackageManager();
+        final JSONObject packages = snapshot.getJSONObject(KEY_PACKAGES);
+        final JSONArray packageNames = packages.names();
+        for (int i = 0; packageNames != null && i < packageNames.length(); i++) {
+            final String packageName = packageNames.getString(i);
+            try {
+                if (pm.getPackageInfo(packageName, 0).lastUpdateTime
+                        != packages.getLong(packageName)) {
+                    Log.d(TAG, "Homepage snapshot is stale, " + packageName + " was updated");
+                    return null;
+                }
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.d(TAG, "Homepage snapshot is stale, " + packageName + " is gone");
+                return null;
+            }
+        }
+
+        final DashboardCategory category = new DashboardCategory();
+        final JSONArray tiles = snapshot.getJSONArray(KEY_TILES);
+        for (int i = 0; i < tiles.length(); i++) {
+            final JSONObject tileObject = tiles.getJSONObject(i);
+            final Tile tile = new Tile();
+            tile.title = tileObject.optString(KEY_TITLE, null);
+            tile.summary = tileObject.optString(KEY_SUMMARY, null);
+            tile.icon = Icon.createWithResource(tileObject.getString(KEY_ICON_PACKAGE),
+                    tileObject.getInt(KEY_ICON_RES));
+            tile.metaData = new Bundle();
+            tile.metaData.putBoolean(META_DATA_SNAPSHOT, true);
+            tile.metaData.putInt(META_DATA_PREFERENCE_ICON_BACKGROUND_HINT,
+                    tileObject.optInt(KEY_ICON_BACKGROUND_HINT, 0));
+            try {
+                tile.intent = Intent.parseUri(tileObject.getString(KEY_INTENT),
+                        Intent.URI_INTENT_SCHEME);
+            } catch (URISyntaxException e) {
+                throw new JSONException("Bad tile intent: " + e.getMessage());
+            }
+            final JSONArray users = tileObject.optJSONArray(KEY_USERS);
+            if (users != null) {
+                tile.userHandle = new ArrayList<>(users.length());
+                for (int j = 0; j < users.length(); j++) {
+                    tile.userHandle.add(UserHandle.of(users.getInt(j)));
+                }
+            } else {
+                tile.userHandle = null;
+            }
+            tile.key = tileObject.optString(KEY_KEY, null);
+            tile.priority = tileObject.optInt(KEY_PRIORITY, 0);
+            category.addTile(tile);
+        }
+        return category;
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getCacheDir(), FILE_NAME));
+    }
+
+    private static String getLocales(Context context) {
+        return context.getResources().getConfiguration().getLocales().toLanguageTags();
+    }
+
+    private static String toString(CharSequence text) {
+        return text != null ? text.toString() : null;
+    }
+}
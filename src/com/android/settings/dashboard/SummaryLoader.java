@@ -32,6 +32,7 @@ import android.util.ArraySet;
 import android.util.Log;
 
 import com.android.settings.SettingsActivity;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
@@ -233,16 +234,20 @@ public class SummaryLoader {
             Log.d(TAG, "Listening " + listening);
         }
         for (SummaryProvider p : mSummaryProviderMap.keySet()) {
+            final long startTime = LatencyTracker.now();
             try {
                 p.setListening(listening);
             } catch (Exception e) {
                 Log.d(TAG, "Problem in setListening", e);
             }
+            LatencyTracker.record("SummaryLoader.setListening", startTime);
         }
     }
 
     private synchronized void makeProviderW(Tile tile) {
+        final long startTime = LatencyTracker.now();
         SummaryProvider provider = getSummaryProvider(tile);
+        LatencyTracker.record("SummaryLoader.getSummaryProvider", startTime);
         if (provider != null) {
             if (DEBUG) Log.d(TAG, "Creating " + tile);
             mSummaryProviderMap.put(provider, tile.intent.getComponent());
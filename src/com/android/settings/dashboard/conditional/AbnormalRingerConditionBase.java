@@ -43,6 +43,11 @@ public abstract class AbnormalRingerConditionBase extends Condition {
         manager.getContext().registerReceiver(mReceiver, mFilter);
     }
 
+    @Override
+    String[] getDependencyActions() {
+        return new String[] {AudioManager.INTERNAL_RINGER_MODE_CHANGED_ACTION};
+    }
+
     @Override
     public CharSequence[] getActions() {
         return new CharSequence[] {
@@ -44,7 +44,17 @@ public class AirplaneModeCondition extends Condition {
     @Override
     public void refreshState() {
         Log.d(TAG, "APM condition refreshed");
-        setActive(WirelessUtils.isAirplaneModeOn(mManager.getContext()));
+        setActive(evaluateActive());
+    }
+
+    @Override
+    Boolean evaluateActive() {
+        return WirelessUtils.isAirplaneModeOn(mManager.getContext());
+    }
+
+    @Override
+    String[] getDependencyActions() {
+        return new String[] {Intent.ACTION_AIRPLANE_MODE_CHANGED};
     }
 
     @Override
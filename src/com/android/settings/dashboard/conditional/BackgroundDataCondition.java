@@ -17,6 +17,7 @@ package com.android.settings.dashboard.conditional;
 
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
+import android.net.ConnectivityManager;
 import android.net.NetworkPolicyManager;
 import android.util.FeatureFlagUtils;
 
@@ -33,7 +34,17 @@ public class BackgroundDataCondition extends Condition {
 
     @Override
     public void refreshState() {
-        setActive(NetworkPolicyManager.from(mManager.getContext()).getRestrictBackground());
+        setActive(evaluateActive());
+    }
+
+    @Override
+    Boolean evaluateActive() {
+        return NetworkPolicyManager.from(mManager.getContext()).getRestrictBackground();
+    }
+
+    @Override
+    String[] getDependencyActions() {
+        return new String[] {ConnectivityManager.ACTION_RESTRICT_BACKGROUND_CHANGED};
     }
 
     @Override
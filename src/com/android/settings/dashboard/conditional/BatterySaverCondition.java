@@ -41,8 +41,18 @@ public class BatterySaverCondition extends Condition implements
 
     @Override
     public void refreshState() {
+        setActive(evaluateActive());
+    }
+
+    @Override
+    Boolean evaluateActive() {
         PowerManager powerManager = mManager.getContext().getSystemService(PowerManager.class);
-        setActive(powerManager.isPowerSaveMode());
+        return powerManager.isPowerSaveMode();
+    }
+
+    @Override
+    String[] getDependencyActions() {
+        return new String[] {PowerManager.ACTION_POWER_SAVE_MODE_CHANGED};
     }
 
     @Override
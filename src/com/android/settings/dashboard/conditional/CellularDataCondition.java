@@ -16,6 +16,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
 import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.provider.Settings.Global;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
@@ -23,9 +27,13 @@ import com.android.internal.telephony.TelephonyIntents;
 import com.android.settings.R;
 import com.android.settings.Settings;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CellularDataCondition extends Condition {
 
     private final Receiver mReceiver;
+    private Uri[] mDependencyUris;
 
     private static final IntentFilter DATA_CONNECTION_FILTER =
         new IntentFilter(TelephonyIntents.ACTION_ANY_DATA_CONNECTION_STATE_CHANGED);
@@ -37,15 +45,46 @@ public class CellularDataCondition extends Condition {
 
     @Override
     public void refreshState() {
+        setActive(evaluateActive());
+    }
+
+    @Override
+    Boolean evaluateActive() {
         ConnectivityManager connectivity = mManager.getContext().getSystemService(
                 ConnectivityManager.class);
         TelephonyManager telephony = mManager.getContext().getSystemService(TelephonyManager.class);
         if (!connectivity.isNetworkSupported(ConnectivityManager.TYPE_MOBILE)
                 || telephony.getSimState() != TelephonyManager.SIM_STATE_READY) {
-            setActive(false);
-            return;
+            return false;
+        }
+        return !telephony.isDataEnabled();
+    }
+
+    @Override
+    String[] getDependencyActions() {
+        return new String[] {
+                TelephonyIntents.ACTION_ANY_DATA_CONNECTION_STATE_CHANGED,
+                TelephonyIntents.ACTION_SIM_STATE_CHANGED};
+    }
+
+    @Override
+    Uri[] getDependencyUris() {
+        // Turning mobile data off does not always send a data connection broadcast, such as
+        // when on Wi-Fi, so also depend on the setting, which is kept per subscription too.
+        if (mDependencyUris == null) {
+            final List<Uri> uris = new ArrayList<>();
+            uris.add(Global.getUriFor(Global.MOBILE_DATA));
+            final List<SubscriptionInfo> subscriptions = SubscriptionManager.from(
+                    mManager.getContext()).getActiveSubscriptionInfoList();
+            if (subscriptions != null) {
+                for (SubscriptionInfo subscription : subscriptions) {
+                    uris.add(Global.getUriFor(
+                            Global.MOBILE_DATA + subscription.getSubscriptionId()));
+                }
+            }
+            mDependencyUris = uris.toArray(new Uri[uris.size()]);
         }
-        setActive(!telephony.isDataEnabled());
+        return mDependencyUris;
     }
 
     @Override
@@ -20,8 +20,10 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.PersistableBundle;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.overlay.FeatureFactory;
@@ -40,6 +42,8 @@ public abstract class Condition {
     private boolean mIsSilenced;
     private boolean mIsActive;
     private long mLastStateChange;
+    // Incremented on each state refresh, to discard evaluations that started before it.
+    private int mRefreshGeneration;
 
     // All conditions must live in this package.
     Condition(ConditionManager manager) {
@@ -81,6 +85,7 @@ public abstract class Condition {
     }
 
     protected void setActive(boolean active) {
+        mRefreshGeneration++;
         if (mIsActive == active) {
             return;
         }
@@ -139,6 +144,37 @@ public abstract class Condition {
         return mLastStateChange;
     }
 
+    int getRefreshGeneration() {
+        return mRefreshGeneration;
+    }
+
+    /**
+     * Evaluates whether the condition is active without changing any state, so that it can be
+     * called off the main thread.
+     *
+     * @return null if the condition keeps more state than whether it is active, in which case it
+     * is refreshed with {@link #refreshState()} on the main thread instead
+     */
+    @WorkerThread
+    Boolean evaluateActive() {
+        return null;
+    }
+
+    /**
+     * Returns the broadcasts that may change the state of the condition. Conditions that declare
+     * neither broadcasts nor settings are refreshed every time.
+     */
+    String[] getDependencyActions() {
+        return null;
+    }
+
+    /**
+     * Returns the settings that may change the state of the condition.
+     */
+    Uri[] getDependencyUris() {
+        return null;
+    }
+
     public void onResume() {
     }
 
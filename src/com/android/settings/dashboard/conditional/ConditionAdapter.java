@@ -90,6 +90,14 @@ public class ConditionAdapter extends RecyclerView.Adapter<DashboardItemHolder>
         setHasStableIds(true);
     }
 
+    /**
+     * Replaces the conditions, keeping the views of the conditions still shown by their ids.
+     */
+    public void setConditions(List<Condition> conditions) {
+        mConditions = conditions;
+        notifyDataSetChanged();
+    }
+
     public Object getItem(long itemId) {
         for (Condition condition : mConditions) {
             if (Objects.hash(condition.getTitle()) == itemId) {
@@ -15,29 +15,58 @@
  */
 package com.android.settings.dashboard.conditional;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.PersistableBundle;
+import android.util.ArraySet;
+import android.util.AtomicFile;
 import android.util.Log;
+import android.util.Pair;
 import android.util.Xml;
 
+import androidx.annotation.VisibleForTesting;
+
+import com.android.internal.util.ArrayUtils;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settingslib.core.lifecycle.LifecycleObserver;
 import com.android.settingslib.core.lifecycle.events.OnPause;
 import com.android.settingslib.core.lifecycle.events.OnResume;
+import com.android.settingslib.utils.ThreadUtils;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+/**
+ * Loads, refreshes and persists the conditions shown on the dashboard.
+ *
+ * Conditions declare the broadcasts and settings their state depends on. {@link #refreshAll()}
+ * only refreshes the conditions whose dependencies changed since their last refresh, and those
+ * that declare none. Conditions are evaluated together on the background thread, and their
+ * states are written to disk in the background, once per burst of changes.
+ */
 public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
 
     private static final String TAG = "ConditionManager";
@@ -51,14 +80,81 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
     private static final String TAG_CONDITION = "c";
     private static final String ATTR_CLASS = "cls";
 
+    // Delay of writing the condition states, to write them once for changes made together.
+    private static final long SAVE_DELAY_MS = 500;
+
+    // Factories of all conditions in the order they are added, by the class name their state is
+    // saved with.
+    private static final Map<String, Function<ConditionManager, Condition>> FACTORIES =
+            new LinkedHashMap<>();
+
+    static {
+        FACTORIES.put(AirplaneModeCondition.class.getSimpleName(), AirplaneModeCondition::new);
+        FACTORIES.put(HotspotCondition.class.getSimpleName(), HotspotCondition::new);
+        FACTORIES.put(DndCondition.class.getSimpleName(), DndCondition::new);
+        FACTORIES.put(BatterySaverCondition.class.getSimpleName(), BatterySaverCondition::new);
+        FACTORIES.put(CellularDataCondition.class.getSimpleName(), CellularDataCondition::new);
+        FACTORIES.put(BackgroundDataCondition.class.getSimpleName(),
+                BackgroundDataCondition::new);
+        FACTORIES.put(WorkModeCondition.class.getSimpleName(), WorkModeCondition::new);
+        FACTORIES.put(NightDisplayCondition.class.getSimpleName(), NightDisplayCondition::new);
+        FACTORIES.put(RingerMutedCondition.class.getSimpleName(), RingerMutedCondition::new);
+        FACTORIES.put(RingerVibrateCondition.class.getSimpleName(), RingerVibrateCondition::new);
+    }
+
     private static ConditionManager sInstance;
 
     private final Context mContext;
     private final ArrayList<Condition> mConditions;
-    private File mXmlFile;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Conditions with a dependency that changed since they were last refreshed.
+    private final Set<Condition> mDirtyConditions = new ArraySet<>();
 
     private final ArrayList<ConditionListener> mListeners = new ArrayList<>();
 
+    // Condition states taken on the main thread and not written yet, or null.
+    private final Object mPendingStatesLock = new Object();
+    private List<Pair<String, PersistableBundle>> mPendingStates;
+    // Held from taking the pending states until they are written, so writes run one after the
+    // other and the latest states are written last.
+    private final Object mWriteLock = new Object();
+
+    private final BroadcastReceiver mDependencyReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final String action = intent.getAction();
+            onDependencyChanged(c -> ArrayUtils.contains(c.getDependencyActions(), action));
+        }
+    };
+
+    private final ContentObserver mDependencyObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onDependencyChanged(c -> ArrayUtils.contains(c.getDependencyUris(), uri));
+        }
+    };
+
+    private final Runnable mRefreshRunnable = this::refreshAll;
+
+    private final Runnable mSaveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Take the states on the main thread, where they change, and write them off it.
+            final List<Pair<String, PersistableBundle>> states = new ArrayList<>();
+            for (int i = 0, size = mConditions.size(); i < size; i++) {
+                final Condition condition = mConditions.get(i);
+                final PersistableBundle bundle = new PersistableBundle();
+                if (condition.saveState(bundle)) {
+                    states.add(Pair.create(condition.getClass().getSimpleName(), bundle));
+                }
+            }
+            synchronized (mPendingStatesLock) {
+                mPendingStates = states;
+            }
+            ThreadUtils.postOnBackgroundThread(ConditionManager.this::writePendingStates);
+        }
+    };
+
     private ConditionManager(Context context, boolean loadConditionsNow) {
         mContext = context;
         mConditions = new ArrayList<>();
@@ -72,29 +168,132 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
         }
     }
 
+    @VisibleForTesting
+    ConditionManager(Context context, List<Condition> conditions) {
+        mContext = context;
+        mConditions = new ArrayList<>(conditions);
+        registerDependencies();
+    }
+
+    /**
+     * Refreshes the conditions that may have changed.
+     */
     public void refreshAll() {
-        final int N = mConditions.size();
-        for (int i = 0; i < N; i++) {
-            mConditions.get(i).refreshState();
+        mHandler.removeCallbacks(mRefreshRunnable);
+        final List<Condition> conditions = new ArrayList<>();
+        for (int i = 0, size = mConditions.size(); i < size; i++) {
+            final Condition condition = mConditions.get(i);
+            if (mDirtyConditions.contains(condition) || !hasDependencies(condition)) {
+                conditions.add(condition);
+            }
+        }
+        mDirtyConditions.clear();
+        refresh(conditions);
+    }
+
+    private void refresh(List<Condition> conditions) {
+        if (conditions.isEmpty()) {
+            return;
+        }
+        final int count = conditions.size();
+        final int[] generations = new int[count];
+        for (int i = 0; i < count; i++) {
+            generations[i] = conditions.get(i).getRefreshGeneration();
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final Boolean[] results = new Boolean[count];
+            for (int i = 0; i < count; i++) {
+                final Condition condition = conditions.get(i);
+                final long startTime = LatencyTracker.now();
+                results[i] = condition.evaluateActive();
+                if (results[i] != null) {
+                    LatencyTracker.record(
+                            condition.getClass().getSimpleName() + ".evaluate", startTime);
+                }
+            }
+            ThreadUtils.postOnMainThread(() -> {
+                for (int i = 0; i < count; i++) {
+                    final Condition condition = conditions.get(i);
+                    if (condition.getRefreshGeneration() != generations[i]) {
+                        // Refreshed again since, the result is out of date.
+                        continue;
+                    }
+                    if (results[i] != null) {
+                        condition.setActive(results[i]);
+                    } else {
+                        final long startTime = LatencyTracker.now();
+                        condition.refreshState();
+                        LatencyTracker.record(
+                                condition.getClass().getSimpleName() + ".refreshState",
+                                startTime);
+                    }
+                }
+            });
+        });
+    }
+
+    private static boolean hasDependencies(Condition condition) {
+        return !ArrayUtils.isEmpty(condition.getDependencyActions())
+                || !ArrayUtils.isEmpty(condition.getDependencyUris());
+    }
+
+    private void onDependencyChanged(Predicate<Condition> isAffected) {
+        for (int i = 0, size = mConditions.size(); i < size; i++) {
+            final Condition condition = mConditions.get(i);
+            if (isAffected.test(condition)) {
+                mDirtyConditions.add(condition);
+            }
+        }
+        // Refresh right away if the conditions are shown, once for changes made together.
+        if (!mListeners.isEmpty() && !mDirtyConditions.isEmpty()
+                && !mHandler.hasCallbacks(mRefreshRunnable)) {
+            mHandler.post(mRefreshRunnable);
+        }
+    }
+
+    private void registerDependencies() {
+        final IntentFilter filter = new IntentFilter();
+        final Set<Uri> uris = new ArraySet<>();
+        for (int i = 0, size = mConditions.size(); i < size; i++) {
+            final Condition condition = mConditions.get(i);
+            final String[] actions = condition.getDependencyActions();
+            if (actions != null) {
+                for (String action : actions) {
+                    if (!filter.hasAction(action)) {
+                        filter.addAction(action);
+                    }
+                }
+            }
+            final Uri[] conditionUris = condition.getDependencyUris();
+            if (conditionUris != null) {
+                Collections.addAll(uris, conditionUris);
+            }
+        }
+        if (filter.countActions() > 0) {
+            mContext.registerReceiver(mDependencyReceiver, filter);
+        }
+        for (Uri uri : uris) {
+            mContext.getContentResolver().registerContentObserver(uri, false /* descendants */,
+                    mDependencyObserver);
         }
     }
 
-    private void readFromXml(File xmlFile, ArrayList<Condition> conditions) {
-        if (DEBUG) Log.d(TAG, "Reading from " + xmlFile.toString());
+    private void readFromXml(AtomicFile xmlFile, ArrayList<Condition> conditions) {
+        if (DEBUG) Log.d(TAG, "Reading from " + xmlFile.getBaseFile());
         try {
             XmlPullParser parser = Xml.newPullParser();
-            FileReader in = new FileReader(xmlFile);
-            parser.setInput(in);
+            FileInputStream in = xmlFile.openRead();
+            parser.setInput(in, StandardCharsets.UTF_8.name());
             int state = parser.getEventType();
 
             while (state != XmlPullParser.END_DOCUMENT) {
                 if (TAG_CONDITION.equals(parser.getName())) {
                     int depth = parser.getDepth();
                     String clz = parser.getAttributeValue("", ATTR_CLASS);
-                    if (!clz.startsWith(PKG)) {
-                        clz = PKG + clz;
+                    if (clz.startsWith(PKG)) {
+                        clz = clz.substring(PKG.length());
                     }
-                    Condition condition = createCondition(Class.forName(clz));
+                    Condition condition = createCondition(clz);
                     PersistableBundle bundle = PersistableBundle.restoreFromXml(parser);
                     if (DEBUG) Log.d(TAG, "Reading " + clz + " -- " + bundle);
                     if (condition != null) {
@@ -110,89 +309,84 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
                 state = parser.next();
             }
             in.close();
-        } catch (XmlPullParserException | IOException | ClassNotFoundException e) {
+        } catch (XmlPullParserException | IOException e) {
             Log.w(TAG, "Problem reading " + FILE_NAME, e);
         }
     }
 
-    private void saveToXml() {
-        if (DEBUG) Log.d(TAG, "Writing to " + mXmlFile.toString());
+    private AtomicFile getXmlFile() {
+        return new AtomicFile(new File(mContext.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Writes the latest condition states taken on the main thread, unless an earlier write
+     * already wrote them.
+     */
+    private void writePendingStates() {
+        synchronized (mWriteLock) {
+            final List<Pair<String, PersistableBundle>> states;
+            synchronized (mPendingStatesLock) {
+                states = mPendingStates;
+                mPendingStates = null;
+            }
+            if (states != null) {
+                saveToXml(states);
+            }
+        }
+    }
+
+    private void saveToXml(List<Pair<String, PersistableBundle>> states) {
+        final AtomicFile xmlFile = getXmlFile();
+        if (DEBUG) Log.d(TAG, "Writing to " + xmlFile.getBaseFile());
+        FileOutputStream out = null;
         try {
+            out = xmlFile.startWrite();
             XmlSerializer serializer = Xml.newSerializer();
-            FileWriter writer = new FileWriter(mXmlFile);
-            serializer.setOutput(writer);
+            serializer.setOutput(out, StandardCharsets.UTF_8.name());
 
             serializer.startDocument("UTF-8", true);
             serializer.startTag("", TAG_CONDITIONS);
 
-            final int N = mConditions.size();
-            for (int i = 0; i < N; i++) {
-                PersistableBundle bundle = new PersistableBundle();
-                if (mConditions.get(i).saveState(bundle)) {
-                    serializer.startTag("", TAG_CONDITION);
-                    final String clz = mConditions.get(i).getClass().getSimpleName();
-                    serializer.attribute("", ATTR_CLASS, clz);
-                    bundle.saveToXml(serializer);
-                    serializer.endTag("", TAG_CONDITION);
-                }
+            for (Pair<String, PersistableBundle> state : states) {
+                serializer.startTag("", TAG_CONDITION);
+                serializer.attribute("", ATTR_CLASS, state.first);
+                state.second.saveToXml(serializer);
+                serializer.endTag("", TAG_CONDITION);
             }
 
             serializer.endTag("", TAG_CONDITIONS);
             serializer.flush();
-            writer.close();
+            xmlFile.finishWrite(out);
         } catch (XmlPullParserException | IOException e) {
             Log.w(TAG, "Problem writing " + FILE_NAME, e);
+            xmlFile.failWrite(out);
         }
     }
 
     private void addMissingConditions(ArrayList<Condition> conditions) {
-        addIfMissing(AirplaneModeCondition.class, conditions);
-        addIfMissing(HotspotCondition.class, conditions);
-        addIfMissing(DndCondition.class, conditions);
-        addIfMissing(BatterySaverCondition.class, conditions);
-        addIfMissing(CellularDataCondition.class, conditions);
-        addIfMissing(BackgroundDataCondition.class, conditions);
-        addIfMissing(WorkModeCondition.class, conditions);
-        addIfMissing(NightDisplayCondition.class, conditions);
-        addIfMissing(RingerMutedCondition.class, conditions);
-        addIfMissing(RingerVibrateCondition.class, conditions);
-        Collections.sort(conditions, CONDITION_COMPARATOR);
-    }
-
-    private void addIfMissing(Class<? extends Condition> clz, ArrayList<Condition> conditions) {
-        if (getCondition(clz, conditions) == null) {
-            if (DEBUG) Log.d(TAG, "Adding missing " + clz.getName());
-            Condition condition = createCondition(clz);
-            if (condition != null) {
-                conditions.add(condition);
+        final Set<String> existing = new ArraySet<>();
+        for (int i = 0, size = conditions.size(); i < size; i++) {
+            existing.add(conditions.get(i).getClass().getSimpleName());
+        }
+        for (String name : FACTORIES.keySet()) {
+            if (!existing.contains(name)) {
+                if (DEBUG) Log.d(TAG, "Adding missing " + name);
+                Condition condition = createCondition(name);
+                if (condition != null) {
+                    conditions.add(condition);
+                }
             }
         }
+        Collections.sort(conditions, CONDITION_COMPARATOR);
     }
 
-    private Condition createCondition(Class<?> clz) {
-        if (AirplaneModeCondition.class == clz) {
-            return new AirplaneModeCondition(this);
-        } else if (HotspotCondition.class == clz) {
-            return new HotspotCondition(this);
-        } else if (DndCondition.class == clz) {
-            return new DndCondition(this);
-        } else if (BatterySaverCondition.class == clz) {
-            return new BatterySaverCondition(this);
-        } else if (CellularDataCondition.class == clz) {
-            return new CellularDataCondition(this);
-        } else if (BackgroundDataCondition.class == clz) {
-            return new BackgroundDataCondition(this);
-        } else if (WorkModeCondition.class == clz) {
-            return new WorkModeCondition(this);
-        } else if (NightDisplayCondition.class == clz) {
-            return new NightDisplayCondition(this);
-        } else if (RingerMutedCondition.class == clz) {
-            return new RingerMutedCondition(this);
-        } else if (RingerVibrateCondition.class == clz) {
-            return new RingerVibrateCondition(this);
+    private Condition createCondition(String name) {
+        final Function<ConditionManager, Condition> factory = FACTORIES.get(name);
+        if (factory == null) {
+            Log.e(TAG, "unknown condition class: " + name);
+            return null;
         }
-        Log.e(TAG, "unknown condition class: " + clz.getSimpleName());
-        return null;
+        return factory.apply(this);
     }
 
     Context getContext() {
@@ -229,7 +423,9 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
     }
 
     public void notifyChanged(Condition condition) {
-        saveToXml();
+        if (!mHandler.hasCallbacks(mSaveRunnable)) {
+            mHandler.postDelayed(mSaveRunnable, SAVE_DELAY_MS);
+        }
         Collections.sort(mConditions, CONDITION_COMPARATOR);
         final int N = mListeners.size();
         for (int i = 0; i < N; i++) {
@@ -265,9 +461,9 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
         protected ArrayList<Condition> doInBackground(Void... params) {
             Log.d(TAG, "loading conditions from xml");
             ArrayList<Condition> conditions = new ArrayList<>();
-            mXmlFile = new File(mContext.getFilesDir(), FILE_NAME);
-            if (mXmlFile.exists()) {
-                readFromXml(mXmlFile, conditions);
+            final AtomicFile xmlFile = getXmlFile();
+            if (xmlFile.exists()) {
+                readFromXml(xmlFile, conditions);
             }
             addMissingConditions(conditions);
             return conditions;
@@ -278,7 +474,8 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
             Log.d(TAG, "conditions loaded from xml, refreshing conditions");
             mConditions.clear();
             mConditions.addAll(conditions);
-            refreshAll();
+            registerDependencies();
+            refresh(new ArrayList<>(mConditions));
         }
     }
 
@@ -21,6 +21,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.PersistableBundle;
 import android.provider.Settings;
 import android.provider.Settings.Global;
@@ -69,6 +70,13 @@ public class DndCondition extends Condition {
         setActive(zenModeEnabled);
     }
 
+    @Override
+    Uri[] getDependencyUris() {
+        return new Uri[] {
+                Settings.Global.getUriFor(Settings.Global.ZEN_MODE),
+                Settings.Global.getUriFor(Settings.Global.ZEN_MODE_CONFIG_ETAG)};
+    }
+
     @Override
     boolean saveState(PersistableBundle bundle) {
         bundle.putInt(KEY_STATE, mZen);
@@ -49,8 +49,17 @@ public class HotspotCondition extends Condition {
 
     @Override
     public void refreshState() {
-        boolean wifiTetherEnabled = mWifiManager.isWifiApEnabled();
-        setActive(wifiTetherEnabled);
+        setActive(evaluateActive());
+    }
+
+    @Override
+    Boolean evaluateActive() {
+        return mWifiManager.isWifiApEnabled();
+    }
+
+    @Override
+    String[] getDependencyActions() {
+        return new String[] {WifiManager.WIFI_AP_STATE_CHANGED_ACTION};
     }
 
     @Override
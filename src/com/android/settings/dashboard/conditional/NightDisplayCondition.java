@@ -18,6 +18,8 @@ package com.android.settings.dashboard.conditional;
 
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.provider.Settings;
 
 import com.android.internal.app.ColorDisplayController;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
@@ -82,7 +84,17 @@ public final class NightDisplayCondition extends Condition
 
     @Override
     public void refreshState() {
-        setActive(mController.isActivated());
+        setActive(evaluateActive());
+    }
+
+    @Override
+    Boolean evaluateActive() {
+        return mController.isActivated();
+    }
+
+    @Override
+    Uri[] getDependencyUris() {
+        return new Uri[] {Settings.Secure.getUriFor(Settings.Secure.NIGHT_DISPLAY_ACTIVATED)};
     }
 
     @Override
@@ -21,6 +21,7 @@ import static android.content.Context.NOTIFICATION_SERVICE;
 import android.app.NotificationManager;
 import android.graphics.drawable.Drawable;
 import android.media.AudioManager;
+import android.net.Uri;
 import android.provider.Settings;
 
 import com.android.internal.logging.nano.MetricsProto;
@@ -38,6 +39,11 @@ public class RingerMutedCondition extends AbnormalRingerConditionBase {
 
     @Override
     public void refreshState() {
+        setActive(evaluateActive());
+    }
+
+    @Override
+    Boolean evaluateActive() {
         int zen = Settings.Global.ZEN_MODE_OFF;
         if (mNotificationManager != null) {
             zen = mNotificationManager.getZenMode();
@@ -45,7 +51,12 @@ public class RingerMutedCondition extends AbnormalRingerConditionBase {
         final boolean zenModeEnabled = zen != Settings.Global.ZEN_MODE_OFF;
         final boolean isSilent =
                 mAudioManager.getRingerModeInternal() == AudioManager.RINGER_MODE_SILENT;
-        setActive(isSilent && !zenModeEnabled);
+        return isSilent && !zenModeEnabled;
+    }
+
+    @Override
+    Uri[] getDependencyUris() {
+        return new Uri[] {Settings.Global.getUriFor(Settings.Global.ZEN_MODE)};
     }
 
     @Override
@@ -30,7 +30,12 @@ public class RingerVibrateCondition extends AbnormalRingerConditionBase {
 
     @Override
     public void refreshState() {
-        setActive(mAudioManager.getRingerModeInternal() == AudioManager.RINGER_MODE_VIBRATE);
+        setActive(evaluateActive());
+    }
+
+    @Override
+    Boolean evaluateActive() {
+        return mAudioManager.getRingerModeInternal() == AudioManager.RINGER_MODE_VIBRATE;
     }
 
     @Override
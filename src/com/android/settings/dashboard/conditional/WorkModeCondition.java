@@ -59,6 +59,15 @@ public class WorkModeCondition extends Condition {
         setActive(mUserHandle != null && mUm.isQuietModeEnabled(mUserHandle));
     }
 
+    @Override
+    String[] getDependencyActions() {
+        return new String[] {
+                Intent.ACTION_MANAGED_PROFILE_ADDED,
+                Intent.ACTION_MANAGED_PROFILE_REMOVED,
+                Intent.ACTION_MANAGED_PROFILE_AVAILABLE,
+                Intent.ACTION_MANAGED_PROFILE_UNAVAILABLE};
+    }
+
     @Override
     public Drawable getIcon() {
         return mManager.getContext().getDrawable(R.drawable.ic_signal_workmode_enable);
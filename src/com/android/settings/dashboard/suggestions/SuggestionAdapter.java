@@ -163,6 +163,8 @@ public class SuggestionAdapter extends RecyclerView.Adapter<DashboardItemHolder>
             try {
                 suggestion.getPendingIntent().send();
                 mSuggestionControllerMixin.launchSuggestion(suggestion);
+                // Launching the suggestion may complete it.
+                SuggestionCache.getInstance(mContext).invalidate();
             } catch (PendingIntent.CanceledException e) {
                 Log.w(TAG, "Failed to start suggestion " + suggestion.getTitle());
             }
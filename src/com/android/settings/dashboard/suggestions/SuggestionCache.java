@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard.suggestions;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.SystemClock;
+import android.service.settings.suggestions.Suggestion;
+import android.text.TextUtils;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide cache of the suggestions last loaded from the suggestion service, so the
+ * homepage can show suggestions as soon as it is created instead of waiting for the service.
+ * It outlives {@code DashboardSummary} on purpose: a new homepage, after its activity is
+ * recreated or Settings is launched again, is what it speeds up.
+ *
+ * The cached suggestions are fresh for {@link #FRESHNESS_TTL_MS} after they were loaded, during
+ * which the homepage does not load them again. They become stale sooner when a suggestion is
+ * launched, or a package is added, changed or removed, since that may complete or add
+ * suggestions. They are dropped when the locale changes.
+ */
+public class SuggestionCache {
+
+    @VisibleForTesting
+    static final long FRESHNESS_TTL_MS = 5 * 60 * 1000;
+
+    private static SuggestionCache sInstance;
+
+    public interface Listener {
+        /**
+         * Called on the main thread when the cached suggestions become stale.
+         */
+        void onSuggestionCacheInvalidated();
+    }
+
+    private final Context mAppContext;
+    private List<Suggestion> mSuggestions;
+    // Time the suggestions were loaded, or 0 once they are stale.
+    private long mLoadTime;
+    private Listener mListener;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+                clear();
+            } else {
+                invalidate();
+            }
+        }
+    };
+
+    /**
+     * Returns the cache of the application {@code context} belongs to.
+     */
+    public static synchronized SuggestionCache getInstance(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (sInstance == null || sInstance.mAppContext != appContext) {
+            sInstance = new SuggestionCache(appContext);
+            sInstance.registerReceiver();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    SuggestionCache(Context appContext) {
+        mAppContext = appContext;
+    }
+
+    private void registerReceiver() {
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        mAppContext.registerReceiver(mReceiver, packageFilter);
+        mAppContext.registerReceiver(mReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+    }
+
+    /**
+     * @return a copy of the cached suggestions, fresh or not, or null if there are none
+     */
+    public synchronized List<Suggestion> get() {
+        return mSuggestions != null ? new ArrayList<>(mSuggestions) : null;
+    }
+
+    /**
+     * @return whether the cached suggestions were loaded less than {@link #FRESHNESS_TTL_MS}
+     * ago and nothing made them stale since
+     */
+    public synchronized boolean isFresh() {
+        return mSuggestions != null && mLoadTime != 0
+                && SystemClock.elapsedRealtime() - mLoadTime < FRESHNESS_TTL_MS;
+    }
+
+    /**
+     * Caches {@code suggestions} just loaded from the suggestion service. A null list, which
+     * the service returns when it failed, is not cached.
+     */
+    public synchronized void put(List<Suggestion> suggestions) {
+        if (suggestions == null) {
+            return;
+        }
+        mSuggestions = new ArrayList<>(suggestions);
+        mLoadTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Removes the dismissed {@code suggestion}, keeping the other suggestions as fresh as they
+     * were.
+     */
+    public synchronized void remove(Suggestion suggestion) {
+        if (mSuggestions == null) {
+            return;
+        }
+        for (int i = mSuggestions.size() - 1; i >= 0; i--) {
+            if (TextUtils.equals(mSuggestions.get(i).getId(), suggestion.getId())) {
+                mSuggestions.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Marks the cached suggestions stale. They are still returned by {@link #get()} until new
+     * ones are loaded.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            mLoadTime = 0;
+        }
+        ThreadUtils.postOnMainThread(() -> {
+            if (mListener != null) {
+                mListener.onSuggestionCacheInvalidated();
+            }
+        });
+    }
+
+    /**
+     * Sets the listener of the screen showing the suggestions, or null when it stops showing
+     * them. Only called on the main thread.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    private void clear() {
+        synchronized (this) {
+            mSuggestions = null;
+        }
+        invalidate();
+    }
+}
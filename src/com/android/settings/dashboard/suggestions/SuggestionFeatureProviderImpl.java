@@ -127,6 +127,7 @@ public class SuggestionFeatureProviderImpl implements SuggestionFeatureProvider
                 context, MetricsProto.MetricsEvent.ACTION_SETTINGS_DISMISS_SUGGESTION,
                 suggestion.getId());
         mixin.dismissSuggestion(suggestion);
+        SuggestionCache.getInstance(context).remove(suggestion);
     }
 
     @Override
@@ -221,8 +221,14 @@ public class AppDataUsage extends DataUsageBase implements Preference.OnPreferen
             mDataSaverBackend.addListener(this);
         }
         mPolicy = services.mPolicyEditor.getPolicy(mTemplate);
-        getLoaderManager().restartLoader(LOADER_CHART_DATA,
-                ChartDataLoader.buildArgs(mTemplate, mAppItem), mChartDataCallbacks);
+        final ChartData cachedData = DataUsageQueryCache.getInstance()
+                .getAppChartData(mTemplate, mAppItem.key);
+        if (cachedData != null) {
+            bindChartData(cachedData);
+        } else {
+            getLoaderManager().restartLoader(LOADER_CHART_DATA,
+                    ChartDataLoader.buildArgs(mTemplate, mAppItem), mChartDataCallbacks);
+        }
         updatePrefs();
     }
 
@@ -379,18 +385,31 @@ public class AppDataUsage extends DataUsageBase implements Preference.OnPreferen
         }
     };
 
+    private void bindChartData(ChartData data) {
+        mChartData = data;
+        mCycleAdapter.updateCycleList(mPolicy, mChartData);
+        bindData();
+    }
+
     private final LoaderManager.LoaderCallbacks<ChartData> mChartDataCallbacks =
             new LoaderManager.LoaderCallbacks<ChartData>() {
         @Override
         public Loader<ChartData> onCreateLoader(int id, Bundle args) {
-            return new ChartDataLoader(getActivity(), mStatsSession, args);
+            final NetworkTemplate template = mTemplate;
+            final int appKey = mAppItem.key;
+            return new ChartDataLoader(getActivity(), mStatsSession, args) {
+                @Override
+                public ChartData loadInBackground() {
+                    final ChartData data = super.loadInBackground();
+                    DataUsageQueryCache.getInstance().putAppChartData(template, appKey, data);
+                    return data;
+                }
+            };
         }
 
         @Override
         public void onLoadFinished(Loader<ChartData> loader, ChartData data) {
-            mChartData = data;
-            mCycleAdapter.updateCycleList(mPolicy, mChartData);
-            bindData();
+            bindChartData(data);
         }
 
         @Override
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.net.TrafficStats.UID_REMOVED;
+import static android.net.TrafficStats.UID_TETHERING;
+
+import android.net.NetworkStats;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.AppItem;
+import com.android.settingslib.net.UidDetailProvider;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collapses the per-uid entries of a {@link NetworkStats} summary into the sorted rows shown by
+ * {@link DataUsageList}.
+ *
+ * Profiles are looked up in a bitset of user ids and the existence of other users is cached per
+ * user id, so a summary with thousands of entries costs one pass without per-entry allocations
+ * or binder calls. An instance aggregates a single summary.
+ */
+final class AppDataUsageAggregator {
+
+    /**
+     * Immutable row of the app list: one collapsed item and its share of the largest item.
+     */
+    static final class Row {
+        final AppItem item;
+        final int percent;
+
+        Row(AppItem item, int percent) {
+            this.item = item;
+            this.percent = percent;
+        }
+    }
+
+    private final int mCurrentUserId;
+    private final BitSet mProfileUserIds = new BitSet();
+    private final UserManager mUserManager;
+    // Whether a non-profile user id still exists, filled lazily.
+    private final SparseBooleanArray mExistingUsers = new SparseBooleanArray();
+
+    private final SparseArray<AppItem> mKnownItems = new SparseArray<>();
+    private final ArrayList<AppItem> mItems = new ArrayList<>();
+    private long mLargest;
+
+    AppDataUsageAggregator(UserManager userManager, int currentUserId,
+            List<UserHandle> profiles) {
+        mUserManager = userManager;
+        mCurrentUserId = currentUserId;
+        for (int i = 0, size = profiles.size(); i < size; i++) {
+            final int userId = profiles.get(i).getIdentifier();
+            if (userId >= 0) {
+                mProfileUserIds.set(userId);
+            }
+        }
+    }
+
+    /**
+     * Aggregate {@code stats}, or nothing if {@code null}, and flag the {@code restrictedUids}.
+     *
+     * @return the rows sorted in display order
+     */
+    @WorkerThread
+    List<Row> aggregate(NetworkStats stats, int[] restrictedUids) {
+        NetworkStats.Entry entry = null;
+        final int size = stats != null ? stats.size() : 0;
+        for (int i = 0; i < size; i++) {
+            entry = stats.getValues(i, entry);
+
+            // Decide how to collapse items together
+            final int uid = entry.uid;
+            final long bytes = entry.rxBytes + entry.txBytes;
+
+            final int collapseKey;
+            final int category;
+            final int userId = UserHandle.getUserId(uid);
+            if (UserHandle.isApp(uid)) {
+                if (isProfile(userId)) {
+                    if (userId != mCurrentUserId) {
+                        // Add to a managed user item.
+                        accumulate(UidDetailProvider.buildKeyForUser(userId),
+                                AppItem.CATEGORY_USER, uid, bytes);
+                    }
+                    // Add to app item.
+                    collapseKey = uid;
+                    category = AppItem.CATEGORY_APP;
+                } else if (!userExists(userId)) {
+                    // If it is a removed user add it to the removed users' key
+                    collapseKey = UID_REMOVED;
+                    category = AppItem.CATEGORY_APP;
+                } else {
+                    // Add to other user item.
+                    collapseKey = UidDetailProvider.buildKeyForUser(userId);
+                    category = AppItem.CATEGORY_USER;
+                }
+            } else if (uid == UID_REMOVED || uid == UID_TETHERING) {
+                collapseKey = uid;
+                category = AppItem.CATEGORY_APP;
+            } else {
+                collapseKey = android.os.Process.SYSTEM_UID;
+                category = AppItem.CATEGORY_APP;
+            }
+            accumulate(collapseKey, category, uid, bytes);
+        }
+
+        for (int uid : restrictedUids) {
+            // Only splice in restricted state for current user or managed users
+            if (!isProfile(UserHandle.getUserId(uid))) {
+                continue;
+            }
+
+            AppItem item = mKnownItems.get(uid);
+            if (item == null) {
+                item = new AppItem(uid);
+                item.total = -1;
+                mItems.add(item);
+                mKnownItems.put(item.key, item);
+            }
+            item.restricted = true;
+        }
+
+        Collections.sort(mItems);
+        final List<Row> rows = new ArrayList<>(mItems.size());
+        for (int i = 0, count = mItems.size(); i < count; i++) {
+            final AppItem item = mItems.get(i);
+            final int percent = mLargest != 0 ? (int) (item.total * 100 / mLargest) : 0;
+            rows.add(new Row(item, percent));
+        }
+        return Collections.unmodifiableList(rows);
+    }
+
+    private boolean isProfile(int userId) {
+        return userId >= 0 && mProfileUserIds.get(userId);
+    }
+
+    private boolean userExists(int userId) {
+        final int index = mExistingUsers.indexOfKey(userId);
+        if (index >= 0) {
+            return mExistingUsers.valueAt(index);
+        }
+        final boolean exists = mUserManager.getUserInfo(userId) != null;
+        mExistingUsers.put(userId, exists);
+        return exists;
+    }
+
+    /**
+     * Accumulate {@code bytes} used by {@code uid} into the item mapped by the collapse key.
+     * Creates the item if needed.
+     */
+    private void accumulate(int collapseKey, int itemCategory, int uid, long bytes) {
+        AppItem item = mKnownItems.get(collapseKey);
+        if (item == null) {
+            item = new AppItem(collapseKey);
+            item.category = itemCategory;
+            mItems.add(item);
+            mKnownItems.put(item.key, item);
+        }
+        item.addUid(uid);
+        item.total += bytes;
+        mLargest = Math.max(mLargest, item.total);
+    }
+}
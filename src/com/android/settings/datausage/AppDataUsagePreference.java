@@ -27,8 +27,8 @@ import com.android.settingslib.utils.ThreadUtils;
 
 public class AppDataUsagePreference extends AppPreference {
 
-    private final AppItem mItem;
-    private final int mPercent;
+    private AppItem mItem;
+    private int mPercent;
     private UidDetail mDetail;
 
     public AppDataUsagePreference(Context context, AppItem item, int percent,
@@ -36,12 +36,7 @@ public class AppDataUsagePreference extends AppPreference {
         super(context);
         mItem = item;
         mPercent = percent;
-
-        if (item.restricted && item.total <= 0) {
-            setSummary(com.android.settings.R.string.data_usage_app_restricted);
-        } else {
-            setSummary(DataUsageUtils.formatDataUsage(context, item.total));
-        }
+        updateSummary();
         mDetail = provider.getUidDetail(item.key, false /* blocking */);
         if (mDetail != null) {
             setAppInfo();
@@ -59,7 +54,7 @@ public class AppDataUsagePreference extends AppPreference {
         final ProgressBar progress = (ProgressBar) holder.findViewById(
                 android.R.id.progress);
 
-        if (mItem.restricted && mItem.total <= 0) {
+        if (isProgressHidden(mItem)) {
             progress.setVisibility(View.GONE);
         } else {
             progress.setVisibility(View.VISIBLE);
@@ -67,6 +62,32 @@ public class AppDataUsagePreference extends AppPreference {
         progress.setProgress(mPercent);
     }
 
+    /**
+     * Rebind to a newer {@code item} with the same key, keeping the loaded app label and icon.
+     */
+    public void setItem(AppItem item, int percent) {
+        final boolean progressChanged = percent != mPercent
+                || isProgressHidden(item) != isProgressHidden(mItem);
+        mItem = item;
+        mPercent = percent;
+        updateSummary();
+        if (progressChanged) {
+            notifyChanged();
+        }
+    }
+
+    private void updateSummary() {
+        if (isProgressHidden(mItem)) {
+            setSummary(com.android.settings.R.string.data_usage_app_restricted);
+        } else {
+            setSummary(DataUsageUtils.formatDataUsage(getContext(), mItem.total));
+        }
+    }
+
+    private static boolean isProgressHidden(AppItem item) {
+        return item.restricted && item.total <= 0;
+    }
+
     private void setAppInfo() {
         if (mDetail != null) {
             setIcon(mDetail.icon);
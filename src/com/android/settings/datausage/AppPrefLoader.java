@@ -21,6 +21,8 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import androidx.preference.Preference;
 import android.util.ArraySet;
+
+import com.android.settings.applications.AppLabelIconCache;
 import com.android.settingslib.utils.AsyncLoader;
 
 public class AppPrefLoader extends AsyncLoader<ArraySet<Preference>> {
@@ -38,12 +40,14 @@ public class AppPrefLoader extends AsyncLoader<ArraySet<Preference>> {
     @Override
     public ArraySet<Preference> loadInBackground() {
         ArraySet<Preference> results = new ArraySet<>();
+        final AppLabelIconCache cache = AppLabelIconCache.getInstance(mPrefContext);
         for (int i = 1, size = mPackages.size(); i < size; i++) {
             try {
                 ApplicationInfo info = mPackageManager.getApplicationInfo(mPackages.valueAt(i), 0);
+                AppLabelIconCache.Entry entry = cache.get(mPackageManager, info);
                 Preference preference = new Preference(mPrefContext);
-                preference.setIcon(info.loadIcon(mPackageManager));
-                preference.setTitle(info.loadLabel(mPackageManager));
+                preference.setIcon(entry.getIcon());
+                preference.setTitle(entry.label);
                 preference.setSelectable(false);
                 results.add(preference);
             } catch (PackageManager.NameNotFoundException e) {
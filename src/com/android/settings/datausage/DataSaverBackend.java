@@ -24,6 +24,8 @@ import android.net.NetworkPolicyManager;
 import android.os.RemoteException;
 import android.util.SparseIntArray;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
@@ -40,10 +42,27 @@ public class DataSaverBackend {
 
     private final NetworkPolicyManager mPolicyManager;
     private final ArrayList<Listener> mListeners = new ArrayList<>();
+    // Local mirror of the uid policies, only accessed on the main thread.
     private SparseIntArray mUidPolicies = new SparseIntArray();
+    private int mUidPoliciesVersion;
     private boolean mWhitelistInitialized;
     private boolean mBlacklistInitialized;
 
+    // Policy edits not yet written to NetworkPolicyManager, last edit of a uid wins.
+    private final Object mPendingEditsLock = new Object();
+    private SparseIntArray mPendingEdits = new SparseIntArray();
+    // Edits taken by the running flush and not all written yet, or null.
+    private SparseIntArray mFlushingEdits;
+    private boolean mEditsFlushScheduled;
+    // Held by a flush from taking the pending edits until the last is written, so flushes run
+    // one after the other and later edits of a uid are never written before earlier ones.
+    private final Object mFlushLock = new Object();
+
+    // Policy changes reported by NetworkPolicyManager, not yet dispatched on the main thread.
+    private final Object mPendingChangesLock = new Object();
+    private SparseIntArray mPendingChanges = new SparseIntArray();
+    private boolean mChangesDispatchScheduled;
+
     // TODO: Staticize into only one.
     public DataSaverBackend(Context context) {
         mContext = context;
@@ -54,6 +73,14 @@ public class DataSaverBackend {
     public void addListener(Listener listener) {
         mListeners.add(listener);
         if (mListeners.size() == 1) {
+            // Changes were not tracked while unregistered, reload the mirror on demand. Not while
+            // edits are unflushed though, NetworkPolicyManager would not have them yet.
+            if (!hasUnflushedEdits()) {
+                mUidPolicies.clear();
+                mUidPoliciesVersion++;
+                mWhitelistInitialized = false;
+                mBlacklistInitialized = false;
+            }
             mPolicyManager.registerListener(mPolicyListener);
         }
         listener.onDataSaverChanged(isDataSaverEnabled());
@@ -82,14 +109,76 @@ public class DataSaverBackend {
 
     public void setIsWhitelisted(int uid, String packageName, boolean whitelisted) {
         final int policy = whitelisted ? POLICY_ALLOW_METERED_BACKGROUND : POLICY_NONE;
-        mPolicyManager.setUidPolicy(uid, policy);
-        mUidPolicies.put(uid, policy);
+        final SparseIntArray edit = new SparseIntArray(1);
+        edit.put(uid, policy);
+        setUidPolicies(edit);
         if (whitelisted) {
             mMetricsFeatureProvider.action(
                     mContext, MetricsEvent.ACTION_DATA_SAVER_WHITELIST, packageName);
         }
     }
 
+    /**
+     * Set the policy of several uids at once. The local mirror is updated right away, and the
+     * policies are written to {@link NetworkPolicyManager} in one batch on a background thread,
+     * so toggling many apps does not block on a binder call per app.
+     *
+     * @param uidPolicies new policy keyed by uid
+     */
+    public void setUidPolicies(SparseIntArray uidPolicies) {
+        for (int i = 0; i < uidPolicies.size(); i++) {
+            putUidPolicy(uidPolicies.keyAt(i), uidPolicies.valueAt(i));
+        }
+        synchronized (mPendingEditsLock) {
+            for (int i = 0; i < uidPolicies.size(); i++) {
+                mPendingEdits.put(uidPolicies.keyAt(i), uidPolicies.valueAt(i));
+            }
+            if (mEditsFlushScheduled) {
+                return;
+            }
+            mEditsFlushScheduled = true;
+        }
+        ThreadUtils.postOnBackgroundThread(this::flushPendingEdits);
+    }
+
+    /**
+     * Write the pending policy edits to {@link NetworkPolicyManager}.
+     */
+    @VisibleForTesting
+    void flushPendingEdits() {
+        synchronized (mFlushLock) {
+            final SparseIntArray edits;
+            synchronized (mPendingEditsLock) {
+                edits = mPendingEdits;
+                mPendingEdits = new SparseIntArray();
+                mFlushingEdits = edits;
+                mEditsFlushScheduled = false;
+            }
+            try {
+                for (int i = 0; i < edits.size(); i++) {
+                    mPolicyManager.setUidPolicy(edits.keyAt(i), edits.valueAt(i));
+                }
+            } finally {
+                synchronized (mPendingEditsLock) {
+                    mFlushingEdits = null;
+                }
+            }
+        }
+    }
+
+    private boolean hasUnflushedEdits() {
+        synchronized (mPendingEditsLock) {
+            return mPendingEdits.size() > 0 || mFlushingEdits != null;
+        }
+    }
+
+    /**
+     * @return a number that changes whenever the local mirror of uid policies changes
+     */
+    public int getUidPoliciesVersion() {
+        return mUidPoliciesVersion;
+    }
+
     public boolean isWhitelisted(int uid) {
         loadWhitelist();
         return mUidPolicies.get(uid, POLICY_NONE) == POLICY_ALLOW_METERED_BACKGROUND;
@@ -112,6 +201,7 @@ public class DataSaverBackend {
         for (int uid : mPolicyManager.getUidsWithPolicy(POLICY_ALLOW_METERED_BACKGROUND)) {
             mUidPolicies.put(uid, POLICY_ALLOW_METERED_BACKGROUND);
         }
+        mUidPoliciesVersion++;
         mWhitelistInitialized = true;
     }
 
@@ -121,8 +211,9 @@ public class DataSaverBackend {
 
     public void setIsBlacklisted(int uid, String packageName, boolean blacklisted) {
         final int policy = blacklisted ? POLICY_REJECT_METERED_BACKGROUND : POLICY_NONE;
-        mPolicyManager.setUidPolicy(uid, policy);
-        mUidPolicies.put(uid, policy);
+        final SparseIntArray edit = new SparseIntArray(1);
+        edit.put(uid, policy);
+        setUidPolicies(edit);
         if (blacklisted) {
             mMetricsFeatureProvider.action(
                     mContext, MetricsEvent.ACTION_DATA_SAVER_BLACKLIST, packageName);
@@ -139,6 +230,7 @@ public class DataSaverBackend {
         for (int uid : mPolicyManager.getUidsWithPolicy(POLICY_REJECT_METERED_BACKGROUND)) {
             mUidPolicies.put(uid, POLICY_REJECT_METERED_BACKGROUND);
         }
+        mUidPoliciesVersion++;
         mBlacklistInitialized = true;
     }
 
@@ -165,11 +257,7 @@ public class DataSaverBackend {
         loadBlacklist();
 
         final int oldPolicy = mUidPolicies.get(uid, POLICY_NONE);
-        if (newPolicy == POLICY_NONE) {
-            mUidPolicies.delete(uid);
-        } else {
-            mUidPolicies.put(uid, newPolicy);
-        }
+        putUidPolicy(uid, newPolicy);
 
         final boolean wasWhitelisted = oldPolicy == POLICY_ALLOW_METERED_BACKGROUND;
         final boolean wasBlacklisted = oldPolicy == POLICY_REJECT_METERED_BACKGROUND;
@@ -186,6 +274,46 @@ public class DataSaverBackend {
 
     }
 
+    private void putUidPolicy(int uid, int policy) {
+        if (mUidPolicies.get(uid, POLICY_NONE) == policy) {
+            return;
+        }
+        if (policy == POLICY_NONE) {
+            mUidPolicies.delete(uid);
+        } else {
+            mUidPolicies.put(uid, policy);
+        }
+        mUidPoliciesVersion++;
+    }
+
+    /**
+     * Dispatch the policy changes reported since the last dispatch, one notification per uid.
+     */
+    @VisibleForTesting
+    void dispatchPendingChanges() {
+        final SparseIntArray changes;
+        synchronized (mPendingChangesLock) {
+            changes = mPendingChanges;
+            mPendingChanges = new SparseIntArray();
+            mChangesDispatchScheduled = false;
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            handleUidPoliciesChanged(changes.keyAt(i), changes.valueAt(i));
+        }
+    }
+
+    @VisibleForTesting
+    void onUidPoliciesChanged(int uid, int uidPolicies) {
+        synchronized (mPendingChangesLock) {
+            mPendingChanges.put(uid, uidPolicies);
+            if (mChangesDispatchScheduled) {
+                return;
+            }
+            mChangesDispatchScheduled = true;
+        }
+        ThreadUtils.postOnMainThread(this::dispatchPendingChanges);
+    }
+
     private final INetworkPolicyListener mPolicyListener = new INetworkPolicyListener.Stub() {
         @Override
         public void onUidRulesChanged(int uid, int uidRules) throws RemoteException {
@@ -193,7 +321,7 @@ public class DataSaverBackend {
 
         @Override
         public void onUidPoliciesChanged(final int uid, final int uidPolicies) {
-            ThreadUtils.postOnMainThread(() -> handleUidPoliciesChanged(uid, uidPolicies));
+            DataSaverBackend.this.onUidPoliciesChanged(uid, uidPolicies);
         }
 
         @Override
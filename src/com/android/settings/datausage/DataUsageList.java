@@ -16,8 +16,6 @@ package com.android.settings.datausage;
 
 import static android.net.ConnectivityManager.TYPE_MOBILE;
 import static android.net.NetworkPolicyManager.POLICY_REJECT_METERED_BACKGROUND;
-import static android.net.TrafficStats.UID_REMOVED;
-import static android.net.TrafficStats.UID_TETHERING;
 import static android.telephony.TelephonyManager.SIM_STATE_READY;
 
 import android.app.ActivityManager;
@@ -25,7 +23,6 @@ import android.app.LoaderManager.LoaderCallbacks;
 import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
-import android.content.pm.UserInfo;
 import android.graphics.Color;
 import android.net.ConnectivityManager;
 import android.net.INetworkStatsSession;
@@ -38,7 +35,6 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.RemoteException;
 import android.os.SystemProperties;
-import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
 import androidx.annotation.VisibleForTesting;
@@ -48,8 +44,8 @@ import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.text.format.DateUtils;
+import android.util.ArrayMap;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemSelectedListener;
@@ -58,17 +54,18 @@ import android.widget.Spinner;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
 import com.android.settings.core.SubSettingLauncher;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.datausage.CycleAdapter.SpinnerInterface;
 import com.android.settings.widget.LoadingViewController;
 import com.android.settingslib.AppItem;
 import com.android.settingslib.net.ChartData;
 import com.android.settingslib.net.ChartDataLoader;
-import com.android.settingslib.net.SummaryForAllUidLoader;
 import com.android.settingslib.net.UidDetailProvider;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Panel showing data usage history across various networks, including options
@@ -87,7 +84,6 @@ public class DataUsageList extends DataUsageBase {
     private static final String KEY_APPS_GROUP = "apps_group";
 
     private static final int LOADER_CHART_DATA = 2;
-    private static final int LOADER_SUMMARY = 3;
 
     private final CellDataPreference.DataStateListener mDataStateListener =
             new CellDataPreference.DataStateListener() {
@@ -105,6 +101,7 @@ public class DataUsageList extends DataUsageBase {
     @VisibleForTesting
     int mSubId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
     private ChartData mChartData;
+    private NetworkPolicy mPolicy;
 
     private LoadingViewController mLoadingViewController;
     private UidDetailProvider mUidDetailProvider;
@@ -113,6 +110,8 @@ public class DataUsageList extends DataUsageBase {
     private Preference mUsageAmount;
     private PreferenceGroup mApps;
     private View mHeader;
+    // Incremented for each bind, so a late background aggregation is not applied.
+    private int mStatsGeneration;
 
 
     @Override
@@ -210,6 +209,8 @@ public class DataUsageList extends DataUsageBase {
 
             @Override
             protected void onPostExecute(Void result) {
+                // The stats were just polled, so cached queries may be out of date.
+                DataUsageQueryCache.getInstance().invalidateAll();
                 if (isAdded()) {
                     updateBody();
                 }
@@ -225,6 +226,8 @@ public class DataUsageList extends DataUsageBase {
 
     @Override
     public void onDestroy() {
+        // Drop any aggregation still in flight.
+        mStatsGeneration++;
         mUidDetailProvider.clearCache();
         mUidDetailProvider = null;
 
@@ -287,6 +290,10 @@ public class DataUsageList extends DataUsageBase {
      */
     private void updatePolicy() {
         final NetworkPolicy policy = services.mPolicyEditor.getPolicy(mTemplate);
+        if (mPolicy != null && !Objects.equals(mPolicy, policy)) {
+            DataUsageQueryCache.getInstance().invalidate(mTemplate);
+        }
+        mPolicy = policy;
         final View configureButton = mHeader.findViewById(R.id.filter_settings);
         //SUB SELECT
         if (isNetworkPolicyModifiable(policy, mSubId) && isMobileDataAvailable(mSubId)) {
@@ -323,9 +330,8 @@ public class DataUsageList extends DataUsageBase {
             entry = mChartData.network.getValues(start, end, now, null);
         }
 
-        // kick off loader for detailed stats
-        getLoaderManager().restartLoader(LOADER_SUMMARY,
-                SummaryForAllUidLoader.buildArgs(mTemplate, start, end), mSummaryCallbacks);
+        // kick off background load of detailed stats
+        loadStats(start, end);
 
         final long totalBytes = entry != null ? entry.rxBytes + entry.txBytes : 0;
         final CharSequence totalPhrase = DataUsageUtils.formatDataUsage(context, totalBytes);
@@ -333,86 +339,113 @@ public class DataUsageList extends DataUsageBase {
     }
 
     /**
-     * Bind the given {@link NetworkStats}, or {@code null} to clear list.
+     * Load the usage summary of [start, end) and aggregate it on a background thread, then bind
+     * the result. Results of an earlier call that complete after a later one are dropped.
      */
-    public void bindStats(NetworkStats stats, int[] restrictedUids) {
-        ArrayList<AppItem> items = new ArrayList<>();
-        long largest = 0;
-
-        final int currentUserId = ActivityManager.getCurrentUser();
-        UserManager userManager = UserManager.get(getContext());
-        final List<UserHandle> profiles = userManager.getUserProfiles();
-        final SparseArray<AppItem> knownItems = new SparseArray<AppItem>();
-
-        NetworkStats.Entry entry = null;
-        final int size = stats != null ? stats.size() : 0;
-        for (int i = 0; i < size; i++) {
-            entry = stats.getValues(i, entry);
-
-            // Decide how to collapse items together
-            final int uid = entry.uid;
-
-            final int collapseKey;
-            final int category;
-            final int userId = UserHandle.getUserId(uid);
-            if (UserHandle.isApp(uid)) {
-                if (profiles.contains(new UserHandle(userId))) {
-                    if (userId != currentUserId) {
-                        // Add to a managed user item.
-                        final int managedKey = UidDetailProvider.buildKeyForUser(userId);
-                        largest = accumulate(managedKey, knownItems, entry, AppItem.CATEGORY_USER,
-                                items, largest);
-                    }
-                    // Add to app item.
-                    collapseKey = uid;
-                    category = AppItem.CATEGORY_APP;
-                } else {
-                    // If it is a removed user add it to the removed users' key
-                    final UserInfo info = userManager.getUserInfo(userId);
-                    if (info == null) {
-                        collapseKey = UID_REMOVED;
-                        category = AppItem.CATEGORY_APP;
-                    } else {
-                        // Add to other user item.
-                        collapseKey = UidDetailProvider.buildKeyForUser(userId);
-                        category = AppItem.CATEGORY_USER;
-                    }
+    private void loadStats(long start, long end) {
+        final int generation = ++mStatsGeneration;
+        final Context context = getContext().getApplicationContext();
+        final NetworkTemplate template = mTemplate;
+        final INetworkStatsSession session = mStatsSession;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final NetworkStats stats = DataUsageQueryCache.getInstance().loadSummary(session,
+                    template, start, end);
+            final int[] restrictedUids = services.mPolicyManager.getUidsWithPolicy(
+                    POLICY_REJECT_METERED_BACKGROUND);
+            final List<AppDataUsageAggregator.Row> rows =
+                    aggregateStats(context, stats, restrictedUids);
+            ThreadUtils.postOnMainThread(() -> {
+                if (generation == mStatsGeneration && isAdded()) {
+                    bindRows(rows);
+                    prefetchAdjacentCycles();
                 }
-            } else if (uid == UID_REMOVED || uid == UID_TETHERING) {
-                collapseKey = uid;
-                category = AppItem.CATEGORY_APP;
-            } else {
-                collapseKey = android.os.Process.SYSTEM_UID;
-                category = AppItem.CATEGORY_APP;
+            });
+        });
+    }
+
+    /**
+     * Warm the query cache with the summaries of the cycles next to the selected one, so
+     * switching to them does not wait for the stats service.
+     */
+    private void prefetchAdjacentCycles() {
+        final int position = mCycleSpinner.getSelectedItemPosition();
+        if (position < 0) {
+            return;
+        }
+        final List<CycleAdapter.CycleItem> cycles = new ArrayList<>();
+        for (int i = position - 1; i <= position + 1; i += 2) {
+            if (i >= 0 && i < mCycleAdapter.getCount()) {
+                cycles.add(mCycleAdapter.getItem(i));
             }
-            largest = accumulate(collapseKey, knownItems, entry, category, items, largest);
         }
+        final NetworkTemplate template = mTemplate;
+        final INetworkStatsSession session = mStatsSession;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final DataUsageQueryCache cache = DataUsageQueryCache.getInstance();
+            for (CycleAdapter.CycleItem cycle : cycles) {
+                cache.loadSummary(session, template, cycle.start, cycle.end);
+            }
+        });
+    }
 
-        final int restrictedUidsMax = restrictedUids.length;
-        for (int i = 0; i < restrictedUidsMax; ++i) {
-            final int uid = restrictedUids[i];
-            // Only splice in restricted state for current user or managed users
-            if (!profiles.contains(new UserHandle(UserHandle.getUserId(uid)))) {
-                continue;
+    private static List<AppDataUsageAggregator.Row> aggregateStats(Context context,
+            NetworkStats stats, int[] restrictedUids) {
+        final UserManager userManager = UserManager.get(context);
+        return new AppDataUsageAggregator(userManager, ActivityManager.getCurrentUser(),
+                userManager.getUserProfiles()).aggregate(stats, restrictedUids);
+    }
+
+    /**
+     * Apply aggregated rows to the app list, reusing the existing preference of each key.
+     */
+    @VisibleForTesting
+    void bindRows(List<AppDataUsageAggregator.Row> rows) {
+        final long startTime = LatencyTracker.now();
+        final ArrayMap<String, AppDataUsagePreference> stalePreferences = new ArrayMap<>();
+        for (int i = 0, count = mApps.getPreferenceCount(); i < count; i++) {
+            final Preference preference = mApps.getPreference(i);
+            if (preference instanceof AppDataUsagePreference) {
+                stalePreferences.put(preference.getKey(), (AppDataUsagePreference) preference);
             }
+        }
+
+        for (int i = 0, size = rows.size(); i < size; i++) {
+            final AppDataUsageAggregator.Row row = rows.get(i);
+            final String key = String.valueOf(row.item.key);
+            AppDataUsagePreference preference = stalePreferences.remove(key);
+            if (preference != null) {
+                preference.setItem(row.item, row.percent);
+            } else {
+                preference = new AppDataUsagePreference(getContext(), row.item, row.percent,
+                        mUidDetailProvider);
+                preference.setKey(key);
+                preference.setOnPreferenceClickListener(mAppClickListener);
+                mApps.addPreference(preference);
+            }
+            preference.setOrder(i);
+        }
+        for (int i = 0, size = stalePreferences.size(); i < size; i++) {
+            mApps.removePreference(stalePreferences.valueAt(i));
+        }
+        updateEmptyVisible();
+
+        LatencyTracker.record("DataUsageList.bindRows", startTime);
+    }
 
-            AppItem item = knownItems.get(uid);
-            if (item == null) {
-                item = new AppItem(uid);
-                item.total = -1;
-                items.add(item);
-                knownItems.put(item.key, item);
+    private void updateEmptyVisible() {
+        if ((mApps.getPreferenceCount() != 0) !=
+                (getPreferenceScreen().getPreferenceCount() != 0)) {
+            if (mApps.getPreferenceCount() != 0) {
+                getPreferenceScreen().addPreference(mUsageAmount);
+                getPreferenceScreen().addPreference(mApps);
+            } else {
+                getPreferenceScreen().removeAll();
             }
-            item.restricted = true;
         }
+    }
 
-        Collections.sort(items);
-        mApps.removeAll();
-        for (int i = 0; i < items.size(); i++) {
-            final int percentTotal = largest != 0 ? (int) (items.get(i).total * 100 / largest) : 0;
-            AppDataUsagePreference preference = new AppDataUsagePreference(getContext(),
-                    items.get(i), percentTotal, mUidDetailProvider);
-            preference.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+    private final Preference.OnPreferenceClickListener mAppClickListener =
+            new Preference.OnPreferenceClickListener() {
                 @Override
                 public boolean onPreferenceClick(Preference preference) {
                     AppDataUsagePreference pref = (AppDataUsagePreference) preference;
@@ -420,10 +453,7 @@ public class DataUsageList extends DataUsageBase {
                     startAppDataUsage(item);
                     return true;
                 }
-            });
-            mApps.addPreference(preference);
-        }
-    }
+            };
 
     private void startAppDataUsage(AppItem item) {
         final Bundle args = new Bundle();
@@ -438,30 +468,6 @@ public class DataUsageList extends DataUsageBase {
                 .launch();
     }
 
-    /**
-     * Accumulate data usage of a network stats entry for the item mapped by the collapse key.
-     * Creates the item if needed.
-     *
-     * @param collapseKey  the collapse key used to map the item.
-     * @param knownItems   collection of known (already existing) items.
-     * @param entry        the network stats entry to extract data usage from.
-     * @param itemCategory the item is categorized on the list view by this category. Must be
-     */
-    private static long accumulate(int collapseKey, final SparseArray<AppItem> knownItems,
-            NetworkStats.Entry entry, int itemCategory, ArrayList<AppItem> items, long largest) {
-        final int uid = entry.uid;
-        AppItem item = knownItems.get(collapseKey);
-        if (item == null) {
-            item = new AppItem(collapseKey);
-            item.category = itemCategory;
-            items.add(item);
-            knownItems.put(item.key, item);
-        }
-        item.addUid(uid);
-        item.total += entry.rxBytes + entry.txBytes;
-        return Math.max(largest, item.total);
-    }
-
     /**
      * Test if device has a mobile data radio with SIM in ready state.
      */
@@ -566,38 +572,4 @@ public class DataUsageList extends DataUsageBase {
             mChart.setNetworkStats(null);
         }
     };
-
-    private final LoaderCallbacks<NetworkStats> mSummaryCallbacks = new LoaderCallbacks<
-            NetworkStats>() {
-        @Override
-        public Loader<NetworkStats> onCreateLoader(int id, Bundle args) {
-            return new SummaryForAllUidLoader(getActivity(), mStatsSession, args);
-        }
-
-        @Override
-        public void onLoadFinished(Loader<NetworkStats> loader, NetworkStats data) {
-            final int[] restrictedUids = services.mPolicyManager.getUidsWithPolicy(
-                    POLICY_REJECT_METERED_BACKGROUND);
-            bindStats(data, restrictedUids);
-            updateEmptyVisible();
-        }
-
-        @Override
-        public void onLoaderReset(Loader<NetworkStats> loader) {
-            bindStats(null, new int[0]);
-            updateEmptyVisible();
-        }
-
-        private void updateEmptyVisible() {
-            if ((mApps.getPreferenceCount() != 0) !=
-                    (getPreferenceScreen().getPreferenceCount() != 0)) {
-                if (mApps.getPreferenceCount() != 0) {
-                    getPreferenceScreen().addPreference(mUsageAmount);
-                    getPreferenceScreen().addPreference(mApps);
-                } else {
-                    getPreferenceScreen().removeAll();
-                }
-            }
-        }
-    };
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import android.net.INetworkStatsSession;
+import android.net.NetworkStats;
+import android.net.NetworkStatsHistory;
+import android.net.NetworkTemplate;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.net.ChartData;
+
+import java.util.Objects;
+
+/**
+ * Process-wide cache of data usage queries, so switching billing cycles or reopening an app's
+ * data usage does not query the stats service again.
+ *
+ * Entries are evicted by LRU once their estimated size exceeds {@link #MAX_SIZE_BYTES}, and are
+ * considered stale after {@link #MAX_AGE_MS}, the default stats poll interval. Callers
+ * invalidate the cache when they force a stats poll or see the {@link NetworkTemplate}'s policy
+ * change.
+ */
+public class DataUsageQueryCache {
+    private static final String TAG = "DataUsageQueryCache";
+
+    @VisibleForTesting
+    static final int MAX_SIZE_BYTES = 512 * 1024;
+    @VisibleForTesting
+    static final long MAX_AGE_MS = 30 * DateUtils.MINUTE_IN_MILLIS;
+
+    // Rough in-memory cost of one NetworkStats entry and one NetworkStatsHistory bucket.
+    private static final int STATS_ENTRY_BYTES = 72;
+    private static final int HISTORY_BUCKET_BYTES = 56;
+
+    // App key of summary queries, which cover all uids.
+    private static final int ALL_APPS = Integer.MIN_VALUE;
+
+    private static DataUsageQueryCache sInstance;
+
+    private final LruCache<Key, Entry> mCache = new LruCache<Key, Entry>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Entry entry) {
+            return entry.sizeBytes;
+        }
+    };
+
+    public static synchronized DataUsageQueryCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new DataUsageQueryCache();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    DataUsageQueryCache() {
+    }
+
+    /**
+     * @return the cached usage summary of all uids over [start, end), or {@code null}
+     */
+    public NetworkStats getSummary(NetworkTemplate template, long start, long end) {
+        return (NetworkStats) getValue(new Key(template, start, end, ALL_APPS));
+    }
+
+    public void putSummary(NetworkTemplate template, long start, long end, NetworkStats stats) {
+        if (stats != null) {
+            put(new Key(template, start, end, ALL_APPS),
+                    new Entry(stats, stats.size() * STATS_ENTRY_BYTES));
+        }
+    }
+
+    /**
+     * Return the usage summary of all uids over [start, end), querying {@code session} and
+     * caching the result on a miss.
+     *
+     * @return the summary, or {@code null} if the query failed
+     */
+    @WorkerThread
+    public NetworkStats loadSummary(INetworkStatsSession session, NetworkTemplate template,
+            long start, long end) {
+        NetworkStats stats = getSummary(template, start, end);
+        if (stats != null) {
+            return stats;
+        }
+        try {
+            stats = session.getSummaryForAllUid(template, start, end, false /* includeTags */);
+        } catch (RemoteException | RuntimeException e) {
+            // The session may have been closed while the query was pending.
+            Log.w(TAG, "Failed to load summary", e);
+            return null;
+        }
+        putSummary(template, start, end, stats);
+        return stats;
+    }
+
+    /**
+     * @return the cached chart data of the app with {@code appKey}, or {@code null}
+     */
+    public ChartData getAppChartData(NetworkTemplate template, int appKey) {
+        return (ChartData) getValue(new Key(template, 0, 0, appKey));
+    }
+
+    public void putAppChartData(NetworkTemplate template, int appKey, ChartData data) {
+        if (data != null) {
+            put(new Key(template, 0, 0, appKey), new Entry(data, (historySize(data.network)
+                    + historySize(data.detail) + historySize(data.detailDefault)
+                    + historySize(data.detailForeground)) * HISTORY_BUCKET_BYTES));
+        }
+    }
+
+    /**
+     * Drop every cached query of {@code template}.
+     */
+    public void invalidate(NetworkTemplate template) {
+        for (Key key : mCache.snapshot().keySet()) {
+            if (Objects.equals(key.template, template)) {
+                mCache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drop every cached query, e.g. after the stats were polled.
+     */
+    public void invalidateAll() {
+        mCache.evictAll();
+    }
+
+    private Object getValue(Key key) {
+        final Entry entry = mCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.loadedAtMs > MAX_AGE_MS) {
+            mCache.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private void put(Key key, Entry entry) {
+        // An entry larger than the cache would evict everything else and then itself.
+        if (entry.sizeBytes < MAX_SIZE_BYTES) {
+            mCache.put(key, entry);
+        }
+    }
+
+    private static int historySize(NetworkStatsHistory history) {
+        return history != null ? history.size() : 0;
+    }
+
+    private static final class Key {
+        final NetworkTemplate template;
+        final long start;
+        final long end;
+        final int appKey;
+
+        Key(NetworkTemplate template, long start, long end, int appKey) {
+            this.template = template;
+            this.start = start;
+            this.end = end;
+            this.appKey = appKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return start == other.start && end == other.end && appKey == other.appKey
+                    && Objects.equals(template, other.template);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(template, start, end, appKey);
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final int sizeBytes;
+        final long loadedAtMs = SystemClock.elapsedRealtime();
+
+        Entry(Object value, int sizeBytes) {
+            this.value = value;
+            this.sizeBytes = Math.max(1, sizeBytes);
+        }
+    }
+}
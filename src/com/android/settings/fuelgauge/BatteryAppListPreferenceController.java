@@ -54,6 +54,7 @@ import com.android.settingslib.core.lifecycle.LifecycleObserver;
 import com.android.settingslib.core.lifecycle.events.OnDestroy;
 import com.android.settingslib.core.lifecycle.events.OnPause;
 import com.android.settingslib.utils.StringUtil;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -63,6 +64,7 @@ import java.util.List;
  */
 public class BatteryAppListPreferenceController extends AbstractPreferenceController
         implements PreferenceControllerMixin, LifecycleObserver, OnPause, OnDestroy {
+    private static final String TAG = "BatteryAppListPrefCtrl";
     @VisibleForTesting
     static final boolean USE_FAKE_DATA = false;
     private static final int MAX_ITEMS_TO_LIST = USE_FAKE_DATA ? 30 : 10;
@@ -81,6 +83,14 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
     private InstrumentedPreferenceFragment mFragment;
     private Context mPrefContext;
     SparseArray<List<Anomaly>> mAnomalySparseArray;
+    /**
+     * Rows currently bound to the app list, keyed by preference key.
+     */
+    private ArrayMap<String, BatteryAppRow> mAppRows;
+    /**
+     * Incremented by each refresh, so stale background results can be discarded.
+     */
+    private int mRefreshGeneration;
 
     private Handler mHandler = new Handler(Looper.getMainLooper()) {
         @Override
@@ -187,6 +197,13 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         }
     }
 
+    /**
+     * Refresh the app list from {@code statsHelper}.
+     *
+     * The rows are aggregated on a background thread (coalescing, hiding, percent computation,
+     * sorting and top N selection), and only the difference with the rows currently shown is
+     * applied to the preferences on the main thread.
+     */
     public void refreshAppListGroup(BatteryStatsHelper statsHelper, boolean showAllApps) {
         if (!isAvailable()) {
             return;
@@ -195,28 +212,43 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         mBatteryStatsHelper = statsHelper;
         mAppListGroup.setTitle(R.string.power_usage_list_summary);
 
+        final int generation = ++mRefreshGeneration;
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final List<BatteryAppRow> rows = buildAppRows(statsHelper, showAllApps);
+            ThreadUtils.postOnMainThread(() -> {
+                // Drop results of a refresh that has been superseded by a newer one.
+                if (generation == mRefreshGeneration) {
+                    applyAppRows(rows);
+                }
+            });
+        });
+    }
+
+    /**
+     * Compute the rows to show for {@code statsHelper}. Must not touch any preference, since it
+     * runs on a background thread.
+     */
+    @VisibleForTesting
+    List<BatteryAppRow> buildAppRows(BatteryStatsHelper statsHelper, boolean showAllApps) {
+        final long startTime = System.currentTimeMillis();
+        final List<BatteryAppRow> rows = new ArrayList<>();
         final PowerProfile powerProfile = statsHelper.getPowerProfile();
         final BatteryStats stats = statsHelper.getStats();
         final double averagePower = powerProfile.getAveragePower(PowerProfile.POWER_SCREEN_FULL);
-        boolean addedSome = false;
         final int dischargeAmount = USE_FAKE_DATA ? 5000
                 : stats != null ? stats.getDischargeAmount(STATS_TYPE) : 0;
 
-        cacheRemoveAllPrefs(mAppListGroup);
-        mAppListGroup.setOrderingAsAdded(false);
-
         if (averagePower >= MIN_AVERAGE_POWER_THRESHOLD_MILLI_AMP || USE_FAKE_DATA) {
             final List<BatterySipper> usageList = getCoalescedUsageList(
                     USE_FAKE_DATA ? getFakeStats() : statsHelper.getUsageList());
             double hiddenPowerMah = showAllApps ? 0 :
                     mBatteryUtils.removeHiddenBatterySippers(usageList);
             mBatteryUtils.sortUsageList(usageList);
+            final double totalPower = USE_FAKE_DATA ? 4000 : statsHelper.getTotalPower();
 
             final int numSippers = usageList.size();
             for (int i = 0; i < numSippers; i++) {
                 final BatterySipper sipper = usageList.get(i);
-                double totalPower = USE_FAKE_DATA ? 4000 : statsHelper.getTotalPower();
-
                 final double percentOfTotal = mBatteryUtils.calculateBatteryPercent(
                         sipper.totalPowerMah, totalPower, hiddenPowerMah, dischargeAmount);
 
@@ -235,37 +267,75 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
                         entry.getLabel(),
                         userHandle);
 
-                final String key = extractKeyFromSipper(sipper);
-                PowerGaugePreference pref = (PowerGaugePreference) getCachedPreference(key);
-                if (pref == null) {
-                    pref = new PowerGaugePreference(mPrefContext, badgedIcon,
-                            contentDescription, entry);
-                    pref.setKey(key);
-                }
                 sipper.percent = percentOfTotal;
-                pref.setTitle(entry.getLabel());
-                pref.setOrder(i + 1);
-                pref.setPercent(percentOfTotal);
-                pref.shouldShowAnomalyIcon(false);
                 if (sipper.usageTimeMs == 0 && sipper.drainType == DrainType.APP) {
                     sipper.usageTimeMs = mBatteryUtils.getProcessTimeMs(
                             BatteryUtils.StatusType.FOREGROUND, sipper.uidObj, STATS_TYPE);
                 }
-                setUsageSummary(pref, sipper);
-                addedSome = true;
-                mAppListGroup.addPreference(pref);
-                if (mAppListGroup.getPreferenceCount() - getCachedCount()
-                        > (MAX_ITEMS_TO_LIST + 1)) {
+                rows.add(new BatteryAppRow(extractKeyFromSipper(sipper), entry, badgedIcon,
+                        contentDescription, entry.getLabel(), percentOfTotal,
+                        getUsageSummary(sipper), i + 1));
+                if (rows.size() > (MAX_ITEMS_TO_LIST + 1)) {
                     break;
                 }
             }
         }
-        if (!addedSome) {
+        BatteryUtils.logRuntime(TAG, "buildAppRows", startTime);
+        return rows;
+    }
+
+    /**
+     * Bind {@code rows} to the app list, reusing preferences by key and only updating the ones
+     * whose content changed since the last refresh.
+     */
+    @VisibleForTesting
+    void applyAppRows(List<BatteryAppRow> rows) {
+        if (mAppListGroup == null) {
+            return;
+        }
+        final long startTime = System.currentTimeMillis();
+        final ArrayMap<String, BatteryAppRow> previousRows = mAppRows;
+        final ArrayMap<String, BatteryAppRow> currentRows = new ArrayMap<>(rows.size());
+
+        cacheRemoveAllPrefs(mAppListGroup);
+        mAppListGroup.setOrderingAsAdded(false);
+
+        int updatedCount = 0;
+        for (int i = 0, size = rows.size(); i < size; i++) {
+            final BatteryAppRow row = rows.get(i);
+            currentRows.put(row.key, row);
+            PowerGaugePreference pref = (PowerGaugePreference) getCachedPreference(row.key);
+            if (pref == null) {
+                pref = new PowerGaugePreference(mPrefContext, row.badgedIcon,
+                        row.contentDescription, row.entry);
+                pref.setKey(row.key);
+            } else if (previousRows != null && row.isContentSame(previousRows.get(row.key))) {
+                if (pref.showAnomalyIcon()) {
+                    pref.shouldShowAnomalyIcon(false);
+                }
+                mAppListGroup.addPreference(pref);
+                continue;
+            }
+            updatedCount++;
+            pref.setTitle(row.title);
+            pref.setOrder(row.order);
+            pref.setPercent(row.percent);
+            pref.shouldShowAnomalyIcon(false);
+            pref.setSummary(row.summary);
+            mAppListGroup.addPreference(pref);
+        }
+        if (rows.isEmpty()) {
             addNotAvailableMessage();
         }
         removeCachedPrefs(mAppListGroup);
+        mAppRows = currentRows;
 
+        if (mAnomalySparseArray != null) {
+            refreshAnomalyIcon(mAnomalySparseArray);
+        }
         BatteryEntry.startRequestQueue();
+        BatteryUtils.logRuntime(TAG, "applyAppRows",
+                "rows=" + rows.size() + " updated=" + updatedCount, startTime);
     }
 
     /**
@@ -356,17 +426,27 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
 
     @VisibleForTesting
     void setUsageSummary(Preference preference, BatterySipper sipper) {
+        final CharSequence summary = getUsageSummary(sipper);
+        if (summary != null) {
+            preference.setSummary(summary);
+        }
+    }
+
+    /**
+     * @return the usage summary of {@code sipper}, or {@code null} if it shouldn't have one
+     */
+    private CharSequence getUsageSummary(BatterySipper sipper) {
         // Only show summary when usage time is longer than one minute
         final long usageTimeMs = sipper.usageTimeMs;
-        if (usageTimeMs >= DateUtils.MINUTE_IN_MILLIS) {
-            final CharSequence timeSequence =
-                    StringUtil.formatElapsedTime(mContext, usageTimeMs, false);
-            preference.setSummary(
-                    (sipper.drainType != DrainType.APP || mBatteryUtils.shouldHideSipper(sipper))
-                            ? timeSequence
-                            : TextUtils.expandTemplate(mContext.getText(R.string.battery_used_for),
-                                    timeSequence));
+        if (usageTimeMs < DateUtils.MINUTE_IN_MILLIS) {
+            return null;
         }
+        final CharSequence timeSequence =
+                StringUtil.formatElapsedTime(mContext, usageTimeMs, false);
+        return (sipper.drainType != DrainType.APP || mBatteryUtils.shouldHideSipper(sipper))
+                ? timeSequence
+                : TextUtils.expandTemplate(mContext.getText(R.string.battery_used_for),
+                        timeSequence);
     }
 
     @VisibleForTesting
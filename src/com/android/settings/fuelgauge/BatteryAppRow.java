@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+
+/**
+ * Immutable row of the battery app list, computed off the main thread by
+ * {@link BatteryAppListPreferenceController} and then bound to a {@link PowerGaugePreference}.
+ */
+final class BatteryAppRow {
+    final String key;
+    final BatteryEntry entry;
+    final Drawable badgedIcon;
+    final CharSequence contentDescription;
+    final CharSequence title;
+    final double percent;
+    final CharSequence summary;
+    final int order;
+
+    BatteryAppRow(String key, BatteryEntry entry, Drawable badgedIcon,
+            CharSequence contentDescription, CharSequence title, double percent,
+            CharSequence summary, int order) {
+        this.key = key;
+        this.entry = entry;
+        this.badgedIcon = badgedIcon;
+        this.contentDescription = contentDescription;
+        this.title = title;
+        this.percent = percent;
+        this.summary = summary;
+        this.order = order;
+    }
+
+    /**
+     * @return {@code true} if binding {@code other} would show exactly the same thing as this row
+     */
+    boolean isContentSame(BatteryAppRow other) {
+        return other != null
+                && TextUtils.equals(key, other.key)
+                && TextUtils.equals(title, other.title)
+                && Double.compare(percent, other.percent) == 0
+                && TextUtils.equals(summary, other.summary)
+                && order == other.order;
+    }
+}
@@ -34,6 +34,7 @@ import android.util.Log;
 
 import com.android.internal.os.BatterySipper;
 import com.android.settings.R;
+import com.android.settings.applications.AppLabelIconCache;
 import com.android.settingslib.Utils;
 
 import java.util.ArrayList;
@@ -292,6 +293,7 @@ public class BatteryEntry {
 
             // Convert package names to user-facing labels where possible
             IPackageManager ipm = AppGlobals.getPackageManager();
+            final AppLabelIconCache cache = AppLabelIconCache.getInstance(context);
             final int userId = UserHandle.getUserId(uid);
             for (int i = 0; i < packageLabels.length; i++) {
                 try {
@@ -302,13 +304,13 @@ public class BatteryEntry {
                                 + packageLabels[i] + ", user " + userId);
                         continue;
                     }
-                    CharSequence label = ai.loadLabel(pm);
-                    if (label != null) {
-                        packageLabels[i] = label.toString();
+                    final AppLabelIconCache.Entry entry = cache.get(pm, ai);
+                    if (entry.label != null) {
+                        packageLabels[i] = entry.label.toString();
                     }
-                    if (ai.icon != 0) {
+                    if (entry.hasIcon) {
                         defaultPackageName = packages[i];
-                        icon = ai.loadIcon(pm);
+                        icon = entry.getIcon();
                         break;
                     }
                 } catch (RemoteException e) {
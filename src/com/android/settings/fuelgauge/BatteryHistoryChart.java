@@ -39,8 +39,11 @@ import android.util.TimeUtils;
 import android.util.TypedValue;
 import android.view.View;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settings.R;
 import com.android.settings.Utils;
+import com.android.settings.core.instrumentation.LatencyTracker;
 
 import libcore.icu.LocaleData;
 
@@ -51,6 +54,8 @@ import java.util.Locale;
 public class BatteryHistoryChart extends View {
     static final boolean DEBUG = false;
     static final String TAG = "BatteryHistoryChart";
+    static final String BUILD_SPAN = TAG + ".build";
+    static final String DRAW_SPAN = TAG + ".draw";
 
     static final int CHART_DATA_X_MASK = 0x0000ffff;
     static final int CHART_DATA_BIN_MASK = 0xffff0000;
@@ -230,9 +235,27 @@ public class BatteryHistoryChart extends View {
     final ArrayList<TimeLabel> mTimeLabels = new ArrayList<TimeLabel>();
     final ArrayList<DateLabel> mDateLabels = new ArrayList<DateLabel>();
 
+    /**
+     * Cached rendering of everything except the header, rebuilt only when the paths change.
+     */
     Bitmap mBitmap;
     Canvas mCanvas;
 
+    /**
+     * Listener notified of how long the chart took to build and to draw a frame.
+     */
+    public interface OnChartRenderedListener {
+        /**
+         * @param buildTimeNs time spent replaying history into paths and rendering the static
+         *                    layer, 0 if they were reused
+         * @param drawTimeNs  time spent in {@link #onDraw(Canvas)} for this frame
+         */
+        void onChartRendered(long buildTimeNs, long drawTimeNs);
+    }
+
+    OnChartRenderedListener mOnChartRenderedListener;
+    long mLastBuildTimeNs;
+
     static class TextAttrs {
         ColorStateList textColor = null;
         int textSize = 15;
@@ -584,6 +607,8 @@ public class BatteryHistoryChart extends View {
                 mHavePhoneSignal = true;
             }
             if (mHistEnd <= mHistStart) mHistEnd = mHistStart+1;
+            mBitmap = null;
+            mCanvas = null;
         }, mStats, false /* shortString */);
     }
 
@@ -605,6 +630,24 @@ public class BatteryHistoryChart extends View {
                 getDefaultSize(mChartMinHeight+mHeaderHeight, heightMeasureSpec));
     }
 
+    /**
+     * Draws the level changes bucketed in pixel column {@code x} since the level path reached it
+     * at {@code y}, as a vertical segment ending on the last of them.
+     *
+     * @return the level the path leaves the column at
+     */
+    @VisibleForTesting
+    static int flushColumn(Path curLevelPath, int x, int y, int columnMinY, int columnMaxY,
+            int columnLastY) {
+        if (curLevelPath == null || (columnMinY == y && columnMaxY == y)) {
+            return y;
+        }
+        curLevelPath.lineTo(x, columnMinY);
+        curLevelPath.lineTo(x, columnMaxY);
+        curLevelPath.lineTo(x, columnLastY);
+        return columnLastY;
+    }
+
     void finishPaths(int w, int h, int levelh, int startX, int y, Path curLevelPath,
             int lastX, boolean lastCharging, boolean lastScreenOn, boolean lastGpsOn,
             boolean lastFlashlightOn, boolean lastCameraOn, boolean lastWifiRunning,
@@ -673,6 +716,7 @@ public class BatteryHistoryChart extends View {
 
         if (DEBUG) Log.d(TAG, "Rebuilding chart for: " + w + "x" + h);
 
+        final long buildStartNs = LatencyTracker.now();
         mLastWidth = w;
         mLastHeight = h;
         mBitmap = null;
@@ -767,6 +811,9 @@ public class BatteryHistoryChart extends View {
         mLevelBottom = mLevelTop + levelh;
 
         int x = mLevelLeft, y = 0, startX = mLevelLeft, lastX = -1, lastY = -1;
+        // Extremes of the battery level seen in the last plotted pixel column, so that several
+        // level changes landing in one column still show up as a single vertical segment.
+        int columnMinY = -1, columnMaxY = -1, columnLastY = -1;
         int i = 0;
         Path curLevelPath = null;
         Path lastLinePath = null;
@@ -797,8 +844,16 @@ public class BatteryHistoryChart extends View {
                     }
                     y = mLevelTop + levelh - ((rec.batteryLevel-batLow)*(levelh-1))/batChange;
 
-                    if (lastX != x) {
+                    if (lastX == x) {
+                        if (curLevelPath != null) {
+                            if (y < columnMinY) columnMinY = y;
+                            if (y > columnMaxY) columnMaxY = y;
+                            columnLastY = y;
+                        }
+                    } else {
                         // We have moved by at least a pixel.
+                        lastY = flushColumn(curLevelPath, lastX, lastY, columnMinY, columnMaxY,
+                                columnLastY);
                         if (lastY != y) {
                             // Don't plot changes within a pixel.
                             Path path;
@@ -829,6 +884,7 @@ public class BatteryHistoryChart extends View {
                             lastX = x;
                             lastY = y;
                         }
+                        columnMinY = columnMaxY = columnLastY = lastY;
                     }
 
                     if (mLargeMode) {
@@ -967,6 +1023,8 @@ public class BatteryHistoryChart extends View {
                             && (rec.cmd != HistoryItem.CMD_CURRENT_TIME
                                     || Math.abs(lastWalltime-curWalltime) > (60*60*1000))) {
                         if (curLevelPath != null) {
+                            lastY = flushColumn(curLevelPath, lastX, lastY, columnMinY,
+                                    columnMaxY, columnLastY);
                             finishPaths(x+1, h, levelh, startX, lastY, curLevelPath, lastX,
                                     lastCharging, lastScreenOn, lastGpsOn, lastFlashlightOn,
                                     lastCameraOn, lastWifiRunning, lastCpuRunning, lastLinePath);
@@ -982,6 +1040,7 @@ public class BatteryHistoryChart extends View {
                 i++;
             }
             mStats.finishIteratingHistoryLocked();
+            lastY = flushColumn(curLevelPath, lastX, lastY, columnMinY, columnMaxY, columnLastY);
         }
 
         if (lastY < 0 || lastX < 0) {
@@ -1102,6 +1161,14 @@ public class BatteryHistoryChart extends View {
             mDurationString = null;
             mDurationStringWidth = 0;
         }
+        mLastBuildTimeNs += LatencyTracker.now() - buildStartNs;
+    }
+
+    /**
+     * Set a listener notified with build and draw time of each frame, or {@code null} to remove.
+     */
+    public void setOnChartRenderedListener(OnChartRenderedListener listener) {
+        mOnChartRenderedListener = listener;
     }
 
     void addTimeLabel(Calendar cal, int levelLeft, int levelRight, boolean is24hr) {
@@ -1126,14 +1193,35 @@ public class BatteryHistoryChart extends View {
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
+        final long drawStartNs = LatencyTracker.now();
         final int width = getWidth();
         final int height = getHeight();
 
-        //buildBitmap(width, height);
-
         if (DEBUG) Log.d(TAG, "onDraw: " + width + "x" + height);
-        //canvas.drawBitmap(mBitmap, 0, 0, null);
-        drawChart(canvas, width, height);
+        if (width > 0 && height > 0) {
+            // The paths, labels and axes only change with the history or size, so they are
+            // rendered once into a layer; only the header is drawn every frame.
+            buildBitmap(width, height);
+            canvas.drawBitmap(mBitmap, 0, 0, null);
+        }
+        drawHeader(canvas, width);
+
+        final long drawTimeNs = LatencyTracker.now() - drawStartNs;
+        if (mLastBuildTimeNs > 0) {
+            LatencyTracker.recordDuration(BUILD_SPAN, mLastBuildTimeNs);
+        }
+        LatencyTracker.recordDuration(DRAW_SPAN, drawTimeNs);
+        if (mOnChartRenderedListener != null) {
+            mOnChartRenderedListener.onChartRendered(mLastBuildTimeNs, drawTimeNs);
+        }
+        mLastBuildTimeNs = 0;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mBitmap = null;
+        mCanvas = null;
     }
 
     void buildBitmap(int width, int height) {
@@ -1143,19 +1231,43 @@ public class BatteryHistoryChart extends View {
 
         if (DEBUG) Log.d(TAG, "buildBitmap: " + width + "x" + height);
 
+        final long buildStartNs = LatencyTracker.now();
         mBitmap = Bitmap.createBitmap(getResources().getDisplayMetrics(), width, height,
                 Bitmap.Config.ARGB_8888);
         mCanvas = new Canvas(mBitmap);
-        drawChart(mCanvas, width, height);
+        drawStaticLayer(mCanvas, width, height);
+        mLastBuildTimeNs += LatencyTracker.now() - buildStartNs;
     }
 
-    void drawChart(Canvas canvas, int width, int height) {
+    void drawHeader(Canvas canvas, int width) {
         final boolean layoutRtl = isLayoutRtl();
         final int textStartX = layoutRtl ? width : 0;
         final int textEndX = layoutRtl ? 0 : width;
         final Paint.Align textAlignLeft = layoutRtl ? Paint.Align.RIGHT : Paint.Align.LEFT;
         final Paint.Align textAlignRight = layoutRtl ? Paint.Align.LEFT : Paint.Align.RIGHT;
 
+        int headerTop = -mHeaderTextAscent + (mHeaderTextDescent-mHeaderTextAscent)/3;
+        mHeaderTextPaint.setTextAlign(textAlignLeft);
+        if (DEBUG) Log.d(TAG, "Drawing charge label string: " + mInfo.chargeLabel);
+        canvas.drawText(mInfo.chargeLabel.toString(), textStartX, headerTop,
+                mHeaderTextPaint);
+        int stringHalfWidth = mChargeDurationStringWidth / 2;
+        if (layoutRtl) stringHalfWidth = -stringHalfWidth;
+        int headerCenter = ((width-mChargeDurationStringWidth-mDrainStringWidth)/2)
+                + (layoutRtl ? mDrainStringWidth : mChargeLabelStringWidth);
+        if (DEBUG) Log.d(TAG, "Drawing charge duration string: " + mChargeDurationString);
+        canvas.drawText(mChargeDurationString, headerCenter - stringHalfWidth, headerTop,
+                mHeaderTextPaint);
+        mHeaderTextPaint.setTextAlign(textAlignRight);
+        if (DEBUG) Log.d(TAG, "Drawing drain string: " + mDrainString);
+        canvas.drawText(mDrainString, textEndX, headerTop, mHeaderTextPaint);
+    }
+
+    void drawStaticLayer(Canvas canvas, int width, int height) {
+        final boolean layoutRtl = isLayoutRtl();
+        final int textStartX = layoutRtl ? width : 0;
+        final Paint.Align textAlignLeft = layoutRtl ? Paint.Align.RIGHT : Paint.Align.LEFT;
+
         if (DEBUG) {
             canvas.drawRect(1, 1, width, height, mDebugRectPaint);
         }
@@ -1213,22 +1325,6 @@ public class BatteryHistoryChart extends View {
                     y, mTextPaint);
         }
 
-        int headerTop = -mHeaderTextAscent + (mHeaderTextDescent-mHeaderTextAscent)/3;
-        mHeaderTextPaint.setTextAlign(textAlignLeft);
-        if (DEBUG) Log.d(TAG, "Drawing charge label string: " + mInfo.chargeLabel);
-        canvas.drawText(mInfo.chargeLabel.toString(), textStartX, headerTop,
-                mHeaderTextPaint);
-        int stringHalfWidth = mChargeDurationStringWidth / 2;
-        if (layoutRtl) stringHalfWidth = -stringHalfWidth;
-        int headerCenter = ((width-mChargeDurationStringWidth-mDrainStringWidth)/2)
-                + (layoutRtl ? mDrainStringWidth : mChargeLabelStringWidth);
-        if (DEBUG) Log.d(TAG, "Drawing charge duration string: " + mChargeDurationString);
-        canvas.drawText(mChargeDurationString, headerCenter - stringHalfWidth, headerTop,
-                mHeaderTextPaint);
-        mHeaderTextPaint.setTextAlign(textAlignRight);
-        if (DEBUG) Log.d(TAG, "Drawing drain string: " + mDrainString);
-        canvas.drawText(mDrainString, textEndX, headerTop, mHeaderTextPaint);
-
         if (!mBatGoodPath.isEmpty()) {
             if (DEBUG) Log.d(TAG, "Drawing good battery path");
             canvas.drawPath(mBatGoodPath, mBatteryGoodPaint);
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * On-disk store of per-app battery usage snapshots, so usage can be queried across full charges.
+ *
+ * Each snapshot appends one fixed-width record per app holding its usage accumulated since the
+ * battery stats were last reset (the "session"). Records are appended to one file per day and
+ * read back through a memory mapping. Usage over a window is the growth of those cumulative
+ * values within each session, summed over the sessions overlapping the window.
+ *
+ * All the methods do disk IO and should be called on a background thread.
+ */
+public class BatteryUsageHistoryStore {
+    private static final String TAG = "BatteryUsageHistory";
+    private static final String DIRECTORY_NAME = "battery_usage_history";
+    private static final String FILE_PREFIX = "day_";
+
+    /**
+     * Record layout: timestamp (long), session start (long), uid (int), power in mAh (float),
+     * foreground time in ms (long).
+     */
+    @VisibleForTesting
+    static final int RECORD_SIZE = 8 + 8 + 4 + 4 + 8;
+    @VisibleForTesting
+    static final int RETAIN_DAYS = 60;
+
+    private static BatteryUsageHistoryStore sInstance;
+
+    private final Object mLock = new Object();
+    private final File mDirectory;
+
+    /**
+     * Accumulated usage of one app over a queried window.
+     */
+    public static class UsageSummary {
+        public final int uid;
+        public double powerMah;
+        public long foregroundTimeMs;
+
+        UsageSummary(int uid) {
+            this.uid = uid;
+        }
+    }
+
+    /**
+     * Cumulative usage of one app at the time of a snapshot.
+     */
+    public static class AppUsage {
+        final int uid;
+        final float powerMah;
+        final long foregroundTimeMs;
+
+        public AppUsage(int uid, double powerMah, long foregroundTimeMs) {
+            this.uid = uid;
+            this.powerMah = (float) powerMah;
+            this.foregroundTimeMs = foregroundTimeMs;
+        }
+    }
+
+    public static synchronized BatteryUsageHistoryStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BatteryUsageHistoryStore(
+                    new File(context.getApplicationContext().getFilesDir(), DIRECTORY_NAME));
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    BatteryUsageHistoryStore(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Append one snapshot.
+     *
+     * @param timestampMs      wall clock time of the snapshot
+     * @param sessionStartMs   wall clock time when the battery stats were last reset
+     * @param usages           cumulative usage of each app since {@code sessionStartMs}
+     */
+    @WorkerThread
+    public void appendSnapshot(long timestampMs, long sessionStartMs, List<AppUsage> usages) {
+        if (usages.isEmpty()) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * usages.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0, size = usages.size(); i < size; i++) {
+            final AppUsage usage = usages.get(i);
+            buffer.putLong(timestampMs)
+                    .putLong(sessionStartMs)
+                    .putInt(usage.uid)
+                    .putFloat(usage.powerMah)
+                    .putLong(usage.foregroundTimeMs);
+        }
+        buffer.flip();
+
+        synchronized (mLock) {
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                Log.w(TAG, "Failed to create " + mDirectory);
+                return;
+            }
+            final File file = getDayFile(getDay(timestampMs));
+            try (FileOutputStream out = new FileOutputStream(file, true /* append */);
+                 FileChannel channel = out.getChannel()) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to append snapshot to " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Query the usage of each app between {@code startMs} and {@code endMs}.
+     *
+     * The usage before the first snapshot of the window is taken from the last snapshot of the
+     * previous day, if any. Otherwise usage is only counted from the first snapshot in the window,
+     * unless the session itself started in the window.
+     *
+     * @return usage keyed by uid
+     */
+    @WorkerThread
+    public SparseArray<UsageSummary> queryUsage(long startMs, long endMs) {
+        // Cumulative values per session, then per uid: [baseline power, baseline fg time,
+        // last power, last fg time], with NaN meaning unset.
+        final LongSparseArray<SparseArray<double[]>> sessions = new LongSparseArray<>();
+
+        synchronized (mLock) {
+            // List the directory once rather than probing every day of a long window, and scan
+            // the day files in order since the records of a day build on the previous ones.
+            final File[] files = mDirectory.listFiles();
+            if (files != null) {
+                final long firstDay = Math.max(0, getDay(startMs) - 1);
+                final long lastDay = getDay(endMs);
+                final LongSparseArray<File> dayFiles = new LongSparseArray<>();
+                for (File file : files) {
+                    final long day = parseDay(file.getName());
+                    if (day >= firstDay && day <= lastDay) {
+                        dayFiles.put(day, file);
+                    }
+                }
+                for (int i = 0, count = dayFiles.size(); i < count; i++) {
+                    scanFile(dayFiles.valueAt(i), startMs, endMs, sessions);
+                }
+            }
+        }
+
+        final SparseArray<UsageSummary> result = new SparseArray<>();
+        for (int i = 0, sessionCount = sessions.size(); i < sessionCount; i++) {
+            final SparseArray<double[]> apps = sessions.valueAt(i);
+            for (int j = 0, appCount = apps.size(); j < appCount; j++) {
+                final double[] values = apps.valueAt(j);
+                if (Double.isNaN(values[2])) {
+                    // Only seen before the window.
+                    continue;
+                }
+                final int uid = apps.keyAt(j);
+                UsageSummary summary = result.get(uid);
+                if (summary == null) {
+                    summary = new UsageSummary(uid);
+                    result.put(uid, summary);
+                }
+                summary.powerMah += Math.max(0, values[2] - values[0]);
+                summary.foregroundTimeMs += Math.max(0, (long) (values[3] - values[1]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Delete the files older than {@link #RETAIN_DAYS} before {@code nowMs}.
+     */
+    @WorkerThread
+    public void deleteObsoleteFiles(long nowMs) {
+        final long firstRetainedDay = getDay(nowMs) - RETAIN_DAYS;
+        synchronized (mLock) {
+            final File[] files = mDirectory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                final long day = parseDay(file.getName());
+                if (day >= 0 && day < firstRetainedDay && !file.delete()) {
+                    Log.w(TAG, "Failed to delete " + file);
+                }
+            }
+        }
+    }
+
+    private void scanFile(File file, long startMs, long endMs,
+            LongSparseArray<SparseArray<double[]>> sessions) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // Ignore a trailing partial record left by an interrupted write.
+            final long size = channel.size() - channel.size() % RECORD_SIZE;
+            if (size == 0) {
+                return;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for (int offset = 0; offset < size; offset += RECORD_SIZE) {
+                final long timestampMs = buffer.getLong(offset);
+                if (timestampMs > endMs) {
+                    // Records are appended in time order.
+                    break;
+                }
+                final long sessionStartMs = buffer.getLong(offset + 8);
+                final int uid = buffer.getInt(offset + 16);
+                final double powerMah = buffer.getFloat(offset + 20);
+                final long foregroundTimeMs = buffer.getLong(offset + 24);
+
+                SparseArray<double[]> apps = sessions.get(sessionStartMs);
+                if (apps == null) {
+                    apps = new SparseArray<>();
+                    sessions.put(sessionStartMs, apps);
+                }
+                double[] values = apps.get(uid);
+                if (values == null) {
+                    values = new double[4];
+                    Arrays.fill(values, Double.NaN);
+                    apps.put(uid, values);
+                }
+                if (timestampMs < startMs) {
+                    values[0] = powerMah;
+                    values[1] = foregroundTimeMs;
+                    continue;
+                }
+                if (Double.isNaN(values[0])) {
+                    // No snapshot before the window: count from zero if the session started
+                    // in the window, from the first snapshot otherwise.
+                    final boolean sessionInWindow = sessionStartMs >= startMs;
+                    values[0] = sessionInWindow ? 0 : powerMah;
+                    values[1] = sessionInWindow ? 0 : foregroundTimeMs;
+                }
+                values[2] = powerMah;
+                values[3] = foregroundTimeMs;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file, e);
+        }
+    }
+
+    private File getDayFile(long day) {
+        return new File(mDirectory, FILE_PREFIX + day);
+    }
+
+    private static long getDay(long timestampMs) {
+        return timestampMs / DateUtils.DAY_IN_MILLIS;
+    }
+
+    private static long parseDay(String fileName) {
+        if (!fileName.startsWith(FILE_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(FILE_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.BatteryStats;
+import android.os.UserManager;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.internal.os.BatterySipper;
+import com.android.internal.os.BatteryStatsHelper;
+import com.android.settings.R;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** A JobService to periodically store per-app battery usage in {@link BatteryUsageHistoryStore} */
+public class BatteryUsageSnapshotJobService extends JobService {
+    private static final String TAG = "BatteryUsageSnapshot";
+
+    @VisibleForTesting
+    static final long SNAPSHOT_FREQUENCY_MS = TimeUnit.HOURS.toMillis(1);
+
+    public static void scheduleSnapshot(Context context) {
+        final JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+
+        final ComponentName component = new ComponentName(context,
+                BatteryUsageSnapshotJobService.class);
+        final JobInfo.Builder jobBuilder =
+                new JobInfo.Builder(R.integer.job_battery_usage_snapshot, component)
+                        .setPeriodic(SNAPSHOT_FREQUENCY_MS)
+                        .setPersisted(true);
+        final JobInfo pending = jobScheduler.getPendingJob(R.integer.job_battery_usage_snapshot);
+
+        // Don't schedule it if it already exists, to make sure it runs periodically even after
+        // reboot
+        if (pending == null && jobScheduler.schedule(jobBuilder.build())
+                != JobScheduler.RESULT_SUCCESS) {
+            Log.i(TAG, "Battery usage snapshot job service schedule failed.");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        final BatteryUsageHistoryStore store = BatteryUsageHistoryStore.getInstance(this);
+        final BatteryUtils batteryUtils = BatteryUtils.getInstance(this);
+        final UserManager userManager = getSystemService(UserManager.class);
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final BatteryStatsHelper statsHelper = new BatteryStatsHelper(this,
+                    true /* collectBatteryBroadcast */);
+            batteryUtils.initBatteryStatsHelper(statsHelper, null /* bundle */, userManager);
+            takeSnapshot(store, batteryUtils, statsHelper, System.currentTimeMillis());
+            jobFinished(params, false /* wantsReschedule */);
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        return false;
+    }
+
+    @VisibleForTesting
+    void takeSnapshot(BatteryUsageHistoryStore store, BatteryUtils batteryUtils,
+            BatteryStatsHelper statsHelper, long nowMs) {
+        final BatteryStats stats = statsHelper.getStats();
+        if (stats == null) {
+            return;
+        }
+        final List<BatterySipper> sippers = statsHelper.getUsageList();
+        final List<BatteryUsageHistoryStore.AppUsage> usages = new ArrayList<>(sippers.size());
+        for (int i = 0, size = sippers.size(); i < size; i++) {
+            final BatterySipper sipper = sippers.get(i);
+            if (sipper.uidObj == null) {
+                continue;
+            }
+            usages.add(new BatteryUsageHistoryStore.AppUsage(sipper.getUid(),
+                    sipper.totalPowerMah, batteryUtils.getProcessTimeMs(
+                            BatteryUtils.StatusType.FOREGROUND, sipper.uidObj,
+                            BatteryStats.STATS_SINCE_CHARGED)));
+        }
+        store.appendSnapshot(nowMs, stats.getStartClockTime(), usages);
+        store.deleteObsoleteFiles(nowMs);
+    }
+}
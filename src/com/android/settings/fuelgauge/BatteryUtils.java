@@ -43,6 +43,7 @@ import com.android.internal.os.BatterySipper;
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.internal.util.ArrayUtils;
 import com.android.settings.R;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.fuelgauge.anomaly.Anomaly;
 import com.android.settings.fuelgauge.batterytip.AnomalyInfo;
 import com.android.settings.fuelgauge.batterytip.StatsManagerConfig;
@@ -372,7 +373,18 @@ public class BatteryUtils {
     }
 
     public static void logRuntime(String tag, String message, long startTime) {
-        Log.d(tag, message + ": " + (System.currentTimeMillis() - startTime) + "ms");
+        logRuntime(tag, message, null /* details */, startTime);
+    }
+
+    /**
+     * Logs the runtime since {@code startTime} and records it in the latency span
+     * {@code tag.span}. {@code details} only go to the log, so that values such as counts do
+     * not create a span each.
+     */
+    public static void logRuntime(String tag, String span, String details, long startTime) {
+        final long runtime = System.currentTimeMillis() - startTime;
+        LatencyTracker.recordDuration(tag + "." + span, runtime * 1_000_000);
+        Log.d(tag, (details != null ? span + " " + details : span) + ": " + runtime + "ms");
     }
 
     /**
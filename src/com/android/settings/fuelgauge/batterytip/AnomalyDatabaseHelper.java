@@ -34,7 +34,7 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "BatteryDatabaseHelper";
 
     private static final String DATABASE_NAME = "battery_settings.db";
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 5;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({State.NEW,
@@ -50,6 +50,18 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
         String TABLE_ANOMALY = "anomaly";
     }
 
+    public interface Indexes {
+        /**
+         * Covers {@link BatteryDatabaseManager#queryAllAnomalies(long, int)}, which filters by
+         * state and a lower time bound and groups rows by uid.
+         */
+        String INDEX_STATE_TIME_UID = "anomaly_state_time_uid_index";
+        /**
+         * Lets the cleanup job delete one time partition at a time without a table scan.
+         */
+        String INDEX_TIME = "anomaly_time_index";
+    }
+
     public interface AnomalyColumns {
         /**
          * The package name of the anomaly app
@@ -92,6 +104,15 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
                     + AnomalyColumns.ANOMALY_STATE + "," + AnomalyColumns.TIME_STAMP_MS + ")"
                     + ")";
 
+    private static final String CREATE_STATE_TIME_UID_INDEX =
+            "CREATE INDEX " + Indexes.INDEX_STATE_TIME_UID + " ON " + Tables.TABLE_ANOMALY
+                    + "(" + AnomalyColumns.ANOMALY_STATE + "," + AnomalyColumns.TIME_STAMP_MS
+                    + "," + AnomalyColumns.UID + ")";
+
+    private static final String CREATE_TIME_INDEX =
+            "CREATE INDEX " + Indexes.INDEX_TIME + " ON " + Tables.TABLE_ANOMALY
+                    + "(" + AnomalyColumns.TIME_STAMP_MS + ")";
+
     private static AnomalyDatabaseHelper sSingleton;
 
     public static synchronized AnomalyDatabaseHelper getInstance(Context context) {
@@ -103,6 +124,9 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private AnomalyDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Anomaly broadcasts write in bursts while the battery tip loader reads, so let readers
+        // use their own connection instead of waiting on the writer.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -112,6 +136,8 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private void bootstrapDB(SQLiteDatabase db) {
         db.execSQL(CREATE_ANOMALY_TABLE);
+        db.execSQL(CREATE_STATE_TIME_UID_INDEX);
+        db.execSQL(CREATE_TIME_INDEX);
         Log.i(TAG, "Bootstrapped database");
     }
 
@@ -139,6 +165,8 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
     }
 
     private void dropTables(SQLiteDatabase db) {
+        db.execSQL("DROP INDEX IF EXISTS " + Indexes.INDEX_STATE_TIME_UID);
+        db.execSQL("DROP INDEX IF EXISTS " + Indexes.INDEX_TIME);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_ANOMALY);
     }
 }
@@ -63,6 +63,11 @@ public class AnomalyDetectionJobService extends JobService {
     static final int STATSD_UID_FILED = 1;
     @VisibleForTesting
     static final long MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(30);
+    /**
+     * Max number of work items whose anomalies are group-committed in one database transaction
+     */
+    @VisibleForTesting
+    static final int MAX_WORK_ITEMS_PER_COMMIT = 16;
 
     private final Object mLock = new Object();
     @GuardedBy("mLock")
@@ -103,14 +108,19 @@ public class AnomalyDetectionJobService extends JobService {
             final MetricsFeatureProvider metricsFeatureProvider = FeatureFactory
                     .getFactory(this).getMetricsFeatureProvider();
 
+            final List<JobWorkItem> pendingItems = new ArrayList<>();
             for (JobWorkItem item = dequeueWork(params); item != null; item = dequeueWork(params)) {
                 saveAnomalyToDatabase(context, userManager,
                         batteryDatabaseManager, batteryUtils, policy, powerWhitelistBackend,
                         contentResolver, powerUsageFeatureProvider, metricsFeatureProvider,
                         item.getIntent().getExtras());
 
-                completeWork(params, item);
+                pendingItems.add(item);
+                if (pendingItems.size() >= MAX_WORK_ITEMS_PER_COMMIT) {
+                    commitWork(params, batteryDatabaseManager, pendingItems);
+                }
             }
+            commitWork(params, batteryDatabaseManager, pendingItems);
         });
 
         return true;
@@ -164,11 +174,11 @@ public class AnomalyDetectionJobService extends JobService {
                     // Auto restrict this app
                     batteryUtils.setForceAppStandby(uid, packageName,
                             AppOpsManager.MODE_IGNORED);
-                    databaseManager.insertAnomaly(uid, packageName, anomalyInfo.anomalyType,
+                    databaseManager.enqueueAnomaly(uid, packageName, anomalyInfo.anomalyType,
                             AnomalyDatabaseHelper.State.AUTO_HANDLED,
                             timeMs);
                 } else {
-                    databaseManager.insertAnomaly(uid, packageName, anomalyInfo.anomalyType,
+                    databaseManager.enqueueAnomaly(uid, packageName, anomalyInfo.anomalyType,
                             AnomalyDatabaseHelper.State.NEW,
                             timeMs);
                 }
@@ -217,6 +227,20 @@ public class AnomalyDetectionJobService extends JobService {
         return UID_NULL;
     }
 
+    /**
+     * Store the buffered anomalies in one transaction, then mark {@code items} as completed so
+     * they are only dropped by the scheduler once their anomalies are persisted.
+     */
+    @VisibleForTesting
+    void commitWork(JobParameters parameters, BatteryDatabaseManager databaseManager,
+            List<JobWorkItem> items) {
+        databaseManager.flushPendingAnomalies();
+        for (int i = 0, size = items.size(); i < size; i++) {
+            completeWork(parameters, items.get(i));
+        }
+        items.clear();
+    }
+
     @VisibleForTesting
     JobWorkItem dequeueWork(JobParameters parameters) {
         synchronized (mLock) {
@@ -34,7 +34,12 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -44,19 +49,42 @@ import java.util.Map;
 /**
  * Database manager for battery data. Now it only contains anomaly data stored in {@link AppInfo}.
  *
- * This manager may be accessed by multi-threads. All the database related methods are synchronized
- * so each operation won't be interfered by other threads.
+ * This manager may be accessed by multi-threads. The database runs in write-ahead logging mode, so
+ * queries run on their own connection and are never blocked by writers. Writes are serialized by
+ * {@link #mWriteLock}. Anomalies can also be appended to an in-memory buffer with
+ * {@link #enqueueAnomaly(int, String, int, int, long)} and group-committed in a single transaction
+ * by {@link #flushPendingAnomalies()}.
  */
 public class BatteryDatabaseManager {
+    private static final String TAG = "BatteryDatabaseManager";
+
+    /**
+     * Max number of buffered anomalies before {@link #enqueueAnomaly} commits them by itself.
+     */
+    @VisibleForTesting
+    static final int MAX_PENDING_ANOMALIES = 64;
+
+    /**
+     * Size of the time partition deleted per transaction by
+     * {@link #deleteAllAnomaliesBeforeTimeStamp(long)}.
+     */
+    @VisibleForTesting
+    static final long CLEAN_UP_PARTITION_MS = DateUtils.DAY_IN_MILLIS;
+
     private static BatteryDatabaseManager sSingleton;
 
+    private final Object mWriteLock = new Object();
+    private final Object mPendingLock = new Object();
+    @GuardedBy("mPendingLock")
+    private List<ContentValues> mPendingAnomalies = new ArrayList<>();
+
     private AnomalyDatabaseHelper mDatabaseHelper;
 
     private BatteryDatabaseManager(Context context) {
         mDatabaseHelper = AnomalyDatabaseHelper.getInstance(context);
     }
 
-    public static BatteryDatabaseManager getInstance(Context context) {
+    public static synchronized BatteryDatabaseManager getInstance(Context context) {
         if (sSingleton == null) {
             sSingleton = new BatteryDatabaseManager(context);
         }
@@ -73,62 +101,136 @@ public class BatteryDatabaseManager {
      * @param timestampMs  the time when it is happened
      * @return {@code true} if insert operation succeed
      */
-    public synchronized boolean insertAnomaly(int uid, String packageName, int type,
-            int anomalyState,
+    public boolean insertAnomaly(int uid, String packageName, int type, int anomalyState,
             long timestampMs) {
-        try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
-            ContentValues values = new ContentValues();
-            values.put(UID, uid);
-            values.put(PACKAGE_NAME, packageName);
-            values.put(ANOMALY_TYPE, type);
-            values.put(ANOMALY_STATE, anomalyState);
-            values.put(TIME_STAMP_MS, timestampMs);
+        final ContentValues values = buildAnomalyValues(uid, packageName, type, anomalyState,
+                timestampMs);
+        synchronized (mWriteLock) {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
             return db.insertWithOnConflict(TABLE_ANOMALY, null, values, CONFLICT_IGNORE) != -1;
         }
     }
 
     /**
-     * Query all the anomalies that happened after {@code timestampMsAfter} and with {@code state}.
+     * Append an anomaly log to the write buffer. It is stored to database by the next
+     * {@link #flushPendingAnomalies()}, or right away once the buffer holds
+     * {@link #MAX_PENDING_ANOMALIES} entries.
+     *
+     * @see #insertAnomaly(int, String, int, int, long)
      */
-    public synchronized List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
-        final List<AppInfo> appInfos = new ArrayList<>();
-        try (SQLiteDatabase db = mDatabaseHelper.getReadableDatabase()) {
-            final String[] projection = {PACKAGE_NAME, ANOMALY_TYPE, UID};
-            final String orderBy = AnomalyDatabaseHelper.AnomalyColumns.TIME_STAMP_MS + " DESC";
-            final Map<Integer, AppInfo.Builder> mAppInfoBuilders = new ArrayMap<>();
-            final String selection = TIME_STAMP_MS + " > ? AND " + ANOMALY_STATE + " = ? ";
-            final String[] selectionArgs = new String[]{String.valueOf(timestampMsAfter),
-                    String.valueOf(state)};
-
-            try (Cursor cursor = db.query(TABLE_ANOMALY, projection, selection, selectionArgs,
-                    null /* groupBy */, null /* having */, orderBy)) {
-                while (cursor.moveToNext()) {
-                    final int uid = cursor.getInt(cursor.getColumnIndex(UID));
-                    if (!mAppInfoBuilders.containsKey(uid)) {
-                        final AppInfo.Builder builder = new AppInfo.Builder()
-                                .setUid(uid)
-                                .setPackageName(
-                                        cursor.getString(cursor.getColumnIndex(PACKAGE_NAME)));
-                        mAppInfoBuilders.put(uid, builder);
+    public void enqueueAnomaly(int uid, String packageName, int type, int anomalyState,
+            long timestampMs) {
+        final boolean bufferFull;
+        synchronized (mPendingLock) {
+            mPendingAnomalies.add(
+                    buildAnomalyValues(uid, packageName, type, anomalyState, timestampMs));
+            bufferFull = mPendingAnomalies.size() >= MAX_PENDING_ANOMALIES;
+        }
+        if (bufferFull) {
+            flushPendingAnomalies();
+        }
+    }
+
+    /**
+     * Store all the buffered anomalies to database in one transaction.
+     *
+     * @return number of anomalies that are newly inserted
+     */
+    public int flushPendingAnomalies() {
+        final List<ContentValues> pending;
+        synchronized (mPendingLock) {
+            if (mPendingAnomalies.isEmpty()) {
+                return 0;
+            }
+            pending = mPendingAnomalies;
+            mPendingAnomalies = new ArrayList<>();
+        }
+
+        int inserted = 0;
+        synchronized (mWriteLock) {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (int i = 0, size = pending.size(); i < size; i++) {
+                    if (db.insertWithOnConflict(TABLE_ANOMALY, null, pending.get(i),
+                            CONFLICT_IGNORE) != -1) {
+                        inserted++;
                     }
-                    mAppInfoBuilders.get(uid).addAnomalyType(
-                            cursor.getInt(cursor.getColumnIndex(ANOMALY_TYPE)));
                 }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
+        }
+        return inserted;
+    }
 
-            for (Integer uid : mAppInfoBuilders.keySet()) {
-                appInfos.add(mAppInfoBuilders.get(uid).build());
+    /**
+     * Query all the anomalies that happened after {@code timestampMsAfter} and with {@code state}.
+     *
+     * Buffered anomalies are flushed first so callers always see their own writes.
+     */
+    public List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
+        flushPendingAnomalies();
+
+        final List<AppInfo> appInfos = new ArrayList<>();
+        final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+        final String[] projection = {PACKAGE_NAME, ANOMALY_TYPE, UID};
+        final String orderBy = AnomalyDatabaseHelper.AnomalyColumns.TIME_STAMP_MS + " DESC";
+        final Map<Integer, AppInfo.Builder> mAppInfoBuilders = new ArrayMap<>();
+        final String selection = ANOMALY_STATE + " = ? AND " + TIME_STAMP_MS + " > ? ";
+        final String[] selectionArgs = new String[]{String.valueOf(state),
+                String.valueOf(timestampMsAfter)};
+
+        try (Cursor cursor = db.query(TABLE_ANOMALY, projection, selection, selectionArgs,
+                null /* groupBy */, null /* having */, orderBy)) {
+            final int uidIndex = cursor.getColumnIndex(UID);
+            final int packageNameIndex = cursor.getColumnIndex(PACKAGE_NAME);
+            final int anomalyTypeIndex = cursor.getColumnIndex(ANOMALY_TYPE);
+            while (cursor.moveToNext()) {
+                final int uid = cursor.getInt(uidIndex);
+                AppInfo.Builder builder = mAppInfoBuilders.get(uid);
+                if (builder == null) {
+                    builder = new AppInfo.Builder()
+                            .setUid(uid)
+                            .setPackageName(cursor.getString(packageNameIndex));
+                    mAppInfoBuilders.put(uid, builder);
+                }
+                builder.addAnomalyType(cursor.getInt(anomalyTypeIndex));
             }
         }
 
+        for (AppInfo.Builder builder : mAppInfoBuilders.values()) {
+            appInfos.add(builder.build());
+        }
+
         return appInfos;
     }
 
-    public synchronized void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
-        try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
-            db.delete(TABLE_ANOMALY, TIME_STAMP_MS + " < ?",
-                    new String[]{String.valueOf(timestampMs)});
+    /**
+     * Delete all the anomalies that happened before {@code timestampMs}.
+     *
+     * Rows are deleted one {@link #CLEAN_UP_PARTITION_MS} time partition per transaction, starting
+     * from the oldest record, so the write lock is only held briefly and pending inserts can
+     * interleave with a large cleanup.
+     */
+    public void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
+        flushPendingAnomalies();
+
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        int deleted = 0;
+        long start;
+        // Each round drops at least the oldest row, and the min lookup is served by the time
+        // index, so sparse history doesn't cost one round per empty partition.
+        while ((start = queryOldestTimestamp(db)) >= 0 && start < timestampMs) {
+            final long end = Math.min(start + CLEAN_UP_PARTITION_MS, timestampMs);
+            synchronized (mWriteLock) {
+                deleted += db.delete(TABLE_ANOMALY,
+                        TIME_STAMP_MS + " >= ? AND " + TIME_STAMP_MS + " < ?",
+                        new String[]{String.valueOf(start), String.valueOf(end)});
+            }
         }
+        Log.d(TAG, "Deleted " + deleted + " anomalies before " + timestampMs);
     }
 
     /**
@@ -137,19 +239,47 @@ public class BatteryDatabaseManager {
      * @param appInfos represents the anomalies
      * @param state    which state to update to
      */
-    public synchronized void updateAnomalies(List<AppInfo> appInfos, int state) {
+    public void updateAnomalies(List<AppInfo> appInfos, int state) {
         if (!appInfos.isEmpty()) {
+            flushPendingAnomalies();
+
             final int size = appInfos.size();
             final String[] whereArgs = new String[size];
             for (int i = 0; i < size; i++) {
                 whereArgs[i] = appInfos.get(i).packageName;
             }
-            try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
-                final ContentValues values = new ContentValues();
-                values.put(ANOMALY_STATE, state);
+            final ContentValues values = new ContentValues();
+            values.put(ANOMALY_STATE, state);
+            synchronized (mWriteLock) {
+                final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
                 db.update(TABLE_ANOMALY, values, PACKAGE_NAME + " IN (" + TextUtils.join(",",
                         Collections.nCopies(appInfos.size(), "?")) + ")", whereArgs);
             }
         }
     }
+
+    /**
+     * @return the oldest anomaly timestamp, or -1 if there is no anomaly
+     */
+    private long queryOldestTimestamp(SQLiteDatabase db) {
+        try (Cursor cursor = db.query(TABLE_ANOMALY, new String[]{"MIN(" + TIME_STAMP_MS + ")"},
+                null /* selection */, null /* selectionArgs */, null /* groupBy */,
+                null /* having */, null /* orderBy */)) {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        }
+        return -1;
+    }
+
+    private static ContentValues buildAnomalyValues(int uid, String packageName, int type,
+            int anomalyState, long timestampMs) {
+        final ContentValues values = new ContentValues();
+        values.put(UID, uid);
+        values.put(PACKAGE_NAME, packageName);
+        values.put(ANOMALY_TYPE, type);
+        values.put(ANOMALY_STATE, anomalyState);
+        values.put(TIME_STAMP_MS, timestampMs);
+        return values;
+    }
 }
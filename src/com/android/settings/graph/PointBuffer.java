@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.android.settings.graph;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of (x, y) points backed by primitive arrays, ordered by insertion.
+ *
+ * The backing arrays are only reallocated when the buffer grows, so a buffer that is cleared and
+ * refilled with a similar number of points does not allocate.
+ */
+final class PointBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private float[] mX = new float[INITIAL_CAPACITY];
+    private float[] mY = new float[INITIAL_CAPACITY];
+    private int mSize;
+
+    int size() {
+        return mSize;
+    }
+
+    float getX(int index) {
+        return mX[index];
+    }
+
+    float getY(int index) {
+        return mY[index];
+    }
+
+    float getLastX() {
+        return mX[mSize - 1];
+    }
+
+    float getLastY() {
+        return mY[mSize - 1];
+    }
+
+    void add(float x, float y) {
+        if (mSize == mX.length) {
+            final int capacity = mSize * 2;
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+        }
+        mX[mSize] = x;
+        mY[mSize] = y;
+        mSize++;
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+}
@@ -50,17 +50,23 @@ public class UsageGraph extends View {
     private final Drawable mTintedDivider;
     private final int mDividerSize;
 
-    private final Path mPath = new Path();
-
-    // Paths in coordinates they are passed in.
-    private final SparseIntArray mPaths = new SparseIntArray();
+    // Paths in coordinates they are passed in, ordered by x.
+    private final PointBuffer mPaths = new PointBuffer();
     // Paths in local coordinates for drawing.
-    private final SparseIntArray mLocalPaths = new SparseIntArray();
+    private final PointBuffer mLocalPaths = new PointBuffer();
 
-    // Paths for projection in coordinates they are passed in.
-    private final SparseIntArray mProjectedPaths = new SparseIntArray();
+    // Paths for projection in coordinates they are passed in, ordered by x.
+    private final PointBuffer mProjectedPaths = new PointBuffer();
     // Paths for projection in local coordinates for drawing.
-    private final SparseIntArray mLocalProjectedPaths = new SparseIntArray();
+    private final PointBuffer mLocalProjectedPaths = new PointBuffer();
+
+    // Scratch buffer holding the input reduced to its extremes per pixel column.
+    private final PointBuffer mDecimatedPaths = new PointBuffer();
+
+    // Drawing paths, rebuilt only when the data or the size changes.
+    private final Path mLinePath = new Path();
+    private final Path mFillPath = new Path();
+    private final Path mProjectedLinePath = new Path();
 
     private final int mCornerRadius;
     private int mAccentColor;
@@ -108,6 +114,7 @@ public class UsageGraph extends View {
         mLocalPaths.clear();
         mProjectedPaths.clear();
         mLocalProjectedPaths.clear();
+        buildDrawingPaths();
     }
 
     void setMax(int maxX, int maxY) {
@@ -137,18 +144,43 @@ public class UsageGraph extends View {
     }
 
     private void addPathAndUpdate(
-            SparseIntArray points, SparseIntArray paths, SparseIntArray localPaths) {
+            SparseIntArray points, PointBuffer paths, PointBuffer localPaths) {
         final long startTime = System.currentTimeMillis();
-        for (int i = 0, size = points.size(); i < size; i++) {
-            paths.put(points.keyAt(i), points.valueAt(i));
+        if (paths.size() == 0 || points.keyAt(0) > paths.getLastX()) {
+            // Paths are usually added in order, so just append them.
+            for (int i = 0, size = points.size(); i < size; i++) {
+                paths.add(points.keyAt(i), points.valueAt(i));
+            }
+            // Add a delimiting value immediately after the last point.
+            paths.add(points.keyAt(points.size() - 1) + 1, PATH_DELIM);
+        } else {
+            mergePath(points, paths);
         }
-        // Add a delimiting value immediately after the last point.
-        paths.put(points.keyAt(points.size() - 1) + 1, PATH_DELIM);
         calculateLocalPaths(paths, localPaths);
+        buildDrawingPaths();
         postInvalidate();
         BatteryUtils.logRuntime(LOG_TAG, "addPathAndUpdate", startTime);
     }
 
+    /**
+     * Merges {@code points} into {@code paths} when they overlap, keeping points ordered by x and
+     * letting new points replace existing ones at the same x.
+     */
+    private void mergePath(SparseIntArray points, PointBuffer paths) {
+        final SparseIntArray merged = new SparseIntArray(paths.size() + points.size() + 1);
+        for (int i = 0, size = paths.size(); i < size; i++) {
+            merged.put((int) paths.getX(i), (int) paths.getY(i));
+        }
+        for (int i = 0, size = points.size(); i < size; i++) {
+            merged.put(points.keyAt(i), points.valueAt(i));
+        }
+        merged.put(points.keyAt(points.size() - 1) + 1, PATH_DELIM);
+        paths.clear();
+        for (int i = 0, size = merged.size(); i < size; i++) {
+            paths.add(merged.keyAt(i), merged.valueAt(i));
+        }
+    }
+
     void setAccentColor(int color) {
         mAccentColor = color;
         mLinePaint.setColor(mAccentColor);
@@ -168,52 +200,100 @@ public class UsageGraph extends View {
     private void calculateLocalPaths() {
         calculateLocalPaths(mPaths, mLocalPaths);
         calculateLocalPaths(mProjectedPaths, mLocalProjectedPaths);
+        buildDrawingPaths();
     }
 
     @VisibleForTesting
-    void calculateLocalPaths(SparseIntArray paths, SparseIntArray localPaths) {
+    void calculateLocalPaths(PointBuffer paths, PointBuffer localPaths) {
         final long startTime = System.currentTimeMillis();
         if (getWidth() == 0) {
             return;
         }
         localPaths.clear();
+        decimatePaths(paths, mDecimatedPaths);
         // Store the local coordinates of the most recent point.
         int lx = 0;
         int ly = PATH_DELIM;
         boolean skippedLastPoint = false;
-        for (int i = 0; i < paths.size(); i++) {
-            int x = paths.keyAt(i);
-            int y = paths.valueAt(i);
+        for (int i = 0, size = mDecimatedPaths.size(); i < size; i++) {
+            final float x = mDecimatedPaths.getX(i);
+            final float y = mDecimatedPaths.getY(i);
             if (y == PATH_DELIM) {
                 if (i == 1) {
-                    localPaths.put(getX(x+1) - 1, getY(0));
+                    localPaths.add(getX(x + 1) - 1, getY(0));
                     continue;
                 }
-                if (i == paths.size() - 1 && skippedLastPoint) {
+                if (i == size - 1 && skippedLastPoint) {
                     // Add back skipped point to complete the path.
-                    localPaths.put(lx, ly);
+                    localPaths.add(lx, ly);
                 }
                 skippedLastPoint = false;
-                localPaths.put(lx + 1, PATH_DELIM);
+                localPaths.add(lx + 1, PATH_DELIM);
             } else {
                 lx = getX(x);
                 ly = getY(y);
                 // Skip this point if it is not far enough from the last one added.
                 if (localPaths.size() > 0) {
-                    int lastX = localPaths.keyAt(localPaths.size() - 1);
-                    int lastY = localPaths.valueAt(localPaths.size() - 1);
+                    final int lastX = (int) localPaths.getLastX();
+                    final int lastY = (int) localPaths.getLastY();
                     if (lastY != PATH_DELIM && !hasDiff(lastX, lx) && !hasDiff(lastY, ly)) {
                         skippedLastPoint = true;
                         continue;
                     }
                 }
                 skippedLastPoint = false;
-                localPaths.put(lx, ly);
+                localPaths.add(lx, ly);
             }
         }
         BatteryUtils.logRuntime(LOG_TAG, "calculateLocalPaths", startTime);
     }
 
+    /**
+     * Reduces each run of points falling into the same pixel column to its minimum and maximum,
+     * in their original order, so at most two points per column (plus the end of each path) are
+     * kept no matter how dense the input is. Delimiters are copied as is.
+     */
+    @VisibleForTesting
+    void decimatePaths(PointBuffer paths, PointBuffer decimated) {
+        decimated.clear();
+        final int size = paths.size();
+        int i = 0;
+        while (i < size) {
+            if (paths.getY(i) == PATH_DELIM) {
+                decimated.add(paths.getX(i), PATH_DELIM);
+                i++;
+                continue;
+            }
+            final int column = getX(paths.getX(i));
+            int minIndex = i;
+            int maxIndex = i;
+            int lastIndex = i;
+            while (lastIndex + 1 < size && paths.getY(lastIndex + 1) != PATH_DELIM
+                    && getX(paths.getX(lastIndex + 1)) == column) {
+                lastIndex++;
+                final float y = paths.getY(lastIndex);
+                if (y < paths.getY(minIndex)) {
+                    minIndex = lastIndex;
+                } else if (y > paths.getY(maxIndex)) {
+                    maxIndex = lastIndex;
+                }
+            }
+            final int first = Math.min(minIndex, maxIndex);
+            final int second = Math.max(minIndex, maxIndex);
+            decimated.add(paths.getX(first), paths.getY(first));
+            if (second != first) {
+                decimated.add(paths.getX(second), paths.getY(second));
+            }
+            // Keep the exact end of a path so it still closes where the data stops.
+            final boolean endOfPath = lastIndex + 1 >= size
+                    || paths.getY(lastIndex + 1) == PATH_DELIM;
+            if (endOfPath && lastIndex != second) {
+                decimated.add(paths.getX(lastIndex), paths.getY(lastIndex));
+            }
+            i = lastIndex + 1;
+        }
+    }
+
     private boolean hasDiff(int x1, int x2) {
         return Math.abs(x2 - x1) >= mCornerRadius;
     }
@@ -253,52 +333,59 @@ public class UsageGraph extends View {
             return;
         }
 
-        drawLinePath(canvas, mLocalProjectedPaths, mDottedPaint);
-        drawFilledPath(canvas, mLocalPaths, mFillPaint);
-        drawLinePath(canvas, mLocalPaths, mLinePaint);
+        canvas.drawPath(mProjectedLinePath, mDottedPaint);
+        canvas.drawPath(mFillPath, mFillPaint);
+        canvas.drawPath(mLinePath, mLinePaint);
         BatteryUtils.logRuntime(LOG_TAG, "onDraw", startTime);
     }
 
-    private void drawLinePath(Canvas canvas, SparseIntArray localPaths, Paint paint) {
+    private void buildDrawingPaths() {
+        buildLinePath(mLocalProjectedPaths, mProjectedLinePath);
+        buildFilledPath(mLocalPaths, mFillPath);
+        buildLinePath(mLocalPaths, mLinePath);
+    }
+
+    private void buildLinePath(PointBuffer localPaths, Path path) {
+        path.reset();
         if (localPaths.size() == 0) {
             return;
         }
-        mPath.reset();
-        mPath.moveTo(localPaths.keyAt(0), localPaths.valueAt(0));
+        path.moveTo(localPaths.getX(0), localPaths.getY(0));
         for (int i = 1; i < localPaths.size(); i++) {
-            int x = localPaths.keyAt(i);
-            int y = localPaths.valueAt(i);
+            final float x = localPaths.getX(i);
+            final float y = localPaths.getY(i);
             if (y == PATH_DELIM) {
                 if (++i < localPaths.size()) {
-                    mPath.moveTo(localPaths.keyAt(i), localPaths.valueAt(i));
+                    path.moveTo(localPaths.getX(i), localPaths.getY(i));
                 }
             } else {
-                mPath.lineTo(x, y);
+                path.lineTo(x, y);
             }
         }
-        canvas.drawPath(mPath, paint);
     }
 
-    private void drawFilledPath(Canvas canvas, SparseIntArray localPaths, Paint paint) {
-        mPath.reset();
-        float lastStartX = localPaths.keyAt(0);
-        mPath.moveTo(localPaths.keyAt(0), localPaths.valueAt(0));
+    private void buildFilledPath(PointBuffer localPaths, Path path) {
+        path.reset();
+        if (localPaths.size() == 0) {
+            return;
+        }
+        float lastStartX = localPaths.getX(0);
+        path.moveTo(localPaths.getX(0), localPaths.getY(0));
         for (int i = 1; i < localPaths.size(); i++) {
-            int x = localPaths.keyAt(i);
-            int y = localPaths.valueAt(i);
+            final float x = localPaths.getX(i);
+            final float y = localPaths.getY(i);
             if (y == PATH_DELIM) {
-                mPath.lineTo(localPaths.keyAt(i - 1), getHeight());
-                mPath.lineTo(lastStartX, getHeight());
-                mPath.close();
+                path.lineTo(localPaths.getX(i - 1), getHeight());
+                path.lineTo(lastStartX, getHeight());
+                path.close();
                 if (++i < localPaths.size()) {
-                    lastStartX = localPaths.keyAt(i);
-                    mPath.moveTo(localPaths.keyAt(i), localPaths.valueAt(i));
+                    lastStartX = localPaths.getX(i);
+                    path.moveTo(localPaths.getX(i), localPaths.getY(i));
                 }
             } else {
-                mPath.lineTo(x, y);
+                path.lineTo(x, y);
             }
         }
-        canvas.drawPath(mPath, paint);
     }
 
     private void drawDivider(int y, Canvas canvas, int tintColor) {
@@ -37,8 +37,10 @@ import android.os.Messenger;
 import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
+import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.AttributeSet;
 import android.util.IconDrawableFactory;
 import android.util.Log;
@@ -55,14 +57,16 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Adds the preferences specified by the {@link InjectedSetting} objects to a preference group.
  *
  * Duplicates some code from {@link android.content.pm.RegisteredServicesCache}. We do not use that
- * class directly because it is not a good match for our use case: we do not need the caching, and
- * so do not want the additional resource hit at app install/upgrade time; and we would have to
+ * class directly because it is not a good match for our use case: we do not need its persistent
+ * cache, and so do not want the additional resource hit at app install/upgrade time (parsed
+ * settings are only cached in memory, see {@link #sParsedSettings}); and we would have to
  * suppress the tie-breaking between multiple services reporting settings with the same name.
  * Code-sharing would require extracting {@link
  * android.content.pm.RegisteredServicesCache#parseServiceAttributes(android.content.res.Resources,
@@ -75,7 +79,14 @@ class SettingsInjector {
      * If reading the status of a setting takes longer than this, we go ahead and start reading
      * the next setting.
      */
-    private static final long INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS = 1000;
+    @VisibleForTesting
+    static final long INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Maximum number of settings whose status is loaded at the same time.
+     */
+    @VisibleForTesting
+    static final int MAX_CONCURRENT_LOADS = 3;
 
     /**
      * {@link Message#what} value for starting to load status values
@@ -102,6 +113,17 @@ class SettingsInjector {
 
     private final Handler mHandler;
 
+    /**
+     * Settings parsed from the meta-data of each service, so the XML is only parsed again when
+     * the package or the locale changes.
+     */
+    private static final Map<String, ParsedSetting> sParsedSettings = new ArrayMap<>();
+
+    /**
+     * The last status received for each setting, shown while its status is being reloaded.
+     */
+    private static final Map<InjectedSetting, Boolean> sLastKnownEnabled = new ArrayMap<>();
+
     public SettingsInjector(Context context) {
         mContext = context;
         mSettings = new HashSet<Setting>();
@@ -115,8 +137,6 @@ class SettingsInjector {
      * metadata.
      *
      * Duplicates some code from {@link android.content.pm.RegisteredServicesCache}.
-     *
-     * TODO: unit test
      */
     private List<InjectedSetting> getSettings(final UserHandle userHandle) {
         PackageManager pm = mContext.getPackageManager();
@@ -172,6 +192,29 @@ class SettingsInjector {
             return null;
         }
 
+        final String cacheKey = userHandle.getIdentifier() + "/" + si.packageName + "/" + si.name;
+        final String locales =
+                mContext.getResources().getConfiguration().getLocales().toLanguageTags();
+        synchronized (sParsedSettings) {
+            final ParsedSetting parsed = sParsedSettings.get(cacheKey);
+            if (parsed != null && parsed.matches(ai, locales)) {
+                return parsed.setting;
+            }
+        }
+
+        final InjectedSetting setting = parseMetaData(service, userHandle, pm);
+        if (setting != null) {
+            synchronized (sParsedSettings) {
+                sParsedSettings.put(cacheKey, new ParsedSetting(setting, ai, locales));
+            }
+        }
+        return setting;
+    }
+
+    @VisibleForTesting
+    InjectedSetting parseMetaData(ResolveInfo service, UserHandle userHandle,
+            PackageManager pm) throws XmlPullParserException, IOException {
+        final ServiceInfo si = service.serviceInfo;
         XmlResourceParser parser = null;
         try {
             parser = si.loadXmlMetaData(pm, SettingInjectorService.META_DATA_NAME);
@@ -258,7 +301,11 @@ class SettingsInjector {
                 Iterable<InjectedSetting> settings = getSettings(userHandle);
                 for (InjectedSetting setting : settings) {
                     Preference pref = addServiceSetting(prefContext, prefs, setting);
-                    mSettings.add(new Setting(setting, pref));
+                    // Replace any setting of a previous call, so its status goes to the new
+                    // preference.
+                    final Setting newSetting = new Setting(setting, pref);
+                    mSettings.remove(newSetting);
+                    mSettings.add(newSetting);
                 }
             }
         }
@@ -324,6 +371,12 @@ class SettingsInjector {
         pref.setTitle(info.title);
         pref.setSummary(null);
         pref.setIcon(appIcon);
+        synchronized (sLastKnownEnabled) {
+            final Boolean enabled = sLastKnownEnabled.get(info);
+            if (enabled != null) {
+                pref.setEnabled(enabled);
+            }
+        }
         pref.setOnPreferenceClickListener(new ServiceSettingClickedListener(info));
         prefs.add(pref);
         return pref;
@@ -361,9 +414,9 @@ class SettingsInjector {
     }
 
     /**
-     * Loads the setting status values one at a time. Each load starts a subclass of {@link
-     * SettingInjectorService}, so to reduce memory pressure we don't want to load too many at
-     * once.
+     * Loads the setting status values, up to {@link #MAX_CONCURRENT_LOADS} at a time. Each load
+     * starts a subclass of {@link SettingInjectorService}, so to reduce memory pressure we don't
+     * want to load too many at once.
      */
     private final class StatusLoadingHandler extends Handler {
 
@@ -373,15 +426,15 @@ class SettingsInjector {
         private Set<Setting> mSettingsToLoad = new HashSet<Setting>();
 
         /**
-         * Settings that are being loaded now and haven't timed out. In practice this should have
-         * zero or one elements.
+         * Settings that are being loaded now and haven't timed out. This has at most {@link
+         * #MAX_CONCURRENT_LOADS} elements.
          */
         private Set<Setting> mSettingsBeingLoaded = new HashSet<Setting>();
 
         /**
-         * Settings that are being loaded but have timed out. If only one setting has timed out, we
-         * will go ahead and start loading the next setting so that one slow load won't delay the
-         * load of the other settings.
+         * Settings that are being loaded but have timed out. Unless too many settings have timed
+         * out, we will go ahead and start loading the next settings so that slow loads won't delay
+         * the load of the other settings.
          */
         private Set<Setting> mTimedOutSettings = new HashSet<Setting>();
 
@@ -421,19 +474,6 @@ class SettingsInjector {
                     Log.wtf(TAG, "Unexpected what: " + msg);
             }
 
-            // Decide whether to load additional settings based on the new state. Start by seeing
-            // if we have headroom to load another setting.
-            if (mSettingsBeingLoaded.size() > 0 || mTimedOutSettings.size() > 1) {
-                // Don't load any more settings until one of the pending settings has completed.
-                // To reduce memory pressure, we want to be loading at most one setting (plus at
-                // most one timed-out setting) at a time. This means we'll be responsible for
-                // bringing in at most two services.
-                if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                    Log.v(TAG, "too many services already live for " + msg + ", " + this);
-                }
-                return;
-            }
-
             if (mReloadRequested && mSettingsToLoad.isEmpty() && mSettingsBeingLoaded.isEmpty()
                     && mTimedOutSettings.isEmpty()) {
                 if (Log.isLoggable(TAG, Log.VERBOSE)) {
@@ -444,29 +484,41 @@ class SettingsInjector {
                 mReloadRequested = false;
             }
 
-            // Remove the next setting to load from the queue, if any
-            Iterator<Setting> iter = mSettingsToLoad.iterator();
-            if (!iter.hasNext()) {
-                if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                    Log.v(TAG, "nothing left to do for " + msg + ", " + this);
+            // Load as many additional settings as there is headroom for. To reduce memory
+            // pressure, we want to be loading at most MAX_CONCURRENT_LOADS settings (plus at most
+            // as many timed-out settings) at a time.
+            while (mSettingsBeingLoaded.size() < MAX_CONCURRENT_LOADS
+                    && mTimedOutSettings.size() <= MAX_CONCURRENT_LOADS) {
+                // Remove the next setting to load from the queue, if any
+                Iterator<Setting> iter = mSettingsToLoad.iterator();
+                if (!iter.hasNext()) {
+                    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                        Log.v(TAG, "nothing left to do for " + msg + ", " + this);
+                    }
+                    return;
                 }
-                return;
-            }
-            Setting setting = iter.next();
-            iter.remove();
+                Setting setting = iter.next();
+                iter.remove();
 
-            // Request the status value
-            setting.startService();
-            mSettingsBeingLoaded.add(setting);
+                // Request the status value
+                if (!setting.startService()) {
+                    continue;
+                }
+                mSettingsBeingLoaded.add(setting);
 
-            // Ensure that if receiving the status value takes too long, we start loading the
-            // next value anyway
-            Message timeoutMsg = obtainMessage(WHAT_TIMEOUT, setting);
-            sendMessageDelayed(timeoutMsg, INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
+                // Ensure that if receiving the status value takes too long, we start loading the
+                // next value anyway
+                Message timeoutMsg = obtainMessage(WHAT_TIMEOUT, setting);
+                sendMessageDelayed(timeoutMsg, INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
 
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "handleMessage end " + msg + ", " + this
-                        + ", started loading " + setting);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "handleMessage " + msg + ", " + this
+                            + ", started loading " + setting);
+                }
+            }
+
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "too many services already live for " + msg + ", " + this);
             }
         }
 
@@ -520,8 +572,10 @@ class SettingsInjector {
         /**
          * Starts the service to fetch for the current status for the setting, and updates the
          * preference when the service replies.
+         *
+         * @return false if the service could not be started
          */
-        public void startService() {
+        public boolean startService() {
             final ActivityManager am = (ActivityManager)
                     mContext.getSystemService(Context.ACTIVITY_SERVICE);
             if (!am.isUserRunning(setting.mUserHandle.getIdentifier())) {
@@ -529,7 +583,7 @@ class SettingsInjector {
                     Log.v(TAG, "Cannot start service as user "
                             + setting.mUserHandle.getIdentifier() + " is not running");
                 }
-                return;
+                return false;
             }
             Handler handler = new Handler() {
                 @Override
@@ -541,6 +595,9 @@ class SettingsInjector {
                     }
                     preference.setSummary(null);
                     preference.setEnabled(enabled);
+                    synchronized (sLastKnownEnabled) {
+                        sLastKnownEnabled.put(setting, enabled);
+                    }
                     mHandler.sendMessage(
                             mHandler.obtainMessage(WHAT_RECEIVED_STATUS, Setting.this));
                 }
@@ -561,6 +618,7 @@ class SettingsInjector {
             // Start the service, making sure that this is attributed to the user associated with
             // the setting rather than the system user.
             mContext.startServiceAsUser(intent, setting.mUserHandle);
+            return true;
         }
 
         public long getElapsedTime() {
@@ -575,4 +633,27 @@ class SettingsInjector {
             }
         }
     }
+
+    /**
+     * A setting parsed from the meta-data of a given version of its package.
+     */
+    private static final class ParsedSetting {
+        final InjectedSetting setting;
+        final long versionCode;
+        final String sourceDir;
+        final String locales;
+
+        ParsedSetting(InjectedSetting setting, ApplicationInfo ai, String locales) {
+            this.setting = setting;
+            this.versionCode = ai.longVersionCode;
+            this.sourceDir = ai.sourceDir;
+            this.locales = locales;
+        }
+
+        boolean matches(ApplicationInfo ai, String locales) {
+            return versionCode == ai.longVersionCode
+                    && TextUtils.equals(sourceDir, ai.sourceDir)
+                    && TextUtils.equals(this.locales, locales);
+        }
+    }
 }
@@ -60,6 +60,7 @@ import androidx.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.indexing.IndexData;
 import com.android.settings.search.indexing.IndexDataConverter;
@@ -97,6 +98,7 @@ public class DatabaseIndexingManager {
      */
     public void performIndexing() {
         final long startTime = System.currentTimeMillis();
+        final long indexingStartTime = LatencyTracker.now();
         final Intent intent = new Intent(SearchIndexablesContract.PROVIDER_INTERFACE);
         final List<ResolveInfo> providers =
                 mContext.getPackageManager().queryIntentContentProviders(intent, 0);
@@ -116,7 +118,9 @@ public class DatabaseIndexingManager {
         PreIndexData indexData = getIndexDataFromProviders(providers, isFullIndex);
 
         final long updateDatabaseStartTime = System.currentTimeMillis();
+        final long updateStartTime = LatencyTracker.now();
         updateDatabase(indexData, isFullIndex);
+        LatencyTracker.record("DatabaseIndexingManager.updateDatabase", updateStartTime);
         if (SettingsSearchIndexablesProvider.DEBUG) {
             final long updateDatabaseTime = System.currentTimeMillis() - updateDatabaseStartTime;
             Log.d(LOG_TAG, "performIndexing updateDatabase took time: " + updateDatabaseTime);
@@ -126,6 +130,9 @@ public class DatabaseIndexingManager {
         IndexDatabaseHelper.setLocaleIndexed(mContext, localeStr);
         IndexDatabaseHelper.setBuildIndexed(mContext, fingerprint);
         IndexDatabaseHelper.setProvidersIndexed(mContext, providerVersionedNames);
+        LatencyTracker.record(isFullIndex
+                ? "DatabaseIndexingManager.performFullIndexing"
+                : "DatabaseIndexingManager.performIndexing", indexingStartTime);
 
         if (SettingsSearchIndexablesProvider.DEBUG) {
             final long indexingTime = System.currentTimeMillis() - startTime;
@@ -55,6 +55,7 @@ import android.util.ArraySet;
 import android.util.Log;
 
 import com.android.settings.SettingsActivity;
+import com.android.settings.core.instrumentation.LatencyTracker;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
@@ -191,6 +192,7 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
         for (Class<?> clazz : values) {
             final long startTime = System.currentTimeMillis();
+            final long spanStartTime = LatencyTracker.now();
             Indexable.SearchIndexProvider provider = DatabaseIndexingUtils.getSearchIndexProvider(
                     clazz);
 
@@ -211,6 +213,8 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                 continue;
             }
 
+            LatencyTracker.record("SearchIndexProvider.getNonIndexableKeys", spanStartTime);
+
             if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
                 if (DEBUG) {
                     final long totalTime = System.currentTimeMillis() - startTime;
@@ -30,9 +30,13 @@ import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.internal.util.Preconditions;
 import com.android.settings.R;
 
+import java.util.Arrays;
+
 import static android.text.format.DateUtils.DAY_IN_MILLIS;
 import static android.text.format.DateUtils.WEEK_IN_MILLIS;
 
@@ -56,6 +60,23 @@ public class ChartNetworkSeriesView extends View {
 
     private NetworkStatsHistory mStats;
 
+    /** Start time of each bucket of {@link #mStats}. */
+    private long[] mBucketStarts = new long[0];
+    /** Total bytes of the buckets of {@link #mStats} before each index, so ranges are O(1). */
+    private long[] mCumulativeBytes = new long[1];
+    private long mBucketDuration;
+
+    /**
+     * Series outline in (x, total bytes) space, at most one point per pixel column. Only the
+     * vertical mapping is redone when the data axis changes, e.g. while dragging a sweep.
+     */
+    private float[] mPointX = new float[0];
+    private long[] mPointBytes = new long[0];
+    private int mPointCount;
+    private boolean mPointsValid = false;
+    private int mPointsHorizHash;
+    private int mPointsWidth;
+
     private Path mPathStroke;
     private Path mPathFill;
     private Path mPathEstimate;
@@ -74,6 +95,9 @@ public class ChartNetworkSeriesView extends View {
 
     private long mMax;
     private long mMaxEstimate;
+    /** Total bytes and end time of the last bucket included in the outline points. */
+    private long mPointsTotal;
+    private long mPointsEndTime;
 
     public ChartNetworkSeriesView(Context context) {
         this(context, null, 0);
@@ -143,11 +167,16 @@ public class ChartNetworkSeriesView extends View {
 
     public void bindNetworkStats(NetworkStatsHistory stats) {
         mStats = stats;
+        buildCumulativeBytes();
+        mPointsValid = false;
         invalidatePath();
         invalidate();
     }
 
     public void setBounds(long start, long end) {
+        if (mStart != start || mEnd != end) {
+            mPointsValid = false;
+        }
         mStart = start;
         mEnd = end;
     }
@@ -162,50 +191,84 @@ public class ChartNetworkSeriesView extends View {
         invalidate();
     }
 
+    private void buildCumulativeBytes() {
+        final int size = mStats != null ? mStats.size() : 0;
+        mBucketStarts = new long[size];
+        mCumulativeBytes = new long[size + 1];
+        mBucketDuration = mStats != null ? mStats.getBucketDuration() : 0;
+
+        NetworkStatsHistory.Entry entry = null;
+        for (int i = 0; i < size; i++) {
+            entry = mStats.getValues(i, entry);
+            mBucketStarts[i] = entry.bucketStart;
+            mCumulativeBytes[i + 1] = mCumulativeBytes[i] + entry.rxBytes + entry.txBytes;
+        }
+    }
+
     /**
-     * Erase any existing {@link Path} and generate series outline based on
-     * currently bound {@link NetworkStatsHistory} data.
+     * Total bytes of the bound {@link NetworkStatsHistory} over [start, end), prorating the
+     * buckets crossing either end like {@link NetworkStatsHistory#getValues}.
      */
-    private void generatePath() {
-        if (LOGD) Log.d(TAG, "generatePath()");
+    @VisibleForTesting
+    long getTotalBytes(long start, long end) {
+        final int size = mBucketStarts.length;
+        if (size == 0 || end <= start) {
+            return 0;
+        }
+        // first bucket ending after start, last bucket starting before end
+        int first = Arrays.binarySearch(mBucketStarts, start - mBucketDuration + 1);
+        first = first >= 0 ? first : -first - 1;
+        int last = Arrays.binarySearch(mBucketStarts, end - 1);
+        last = last >= 0 ? last : -last - 2;
+        if (first >= size || last < 0 || first > last) {
+            return 0;
+        }
 
-        mMax = 0;
-        mPathStroke.reset();
-        mPathFill.reset();
-        mPathEstimate.reset();
-        mPathValid = true;
+        if (first == last) {
+            return getOverlapBytes(first, start, end);
+        }
+        return getOverlapBytes(first, start, end)
+                + mCumulativeBytes[last] - mCumulativeBytes[first + 1]
+                + getOverlapBytes(last, start, end);
+    }
 
-        // bail when not enough stats to render
-        if (mStats == null || mStats.size() < 2) {
-            return;
+    private long getOverlapBytes(int index, long start, long end) {
+        final long bucketStart = mBucketStarts[index];
+        final long bucketEnd = bucketStart + mBucketDuration;
+        final long overlap = Math.min(bucketEnd, end) - Math.max(bucketStart, start);
+        if (overlap == mBucketDuration) {
+            return getBucketBytes(index);
         }
+        return getBucketBytes(index) * overlap / mBucketDuration;
+    }
 
-        final int width = getWidth();
-        final int height = getHeight();
+    private long getBucketBytes(int index) {
+        return mCumulativeBytes[index + 1] - mCumulativeBytes[index];
+    }
 
-        boolean started = false;
-        float lastX = 0;
-        float lastY = height;
-        long lastTime = mHoriz.convertToValue(lastX);
+    /**
+     * Generate the series outline in (x, total bytes) space from the bound
+     * {@link NetworkStatsHistory}, keeping the last point of each pixel column. The total only
+     * grows, so the last point of a column is also its highest.
+     */
+    private void generatePoints() {
+        mPointCount = 0;
+        mPointsValid = true;
+        mPointsHorizHash = mHoriz.hashCode();
+        mPointsWidth = getWidth();
 
-        // move into starting position
-        mPathStroke.moveTo(lastX, lastY);
-        mPathFill.moveTo(lastX, lastY);
+        long lastTime = mHoriz.convertToValue(0);
+        long totalData = 0;
+        boolean started = false;
 
         // TODO: count fractional data from first bucket crossing start;
         // currently it only accepts first full bucket.
 
-        long totalData = 0;
-
-        NetworkStatsHistory.Entry entry = null;
-
         final int start = mStats.getIndexBefore(mStart);
-        final int end = mStats.getIndexAfter(mEnd);
-        for (int i = start; i <= end; i++) {
-            entry = mStats.getValues(i, entry);
-
-            final long startTime = entry.bucketStart;
-            final long endTime = startTime + entry.bucketDuration;
+        final int end = Math.min(mStats.getIndexAfter(mEnd), mBucketStarts.length - 1);
+        for (int i = Math.max(start, 0); i <= end; i++) {
+            final long startTime = mBucketStarts[i];
+            final long endTime = startTime + mBucketDuration;
 
             final float startX = mHoriz.convertToPoint(startTime);
             final float endX = mHoriz.convertToPoint(endTime);
@@ -213,35 +276,90 @@ public class ChartNetworkSeriesView extends View {
             // skip until we find first stats on screen
             if (endX < 0) continue;
 
-            // increment by current bucket total
-            totalData += entry.rxBytes + entry.txBytes;
-
-            final float startY = lastY;
-            final float endY = mVert.convertToPoint(totalData);
-
             if (lastTime != startTime) {
                 // gap in buckets; line to start of current bucket
-                mPathStroke.lineTo(startX, startY);
-                mPathFill.lineTo(startX, startY);
+                addPoint(startX, started ? totalData : -1);
             }
 
-            // always draw to end of current bucket
-            mPathStroke.lineTo(endX, endY);
-            mPathFill.lineTo(endX, endY);
+            // increment by current bucket total, always draw to end of current bucket
+            totalData += getBucketBytes(i);
+            addPoint(endX, totalData);
 
-            lastX = endX;
-            lastY = endY;
+            started = true;
             lastTime = endTime;
         }
 
         // when data falls short, extend to requested end time
         if (lastTime < mEndTime) {
-            lastX = mHoriz.convertToPoint(mEndTime);
+            addPoint(mHoriz.convertToPoint(mEndTime), started ? totalData : -1);
+        }
+
+        mPointsTotal = totalData;
+        mPointsEndTime = lastTime;
+    }
+
+    /**
+     * Append a point, replacing the previous one when both fall in the same pixel column.
+     *
+     * @param bytes total bytes at the point, or -1 for the bottom of the chart
+     */
+    private void addPoint(float x, long bytes) {
+        if (mPointCount > 0 && (int) x == (int) mPointX[mPointCount - 1]) {
+            mPointCount--;
+        } else if (mPointCount == mPointX.length) {
+            final int capacity = Math.max(16, mPointCount * 2);
+            mPointX = Arrays.copyOf(mPointX, capacity);
+            mPointBytes = Arrays.copyOf(mPointBytes, capacity);
+        }
+        mPointX[mPointCount] = x;
+        mPointBytes[mPointCount] = bytes;
+        mPointCount++;
+    }
 
+    /**
+     * Erase any existing {@link Path} and generate series outline based on
+     * currently bound {@link NetworkStatsHistory} data. The outline points are only regenerated
+     * when the bound data or the horizontal axis changed.
+     */
+    @VisibleForTesting
+    void generatePath() {
+        if (LOGD) Log.d(TAG, "generatePath()");
+
+        mPathStroke.reset();
+        mPathFill.reset();
+        mPathEstimate.reset();
+        mPathValid = true;
+
+        // bail when not enough stats to render
+        if (mStats == null || mStats.size() < 2) {
+            mMax = 0;
+            mPointCount = 0;
+            return;
+        }
+
+        if (!mPointsValid || mPointsHorizHash != mHoriz.hashCode()
+                || mPointsWidth != getWidth()) {
+            generatePoints();
+        }
+
+        final int width = getWidth();
+        final int height = getHeight();
+
+        float lastX = 0;
+        float lastY = height;
+
+        // move into starting position
+        mPathStroke.moveTo(lastX, lastY);
+        mPathFill.moveTo(lastX, lastY);
+
+        for (int i = 0; i < mPointCount; i++) {
+            lastX = mPointX[i];
+            lastY = mPointBytes[i] < 0 ? height : mVert.convertToPoint(mPointBytes[i]);
             mPathStroke.lineTo(lastX, lastY);
             mPathFill.lineTo(lastX, lastY);
         }
 
+        long totalData = mPointsTotal;
         if (LOGD) {
             final RectF bounds = new RectF();
             mPathFill.computeBounds(bounds, true);
@@ -259,13 +377,12 @@ public class ChartNetworkSeriesView extends View {
             // build estimated data
             mPathEstimate.moveTo(lastX, lastY);
 
-            final long now = System.currentTimeMillis();
-            final long bucketDuration = mStats.getBucketDuration();
+            final long lastTime = mPointsEndTime;
+            final long bucketDuration = mBucketDuration;
 
             // long window is average over two weeks
-            entry = mStats.getValues(lastTime - WEEK_IN_MILLIS * 2, lastTime, now, entry);
-            final long longWindow = (entry.rxBytes + entry.txBytes) * bucketDuration
-                    / entry.bucketDuration;
+            final long longWindow = getTotalBytes(lastTime - WEEK_IN_MILLIS * 2, lastTime)
+                    * bucketDuration / (WEEK_IN_MILLIS * 2);
 
             long futureTime = 0;
             while (lastX < width) {
@@ -273,9 +390,8 @@ public class ChartNetworkSeriesView extends View {
 
                 // short window is day average last week
                 final long lastWeekTime = lastTime - WEEK_IN_MILLIS + (futureTime % WEEK_IN_MILLIS);
-                entry = mStats.getValues(lastWeekTime - DAY_IN_MILLIS, lastWeekTime, now, entry);
-                final long shortWindow = (entry.rxBytes + entry.txBytes) * bucketDuration
-                        / entry.bucketDuration;
+                final long shortWindow = getTotalBytes(lastWeekTime - DAY_IN_MILLIS, lastWeekTime)
+                        * bucketDuration / DAY_IN_MILLIS;
 
                 totalData += (longWindow * 7 + shortWindow * 3) / 10;
 
@@ -291,7 +407,15 @@ public class ChartNetworkSeriesView extends View {
         invalidate();
     }
 
+    @VisibleForTesting
+    int getPointCount() {
+        return mPointCount;
+    }
+
     public void setEndTime(long endTime) {
+        if (mEndTime != endTime) {
+            mPointsValid = false;
+        }
         mEndTime = endTime;
     }
 
@@ -308,8 +432,7 @@ public class ChartNetworkSeriesView extends View {
         final long maxVisible = mEstimateVisible ? mMaxEstimate : mMax;
         if (maxVisible <= 0 && mStats != null) {
             // haven't generated path yet; fall back to raw data
-            final NetworkStatsHistory.Entry entry = mStats.getValues(mStart, mEnd, null);
-            return entry.rxBytes + entry.txBytes;
+            return getTotalBytes(mStart, mEnd);
         } else {
             return maxVisible;
         }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.wifi;
+
+import android.util.ArrayMap;
+import android.util.ArraySet;
+
+import java.util.List;
+
+/**
+ * Difference between two ordered lists of access point keys: the keys added, the keys removed,
+ * and whether the keys present in both lists changed relative order.
+ */
+final class AccessPointListDiff {
+    final ArraySet<String> added = new ArraySet<>();
+    final ArraySet<String> removed = new ArraySet<>();
+    boolean moved;
+
+    private AccessPointListDiff() {
+    }
+
+    static AccessPointListDiff compute(List<String> previousKeys, List<String> keys) {
+        final AccessPointListDiff diff = new AccessPointListDiff();
+
+        final ArrayMap<String, Integer> previousPositions = new ArrayMap<>(previousKeys.size());
+        for (int i = 0, size = previousKeys.size(); i < size; i++) {
+            previousPositions.put(previousKeys.get(i), i);
+        }
+
+        // The kept keys moved if their previous positions are not increasing in the new order.
+        int lastPreviousPosition = -1;
+        for (int i = 0, size = keys.size(); i < size; i++) {
+            final String key = keys.get(i);
+            final Integer previousPosition = previousPositions.remove(key);
+            if (previousPosition == null) {
+                diff.added.add(key);
+            } else {
+                if (previousPosition < lastPreviousPosition) {
+                    diff.moved = true;
+                }
+                lastPreviousPosition = previousPosition;
+            }
+        }
+        diff.removed.addAll(previousPositions.keySet());
+        return diff;
+    }
+
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && !moved;
+    }
+
+    /**
+     * @return {@code true} if the same access points are listed, only in a different order
+     */
+    boolean isMoveOnly() {
+        return added.isEmpty() && removed.isEmpty() && moved;
+    }
+
+    @Override
+    public String toString() {
+        return "added=" + added.size() + " removed=" + removed.size() + " moved=" + moved;
+    }
+}
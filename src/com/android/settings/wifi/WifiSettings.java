@@ -38,10 +38,12 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.provider.Settings;
 import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceCategory;
+import android.util.ArraySet;
 import android.util.Log;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
@@ -112,9 +114,19 @@ public class WifiSettings extends RestrictedSettingsFragment
         return WifiTracker.sVerboseLogging || Log.isLoggable(TAG, Log.VERBOSE);
     }
 
+    /**
+     * Signal level changes of the same access points reorder the list at most once per this
+     * window, so the list does not reshuffle on every scan in dense environments.
+     */
+    @VisibleForTesting
+    static final long REORDER_COALESCE_WINDOW_MS = 10000;
+
     private final Runnable mUpdateAccessPointsRunnable = () -> {
         updateAccessPointPreferences();
     };
+    private final Runnable mLevelChangedRunnable = () -> {
+        dispatchLevelChanged();
+    };
     private final Runnable mHideProgressBarRunnable = () -> {
         setProgressBarVisible(false);
     };
@@ -166,6 +178,12 @@ public class WifiSettings extends RestrictedSettingsFragment
 
     private PreferenceCategory mConnectedAccessPointPreferenceCategory;
     private PreferenceCategory mAccessPointsPreferenceCategory;
+
+    /** Keys of the listed access points, in the order of the preferences. */
+    private List<String> mAccessPointKeys = new ArrayList<>();
+    private long mLastReorderTimeMs = -REORDER_COALESCE_WINDOW_MS;
+    /** Access points whose signal level changed since the last dispatch. */
+    private final ArraySet<AccessPoint> mLevelChangedAccessPoints = new ArraySet<>();
     private PreferenceCategory mAdditionalSettingsPreferenceCategory;
     private Preference mAddPreference;
     private Preference mConfigureWifiSettingsPreference;
@@ -401,6 +419,8 @@ public class WifiSettings extends RestrictedSettingsFragment
     public void onStop() {
         getView().removeCallbacks(mUpdateAccessPointsRunnable);
         getView().removeCallbacks(mHideProgressBarRunnable);
+        getView().removeCallbacks(mLevelChangedRunnable);
+        mLevelChangedAccessPoints.clear();
         unregisterCaptivePortalNetworkCallback();
         super.onStop();
     }
@@ -672,6 +692,7 @@ public class WifiSettings extends RestrictedSettingsFragment
             case WifiManager.WIFI_STATE_ENABLING:
                 removeConnectedAccessPointPreference();
                 mAccessPointsPreferenceCategory.removeAll();
+                mAccessPointKeys.clear();
                 addMessagePreference(R.string.wifi_starting);
                 setProgressBarVisible(true);
                 break;
@@ -679,6 +700,7 @@ public class WifiSettings extends RestrictedSettingsFragment
             case WifiManager.WIFI_STATE_DISABLING:
                 removeConnectedAccessPointPreference();
                 mAccessPointsPreferenceCategory.removeAll();
+                mAccessPointKeys.clear();
                 addMessagePreference(R.string.wifi_stopping);
                 break;
 
@@ -730,7 +752,36 @@ public class WifiSettings extends RestrictedSettingsFragment
 
         int index =
                 configureConnectedAccessPointPreferenceCategory(accessPoints) ? 1 : 0;
+        final int firstIndex = index;
         int numAccessPoints = accessPoints.size();
+
+        final List<String> keys = new ArrayList<>(numAccessPoints);
+        for (int i = firstIndex; i < numAccessPoints; i++) {
+            final AccessPoint accessPoint = accessPoints.get(i);
+            // Ignore access points that are out of range.
+            if (accessPoint.isReachable()) {
+                keys.add(accessPoint.getKey());
+            }
+        }
+        final AccessPointListDiff diff = AccessPointListDiff.compute(mAccessPointKeys, keys);
+        final long now = SystemClock.elapsedRealtime();
+        final long reorderDelayMs = mLastReorderTimeMs + REORDER_COALESCE_WINDOW_MS - now;
+        final View view = getView();
+        final boolean deferReorder = diff.isMoveOnly() && reorderDelayMs > 0 && view != null;
+        if (deferReorder) {
+            // Keep the current order, and reorder once the window is over.
+            view.removeCallbacks(mUpdateAccessPointsRunnable);
+            view.postDelayed(mUpdateAccessPointsRunnable, reorderDelayMs);
+        } else {
+            if (diff.moved) {
+                mLastReorderTimeMs = now;
+            }
+            mAccessPointKeys = keys;
+        }
+        if (isVerboseLoggingEnabled()) {
+            Log.i(TAG, "updateAccessPoints diff: " + diff + " deferReorder=" + deferReorder);
+        }
+
         for (; index < numAccessPoints; index++) {
             AccessPoint accessPoint = accessPoints.get(index);
             // Ignore access points that are out of range.
@@ -740,7 +791,9 @@ public class WifiSettings extends RestrictedSettingsFragment
                 LongPressAccessPointPreference pref =
                         (LongPressAccessPointPreference) getCachedPreference(key);
                 if (pref != null) {
-                    pref.setOrder(index);
+                    if (!deferReorder) {
+                        pref.setOrder(index);
+                    }
                     continue;
                 }
                 LongPressAccessPointPreference preference =
@@ -977,6 +1030,7 @@ public class WifiSettings extends RestrictedSettingsFragment
         mStatusMessagePreference.setText(title, description, clickListener);
         removeConnectedAccessPointPreference();
         mAccessPointsPreferenceCategory.removeAll();
+        mAccessPointKeys.clear();
         mAccessPointsPreferenceCategory.addPreference(mStatusMessagePreference);
     }
 
@@ -984,6 +1038,7 @@ public class WifiSettings extends RestrictedSettingsFragment
         mStatusMessagePreference.setTitle(messageId);
         removeConnectedAccessPointPreference();
         mAccessPointsPreferenceCategory.removeAll();
+        mAccessPointKeys.clear();
         mAccessPointsPreferenceCategory.addPreference(mStatusMessagePreference);
     }
 
@@ -1112,7 +1167,24 @@ public class WifiSettings extends RestrictedSettingsFragment
 
     @Override
     public void onLevelChanged(AccessPoint accessPoint) {
-        ((AccessPointPreference) accessPoint.getTag()).onLevelChanged();
+        // Level changes arrive for many access points per scan, update their icons in one pass.
+        final View view = getView();
+        if (view == null) {
+            return;
+        }
+        if (mLevelChangedAccessPoints.add(accessPoint) && mLevelChangedAccessPoints.size() == 1) {
+            view.post(mLevelChangedRunnable);
+        }
+    }
+
+    private void dispatchLevelChanged() {
+        for (int i = 0, size = mLevelChangedAccessPoints.size(); i < size; i++) {
+            final Object tag = mLevelChangedAccessPoints.valueAt(i).getTag();
+            if (tag != null) {
+                ((AccessPointPreference) tag).onLevelChanged();
+            }
+        }
+        mLevelChangedAccessPoints.clear();
     }
 
     public static final SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
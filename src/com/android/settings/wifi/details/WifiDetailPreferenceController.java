@@ -41,6 +41,8 @@ import android.net.wifi.WifiConfiguration.KeyMgmt;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Handler;
+import android.util.ArrayMap;
+import android.view.Choreographer;
 import androidx.core.text.BidiFormatter;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceCategory;
@@ -115,6 +117,11 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
     @VisibleForTesting
     static final String KEY_IPV6_ADDRESSES_PREF = "ipv6_addresses";
 
+    // Parts of the page that need to be refreshed on the next frame.
+    private static final int DIRTY_INFO = 1 << 0;
+    private static final int DIRTY_NETWORK_STATE = 1 << 1;
+    private static final int DIRTY_IP_LAYER = 1 << 2;
+
     private AccessPoint mAccessPoint;
     private final ConnectivityManager mConnectivityManager;
     private final Fragment mFragment;
@@ -145,6 +152,16 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
     private PreferenceCategory mIpv6Category;
     private Preference mIpv6AddressPref;
 
+    // Last detail text bound to each preference, or null if the preference was hidden.
+    private final ArrayMap<Preference, String> mBoundDetails = new ArrayMap<>();
+
+    private int mDirtyFlags;
+    private boolean mFrameScheduled;
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> {
+        mFrameScheduled = false;
+        refreshDirty();
+    };
+
     private final IconInjector mIconInjector;
     private final IntentFilter mFilter;
     private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
@@ -164,7 +181,7 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
                     // fall through
                 case WifiManager.NETWORK_STATE_CHANGED_ACTION:
                 case WifiManager.RSSI_CHANGED_ACTION:
-                    updateInfo();
+                    scheduleUpdate(DIRTY_INFO);
                     break;
             }
         }
@@ -179,7 +196,7 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
         public void onLinkPropertiesChanged(Network network, LinkProperties lp) {
             if (network.equals(mNetwork) && !lp.equals(mLinkProperties)) {
                 mLinkProperties = lp;
-                updateIpLayerInfo();
+                scheduleUpdate(DIRTY_IP_LAYER);
             }
         }
 
@@ -199,10 +216,10 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
             if (network.equals(mNetwork) && !nc.equals(mNetworkCapabilities)) {
                 if (hasCapabilityChanged(nc, NET_CAPABILITY_VALIDATED) ||
                         hasCapabilityChanged(nc, NET_CAPABILITY_CAPTIVE_PORTAL)) {
-                    refreshNetworkState();
+                    scheduleUpdate(DIRTY_NETWORK_STATE);
                 }
                 mNetworkCapabilities = nc;
-                updateIpLayerInfo();
+                scheduleUpdate(DIRTY_IP_LAYER);
             }
         }
 
@@ -298,6 +315,7 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
 
         mIpv6Category = (PreferenceCategory) screen.findPreference(KEY_IPV6_CATEGORY);
         mIpv6AddressPref = screen.findPreference(KEY_IPV6_ADDRESSES_PREF);
+        mBoundDetails.clear();
 
         if (mAccessPoint.getSecurityString(false).equals("SAE")
              && mAccessPoint.getConfig().allowedKeyManagement.get(KeyMgmt.WPA_PSK)) {
@@ -344,6 +362,44 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
         mWifiInfo = null;
         mContext.unregisterReceiver(mReceiver);
         mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+        if (mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+        mDirtyFlags = 0;
+    }
+
+    /**
+     * Marks parts of the page as dirty and schedules a refresh on the next frame, so that a
+     * burst of broadcasts and network callbacks results in at most one refresh per frame.
+     */
+    private void scheduleUpdate(int dirtyFlags) {
+        mDirtyFlags |= dirtyFlags;
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    @VisibleForTesting
+    void refreshDirty() {
+        final int dirtyFlags = mDirtyFlags;
+        mDirtyFlags = 0;
+        if (mNetwork == null) {
+            // Paused since the refresh was scheduled.
+            return;
+        }
+        if ((dirtyFlags & DIRTY_INFO) != 0) {
+            // Refreshes the network state and the IP layer as well.
+            updateInfo();
+            return;
+        }
+        if ((dirtyFlags & DIRTY_NETWORK_STATE) != 0) {
+            refreshNetworkState();
+        }
+        if ((dirtyFlags & DIRTY_IP_LAYER) != 0) {
+            updateIpLayerInfo();
+        }
     }
 
     private void updateInfo() {
@@ -365,13 +421,16 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
         refreshRssiViews();
 
         // MAC Address Pref
-        mMacAddressPref.setDetailText(mWifiInfo.getMacAddress());
+        updateDetailText(mMacAddressPref, mWifiInfo.getMacAddress());
 
         // Link Speed Pref
         int linkSpeedMbps = mWifiInfo.getLinkSpeed();
-        mLinkSpeedPref.setVisible(linkSpeedMbps >= 0);
-        mLinkSpeedPref.setDetailText(mContext.getString(
-                R.string.link_speed, mWifiInfo.getLinkSpeed()));
+        if (linkSpeedMbps >= 0) {
+            updatePreference(mLinkSpeedPref,
+                    mContext.getString(R.string.link_speed, linkSpeedMbps));
+        } else {
+            hidePreference(mLinkSpeedPref);
+        }
 
         // Frequency Pref
         final int frequency = mWifiInfo.getFrequency();
@@ -385,7 +444,7 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
         } else {
             Log.e(TAG, "Unexpected frequency " + frequency);
         }
-        mFrequencyPref.setDetailText(band);
+        updateDetailText(mFrequencyPref, band);
 
         updateIpLayerInfo();
     }
@@ -423,13 +482,35 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
         mSignalStrengthPref.setDetailText(mSignalStr[mRssiSignalLevel]);
     }
 
+    private void updateDetailText(WifiDetailPreference pref, String detailText) {
+        if (mBoundDetails.containsKey(pref)
+                && TextUtils.equals(mBoundDetails.get(pref), detailText)) {
+            return;
+        }
+        mBoundDetails.put(pref, detailText);
+        pref.setDetailText(detailText);
+    }
+
     private void updatePreference(WifiDetailPreference pref, String detailText) {
-        if (!TextUtils.isEmpty(detailText)) {
-            pref.setDetailText(detailText);
-            pref.setVisible(true);
-        } else {
-            pref.setVisible(false);
+        if (TextUtils.isEmpty(detailText)) {
+            hidePreference(pref);
+            return;
+        }
+        if (mBoundDetails.containsKey(pref)
+                && TextUtils.equals(mBoundDetails.get(pref), detailText)) {
+            return;
+        }
+        mBoundDetails.put(pref, detailText);
+        pref.setDetailText(detailText);
+        pref.setVisible(true);
+    }
+
+    private void hidePreference(Preference pref) {
+        if (mBoundDetails.containsKey(pref) && mBoundDetails.get(pref) == null) {
+            return;
         }
+        mBoundDetails.put(pref, null);
+        pref.setVisible(false);
     }
 
     private void updateIpLayerInfo() {
@@ -437,11 +518,11 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
         mButtonsPref.setVisible(canSignIntoNetwork() || canForgetNetwork());
 
         if (mNetwork == null || mLinkProperties == null) {
-            mIpAddressPref.setVisible(false);
-            mSubnetPref.setVisible(false);
-            mGatewayPref.setVisible(false);
-            mDnsPref.setVisible(false);
-            mIpv6Category.setVisible(false);
+            hidePreference(mIpAddressPref);
+            hidePreference(mSubnetPref);
+            hidePreference(mGatewayPref);
+            hidePreference(mDnsPref);
+            hidePreference(mIpv6Category);
             return;
         }
 
@@ -480,11 +561,14 @@ public class WifiDetailPreferenceController extends AbstractPreferenceController
         updatePreference(mDnsPref, dnsServers);
 
         if (ipv6Addresses.length() > 0) {
-            mIpv6AddressPref.setSummary(
-                    BidiFormatter.getInstance().unicodeWrap(ipv6Addresses.toString()));
-            mIpv6Category.setVisible(true);
+            final String addresses = ipv6Addresses.toString();
+            if (!TextUtils.equals(mBoundDetails.get(mIpv6Category), addresses)) {
+                mBoundDetails.put(mIpv6Category, addresses);
+                mIpv6AddressPref.setSummary(BidiFormatter.getInstance().unicodeWrap(addresses));
+                mIpv6Category.setVisible(true);
+            }
         } else {
-            mIpv6Category.setVisible(false);
+            hidePreference(mIpv6Category);
         }
     }
 
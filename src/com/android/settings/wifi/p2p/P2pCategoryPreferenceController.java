@@ -58,6 +58,13 @@ public abstract class P2pCategoryPreferenceController extends AbstractPreference
         }
     }
 
+    public void removeChild(Preference child) {
+        if (mCategory != null) {
+            mCategory.removePreference(child);
+            mCategory.setVisible(mCategory.getPreferenceCount() > 0);
+        }
+    }
+
     public void setEnabled(boolean enabled) {
         if (mCategory != null) {
             mCategory.setEnabled(enabled);
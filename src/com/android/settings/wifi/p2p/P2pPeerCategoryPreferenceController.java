@@ -17,9 +17,16 @@
 package com.android.settings.wifi.p2p;
 
 import android.content.Context;
+import android.net.wifi.p2p.WifiP2pDevice;
+import android.util.ArrayMap;
+
+import java.util.Collection;
 
 public class P2pPeerCategoryPreferenceController extends P2pCategoryPreferenceController {
 
+    // Peer preferences currently shown, keyed by device address.
+    private final ArrayMap<String, WifiP2pPeer> mPeers = new ArrayMap<>();
+
     public P2pPeerCategoryPreferenceController(Context context) {
         super(context);
     }
@@ -28,4 +35,43 @@ public class P2pPeerCategoryPreferenceController extends P2pCategoryPreferenceCo
     public String getPreferenceKey() {
         return "p2p_peer_devices";
     }
+
+    @Override
+    public void removeAllChildren() {
+        super.removeAllChildren();
+        mPeers.clear();
+    }
+
+    /**
+     * Diffs {@code devices} against the peers shown, by device address: new peers are added, gone
+     * peers are removed and the other peers are only rebound if what they show changed.
+     *
+     * @param prefContext the context new peer preferences are created with
+     */
+    public void updatePeers(Context prefContext, Collection<WifiP2pDevice> devices) {
+        if (mCategory == null) {
+            return;
+        }
+        final ArrayMap<String, WifiP2pPeer> previousPeers = new ArrayMap<>(mPeers);
+        mPeers.clear();
+        for (WifiP2pDevice device : devices) {
+            WifiP2pPeer peer = previousPeers.remove(device.deviceAddress);
+            if (peer == null) {
+                peer = new WifiP2pPeer(prefContext, device);
+                addChild(peer);
+            } else if (peer.setDevice(device)) {
+                // Re-insert the peer so the category sorts it again with its new status.
+                mCategory.removePreference(peer);
+                mCategory.addPreference(peer);
+            }
+            mPeers.put(device.deviceAddress, peer);
+        }
+        for (int i = 0, size = previousPeers.size(); i < size; i++) {
+            removeChild(previousPeers.valueAt(i));
+        }
+    }
+
+    int getPeerCount() {
+        return mPeers.size();
+    }
 }
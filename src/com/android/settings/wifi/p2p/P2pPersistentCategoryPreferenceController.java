@@ -17,9 +17,16 @@
 package com.android.settings.wifi.p2p;
 
 import android.content.Context;
+import android.net.wifi.p2p.WifiP2pGroup;
+import android.util.SparseArray;
+
+import java.util.Collection;
 
 public class P2pPersistentCategoryPreferenceController extends P2pCategoryPreferenceController {
 
+    // Group preferences currently shown, keyed by network id.
+    private final SparseArray<WifiP2pPersistentGroup> mGroups = new SparseArray<>();
+
     public P2pPersistentCategoryPreferenceController(Context context) {
         super(context);
     }
@@ -28,4 +35,54 @@ public class P2pPersistentCategoryPreferenceController extends P2pCategoryPrefer
     public String getPreferenceKey() {
         return "p2p_persistent_group";
     }
+
+    @Override
+    public void removeAllChildren() {
+        super.removeAllChildren();
+        mGroups.clear();
+    }
+
+    /**
+     * Diffs {@code groups} against the groups shown, by network id, adding and removing only the
+     * groups that changed.
+     *
+     * @param prefContext the context new group preferences are created with
+     */
+    public void updateGroups(Context prefContext, Collection<WifiP2pGroup> groups) {
+        if (mCategory == null) {
+            return;
+        }
+        final SparseArray<WifiP2pPersistentGroup> previousGroups = mGroups.clone();
+        mGroups.clear();
+        for (WifiP2pGroup group : groups) {
+            if (mGroups.get(group.getNetworkId()) != null) {
+                continue;
+            }
+            WifiP2pPersistentGroup pref = previousGroups.get(group.getNetworkId());
+            if (pref == null) {
+                pref = new WifiP2pPersistentGroup(prefContext, group);
+                addChild(pref);
+            } else {
+                previousGroups.remove(group.getNetworkId());
+                pref.setGroup(group);
+            }
+            mGroups.put(group.getNetworkId(), pref);
+        }
+        for (int i = 0, size = previousGroups.size(); i < size; i++) {
+            removeChild(previousGroups.valueAt(i));
+        }
+    }
+
+    /**
+     * @return the shown group with the given name, or null
+     */
+    public WifiP2pPersistentGroup findGroup(String groupName) {
+        for (int i = 0, size = mGroups.size(); i < size; i++) {
+            final WifiP2pPersistentGroup group = mGroups.valueAt(i);
+            if (group.getGroupName().equals(groupName)) {
+                return group;
+            }
+        }
+        return null;
+    }
 }
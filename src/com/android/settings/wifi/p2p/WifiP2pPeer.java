@@ -40,12 +40,33 @@ public class WifiP2pPeer extends Preference {
         device = dev;
         setWidgetLayoutResource(R.layout.preference_widget_wifi_signal);
         mRssi = 60; //TODO: fix
+        bindDevice();
+    }
+
+    /**
+     * Points this preference to a newer snapshot of the same peer, rebinding the title and
+     * summary only if what they show changed.
+     *
+     * @return true if the sort position of this peer may have changed
+     */
+    boolean setDevice(WifiP2pDevice dev) {
+        final WifiP2pDevice old = device;
+        device = dev;
+        if (TextUtils.equals(old.deviceName, dev.deviceName) && old.status == dev.status) {
+            return false;
+        }
+        bindDevice();
+        return true;
+    }
+
+    private void bindDevice() {
         if (TextUtils.isEmpty(device.deviceName)) {
             setTitle(device.deviceAddress);
         } else {
             setTitle(device.deviceName);
         }
-        String[] statusArray = context.getResources().getStringArray(R.array.wifi_p2p_status);
+        String[] statusArray = getContext().getResources().getStringArray(
+                R.array.wifi_p2p_status);
         setSummary(statusArray[device.status]);
     }
 
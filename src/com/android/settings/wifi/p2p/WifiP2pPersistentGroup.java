@@ -31,6 +31,11 @@ public class WifiP2pPersistentGroup extends Preference {
         setTitle(mGroup.getNetworkName());
     }
 
+    void setGroup(WifiP2pGroup group) {
+        mGroup = group;
+        setTitle(mGroup.getNetworkName());
+    }
+
     int getNetworkId() {
         return mGroup.getNetworkId();
     }
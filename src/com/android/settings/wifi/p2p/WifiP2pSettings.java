@@ -37,7 +37,10 @@ import android.net.wifi.p2p.WifiP2pManager;
 import android.net.wifi.p2p.WifiP2pManager.PeerListListener;
 import android.net.wifi.p2p.WifiP2pManager.PersistentGroupInfoListener;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.os.SystemProperties;
+import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
 import android.text.InputFilter;
@@ -68,6 +71,10 @@ public class WifiP2pSettings extends DashboardFragment
     private static final int MENU_ID_SEARCH = Menu.FIRST;
     private static final int MENU_ID_RENAME = Menu.FIRST + 1;
 
+    // Minimum interval between two peer list updates while peers are being discovered.
+    @VisibleForTesting
+    static final long PEER_UPDATE_THROTTLE_MS = 500;
+
     private final IntentFilter mIntentFilter = new IntentFilter();
     private WifiP2pManager mWifiP2pManager;
     private WifiP2pManager.Channel mChannel;
@@ -103,6 +110,10 @@ public class WifiP2pSettings extends DashboardFragment
 
     private String mSavedDeviceName;
 
+    private final Handler mHandler = new Handler();
+    private final Runnable mPeersChangedRunnable = this::updatePeers;
+    private long mLastPeersUpdateMs = -PEER_UPDATE_THROTTLE_MS;
+
     private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -347,6 +358,7 @@ public class WifiP2pSettings extends DashboardFragment
             mWifiP2pManager.stopPeerDiscovery(mChannel, null);
         }
         getActivity().unregisterReceiver(mReceiver);
+        mHandler.removeCallbacks(mPeersChangedRunnable);
     }
 
     @Override
@@ -532,14 +544,32 @@ public class WifiP2pSettings extends DashboardFragment
         }
     }
 
+    /**
+     * Updates the peer list, at most once every {@link #PEER_UPDATE_THROTTLE_MS} so that a burst
+     * of peer changes during discovery results in a single update with the latest peers.
+     */
     private void handlePeersChanged() {
-        mPeerCategoryController.removeAllChildren();
+        if (mHandler.hasCallbacks(mPeersChangedRunnable)) {
+            return;
+        }
+        final long delay = mLastPeersUpdateMs + PEER_UPDATE_THROTTLE_MS
+                - SystemClock.elapsedRealtime();
+        if (delay > 0) {
+            mHandler.postDelayed(mPeersChangedRunnable, delay);
+        } else {
+            updatePeers();
+        }
+    }
+
+    @VisibleForTesting
+    void updatePeers() {
+        mLastPeersUpdateMs = SystemClock.elapsedRealtime();
+        mPeerCategoryController.updatePeers(getPrefContext(), mPeers.getDeviceList());
 
         mConnectedDevices = 0;
         if (DBG) Log.d(TAG, "List of available peers");
         for (WifiP2pDevice peer: mPeers.getDeviceList()) {
             if (DBG) Log.d(TAG, "-> " + peer);
-            mPeerCategoryController.addChild(new WifiP2pPeer(getPrefContext(), peer));
             if (peer.status == WifiP2pDevice.CONNECTED) mConnectedDevices++;
         }
         if (DBG) Log.d(TAG, " mConnectedDevices " + mConnectedDevices);
@@ -547,13 +577,12 @@ public class WifiP2pSettings extends DashboardFragment
 
     @Override
     public void onPersistentGroupInfoAvailable(WifiP2pGroupList groups) {
-        mPersistentCategoryController.removeAllChildren();
+        mPersistentCategoryController.updateGroups(getPrefContext(), groups.getGroupList());
 
-        for (WifiP2pGroup group: groups.getGroupList()) {
-            if (DBG) Log.d(TAG, " group " + group);
-            WifiP2pPersistentGroup wppg = new WifiP2pPersistentGroup(getPrefContext(), group);
-            mPersistentCategoryController.addChild(wppg);
-            if (wppg.getGroupName().equals(mSelectedGroupName)) {
+        if (mSelectedGroupName != null) {
+            final WifiP2pPersistentGroup wppg =
+                    mPersistentCategoryController.findGroup(mSelectedGroupName);
+            if (wppg != null) {
                 if (DBG) Log.d(TAG, "Selecting group " + wppg.getGroupName());
                 mSelectedGroup = wppg;
                 mSelectedGroupName = null;
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.util.ArrayMap;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class TileStateEngineTest {
+    private static final String ACTION = "com.android.settings.TEST_ACTION";
+    private static final ComponentName COMPONENT_1 = new ComponentName("pkg", "pkg.Activity1");
+    private static final ComponentName COMPONENT_2 = new ComponentName("pkg", "pkg.Activity2");
+
+    @Mock
+    private TileStateEngine.TileSetter mSetter;
+
+    private TileStateEngine mEngine;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mSetter.setTileEnabled(any(ComponentName.class), anyBoolean())).thenReturn(true);
+        mEngine = new TileStateEngine(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void evaluate_shouldReturnValueOfEachInput() {
+        final Map<String, Boolean> values = mEngine.evaluate(Arrays.asList(
+                TileStateEngine.Input.of("a", () -> true),
+                TileStateEngine.Input.of("b", () -> false)));
+
+        assertThat(values.get("a")).isTrue();
+        assertThat(values.get("b")).isFalse();
+    }
+
+    @Test
+    public void evaluate_shouldEvaluateInputsConcurrently() {
+        // Each input only returns true if the other one runs at the same time.
+        final CountDownLatch latch = new CountDownLatch(TileStateEngine.EVALUATION_THREADS);
+        final Map<String, Boolean> values = mEngine.evaluate(Arrays.asList(
+                TileStateEngine.Input.of("a", () -> awaitOthers(latch)),
+                TileStateEngine.Input.of("b", () -> awaitOthers(latch))));
+
+        assertThat(values.get("a")).isTrue();
+        assertThat(values.get("b")).isTrue();
+    }
+
+    @Test
+    public void evaluate_memoizedInput_shouldEvaluateUntilInvalidated() {
+        final AtomicInteger count = new AtomicInteger();
+        final List<TileStateEngine.Input> inputs = Collections.singletonList(
+                TileStateEngine.Input.memoized("a", () -> count.incrementAndGet() > 0, ACTION));
+
+        mEngine.evaluate(inputs);
+        mEngine.evaluate(inputs);
+        assertThat(count.get()).isEqualTo(1);
+
+        mEngine.invalidate(ACTION);
+        mEngine.evaluate(inputs);
+        assertThat(count.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void evaluate_otherInputs_shouldEvaluateEveryTime() {
+        final AtomicInteger count = new AtomicInteger();
+        final List<TileStateEngine.Input> inputs = Collections.singletonList(
+                TileStateEngine.Input.of("a", () -> count.incrementAndGet() > 0));
+
+        mEngine.evaluate(inputs);
+        mEngine.evaluate(inputs);
+
+        assertThat(count.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void apply_shouldOnlySetChangedStates() {
+        final Map<ComponentName, Boolean> states = new ArrayMap<>();
+        states.put(COMPONENT_1, true);
+        states.put(COMPONENT_2, false);
+        assertThat(mEngine.apply(states, mSetter)).containsExactly(COMPONENT_1, COMPONENT_2);
+
+        states.put(COMPONENT_2, true);
+        assertThat(mEngine.apply(states, mSetter)).containsExactly(COMPONENT_2);
+
+        verify(mSetter).setTileEnabled(COMPONENT_1, true);
+        verify(mSetter).setTileEnabled(COMPONENT_2, true);
+    }
+
+    @Test
+    public void apply_stateAlreadySet_shouldNotReportChange() {
+        when(mSetter.setTileEnabled(COMPONENT_1, true)).thenReturn(false);
+        final Map<ComponentName, Boolean> states = new ArrayMap<>();
+        states.put(COMPONENT_1, true);
+
+        assertThat(mEngine.apply(states, mSetter)).isEmpty();
+        mEngine.apply(states, mSetter);
+
+        verify(mSetter).setTileEnabled(COMPONENT_1, true);
+        verify(mSetter, never()).setTileEnabled(COMPONENT_1, false);
+    }
+
+    private static boolean awaitOthers(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
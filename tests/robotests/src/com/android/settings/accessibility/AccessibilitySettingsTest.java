@@ -18,16 +18,32 @@ package com.android.settings.accessibility;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.content.ComponentName;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
 import android.os.Bundle;
 import android.os.Vibrator;
 import android.provider.Settings;
 import androidx.preference.Preference;
+import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
 
 import com.android.settings.R;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
@@ -38,13 +54,18 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @RunWith(SettingsRobolectricTestRunner.class)
 public class AccessibilitySettingsTest {
 
+    private static final String PACKAGE_1 = "com.example.test.a11y1";
+    private static final String PACKAGE_2 = "com.example.test.a11y2";
+
     @Test
     public void testNonIndexableKeys_existInXmlLayout() {
         final Context context = RuntimeEnvironment.application;
@@ -83,4 +104,123 @@ public class AccessibilitySettingsTest {
                 VibrationIntensityPreferenceController.getIntensityString(mContext,
                         Vibrator.VIBRATION_INTENSITY_OFF));
     }
+
+    @Test
+    public void onServicePackageChanged_shouldOnlyRecreateServicesOfThatPackage() {
+        final AccessibilityServiceInfo info1 = createServiceInfo(PACKAGE_1);
+        final AccessibilityServiceInfo info2 = createServiceInfo(PACKAGE_2);
+        final PreferenceCategory category = new PreferenceCategory(
+                RuntimeEnvironment.application);
+        final AccessibilitySettings settings = createServiceSettings(category, info1, info2);
+        settings.updateServicePreferences();
+        final Preference pref1 = getServicePreference(category, info1);
+        final Preference pref2 = getServicePreference(category, info2);
+
+        settings.onServicePackageChanged(PACKAGE_1);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(getServicePreference(category, info1)).isNotNull();
+        assertThat(getServicePreference(category, info1)).isNotSameAs(pref1);
+        assertThat(getServicePreference(category, info2)).isSameAs(pref2);
+    }
+
+    @Test
+    public void onServicePackageChanged_serviceRemoved_shouldRemoveItsPreference() {
+        final AccessibilityServiceInfo info1 = createServiceInfo(PACKAGE_1);
+        final AccessibilityServiceInfo info2 = createServiceInfo(PACKAGE_2);
+        final PreferenceCategory category = new PreferenceCategory(
+                RuntimeEnvironment.application);
+        final AccessibilitySettings settings = createServiceSettings(category, info1, info2);
+        settings.updateServicePreferences();
+        final Preference pref2 = getServicePreference(category, info2);
+
+        doReturn(Arrays.asList(info2)).when(settings).getInstalledServices();
+        settings.onServicePackageChanged(PACKAGE_1);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(getServicePreference(category, info1)).isNull();
+        assertThat(getServicePreference(category, info2)).isSameAs(pref2);
+    }
+
+    @Test
+    public void updateServicePreferences_versionChangedWithoutPackageEvent_shouldRecreateService() {
+        final AccessibilityServiceInfo info1 = createServiceInfo(PACKAGE_1);
+        final AccessibilityServiceInfo info2 = createServiceInfo(PACKAGE_2);
+        final PreferenceCategory category = new PreferenceCategory(
+                RuntimeEnvironment.application);
+        final AccessibilitySettings settings = createServiceSettings(category, info1, info2);
+        settings.updateServicePreferences();
+        final Preference pref1 = getServicePreference(category, info1);
+        final Preference pref2 = getServicePreference(category, info2);
+
+        info1.getResolveInfo().serviceInfo.applicationInfo.longVersionCode++;
+        settings.updateServicePreferences();
+
+        assertThat(getServicePreference(category, info1)).isNotNull();
+        assertThat(getServicePreference(category, info1)).isNotSameAs(pref1);
+        assertThat(getServicePreference(category, info2)).isSameAs(pref2);
+    }
+
+    @Test
+    public void scheduleStateUpdate_shouldUpdateStatesOnceWithoutReloadingServices() {
+        final AccessibilityServiceInfo info1 = createServiceInfo(PACKAGE_1);
+        final PreferenceCategory category = new PreferenceCategory(
+                RuntimeEnvironment.application);
+        final AccessibilitySettings settings = createServiceSettings(category, info1);
+        doNothing().when(settings).updateSystemPreferences();
+        settings.updateServicePreferences();
+
+        // Several settings changing together only update the states once.
+        settings.scheduleStateUpdate();
+        settings.scheduleStateUpdate();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        verify(settings, times(1)).getInstalledServices();
+        verify(settings, times(1)).updateSystemPreferences();
+        verify(settings, times(2)).updateServiceStates();
+    }
+
+    private static AccessibilitySettings createServiceSettings(PreferenceCategory category,
+            AccessibilityServiceInfo... installedServices) {
+        final Context context = RuntimeEnvironment.application;
+        final AccessibilitySettings settings = spy(new AccessibilitySettings());
+        final PreferenceScreen screen =
+                new PreferenceManager(context).createPreferenceScreen(context);
+        category.setKey(AccessibilitySettings.CATEGORY_DOWNLOADED_SERVICES);
+        screen.addPreference(category);
+        settings.mCategoryToPrefCategoryMap.put(
+                AccessibilitySettings.CATEGORY_DOWNLOADED_SERVICES, category);
+
+        doReturn(context).when(settings).getContext();
+        doReturn(screen).when(settings).getPreferenceScreen();
+        doReturn(category).when(settings)
+                .findPreference(AccessibilitySettings.CATEGORY_DOWNLOADED_SERVICES);
+        doReturn(Arrays.asList(installedServices)).when(settings).getInstalledServices();
+        doNothing().when(settings).updateServiceStates();
+        return settings;
+    }
+
+    private static AccessibilityServiceInfo createServiceInfo(String packageName) {
+        final ResolveInfo resolveInfo = mock(ResolveInfo.class);
+        resolveInfo.serviceInfo = new ServiceInfo();
+        resolveInfo.serviceInfo.packageName = packageName;
+        resolveInfo.serviceInfo.name = packageName + ".A11yService";
+        resolveInfo.serviceInfo.applicationInfo = new ApplicationInfo();
+        resolveInfo.serviceInfo.applicationInfo.packageName = packageName;
+        resolveInfo.serviceInfo.applicationInfo.sourceDir = "/data/app/" + packageName + ".apk";
+        when(resolveInfo.loadLabel(any(PackageManager.class))).thenReturn(packageName);
+        when(resolveInfo.loadIcon(any(PackageManager.class)))
+                .thenReturn(new ColorDrawable(Color.BLACK));
+
+        final AccessibilityServiceInfo info = mock(AccessibilityServiceInfo.class);
+        when(info.getResolveInfo()).thenReturn(resolveInfo);
+        return info;
+    }
+
+    private static Preference getServicePreference(PreferenceCategory category,
+            AccessibilityServiceInfo info) {
+        final ServiceInfo serviceInfo = info.getResolveInfo().serviceInfo;
+        return category.findPreference(
+                new ComponentName(serviceInfo.packageName, serviceInfo.name).flattenToString());
+    }
 }
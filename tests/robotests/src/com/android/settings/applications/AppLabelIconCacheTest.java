@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.net.Uri;
+import android.os.UserHandle;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowApplication.Wrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AppLabelIconCacheTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+
+    @Mock
+    private PackageManager mPackageManager;
+    private Context mContext;
+    private AppLabelIconCache mCache;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mCache = AppLabelIconCache.getInstance(mContext);
+    }
+
+    @Test
+    public void get_twice_shouldLoadOnce() {
+        final ApplicationInfo info = appInfo(PACKAGE_NAME, 0 /* userId */);
+
+        final AppLabelIconCache.Entry first = mCache.get(mPackageManager, info);
+        final AppLabelIconCache.Entry second = mCache.get(mPackageManager, info);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.label.toString()).isEqualTo("label");
+        verify(info, times(1)).loadLabel(mPackageManager);
+        verify(info, times(1)).loadIcon(mPackageManager);
+    }
+
+    @Test
+    public void getLabel_twice_shouldLoadLabelOnceAndNoIcon() {
+        final ApplicationInfo info = appInfo(PACKAGE_NAME, 0 /* userId */);
+
+        final CharSequence first = mCache.getLabel(mPackageManager, info);
+        final CharSequence second = mCache.getLabel(mPackageManager, info);
+
+        assertThat(first.toString()).isEqualTo("label");
+        assertThat(second).isSameAs(first);
+        verify(info, times(1)).loadLabel(mPackageManager);
+        verify(info, never()).loadIcon(any(PackageManager.class));
+    }
+
+    @Test
+    public void getLabel_afterPackageInvalidated_shouldLoadAgain() {
+        final ApplicationInfo info = appInfo(PACKAGE_NAME, 0 /* userId */);
+        mCache.getLabel(mPackageManager, info);
+
+        mCache.invalidate(PACKAGE_NAME);
+        mCache.getLabel(mPackageManager, info);
+
+        verify(info, times(2)).loadLabel(mPackageManager);
+    }
+
+    @Test
+    @Config(shadows = ShadowThreadUtils.class)
+    public void getAsync_invalidatedWhileLoading_shouldNotCacheEntry() {
+        final ApplicationInfo info = appInfo(PACKAGE_NAME, 0 /* userId */);
+        doAnswer(invocation -> {
+            mCache.invalidate(PACKAGE_NAME);
+            return "label";
+        }).when(info).loadLabel(mPackageManager);
+        final List<CharSequence> labels = new ArrayList<>();
+
+        mCache.getAsync(mPackageManager, info, entry -> labels.add(entry.label));
+        doReturn("new label").when(info).loadLabel(mPackageManager);
+        mCache.getAsync(mPackageManager, info, entry -> labels.add(entry.label));
+
+        assertThat(labels).containsExactly("label", "new label");
+    }
+
+    @Test
+    public void getInstance_otherApplication_shouldUnregisterOldReceiver() {
+        final Context otherApp = mock(Context.class);
+        when(otherApp.getApplicationContext()).thenReturn(otherApp);
+
+        AppLabelIconCache.getInstance(otherApp);
+
+        for (Wrapper wrapper : ShadowApplication.getInstance().getRegisteredReceivers()) {
+            assertThat(wrapper.broadcastReceiver.getClass().getName())
+                    .doesNotContain(AppLabelIconCache.class.getSimpleName());
+        }
+    }
+
+    @Test
+    public void get_otherUser_shouldLoadAgain() {
+        final ApplicationInfo owner = appInfo(PACKAGE_NAME, 0 /* userId */);
+        final ApplicationInfo work = appInfo(PACKAGE_NAME, 10 /* userId */);
+
+        mCache.get(mPackageManager, owner);
+        mCache.get(mPackageManager, work);
+
+        verify(owner).loadLabel(mPackageManager);
+        verify(work).loadLabel(mPackageManager);
+    }
+
+    @Test
+    public void getIcon_shouldReturnNewDrawableEachTime() {
+        final AppLabelIconCache.Entry entry =
+                mCache.get(mPackageManager, appInfo(PACKAGE_NAME, 0 /* userId */));
+
+        assertThat(entry.getIcon()).isNotSameAs(entry.getIcon());
+    }
+
+    @Test
+    public void packageChangedBroadcast_shouldInvalidatePackage() {
+        final ApplicationInfo info = appInfo(PACKAGE_NAME, 0 /* userId */);
+        final ApplicationInfo other = appInfo("com.example.other", 0 /* userId */);
+        mCache.get(mPackageManager, info);
+        mCache.get(mPackageManager, other);
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_CHANGED,
+                Uri.fromParts("package", PACKAGE_NAME, null)));
+        mCache.get(mPackageManager, info);
+        mCache.get(mPackageManager, other);
+
+        verify(info, times(2)).loadLabel(mPackageManager);
+        verify(other, times(1)).loadLabel(mPackageManager);
+    }
+
+    @Test
+    public void get_overMemoryCap_shouldEvictLeastRecentlyUsed() {
+        // Each icon takes a bit over a third of the cache.
+        final int side = (int) Math.sqrt(AppLabelIconCache.MAX_SIZE_BYTES / 4 / 3) + 1;
+        final ApplicationInfo[] infos = new ApplicationInfo[3];
+        for (int i = 0; i < infos.length; i++) {
+            infos[i] = appInfo(PACKAGE_NAME + i, 0 /* userId */);
+            doReturn(new BitmapDrawable(mContext.getResources(),
+                    Bitmap.createBitmap(side, side, Bitmap.Config.ARGB_8888)))
+                    .when(infos[i]).loadIcon(mPackageManager);
+            mCache.get(mPackageManager, infos[i]);
+        }
+
+        mCache.get(mPackageManager, infos[0]);
+
+        verify(infos[0], times(2)).loadLabel(mPackageManager);
+        verify(infos[2], times(1)).loadLabel(mPackageManager);
+    }
+
+    @Test
+    public void trimMemory_uiHidden_shouldOnlyKeepRecentIcons() {
+        // Each icon takes a bit over a fifth of the trimmed size.
+        final int side = (int) Math.sqrt(AppLabelIconCache.MAX_SIZE_BYTES / 4 / 4 / 5) + 1;
+        final ApplicationInfo[] infos = new ApplicationInfo[5];
+        for (int i = 0; i < infos.length; i++) {
+            infos[i] = appInfo(PACKAGE_NAME + i, 0 /* userId */);
+            doReturn(new BitmapDrawable(mContext.getResources(),
+                    Bitmap.createBitmap(side, side, Bitmap.Config.ARGB_8888)))
+                    .when(infos[i]).loadIcon(mPackageManager);
+            mCache.get(mPackageManager, infos[i]);
+            mCache.getLabel(mPackageManager, infos[i]);
+        }
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        mCache.get(mPackageManager, infos[4]);
+        mCache.get(mPackageManager, infos[0]);
+        mCache.getLabel(mPackageManager, infos[0]);
+
+        verify(infos[4], times(1)).loadIcon(mPackageManager);
+        verify(infos[0], times(2)).loadIcon(mPackageManager);
+        // Loaded again with its icon, but the separate label cache is kept.
+        verify(infos[0], times(3)).loadLabel(mPackageManager);
+    }
+
+    @Test
+    public void trimMemory_background_shouldEvictAll() {
+        final ApplicationInfo info = appInfo(PACKAGE_NAME, 0 /* userId */);
+        mCache.get(mPackageManager, info);
+        mCache.getLabel(mPackageManager, info);
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        mCache.get(mPackageManager, info);
+        mCache.getLabel(mPackageManager, info);
+
+        verify(info, times(2)).loadIcon(mPackageManager);
+        verify(info, times(4)).loadLabel(mPackageManager);
+    }
+
+    @Test
+    @Config(shadows = ShadowThreadUtils.class)
+    public void getServiceAsync_shouldCacheSeparatelyFromApp() {
+        final ApplicationInfo info = appInfo(PACKAGE_NAME, 0 /* userId */);
+        final ResolveInfo resolveInfo = spy(new ResolveInfo());
+        resolveInfo.serviceInfo = new ServiceInfo();
+        resolveInfo.serviceInfo.packageName = PACKAGE_NAME;
+        resolveInfo.serviceInfo.name = PACKAGE_NAME + ".Service";
+        resolveInfo.serviceInfo.applicationInfo = info;
+        doReturn("service").when(resolveInfo).loadLabel(mPackageManager);
+        doReturn(new ColorDrawable()).when(resolveInfo).loadIcon(mPackageManager);
+        final List<CharSequence> labels = new ArrayList<>();
+
+        mCache.get(mPackageManager, info);
+        mCache.getServiceAsync(mPackageManager, resolveInfo, entry -> labels.add(entry.label));
+        mCache.getServiceAsync(mPackageManager, resolveInfo, entry -> labels.add(entry.label));
+        mCache.invalidate(PACKAGE_NAME);
+        mCache.getServiceAsync(mPackageManager, resolveInfo, entry -> labels.add(entry.label));
+
+        assertThat(labels).containsExactly("service", "service", "service");
+        verify(resolveInfo, times(2)).loadLabel(mPackageManager);
+        verify(info, times(1)).loadLabel(mPackageManager);
+    }
+
+    @Test
+    public void dump_shouldReportHitRate() throws Exception {
+        final ApplicationInfo info = appInfo(PACKAGE_NAME, 0 /* userId */);
+        mCache.get(mPackageManager, info);
+        mCache.get(mPackageManager, info);
+        mCache.get(mPackageManager, info);
+
+        final JSONObject dump = mCache.dump();
+
+        assertThat(dump.getInt("entries")).isEqualTo(1);
+        assertThat(dump.getInt("hits")).isEqualTo(2);
+        assertThat(dump.getInt("misses")).isEqualTo(1);
+        assertThat(dump.getInt("bytes")).isGreaterThan(0);
+    }
+
+    private ApplicationInfo appInfo(String packageName, int userId) {
+        final ApplicationInfo info = spy(new ApplicationInfo());
+        info.packageName = packageName;
+        info.uid = UserHandle.getUid(userId, 10001);
+        info.icon = 1;
+        doReturn("label").when(info).loadLabel(mPackageManager);
+        doReturn(new ColorDrawable()).when(info).loadIcon(mPackageManager);
+        return info;
+    }
+}
@@ -17,6 +17,7 @@
 package com.android.settings.applications;
 
 import static android.text.format.DateUtils.DAY_IN_MILLIS;
+import static android.text.format.DateUtils.HOUR_IN_MILLIS;
 
 import static com.android.settings.applications.AppStateNotificationBridge
         .FILTER_APP_NOTIFICATION_FREQUENCY;
@@ -90,6 +91,8 @@ public class AppStateNotificationBridgeTest {
     private NotificationBackend mBackend;
     private Context mContext;
     private AppStateNotificationBridge mBridge;
+    // Events are only aggregated within the last days.
+    private long mStartTime;
 
     @Before
     public void setUp() {
@@ -101,6 +104,8 @@ public class AppStateNotificationBridgeTest {
         // most tests assume no work profile
         when(mUserManager.getProfileIdsWithDisabled(anyInt())).thenReturn(new int[]{});
         mContext = RuntimeEnvironment.application.getApplicationContext();
+        NotificationUsageAggregator.create(mContext).clear();
+        mStartTime = System.currentTimeMillis() - HOUR_IN_MILLIS;
 
         mBridge = new AppStateNotificationBridge(mContext, mState,
                 mock(AppStateBaseBridge.Callback.class), mUsageStats, mUserManager, mBackend);
@@ -136,12 +141,12 @@ public class AppStateNotificationBridgeTest {
         Event good = new Event();
         good.mEventType = Event.NOTIFICATION_INTERRUPTION;
         good.mPackage = PKG1;
-        good.mTimeStamp = 1;
+        good.mTimeStamp = mStartTime + 1;
         events.add(good);
         Event bad = new Event();
         bad.mEventType = Event.CHOOSER_ACTION;
         bad.mPackage = PKG1;
-        bad.mTimeStamp = 2;
+        bad.mTimeStamp = mStartTime + 2;
         events.add(bad);
 
         UsageEvents usageEvents = getUsageEvents(events);
@@ -158,12 +163,12 @@ public class AppStateNotificationBridgeTest {
         Event good = new Event();
         good.mEventType = Event.NOTIFICATION_INTERRUPTION;
         good.mPackage = PKG1;
-        good.mTimeStamp = 6;
+        good.mTimeStamp = mStartTime + 6;
         events.add(good);
         Event good1 = new Event();
         good1.mEventType = Event.NOTIFICATION_INTERRUPTION;
         good1.mPackage = PKG1;
-        good1.mTimeStamp = 1;
+        good1.mTimeStamp = mStartTime + 1;
         events.add(good1);
 
         UsageEvents usageEvents = getUsageEvents(events);
@@ -172,7 +177,7 @@ public class AppStateNotificationBridgeTest {
 
         Map<String, NotificationsSentState> map  = mBridge.getAggregatedUsageEvents();
         assertThat(map.get(mBridge.getKey(0, PKG1)).sentCount).isEqualTo(2);
-        assertThat(map.get(mBridge.getKey(0, PKG1)).lastSent).isEqualTo(6);
+        assertThat(map.get(mBridge.getKey(0, PKG1)).lastSent).isEqualTo(mStartTime + 6);
     }
 
     @Test
@@ -181,12 +186,12 @@ public class AppStateNotificationBridgeTest {
         Event good = new Event();
         good.mEventType = Event.NOTIFICATION_INTERRUPTION;
         good.mPackage = PKG1;
-        good.mTimeStamp = 6;
+        good.mTimeStamp = mStartTime + 6;
         events.add(good);
         Event good1 = new Event();
         good1.mEventType = Event.NOTIFICATION_INTERRUPTION;
         good1.mPackage = PKG2;
-        good1.mTimeStamp = 1;
+        good1.mTimeStamp = mStartTime + 1;
         events.add(good1);
 
         UsageEvents usageEvents = getUsageEvents(events);
@@ -197,8 +202,8 @@ public class AppStateNotificationBridgeTest {
                 = mBridge.getAggregatedUsageEvents();
         assertThat(map.get(mBridge.getKey(0, PKG1)).sentCount).isEqualTo(1);
         assertThat(map.get(mBridge.getKey(0, PKG2)).sentCount).isEqualTo(1);
-        assertThat(map.get(mBridge.getKey(0, PKG1)).lastSent).isEqualTo(6);
-        assertThat(map.get(mBridge.getKey(0, PKG2)).lastSent).isEqualTo(1);
+        assertThat(map.get(mBridge.getKey(0, PKG1)).lastSent).isEqualTo(mStartTime + 6);
+        assertThat(map.get(mBridge.getKey(0, PKG2)).lastSent).isEqualTo(mStartTime + 1);
     }
 
     @Test
@@ -220,7 +225,7 @@ public class AppStateNotificationBridgeTest {
             Event good = new Event();
             good.mEventType = Event.NOTIFICATION_INTERRUPTION;
             good.mPackage = PKG1;
-            good.mTimeStamp = i;
+            good.mTimeStamp = mStartTime + i;
             events.add(good);
         }
 
@@ -234,7 +239,8 @@ public class AppStateNotificationBridgeTest {
 
         mBridge.loadAllExtraInfo();
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).sentCount).isEqualTo(7);
-        assertThat(((NotificationsSentState) apps.get(0).extraInfo).lastSent).isEqualTo(6);
+        assertThat(((NotificationsSentState) apps.get(0).extraInfo).lastSent)
+                .isEqualTo(mStartTime + 6);
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).avgSentDaily).isEqualTo(1);
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).avgSentWeekly).isEqualTo(0);
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).blocked).isTrue();
@@ -249,13 +255,13 @@ public class AppStateNotificationBridgeTest {
             Event good = new Event();
             good.mEventType = Event.NOTIFICATION_INTERRUPTION;
             good.mPackage = PKG1;
-            good.mTimeStamp = i;
+            good.mTimeStamp = mStartTime + i;
             events.add(good);
         }
         Event good1 = new Event();
         good1.mEventType = Event.NOTIFICATION_INTERRUPTION;
         good1.mPackage = PKG2;
-        good1.mTimeStamp = 1;
+        good1.mTimeStamp = mStartTime + 1;
         events.add(good1);
 
         UsageEvents usageEvents = getUsageEvents(events);
@@ -269,12 +275,14 @@ public class AppStateNotificationBridgeTest {
 
         mBridge.loadAllExtraInfo();
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).sentCount).isEqualTo(8);
-        assertThat(((NotificationsSentState) apps.get(0).extraInfo).lastSent).isEqualTo(7);
+        assertThat(((NotificationsSentState) apps.get(0).extraInfo).lastSent)
+                .isEqualTo(mStartTime + 7);
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).avgSentWeekly).isEqualTo(0);
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).avgSentDaily).isEqualTo(1);
 
         assertThat(((NotificationsSentState) apps.get(1).extraInfo).sentCount).isEqualTo(1);
-        assertThat(((NotificationsSentState) apps.get(1).extraInfo).lastSent).isEqualTo(1);
+        assertThat(((NotificationsSentState) apps.get(1).extraInfo).lastSent)
+                .isEqualTo(mStartTime + 1);
         assertThat(((NotificationsSentState) apps.get(1).extraInfo).avgSentWeekly).isEqualTo(1);
         assertThat(((NotificationsSentState) apps.get(1).extraInfo).avgSentDaily).isEqualTo(0);
     }
@@ -291,7 +299,7 @@ public class AppStateNotificationBridgeTest {
             Event good = new Event();
             good.mEventType = Event.NOTIFICATION_INTERRUPTION;
             good.mPackage = PKG1;
-            good.mTimeStamp = i;
+            good.mTimeStamp = mStartTime + i;
             eventsProfileOwner.add(good);
         }
 
@@ -300,7 +308,7 @@ public class AppStateNotificationBridgeTest {
             Event good = new Event();
             good.mEventType = Event.NOTIFICATION_INTERRUPTION;
             good.mPackage = PKG1;
-            good.mTimeStamp = i;
+            good.mTimeStamp = mStartTime + i;
             eventsProfile.add(good);
         }
 
@@ -325,12 +333,14 @@ public class AppStateNotificationBridgeTest {
         mBridge.loadAllExtraInfo();
 
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).sentCount).isEqualTo(8);
-        assertThat(((NotificationsSentState) apps.get(0).extraInfo).lastSent).isEqualTo(7);
+        assertThat(((NotificationsSentState) apps.get(0).extraInfo).lastSent)
+                .isEqualTo(mStartTime + 7);
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).avgSentWeekly).isEqualTo(0);
         assertThat(((NotificationsSentState) apps.get(0).extraInfo).avgSentDaily).isEqualTo(1);
 
         assertThat(((NotificationsSentState) apps.get(1).extraInfo).sentCount).isEqualTo(4);
-        assertThat(((NotificationsSentState) apps.get(1).extraInfo).lastSent).isEqualTo(3);
+        assertThat(((NotificationsSentState) apps.get(1).extraInfo).lastSent)
+                .isEqualTo(mStartTime + 3);
         assertThat(((NotificationsSentState) apps.get(1).extraInfo).avgSentWeekly).isEqualTo(4);
         assertThat(((NotificationsSentState) apps.get(1).extraInfo).avgSentDaily).isEqualTo(1);
     }
@@ -353,7 +363,7 @@ public class AppStateNotificationBridgeTest {
             Event good = new Event();
             good.mEventType = Event.NOTIFICATION_INTERRUPTION;
             good.mPackage = PKG1;
-            good.mTimeStamp = i;
+            good.mTimeStamp = mStartTime + i;
             events.add(good);
         }
 
@@ -365,7 +375,7 @@ public class AppStateNotificationBridgeTest {
         mBridge.updateExtraInfo(entry, "", 0);
 
         assertThat(((NotificationsSentState) entry.extraInfo).sentCount).isEqualTo(13);
-        assertThat(((NotificationsSentState) entry.extraInfo).lastSent).isEqualTo(12);
+        assertThat(((NotificationsSentState) entry.extraInfo).lastSent).isEqualTo(mStartTime + 12);
         assertThat(((NotificationsSentState) entry.extraInfo).avgSentDaily).isEqualTo(2);
         assertThat(((NotificationsSentState) entry.extraInfo).avgSentWeekly).isEqualTo(0);
         assertThat(((NotificationsSentState) entry.extraInfo).blocked).isTrue();
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageEvents.Event;
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+
+import com.android.settings.applications.AppStateNotificationBridge.NotificationsSentState;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.Map;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class NotificationUsageAggregatorTest {
+    private static final long DAY = DateUtils.DAY_IN_MILLIS;
+    private static final long HOUR = DateUtils.HOUR_IN_MILLIS;
+    // Start of a day, so that the day of each event is obvious.
+    private static final long NOW = 20_000 * DAY;
+    private static final int USER = 0;
+    private static final String PKG1 = "pkg1";
+    private static final String PKG2 = "pkg2";
+
+    private File mFile;
+    private NotificationUsageAggregator mAggregator;
+
+    @Before
+    public void setUp() {
+        mFile = new File(RuntimeEnvironment.application.getFilesDir(),
+                "notification_usage_test_" + System.nanoTime());
+        mAggregator = new NotificationUsageAggregator(mFile);
+    }
+
+    @Test
+    public void getSentStates_shouldOnlyCountWindow() {
+        mAggregator.addEvent(USER, PKG1, Event.NOTIFICATION_INTERRUPTION, NOW - 9 * DAY);
+        mAggregator.addEvent(USER, PKG1, Event.NOTIFICATION_INTERRUPTION, NOW - 3 * DAY);
+        mAggregator.addEvent(USER, PKG1, Event.NOTIFICATION_INTERRUPTION, NOW - HOUR);
+        mAggregator.addEvent(USER, PKG2, Event.NOTIFICATION_INTERRUPTION, NOW - 8 * DAY);
+
+        final Map<String, NotificationsSentState> states = getSentStates(NOW);
+
+        assertThat(states.get(getKey(PKG1)).sentCount).isEqualTo(2);
+        assertThat(states.get(getKey(PKG1)).lastSent).isEqualTo(NOW - HOUR);
+        // Nothing left in the window.
+        assertThat(states).doesNotContainKey(getKey(PKG2));
+    }
+
+    @Test
+    public void getSentStates_windowMovesForward_shouldDropOldDays() {
+        mAggregator.addEvent(USER, PKG1, Event.NOTIFICATION_INTERRUPTION, NOW - 6 * DAY);
+        mAggregator.addEvent(USER, PKG1, Event.NOTIFICATION_INTERRUPTION, NOW - DAY);
+        assertThat(getSentStates(NOW).get(getKey(PKG1)).sentCount).isEqualTo(2);
+
+        assertThat(getSentStates(NOW + 2 * DAY).get(getKey(PKG1)).sentCount).isEqualTo(1);
+        assertThat(getSentStates(NOW + 7 * DAY)).isEmpty();
+    }
+
+    @Test
+    public void getSentStates_otherEventsOnly_shouldReportNoneSent() {
+        mAggregator.addEvent(USER, PKG1, Event.CHOOSER_ACTION, NOW - HOUR);
+
+        final NotificationsSentState state = getSentStates(NOW).get(getKey(PKG1));
+
+        assertThat(state.sentCount).isEqualTo(0);
+        assertThat(state.lastSent).isEqualTo(0);
+    }
+
+    @Test
+    public void getSentStates_recentOtherEventsAndOldNotification_shouldReportNoneSent() {
+        mAggregator.addEvent(USER, PKG1, Event.NOTIFICATION_INTERRUPTION, NOW - 20 * DAY);
+        mAggregator.addEvent(USER, PKG1, Event.CHOOSER_ACTION, NOW - 3 * DAY);
+        mAggregator.addEvent(USER, PKG1, Event.CHOOSER_ACTION, NOW - HOUR);
+
+        final NotificationsSentState state = getSentStates(NOW).get(getKey(PKG1));
+
+        assertThat(state.sentCount).isEqualTo(0);
+        assertThat(state.lastSent).isEqualTo(0);
+    }
+
+    @Test
+    public void update_shouldOnlyQuerySinceCheckpoint() throws Exception {
+        final NotificationUsageAggregator.EventQuery query =
+                mock(NotificationUsageAggregator.EventQuery.class);
+        when(query.query(anyLong(), anyLong())).thenReturn(mock(UsageEvents.class));
+
+        mAggregator.update(USER, NOW, query);
+        mAggregator.update(USER, NOW + HOUR, query);
+
+        verify(query).query(NOW - AppStateNotificationBridge.DAYS_TO_CHECK * DAY, NOW);
+        verify(query).query(NOW, NOW + HOUR);
+    }
+
+    @Test
+    public void update_queryFails_shouldKeepCheckpoint() throws Exception {
+        final NotificationUsageAggregator.EventQuery query =
+                mock(NotificationUsageAggregator.EventQuery.class);
+        when(query.query(anyLong(), anyLong())).thenReturn(mock(UsageEvents.class));
+        mAggregator.update(USER, NOW, query);
+        when(query.query(anyLong(), anyLong())).thenReturn(null);
+        mAggregator.update(USER, NOW + HOUR, query);
+
+        when(query.query(anyLong(), anyLong())).thenReturn(mock(UsageEvents.class));
+        mAggregator.update(USER, NOW + 2 * HOUR, query);
+
+        verify(query).query(NOW, NOW + 2 * HOUR);
+    }
+
+    @Test
+    public void newInstance_shouldRestorePersistedAggregate() throws Exception {
+        mAggregator.addEvent(USER, PKG1, Event.NOTIFICATION_INTERRUPTION, NOW - 2 * DAY);
+        mAggregator.addEvent(USER, PKG1, Event.NOTIFICATION_INTERRUPTION, NOW - HOUR);
+        mAggregator.addEvent(USER, PKG2, Event.NOTIFICATION_INTERRUPTION, NOW - HOUR);
+        final NotificationUsageAggregator.EventQuery query =
+                mock(NotificationUsageAggregator.EventQuery.class);
+        when(query.query(anyLong(), anyLong())).thenReturn(mock(UsageEvents.class));
+        mAggregator.update(USER, NOW, query);
+
+        final NotificationUsageAggregator restored =
+                new NotificationUsageAggregator(mFile);
+        final Map<String, NotificationsSentState> states = new ArrayMap<>();
+        restored.getSentStates(USER, NOW, states);
+        restored.update(USER, NOW + HOUR, query);
+
+        assertThat(states.get(getKey(PKG1)).sentCount).isEqualTo(2);
+        assertThat(states.get(getKey(PKG1)).lastSent).isEqualTo(NOW - HOUR);
+        assertThat(states.get(getKey(PKG2)).sentCount).isEqualTo(1);
+        verify(query).query(NOW, NOW + HOUR);
+    }
+
+    @Test
+    public void addEvent_manyEvents_shouldCountEachPackage() {
+        final int eventCount = 100_000;
+        final int packageCount = 200;
+        final long start = NOW - AppStateNotificationBridge.DAYS_TO_CHECK * DAY;
+        final long interval = (NOW - start) / eventCount;
+        final String[] packages = new String[packageCount];
+        for (int i = 0; i < packageCount; i++) {
+            packages[i] = "com.example.app" + i;
+        }
+
+        final int[] expectedCounts = new int[packageCount];
+        for (int i = 0; i < eventCount; i++) {
+            // A few chatty apps send most of the events.
+            final int pkg = i % 10 != 0 ? i % 10 : i / 10 % packageCount;
+            final int type = i % 4 == 0 ? Event.CHOOSER_ACTION : Event.NOTIFICATION_INTERRUPTION;
+            mAggregator.addEvent(USER, packages[pkg], type, start + i * interval);
+            if (type == Event.NOTIFICATION_INTERRUPTION) {
+                expectedCounts[pkg]++;
+            }
+        }
+
+        final Map<String, NotificationsSentState> states = getSentStates(NOW);
+
+        for (int i = 0; i < packageCount; i++) {
+            final NotificationsSentState state = states.get(getKey(packages[i]));
+            assertThat(state.sentCount).isEqualTo(expectedCounts[i]);
+        }
+    }
+
+    private Map<String, NotificationsSentState> getSentStates(long now) {
+        final Map<String, NotificationsSentState> states = new ArrayMap<>();
+        mAggregator.getSentStates(USER, now, states);
+        return states;
+    }
+
+    private static String getKey(String pkg) {
+        return AppStateNotificationBridge.getKey(USER, pkg);
+    }
+}
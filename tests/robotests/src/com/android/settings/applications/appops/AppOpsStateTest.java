@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.appops;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AppOpsStateTest {
+    private static final String PACKAGE_PREFIX = "com.example.app";
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private AppOpsManager mAppOpsManager;
+    @Mock
+    private PackageManager mPackageManager;
+
+    private AppOpsState mState;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getSystemService(Context.APP_OPS_SERVICE)).thenReturn(mAppOpsManager);
+        when(mContext.getPackageManager()).thenReturn(mPackageManager);
+        when(mContext.getResources()).thenReturn(RuntimeEnvironment.application.getResources());
+        mState = new AppOpsState(mContext);
+    }
+
+    @Test
+    public void buildState_permissionNotGranted_shouldSkip() {
+        final PackageInfo info = createPackageInfo(0, new String[] {
+                Manifest.permission.ACCESS_COARSE_LOCATION,
+                Manifest.permission.ACCESS_FINE_LOCATION});
+        info.requestedPermissionsFlags[0] = 0;
+        when(mPackageManager.getPackagesHoldingPermissions(any(String[].class), eq(0)))
+                .thenReturn(Collections.singletonList(info));
+
+        final List<AppOpsState.AppOpEntry> entries =
+                mState.buildState(AppOpsState.LOCATION_TEMPLATE);
+
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getNumOpEntries()).isEqualTo(1);
+        assertThat(entries.get(0).getOpEntry(0).getOp())
+                .isEqualTo(AppOpsManager.OP_FINE_LOCATION);
+    }
+
+    @Test
+    public void buildState_existingOp_shouldNotAddDummyOp() throws Exception {
+        final PackageInfo info = createPackageInfo(0, new String[] {
+                Manifest.permission.ACCESS_COARSE_LOCATION});
+        when(mPackageManager.getApplicationInfo(eq(info.packageName), anyInt()))
+                .thenReturn(info.applicationInfo);
+        when(mPackageManager.getPackagesHoldingPermissions(any(String[].class), eq(0)))
+                .thenReturn(Collections.singletonList(info));
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenReturn(
+                Collections.singletonList(createPackageOps(info)));
+
+        final List<AppOpsState.AppOpEntry> entries =
+                mState.buildState(AppOpsState.LOCATION_TEMPLATE);
+
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getNumOpEntries()).isEqualTo(1);
+        assertThat(entries.get(0).getTime()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void buildState_manyPackages_shouldMergeOpsOfEachPackage() throws Exception {
+        final int packageCount = 50;
+        final String[] requestedPermissions = new String[22];
+        for (int i = 0; i < 20; i++) {
+            requestedPermissions[i] = "com.example.permission.P" + i;
+        }
+        requestedPermissions[20] = Manifest.permission.ACCESS_COARSE_LOCATION;
+        requestedPermissions[21] = Manifest.permission.ACCESS_FINE_LOCATION;
+        final List<PackageInfo> packages = new ArrayList<>();
+        final List<AppOpsManager.PackageOps> packageOps = new ArrayList<>();
+        for (int i = 0; i < packageCount; i++) {
+            final PackageInfo info = createPackageInfo(i, requestedPermissions);
+            packages.add(info);
+            if (i % 2 == 0) {
+                packageOps.add(createPackageOps(info));
+                when(mPackageManager.getApplicationInfo(eq(info.packageName), anyInt()))
+                        .thenReturn(info.applicationInfo);
+            }
+        }
+        when(mPackageManager.getPackagesHoldingPermissions(any(String[].class), eq(0)))
+                .thenReturn(packages);
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenReturn(packageOps);
+
+        final List<AppOpsState.AppOpEntry> entries =
+                mState.buildState(AppOpsState.LOCATION_TEMPLATE);
+
+        // Coarse and fine location share a switch, so each package has a single entry, with the
+        // recorded coarse location op and a dummy fine location op.
+        assertThat(entries).hasSize(packageCount);
+        for (AppOpsState.AppOpEntry entry : entries) {
+            final int index = Integer.parseInt(
+                    entry.getAppEntry().getApplicationInfo().packageName
+                            .substring(PACKAGE_PREFIX.length()));
+            assertThat(entry.getNumOpEntries()).isEqualTo(2);
+            assertThat(entry.getTime()).isEqualTo(index % 2 == 0 ? 1000L : 0L);
+        }
+    }
+
+    private static PackageInfo createPackageInfo(int index, String[] requestedPermissions) {
+        final PackageInfo info = new PackageInfo();
+        info.packageName = PACKAGE_PREFIX + index;
+        info.applicationInfo = new ApplicationInfo();
+        info.applicationInfo.packageName = info.packageName;
+        info.applicationInfo.uid = 10000 + index;
+        // Not an existing file, so the package name is used as the label.
+        info.applicationInfo.sourceDir = "/nonexistent/" + info.packageName + ".apk";
+        info.requestedPermissions = requestedPermissions;
+        info.requestedPermissionsFlags = new int[requestedPermissions.length];
+        for (int i = 0; i < requestedPermissions.length; i++) {
+            info.requestedPermissionsFlags[i] = PackageInfo.REQUESTED_PERMISSION_GRANTED;
+        }
+        return info;
+    }
+
+    private static AppOpsManager.PackageOps createPackageOps(PackageInfo info) {
+        final List<AppOpsManager.OpEntry> ops = new ArrayList<>();
+        ops.add(new AppOpsManager.OpEntry(AppOpsManager.OP_COARSE_LOCATION,
+                AppOpsManager.MODE_ALLOWED, 1000L, 0L, 0, -1, null));
+        return new AppOpsManager.PackageOps(info.packageName, info.applicationInfo.uid, ops);
+    }
+}
@@ -20,14 +20,20 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.content.res.Resources;
 import androidx.preference.Preference;
+import androidx.preference.PreferenceGroup;
 
 import com.android.settings.R;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
@@ -41,6 +47,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
 
 import java.util.List;
 
@@ -55,6 +62,16 @@ public class DeviceListPreferenceFragmentTest {
     private Context mContext;
     @Mock
     private LocalBluetoothAdapter mLocalAdapter;
+    @Mock
+    private PreferenceGroup mDeviceListGroup;
+    @Mock
+    private CachedBluetoothDevice mCachedDevice1;
+    @Mock
+    private CachedBluetoothDevice mCachedDevice2;
+    @Mock
+    private BluetoothDevice mDevice1;
+    @Mock
+    private BluetoothDevice mDevice2;
     private TestFragment mFragment;
     private Preference mMyDevicePreference;
 
@@ -68,6 +85,52 @@ public class DeviceListPreferenceFragmentTest {
         mFragment.mLocalAdapter = mLocalAdapter;
 
         mMyDevicePreference = new Preference(RuntimeEnvironment.application);
+
+        mFragment.mDeviceListGroup = mDeviceListGroup;
+        when(mLocalAdapter.getBluetoothState()).thenReturn(BluetoothAdapter.STATE_ON);
+        when(mDevice1.getAddress()).thenReturn("00:11:22:33:44:01");
+        when(mDevice2.getAddress()).thenReturn("00:11:22:33:44:02");
+        when(mCachedDevice1.getDevice()).thenReturn(mDevice1);
+        when(mCachedDevice2.getDevice()).thenReturn(mDevice2);
+        doNothing().when(mFragment).createDevicePreference(any(CachedBluetoothDevice.class));
+    }
+
+    @Test
+    public void onDeviceAdded_burst_shouldCreateOnePreferencePerAddress() {
+        ShadowLooper.pauseMainLooper();
+        for (int i = 0; i < 50; i++) {
+            mFragment.onDeviceAdded(mCachedDevice1);
+            mFragment.onDeviceAdded(mCachedDevice2);
+        }
+        verify(mFragment, never()).createDevicePreference(any(CachedBluetoothDevice.class));
+
+        ShadowLooper.idleMainLooper(DeviceListPreferenceFragment.DEVICE_BATCH_WINDOW_MS);
+
+        verify(mFragment).createDevicePreference(mCachedDevice1);
+        verify(mFragment).createDevicePreference(mCachedDevice2);
+        assertThat(mFragment.mDeviceEventCount).isEqualTo(100);
+    }
+
+    @Test
+    public void onDeviceDeleted_afterPendingAdd_shouldDropTheAdd() {
+        mFragment.onDeviceAdded(mCachedDevice1);
+        mFragment.onDeviceAdded(mCachedDevice2);
+        mFragment.onDeviceDeleted(mCachedDevice1);
+
+        mFragment.applyPendingDevices();
+
+        verify(mFragment, never()).createDevicePreference(mCachedDevice1);
+        verify(mFragment).createDevicePreference(mCachedDevice2);
+    }
+
+    @Test
+    public void removeAllDevices_shouldDropPendingEvents() {
+        mFragment.onDeviceAdded(mCachedDevice1);
+
+        mFragment.removeAllDevices();
+        mFragment.applyPendingDevices();
+
+        verify(mFragment, never()).createDevicePreference(any(CachedBluetoothDevice.class));
     }
 
     @Test
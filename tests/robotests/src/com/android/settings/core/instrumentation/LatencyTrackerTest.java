@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class LatencyTrackerTest {
+    private static final String SPAN = "TestFragment.open";
+
+    @Before
+    public void setUp() {
+        LatencyTracker.reset();
+    }
+
+    @After
+    public void tearDown() {
+        LatencyTracker.reset();
+    }
+
+    @Test
+    public void getPercentile_shouldUseNearestRank() {
+        for (int i = 1; i <= 100; i++) {
+            LatencyTracker.recordDuration(SPAN, i);
+        }
+
+        assertThat(LatencyTracker.getPercentile(SPAN, 50)).isEqualTo(50);
+        assertThat(LatencyTracker.getPercentile(SPAN, 95)).isEqualTo(95);
+        assertThat(LatencyTracker.getPercentile(SPAN, 99)).isEqualTo(99);
+    }
+
+    @Test
+    public void recordDuration_overCapacity_shouldKeepLatestSamples() {
+        for (int i = 0; i < LatencyTracker.SAMPLE_CAPACITY; i++) {
+            LatencyTracker.recordDuration(SPAN, 1_000);
+        }
+        for (int i = 0; i < LatencyTracker.SAMPLE_CAPACITY; i++) {
+            LatencyTracker.recordDuration(SPAN, 1);
+        }
+
+        assertThat(LatencyTracker.getPercentile(SPAN, 99)).isEqualTo(1);
+    }
+
+    @Test
+    public void recordDuration_tooManySpans_shouldDropNewSpans() throws Exception {
+        for (int i = 0; i < LatencyTracker.MAX_SPANS; i++) {
+            LatencyTracker.recordDuration("span" + i, 1);
+        }
+
+        LatencyTracker.recordDuration(SPAN, 1);
+
+        final JSONObject dump = LatencyTracker.dump();
+        assertThat(dump.has(SPAN)).isFalse();
+        assertThat(dump.getLong("dropped_samples")).isEqualTo(1);
+    }
+
+    @Test
+    public void dump_shouldReportPercentilesInMillis() throws Exception {
+        LatencyTracker.recordDuration(SPAN, 2_000_000);
+        LatencyTracker.recordDuration(SPAN, 4_000_000);
+
+        final JSONObject span = LatencyTracker.dump().getJSONObject(SPAN);
+
+        assertThat(span.getLong("count")).isEqualTo(2);
+        assertThat(span.getDouble("p50_ms")).isEqualTo(2.0);
+        assertThat(span.getDouble("max_ms")).isEqualTo(4.0);
+    }
+}
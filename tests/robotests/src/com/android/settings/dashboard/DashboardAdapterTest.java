@@ -47,6 +47,7 @@ import com.android.settings.dashboard.suggestions.SuggestionAdapter;
 import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 import com.android.settings.testutils.shadow.SettingsShadowResources;
+import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.drawer.TileUtils;
 import com.android.settingslib.utils.IconCache;
@@ -262,6 +263,35 @@ public class DashboardAdapterTest {
         verify(iconCache, never()).updateIcon(eq(tile.icon), any(RoundedHomepageIcon.class));
     }
 
+    @Test
+    public void onBindViewHolderPartially_summaryPayload_shouldOnlyBindSummary() {
+        final Context context = RuntimeEnvironment.application;
+        final View view = LayoutInflater.from(context).inflate(R.layout.dashboard_tile, null);
+        final DashboardAdapter.DashboardItemHolder holder =
+                new DashboardAdapter.DashboardItemHolder(view);
+        final Tile tile = new Tile();
+        tile.title = "title";
+        tile.summary = "summary";
+        tile.icon = Icon.createWithResource(context, R.drawable.ic_settings);
+        final DashboardCategory category = new DashboardCategory();
+        category.addTile(tile);
+        final IconCache iconCache = mock(IconCache.class);
+
+        mDashboardAdapter = new DashboardAdapter(context, null /* savedInstanceState */,
+                null /* conditions */, null /* suggestionControllerMixin */, null /* lifecycle */);
+        ReflectionHelpers.setField(mDashboardAdapter, "mCache", iconCache);
+        mDashboardAdapter.setCategory(category);
+        final int position = mDashboardAdapter.mDashboardData.getPositionByTile(tile);
+
+        assertThat(mDashboardAdapter.onBindViewHolderPartially(holder, position,
+                DashboardData.PAYLOAD_SUMMARY)).isTrue();
+
+        assertThat(holder.summary.getText().toString()).isEqualTo("summary");
+        assertThat(holder.title.getText().toString()).isEmpty();
+        assertThat(holder.itemView.getTag()).isSameAs(tile);
+        verify(iconCache, never()).getIcon(any(Icon.class));
+    }
+
     private List<Suggestion> makeSuggestionsV2(String... pkgNames) {
         final List<Suggestion> suggestions = new ArrayList<>();
         for (String pkgName : pkgNames) {
@@ -25,6 +25,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import android.app.PendingIntent;
+import android.graphics.drawable.Icon;
 import android.service.settings.suggestions.Suggestion;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.DiffUtil;
@@ -215,13 +216,11 @@ public class DashboardDataTest {
     }
 
     @Test
-    public void testDiffUtil_RemoveOneSuggestion_causeItemRemoveAndChange() {
+    public void testDiffUtil_RemoveOneSuggestion_causeItemRemoveOnly() {
         final List<ListUpdateResult.ResultData> testResultData = new ArrayList<>();
-        // removed suggestion and the divider
+        // removed suggestion and the divider, the unchanged condition header is not rebound
         testResultData.add(new ListUpdateResult.ResultData(
                 ListUpdateResult.ResultData.TYPE_OPERATION_REMOVE, 0, 2));
-        testResultData.add(new ListUpdateResult.ResultData(
-                ListUpdateResult.ResultData.TYPE_OPERATION_CHANGE, 2, 1));
         // Build DashboardData
         final List<Condition> oneItemConditions = new ArrayList<>();
         when(mTestCondition.shouldShow()).thenReturn(true);
@@ -271,6 +270,62 @@ public class DashboardDataTest {
         testDiffUtil(prevData, currentData, testResultData);
     }
 
+    @Test
+    public void testGetChangePayload_tileSummaryChanged_returnSummaryPayload() {
+        final Tile oldTile = new Tile();
+        oldTile.title = TEST_CATEGORY_TILE_TITLE;
+        oldTile.summary = "old summary";
+        final Tile newTile = new Tile();
+        newTile.title = TEST_CATEGORY_TILE_TITLE;
+        newTile.summary = "new summary";
+
+        final Object payload = getTileChangePayload(oldTile, newTile);
+
+        assertThat(payload).isEqualTo(DashboardData.PAYLOAD_SUMMARY);
+    }
+
+    @Test
+    public void testGetChangePayload_tileIconChanged_returnIconPayload() {
+        final Tile oldTile = new Tile();
+        oldTile.title = TEST_CATEGORY_TILE_TITLE;
+        oldTile.icon = Icon.createWithResource("pkg", 1);
+        final Tile newTile = new Tile();
+        newTile.title = TEST_CATEGORY_TILE_TITLE;
+        newTile.icon = Icon.createWithResource("pkg", 2);
+
+        final Object payload = getTileChangePayload(oldTile, newTile);
+
+        assertThat(payload).isEqualTo(DashboardData.PAYLOAD_ICON);
+    }
+
+    @Test
+    public void testGetChangePayload_conditionsChanged_returnConditionsPayload() {
+        final DashboardData.ItemsDataDiffCallback callback =
+                new DashboardData.ItemsDataDiffCallback(
+                        mDashboardDataWithOneConditions.getItemList(),
+                        mDashboardDataWithTwoConditions.getItemList());
+
+        // Item in position 2 is the condition container.
+        assertThat(callback.getChangePayload(2, 2)).isEqualTo(DashboardData.PAYLOAD_CONDITIONS);
+    }
+
+    private static Object getTileChangePayload(Tile oldTile, Tile newTile) {
+        final DashboardCategory oldCategory = new DashboardCategory();
+        oldCategory.addTile(oldTile);
+        final DashboardCategory newCategory = new DashboardCategory();
+        newCategory.addTile(newTile);
+        final List<DashboardData.Item> oldItems =
+                new DashboardData.Builder().setCategory(oldCategory).build().getItemList();
+        final List<DashboardData.Item> newItems =
+                new DashboardData.Builder().setCategory(newCategory).build().getItemList();
+        final DashboardData.ItemsDataDiffCallback callback =
+                new DashboardData.ItemsDataDiffCallback(oldItems, newItems);
+        // The tile comes after the search bar.
+        assertThat(callback.areItemsTheSame(1, 1)).isTrue();
+        assertThat(callback.areContentsTheSame(1, 1)).isFalse();
+        return callback.getChangePayload(1, 1);
+    }
+
     /**
      * Test when using the
      * {@link com.android.settings.dashboard.DashboardData.ItemsDataDiffCallback}
@@ -305,7 +305,7 @@ public class DashboardFeatureProviderImplTest {
         tile.metaData = new Bundle();
         tile.metaData.putString(TileUtils.META_DATA_PREFERENCE_ICON_URI,
                 "content://com.android.settings/tile_icon");
-        mImpl.bindIcon(preference, tile);
+        mImpl.bindIcon(preference, tile, null /* node */);
 
         assertThat(preference.getIcon()).isNotNull();
     }
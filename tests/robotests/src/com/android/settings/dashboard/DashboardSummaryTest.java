@@ -29,10 +29,12 @@ import static org.mockito.Mockito.when;
 
 import android.app.Activity;
 import android.content.Context;
+import android.service.settings.suggestions.Suggestion;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
 import com.android.settings.dashboard.conditional.ConditionManager;
 import com.android.settings.dashboard.conditional.FocusRecyclerView;
+import com.android.settings.dashboard.suggestions.SuggestionCache;
 import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 import com.android.settingslib.drawer.CategoryKey;
@@ -47,6 +49,9 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.util.ReflectionHelpers;
 
+import java.util.Arrays;
+import java.util.List;
+
 @RunWith(SettingsRobolectricTestRunner.class)
 public class DashboardSummaryTest {
 
@@ -64,6 +69,8 @@ public class DashboardSummaryTest {
     private SummaryLoader mSummaryLoader;
     @Mock
     private SuggestionControllerMixin mSuggestionControllerMixin;
+    @Mock
+    private SuggestionCache mSuggestionCache;
 
     private Context mContext;
     private DashboardSummary mSummary;
@@ -180,4 +187,40 @@ public class DashboardSummaryTest {
         mSummary.onCategoriesChanged();
         verify(mSummary).rebuildUI();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void onSuggestionReady_noSuggestions_shouldKeepShownSuggestions() {
+        final List<Suggestion> shown = Arrays.asList(new Suggestion.Builder("id").build());
+        ReflectionHelpers.setField(mSummary, "mSuggestionCache", mSuggestionCache);
+        ReflectionHelpers.setField(mSummary, "mStagingSuggestions", shown);
+
+        mSummary.onSuggestionReady(null);
+
+        verify(mAdapter, never()).setSuggestions(any());
+        verify(mSuggestionCache, never()).put(any());
+        assertThat((List<Suggestion>) ReflectionHelpers.getField(mSummary,
+                "mStagingSuggestions")).isSameAs(shown);
+    }
+
+    @Test
+    public void onSuggestionCacheInvalidated_suggestionNotLoaded_shouldNotRestartLoader() {
+        ReflectionHelpers.setField(mSummary, "mSuggestionControllerMixin",
+                mSuggestionControllerMixin);
+        when(mSuggestionControllerMixin.isSuggestionLoaded()).thenReturn(false);
+
+        mSummary.onSuggestionCacheInvalidated();
+
+        verify(mSuggestionControllerMixin, never()).onServiceConnected();
+    }
+
+    @Test
+    public void onSuggestionCacheInvalidated_suggestionLoaded_shouldRestartLoader() {
+        ReflectionHelpers.setField(mSummary, "mSuggestionControllerMixin",
+                mSuggestionControllerMixin);
+        when(mSuggestionControllerMixin.isSuggestionLoaded()).thenReturn(true);
+
+        mSummary.onSuggestionCacheInvalidated();
+
+        verify(mSuggestionControllerMixin).onServiceConnected();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settings.testutils.shadow.ShadowTileUtils;
+import com.android.settingslib.drawer.DashboardCategory;
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.drawer.TileUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(shadows = ShadowTileUtils.class)
+public class DashboardTileGraphTest {
+    private static final String CATEGORY_1 = "category1";
+    private static final String CATEGORY_2 = "category2";
+
+    @Mock
+    private DashboardFeatureProvider mProvider;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        when(mProvider.getDashboardKeyForTile(any(Tile.class)))
+                .thenAnswer(invocation -> ((Tile) invocation.getArgument(0)).key);
+    }
+
+    @Test
+    public void build_shouldResolveTiles() {
+        final Tile tile = createTile("key1");
+        tile.metaData = new Bundle();
+        tile.metaData.putString(TileUtils.META_DATA_PREFERENCE_SUMMARY_URI,
+                "content://com.android.settings/tile_summary");
+        tile.metaData.putString(TileUtils.META_DATA_PREFERENCE_ICON_URI,
+                "content://com.android.settings/tile_icon");
+        final List<DashboardCategory> categories = new ArrayList<>();
+        categories.add(createCategory(CATEGORY_1, tile));
+
+        final DashboardTileGraph graph =
+                DashboardTileGraph.build(mContext, mProvider, categories, null /* previous */);
+
+        final DashboardTileGraph.TileNode node = graph.getTileNode(tile);
+        assertThat(node.key).isEqualTo("key1");
+        assertThat(node.intent.getComponent()).isEqualTo(tile.intent.getComponent());
+        assertThat(node.summary).isEqualTo(ShadowTileUtils.MOCK_SUMMARY);
+        assertThat(node.icon.getResId()).isEqualTo(ShadowTileUtils.ICON_RES_ID);
+        assertThat(graph.getCategory(CATEGORY_1).tiles).containsExactly(node);
+    }
+
+    @Test
+    public void build_unchangedCategory_shouldKeepVersion() {
+        final List<DashboardCategory> categories = new ArrayList<>();
+        categories.add(createCategory(CATEGORY_1, createTile("key1")));
+        categories.add(createCategory(CATEGORY_2, createTile("key2")));
+        final DashboardTileGraph first =
+                DashboardTileGraph.build(mContext, mProvider, categories, null /* previous */);
+
+        // Reloaded categories have new tiles, only the second category has different ones.
+        final List<DashboardCategory> reloaded = new ArrayList<>();
+        reloaded.add(createCategory(CATEGORY_1, createTile("key1")));
+        reloaded.add(createCategory(CATEGORY_2, createTile("key2"), createTile("key3")));
+        final DashboardTileGraph second =
+                DashboardTileGraph.build(mContext, mProvider, reloaded, first);
+
+        assertThat(second.version).isGreaterThan(first.version);
+        assertThat(second.getCategory(CATEGORY_1).version)
+                .isEqualTo(first.getCategory(CATEGORY_1).version);
+        assertThat(second.getCategory(CATEGORY_2).version).isEqualTo(second.version);
+    }
+
+    @Test
+    public void isBuiltFrom_tilesChanged_shouldReturnFalse() {
+        final Tile tile = createTile("key1");
+        final DashboardCategory category = createCategory(CATEGORY_1, tile);
+        final List<DashboardCategory> categories = new ArrayList<>();
+        categories.add(category);
+        final DashboardTileGraph graph =
+                DashboardTileGraph.build(mContext, mProvider, categories, null /* previous */);
+        assertThat(graph.isBuiltFrom(categories)).isTrue();
+        assertThat(graph.isBuiltFrom(new ArrayList<>(categories))).isFalse();
+
+        category.removeTile(0);
+
+        assertThat(graph.isBuiltFrom(categories)).isFalse();
+    }
+
+    private static Tile createTile(String key) {
+        final Tile tile = new Tile();
+        tile.key = key;
+        tile.title = key;
+        tile.intent = new Intent().setComponent(new ComponentName("pkg", "pkg." + key));
+        return tile;
+    }
+
+    private static DashboardCategory createCategory(String key, Tile... tiles) {
+        final DashboardCategory category = new DashboardCategory();
+        category.key = key;
+        for (Tile tile : tiles) {
+            category.addTile(tile);
+        }
+        return category;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.drawable.Icon;
+import android.os.UserHandle;
+
+import com.android.settings.R;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.drawer.DashboardCategory;
+import com.android.settingslib.drawer.Tile;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class HomepageSnapshotTest {
+
+    private Context mContext;
+    private Tile mTile;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mTile = new Tile();
+        mTile.title = "title";
+        mTile.summary = "summary";
+        mTile.key = "key";
+        mTile.priority = 10;
+        mTile.icon = Icon.createWithResource(mContext, R.drawable.ic_settings_wireless);
+        mTile.intent = new Intent().setComponent(new ComponentName("pkg", "pkg.Activity"));
+        mTile.userHandle = new ArrayList<>();
+        mTile.userHandle.add(UserHandle.of(0));
+    }
+
+    @Test
+    public void fromJson_shouldRestoreTiles() throws Exception {
+        final JSONObject json = HomepageSnapshot.toJson(mContext, Arrays.asList(mTile));
+
+        final DashboardCategory category = HomepageSnapshot.fromJson(mContext, json);
+
+        assertThat(category.getTilesCount()).isEqualTo(1);
+        final Tile tile = category.getTile(0);
+        assertThat(tile.title.toString()).isEqualTo("title");
+        assertThat(tile.summary.toString()).isEqualTo("summary");
+        assertThat(tile.key).isEqualTo("key");
+        assertThat(tile.priority).isEqualTo(10);
+        assertThat(tile.icon.getResPackage()).isEqualTo(mContext.getPackageName());
+        assertThat(tile.icon.getResId()).isEqualTo(R.drawable.ic_settings_wireless);
+        assertThat(tile.intent.getComponent()).isEqualTo(mTile.intent.getComponent());
+        assertThat(tile.userHandle).containsExactly(UserHandle.of(0));
+        assertThat(HomepageSnapshot.isSnapshot(tile)).isTrue();
+        assertThat(HomepageSnapshot.isSnapshot(mTile)).isFalse();
+    }
+
+    @Test
+    public void toJson_nonResourceIcon_shouldSkipTile() throws Exception {
+        mTile.icon = Icon.createWithData(new byte[0], 0, 0);
+
+        final JSONObject json = HomepageSnapshot.toJson(mContext, Arrays.asList(mTile));
+
+        assertThat(HomepageSnapshot.fromJson(mContext, json).getTilesCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void fromJson_otherLocale_shouldReturnNull() throws Exception {
+        final JSONObject json = HomepageSnapshot.toJson(mContext, Arrays.asList(mTile));
+        json.put("locales", "xx-XX");
+
+        assertThat(HomepageSnapshot.fromJson(mContext, json)).isNull();
+    }
+
+    @Test
+    public void fromJson_iconPackageUpdated_shouldReturnNull() throws Exception {
+        final JSONObject json = HomepageSnapshot.toJson(mContext, Arrays.asList(mTile));
+        final JSONObject packages = json.getJSONObject("packages");
+        packages.put(mContext.getPackageName(), packages.getLong(mContext.getPackageName()) + 1);
+
+        assertThat(HomepageSnapshot.fromJson(mContext, json)).isNull();
+    }
+}
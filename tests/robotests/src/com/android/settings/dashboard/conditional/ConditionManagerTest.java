@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard.conditional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.PersistableBundle;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ConditionManagerTest {
+    private static final String ACTION_1 = "com.android.settings.test.ACTION_1";
+    private static final String ACTION_2 = "com.android.settings.test.ACTION_2";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void refreshAll_shouldOnlyRefreshChangedAndUndeclaredDependencies() {
+        final Condition changed = mockCondition(ACTION_1);
+        final Condition unchanged = mockCondition(ACTION_2);
+        final Condition noDependencies = mockCondition(null);
+        final ConditionManager manager = new ConditionManager(mContext,
+                Arrays.asList(changed, unchanged, noDependencies));
+
+        mContext.sendBroadcast(new Intent(ACTION_1));
+        manager.refreshAll();
+        manager.refreshAll();
+
+        verify(changed, times(1)).evaluateActive();
+        verify(unchanged, never()).evaluateActive();
+        verify(noDependencies, times(2)).evaluateActive();
+    }
+
+    @Test
+    public void refreshAll_refreshedWhileEvaluating_shouldDropResult() {
+        final Condition condition = mockCondition(null);
+        // The condition is refreshed between the start and the end of its evaluation.
+        when(condition.getRefreshGeneration()).thenReturn(0, 1);
+        final ConditionManager manager = new ConditionManager(mContext,
+                Arrays.asList(condition));
+
+        manager.refreshAll();
+
+        verify(condition).evaluateActive();
+        verify(condition, never()).setActive(anyBoolean());
+        verify(condition, never()).refreshState();
+    }
+
+    @Test
+    public void notifyChanged_burst_shouldSaveStatesOnce() {
+        final Condition condition = mockCondition(null);
+        when(condition.saveState(any(PersistableBundle.class))).thenReturn(true);
+        final ConditionManager manager = new ConditionManager(mContext,
+                Arrays.asList(condition));
+
+        manager.notifyChanged(condition);
+        manager.notifyChanged(condition);
+        manager.notifyChanged(condition);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        verify(condition, times(1)).saveState(any(PersistableBundle.class));
+    }
+
+    private static Condition mockCondition(String action) {
+        final Condition condition = mock(Condition.class);
+        when(condition.getDependencyActions())
+                .thenReturn(action != null ? new String[] {action} : null);
+        when(condition.evaluateActive()).thenReturn(false);
+        return condition;
+    }
+}
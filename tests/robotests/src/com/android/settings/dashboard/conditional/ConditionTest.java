@@ -100,6 +100,21 @@ public class ConditionTest {
         // no crash
     }
 
+    @Test
+    public void setActive_shouldIncrementRefreshGeneration() {
+        final int generation = mCondition.getRefreshGeneration();
+
+        mCondition.setActive(false);
+        mCondition.setActive(true);
+
+        assertThat(mCondition.getRefreshGeneration()).isEqualTo(generation + 2);
+    }
+
+    @Test
+    public void evaluateActive_byDefault_shouldReturnNull() {
+        assertThat(mCondition.evaluateActive()).isNull();
+    }
+
     private static final class TestCondition extends Condition {
 
         private static final int TEST_METRIC_CONSTANT = 1234;
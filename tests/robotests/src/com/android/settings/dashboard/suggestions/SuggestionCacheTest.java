@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard.suggestions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.verify;
+
+import android.os.SystemClock;
+import android.service.settings.suggestions.Suggestion;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class SuggestionCacheTest {
+
+    @Mock
+    private SuggestionCache.Listener mListener;
+
+    private SuggestionCache mCache;
+    private Suggestion mSuggestion1;
+    private Suggestion mSuggestion2;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mCache = new SuggestionCache(RuntimeEnvironment.application);
+        mSuggestion1 = new Suggestion.Builder("id1").build();
+        mSuggestion2 = new Suggestion.Builder("id2").build();
+    }
+
+    @Test
+    public void get_nothingCached_shouldReturnNull() {
+        assertThat(mCache.get()).isNull();
+        assertThat(mCache.isFresh()).isFalse();
+    }
+
+    @Test
+    public void put_shouldCacheCopyAndBeFresh() {
+        final List<Suggestion> suggestions = new ArrayList<>(Arrays.asList(mSuggestion1));
+        mCache.put(suggestions);
+        suggestions.add(mSuggestion2);
+
+        assertThat(mCache.get()).containsExactly(mSuggestion1);
+        assertThat(mCache.isFresh()).isTrue();
+    }
+
+    @Test
+    public void put_null_shouldKeepCachedSuggestions() {
+        mCache.put(Arrays.asList(mSuggestion1));
+        mCache.put(null);
+
+        assertThat(mCache.get()).containsExactly(mSuggestion1);
+    }
+
+    @Test
+    public void isFresh_afterTtl_shouldReturnFalse() {
+        mCache.put(Arrays.asList(mSuggestion1));
+
+        SystemClock.setCurrentTimeMillis(
+                SystemClock.elapsedRealtime() + SuggestionCache.FRESHNESS_TTL_MS + 1);
+
+        assertThat(mCache.isFresh()).isFalse();
+        assertThat(mCache.get()).containsExactly(mSuggestion1);
+    }
+
+    @Test
+    public void invalidate_shouldBeStaleAndNotifyListener() {
+        mCache.put(Arrays.asList(mSuggestion1));
+        mCache.setListener(mListener);
+
+        mCache.invalidate();
+
+        assertThat(mCache.isFresh()).isFalse();
+        assertThat(mCache.get()).containsExactly(mSuggestion1);
+        verify(mListener).onSuggestionCacheInvalidated();
+    }
+
+    @Test
+    public void remove_shouldOnlyRemoveSuggestionAndStayFresh() {
+        mCache.put(Arrays.asList(mSuggestion1, mSuggestion2));
+
+        mCache.remove(new Suggestion.Builder("id1").build());
+
+        assertThat(mCache.get()).containsExactly(mSuggestion2);
+        assertThat(mCache.isFresh()).isTrue();
+    }
+}
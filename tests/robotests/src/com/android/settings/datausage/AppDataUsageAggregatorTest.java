@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.UserInfo;
+import android.net.NetworkStats;
+import android.net.TrafficStats;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.AppItem;
+import com.android.settingslib.net.UidDetailProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AppDataUsageAggregatorTest {
+    private static final int CURRENT_USER = 0;
+    private static final int WORK_PROFILE = 10;
+    private static final int OTHER_USER = 11;
+    private static final int REMOVED_USER = 12;
+    private static final int APP_ID = 10123;
+
+    @Mock
+    private UserManager mUserManager;
+    private AppDataUsageAggregator mAggregator;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mUserManager.getUserInfo(OTHER_USER)).thenReturn(new UserInfo());
+        mAggregator = new AppDataUsageAggregator(mUserManager, CURRENT_USER,
+                Arrays.asList(UserHandle.of(CURRENT_USER), UserHandle.of(WORK_PROFILE)));
+    }
+
+    @Test
+    public void aggregate_nullStats_shouldReturnEmpty() {
+        assertThat(mAggregator.aggregate(null, new int[0])).isEmpty();
+    }
+
+    @Test
+    public void aggregate_shouldCollapseEntriesByKey() {
+        final int currentUid = UserHandle.getUid(CURRENT_USER, APP_ID);
+        final int workUid = UserHandle.getUid(WORK_PROFILE, APP_ID);
+        final NetworkStats stats = new NetworkStats(0, 10)
+                .addValues(entry(currentUid, 100))
+                .addValues(entry(currentUid, 300))
+                .addValues(entry(workUid, 50))
+                .addValues(entry(UserHandle.getUid(OTHER_USER, APP_ID), 20))
+                .addValues(entry(UserHandle.getUid(REMOVED_USER, APP_ID), 10))
+                .addValues(entry(TrafficStats.UID_TETHERING, 5));
+
+        final List<AppDataUsageAggregator.Row> rows = mAggregator.aggregate(stats, new int[0]);
+
+        assertThat(findRow(rows, currentUid).item.total).isEqualTo(400);
+        assertThat(findRow(rows, currentUid).percent).isEqualTo(100);
+        assertThat(findRow(rows, workUid).item.total).isEqualTo(50);
+        final AppDataUsageAggregator.Row workProfile =
+                findRow(rows, UidDetailProvider.buildKeyForUser(WORK_PROFILE));
+        assertThat(workProfile.item.category).isEqualTo(AppItem.CATEGORY_USER);
+        assertThat(workProfile.item.total).isEqualTo(50);
+        assertThat(findRow(rows, UidDetailProvider.buildKeyForUser(OTHER_USER)).item.total)
+                .isEqualTo(20);
+        assertThat(findRow(rows, TrafficStats.UID_REMOVED).item.total).isEqualTo(10);
+        assertThat(findRow(rows, TrafficStats.UID_TETHERING).percent).isEqualTo(1);
+    }
+
+    @Test
+    public void aggregate_manyEntriesOfOtherUser_shouldLookUpUserOnce() {
+        final NetworkStats stats = new NetworkStats(0, 1000);
+        for (int i = 0; i < 1000; i++) {
+            stats.addValues(entry(UserHandle.getUid(OTHER_USER, APP_ID + i), 1));
+        }
+
+        final List<AppDataUsageAggregator.Row> rows = mAggregator.aggregate(stats, new int[0]);
+
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0).item.total).isEqualTo(1000);
+        verify(mUserManager, times(1)).getUserInfo(anyInt());
+    }
+
+    @Test
+    public void aggregate_restrictedUids_shouldOnlyFlagProfileApps() {
+        final int usedUid = UserHandle.getUid(CURRENT_USER, APP_ID);
+        final int unusedUid = UserHandle.getUid(WORK_PROFILE, APP_ID + 1);
+        final NetworkStats stats = new NetworkStats(0, 1).addValues(entry(usedUid, 100));
+
+        final List<AppDataUsageAggregator.Row> rows = mAggregator.aggregate(stats,
+                new int[] {usedUid, unusedUid, UserHandle.getUid(OTHER_USER, APP_ID)});
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0).item.key).isEqualTo(usedUid);
+        assertThat(rows.get(0).item.restricted).isTrue();
+        assertThat(rows.get(1).item.key).isEqualTo(unusedUid);
+        assertThat(rows.get(1).item.restricted).isTrue();
+        assertThat(rows.get(1).item.total).isEqualTo(-1);
+    }
+
+    private static NetworkStats.Entry entry(int uid, long bytes) {
+        return new NetworkStats.Entry(NetworkStats.IFACE_ALL, uid, NetworkStats.SET_DEFAULT,
+                NetworkStats.TAG_NONE, bytes, 1, 0, 0, 0);
+    }
+
+    private static AppDataUsageAggregator.Row findRow(List<AppDataUsageAggregator.Row> rows,
+            int key) {
+        for (AppDataUsageAggregator.Row row : rows) {
+            if (row.item.key == key) {
+                return row;
+            }
+        }
+        throw new AssertionError("No row for " + key);
+    }
+}
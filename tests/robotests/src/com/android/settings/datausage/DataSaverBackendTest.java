@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static android.net.NetworkPolicyManager.POLICY_ALLOW_METERED_BACKGROUND;
+import static android.net.NetworkPolicyManager.POLICY_NONE;
+import static android.net.NetworkPolicyManager.POLICY_REJECT_METERED_BACKGROUND;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.net.NetworkPolicyManager;
+import android.util.SparseIntArray;
+
+import com.android.settings.testutils.FakeFeatureFactory;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class DataSaverBackendTest {
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private NetworkPolicyManager mPolicyManager;
+    @Mock
+    private DataSaverBackend.Listener mListener;
+    private DataSaverBackend mBackend;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        FakeFeatureFactory.setupForTest();
+        when(mContext.getSystemService(Context.NETWORK_POLICY_SERVICE))
+                .thenReturn(mPolicyManager);
+        when(mPolicyManager.getUidsWithPolicy(anyInt())).thenReturn(new int[0]);
+        mBackend = new DataSaverBackend(mContext);
+    }
+
+    @Test
+    public void setIsWhitelisted_shouldUpdateMirrorBeforeFlush() {
+        final int version = mBackend.getUidPoliciesVersion();
+
+        mBackend.setIsWhitelisted(1001, "pkg", true);
+
+        assertThat(mBackend.isWhitelisted(1001)).isTrue();
+        assertThat(mBackend.getUidPoliciesVersion()).isNotEqualTo(version);
+    }
+
+    @Test
+    public void setUidPolicies_shouldWriteEachUidOnce() {
+        final SparseIntArray edits = new SparseIntArray();
+        for (int uid = 2000; uid < 2100; uid++) {
+            edits.put(uid, POLICY_REJECT_METERED_BACKGROUND);
+        }
+        mBackend.setUidPolicies(edits);
+
+        mBackend.flushPendingEdits();
+
+        verify(mPolicyManager, times(100)).setUidPolicy(anyInt(),
+                eq(POLICY_REJECT_METERED_BACKGROUND));
+        assertThat(mBackend.isBlacklisted(2050)).isTrue();
+    }
+
+    @Test
+    public void onUidPoliciesChanged_burst_shouldNotifyListenersOncePerUid() {
+        when(mPolicyManager.getRestrictBackground()).thenReturn(false);
+        mBackend.addListener(mListener);
+
+        ShadowLooper.pauseMainLooper();
+        mBackend.onUidPoliciesChanged(1001, POLICY_REJECT_METERED_BACKGROUND);
+        mBackend.onUidPoliciesChanged(1001, POLICY_ALLOW_METERED_BACKGROUND);
+        mBackend.onUidPoliciesChanged(1002, POLICY_REJECT_METERED_BACKGROUND);
+        ShadowLooper.unPauseMainLooper();
+
+        verify(mListener, times(1)).onWhitelistStatusChanged(1001, true);
+        verify(mListener, never()).onBlacklistStatusChanged(1001, true);
+        verify(mListener, times(1)).onBlacklistStatusChanged(1002, true);
+        assertThat(mBackend.isWhitelisted(1001)).isTrue();
+    }
+
+    @Test
+    public void onUidPoliciesChanged_sameAsLocalEdit_shouldNotNotify() {
+        mBackend.addListener(mListener);
+        mBackend.setIsBlacklisted(1001, "pkg", true);
+
+        mBackend.onUidPoliciesChanged(1001, POLICY_REJECT_METERED_BACKGROUND);
+        mBackend.dispatchPendingChanges();
+
+        verify(mListener, never()).onBlacklistStatusChanged(anyInt(), anyBoolean());
+    }
+
+    @Test
+    public void setIsWhitelisted_editsDuringFlush_shouldBeWrittenInOrder() throws Exception {
+        final CountDownLatch flushing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        blockFirstWrite(flushing, release);
+
+        final Thread first = new Thread(() -> mBackend.setIsWhitelisted(1001, "pkg", true));
+        first.start();
+        assertThat(flushing.await(5, TimeUnit.SECONDS)).isTrue();
+        // The first flush is still writing, edit the same uid again and flush that too.
+        final Thread second = new Thread(() -> mBackend.setIsWhitelisted(1001, "pkg", false));
+        second.start();
+        waitUntilBlocked(second);
+        release.countDown();
+        first.join();
+        second.join();
+
+        final InOrder inOrder = inOrder(mPolicyManager);
+        inOrder.verify(mPolicyManager).setUidPolicy(1001, POLICY_ALLOW_METERED_BACKGROUND);
+        inOrder.verify(mPolicyManager).setUidPolicy(1001, POLICY_NONE);
+        assertThat(mBackend.isWhitelisted(1001)).isFalse();
+    }
+
+    @Test
+    public void addListener_editsUnflushed_shouldKeepMirror() throws Exception {
+        final CountDownLatch flushing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        blockFirstWrite(flushing, release);
+
+        final Thread flush = new Thread(() -> mBackend.setIsWhitelisted(1001, "pkg", true));
+        flush.start();
+        assertThat(flushing.await(5, TimeUnit.SECONDS)).isTrue();
+        mBackend.addListener(mListener);
+        final boolean whitelisted = mBackend.isWhitelisted(1001);
+        release.countDown();
+        flush.join();
+
+        assertThat(whitelisted).isTrue();
+    }
+
+    /**
+     * Makes the first write to the policy manager wait for {@code release}, counting down
+     * {@code flushing} once it started.
+     */
+    private void blockFirstWrite(CountDownLatch flushing, CountDownLatch release) {
+        doAnswer(invocation -> {
+            if (flushing.getCount() > 0) {
+                flushing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(mPolicyManager).setUidPolicy(anyInt(), anyInt());
+    }
+
+    private static void waitUntilBlocked(Thread thread) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.BLOCKED
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
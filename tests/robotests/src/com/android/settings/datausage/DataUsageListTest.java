@@ -30,17 +30,27 @@ import android.net.NetworkTemplate;
 import android.os.Bundle;
 import android.provider.Settings;
 
+import androidx.preference.Preference;
+import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+
 import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.AppItem;
 import com.android.settingslib.NetworkPolicyEditor;
+import com.android.settingslib.net.UidDetailProvider;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
 import org.robolectric.util.ReflectionHelpers;
 
+import java.util.Arrays;
+
 @RunWith(SettingsRobolectricTestRunner.class)
 public class DataUsageListTest {
 
@@ -103,4 +113,37 @@ public class DataUsageListTest {
         assertThat(mDataUsageList.mTemplate).isNotNull();
         assertThat(mDataUsageList.mSubId).isEqualTo(3);
     }
+
+    @Test
+    public void bindRows_shouldReuseAndReorderPreferencesByKey() {
+        final Context context = RuntimeEnvironment.application;
+        final PreferenceScreen screen = new PreferenceManager(context)
+                .createPreferenceScreen(context);
+        final PreferenceCategory apps = new PreferenceCategory(context);
+        screen.addPreference(apps);
+        doReturn(context).when(mDataUsageList).getContext();
+        doReturn(screen).when(mDataUsageList).getPreferenceScreen();
+        ReflectionHelpers.setField(mDataUsageList, "mApps", apps);
+        ReflectionHelpers.setField(mDataUsageList, "mUsageAmount", new Preference(context));
+        ReflectionHelpers.setField(mDataUsageList, "mUidDetailProvider",
+                mock(UidDetailProvider.class));
+
+        mDataUsageList.bindRows(Arrays.asList(row(1001, 100, 100), row(1002, 50, 50)));
+        final Preference reused = apps.findPreference("1002");
+
+        mDataUsageList.bindRows(Arrays.asList(row(1002, 80, 100), row(1003, 10, 12)));
+
+        assertThat(apps.getPreferenceCount()).isEqualTo(2);
+        assertThat(apps.findPreference("1001")).isNull();
+        assertThat(apps.findPreference("1002")).isSameAs(reused);
+        assertThat(reused.getOrder()).isEqualTo(0);
+        assertThat(((AppDataUsagePreference) reused).getItem().total).isEqualTo(80);
+        assertThat(apps.findPreference("1003").getOrder()).isEqualTo(1);
+    }
+
+    private static AppDataUsageAggregator.Row row(int key, long total, int percent) {
+        final AppItem item = new AppItem(key);
+        item.total = total;
+        return new AppDataUsageAggregator.Row(item, percent);
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.datausage;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.net.INetworkStatsSession;
+import android.net.NetworkStats;
+import android.net.NetworkTemplate;
+import android.os.SystemClock;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class DataUsageQueryCacheTest {
+    private static final NetworkTemplate TEMPLATE = NetworkTemplate.buildTemplateWifiWildcard();
+    private static final NetworkTemplate OTHER_TEMPLATE =
+            NetworkTemplate.buildTemplateMobileWildcard();
+
+    @Mock
+    private INetworkStatsSession mSession;
+    private DataUsageQueryCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mSession.getSummaryForAllUid(eq(TEMPLATE), anyLong(), anyLong(), anyBoolean()))
+                .thenReturn(new NetworkStats(0, 1));
+        mCache = new DataUsageQueryCache();
+    }
+
+    @Test
+    public void loadSummary_sameRange_shouldQueryOnce() throws Exception {
+        final NetworkStats first = mCache.loadSummary(mSession, TEMPLATE, 100, 200);
+        final NetworkStats second = mCache.loadSummary(mSession, TEMPLATE, 100, 200);
+
+        assertThat(second).isSameAs(first);
+        verify(mSession, times(1)).getSummaryForAllUid(TEMPLATE, 100, 200, false);
+    }
+
+    @Test
+    public void loadSummary_otherRange_shouldQueryAgain() throws Exception {
+        mCache.loadSummary(mSession, TEMPLATE, 100, 200);
+        mCache.loadSummary(mSession, TEMPLATE, 200, 300);
+
+        verify(mSession).getSummaryForAllUid(TEMPLATE, 100, 200, false);
+        verify(mSession).getSummaryForAllUid(TEMPLATE, 200, 300, false);
+    }
+
+    @Test
+    public void getSummary_afterMaxAge_shouldReturnNull() {
+        mCache.putSummary(TEMPLATE, 100, 200, new NetworkStats(0, 1));
+
+        SystemClock.setCurrentTimeMillis(
+                SystemClock.elapsedRealtime() + DataUsageQueryCache.MAX_AGE_MS + 1);
+
+        assertThat(mCache.getSummary(TEMPLATE, 100, 200)).isNull();
+    }
+
+    @Test
+    public void invalidate_shouldOnlyDropQueriesOfTemplate() {
+        mCache.putSummary(TEMPLATE, 100, 200, new NetworkStats(0, 1));
+        mCache.putSummary(OTHER_TEMPLATE, 100, 200, new NetworkStats(0, 1));
+
+        mCache.invalidate(TEMPLATE);
+
+        assertThat(mCache.getSummary(TEMPLATE, 100, 200)).isNull();
+        assertThat(mCache.getSummary(OTHER_TEMPLATE, 100, 200)).isNotNull();
+    }
+
+    @Test
+    public void putSummary_overMemoryCap_shouldEvictLeastRecentlyUsed() {
+        // Each summary takes a bit over a third of the cache.
+        final int entries = DataUsageQueryCache.MAX_SIZE_BYTES / 72 / 3 + 1;
+        for (int start = 0; start < 3; start++) {
+            final NetworkStats stats = new NetworkStats(0, entries);
+            for (int i = 0; i < entries; i++) {
+                stats.addValues(new NetworkStats.Entry(NetworkStats.IFACE_ALL, i,
+                        NetworkStats.SET_DEFAULT, NetworkStats.TAG_NONE, 1, 1, 1, 1, 0));
+            }
+            mCache.putSummary(TEMPLATE, start, start + 1, stats);
+            if (start == 1) {
+                // Touch the first summary so the second one is the least recently used.
+                mCache.getSummary(TEMPLATE, 0, 1);
+            }
+        }
+
+        assertThat(mCache.getSummary(TEMPLATE, 0, 1)).isNotNull();
+        assertThat(mCache.getSummary(TEMPLATE, 1, 2)).isNull();
+        assertThat(mCache.getSummary(TEMPLATE, 2, 3)).isNotNull();
+    }
+}
@@ -19,6 +19,8 @@ package com.android.settings.fuelgauge;
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -45,6 +47,7 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @RunWith(RobolectricTestRunner.class)
@@ -206,4 +209,47 @@ public class BatteryAppListPreferenceControllerTest {
     public void testNeverUseFakeData() {
         assertThat(BatteryAppListPreferenceController.USE_FAKE_DATA).isFalse();
     }
+
+    @Test
+    public void testApplyAppRows_sameRows_doNotRebindPreference() {
+        final String key = mPreferenceController.extractKeyFromUid(UID);
+        final PowerGaugePreference preference = spy(new PowerGaugePreference(mContext));
+        preference.setKey(key);
+        when(mAppListGroup.getPreferenceCount()).thenReturn(1);
+        when(mAppListGroup.getPreference(0)).thenReturn(preference);
+        final List<BatteryAppRow> rows = new ArrayList<>();
+        rows.add(new BatteryAppRow(key, null /* entry */, null /* badgedIcon */,
+                "app" /* contentDescription */, "app" /* title */, 10 /* percent */,
+                null /* summary */, 1 /* order */));
+
+        mPreferenceController.applyAppRows(rows);
+        mPreferenceController.applyAppRows(rows);
+
+        verify(preference, times(1)).setPercent(10);
+        verify(mAppListGroup, times(2)).addPreference(preference);
+        assertThat(preference.getTitle()).isEqualTo("app");
+    }
+
+    @Test
+    public void testApplyAppRows_percentChanged_rebindPreference() {
+        final String key = mPreferenceController.extractKeyFromUid(UID);
+        final PowerGaugePreference preference = spy(new PowerGaugePreference(mContext));
+        preference.setKey(key);
+        when(mAppListGroup.getPreferenceCount()).thenReturn(1);
+        when(mAppListGroup.getPreference(0)).thenReturn(preference);
+        final List<BatteryAppRow> rows = new ArrayList<>();
+        rows.add(new BatteryAppRow(key, null /* entry */, null /* badgedIcon */,
+                "app" /* contentDescription */, "app" /* title */, 10 /* percent */,
+                null /* summary */, 1 /* order */));
+        final List<BatteryAppRow> newRows = new ArrayList<>();
+        newRows.add(new BatteryAppRow(key, null /* entry */, null /* badgedIcon */,
+                "app" /* contentDescription */, "app" /* title */, 20 /* percent */,
+                null /* summary */, 1 /* order */));
+
+        mPreferenceController.applyAppRows(rows);
+        mPreferenceController.applyAppRows(newRows);
+
+        verify(preference).setPercent(10);
+        verify(preference).setPercent(20);
+    }
 }
@@ -148,4 +148,41 @@ public class BatteryDatabaseManagerTest {
                 AnomalyDatabaseHelper.State.NEW);
         assertThat(newAppInfos).containsExactly(mCombinedAppInfo);
     }
+
+    @Test
+    public void testEnqueueAnomaly_visibleAfterFlush() {
+        mBatteryDatabaseManager.enqueueAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.enqueueAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+
+        assertThat(mBatteryDatabaseManager.flushPendingAnomalies()).isEqualTo(2);
+        assertThat(mBatteryDatabaseManager.flushPendingAnomalies()).isEqualTo(0);
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(ONE_DAY_BEFORE,
+                AnomalyDatabaseHelper.State.NEW)).containsExactly(mNewAppInfo, mOldAppInfo);
+    }
+
+    @Test
+    public void testQueryAnomalies_includeBufferedAnomalies() {
+        mBatteryDatabaseManager.enqueueAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(ONE_DAY_BEFORE,
+                AnomalyDatabaseHelper.State.NEW)).containsExactly(mNewAppInfo);
+    }
+
+    @Test
+    public void testDeleteAnomalies_spanMultiplePartitions_deleteAllObsoleteRecords() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                AnomalyDatabaseHelper.State.NEW, TWO_DAYS_BEFORE);
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW - 30 * DateUtils.DAY_IN_MILLIS);
+
+        mBatteryDatabaseManager.deleteAllAnomaliesBeforeTimeStamp(ONE_DAY_BEFORE);
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(0 /* timeMsAfter */,
+                AnomalyDatabaseHelper.State.NEW)).containsExactly(mNewAppInfo);
+    }
 }
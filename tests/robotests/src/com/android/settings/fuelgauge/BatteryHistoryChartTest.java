@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import android.graphics.Canvas;
+import android.graphics.Path;
+import android.os.SystemClock;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryHistoryChartTest {
+    private static final int X = 42;
+
+    @Mock
+    private Path mPath;
+    @Mock
+    private BatteryHistoryChart.OnChartRenderedListener mListener;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void flushColumn_severalLevelsInColumn_shouldDrawExtremesAndEndOnLast() {
+        // Entered the column at 50, then went up to 40, down to 70 and ended at 60.
+        final int y = BatteryHistoryChart.flushColumn(mPath, X, 50 /* y */, 40 /* columnMinY */,
+                70 /* columnMaxY */, 60 /* columnLastY */);
+
+        assertThat(y).isEqualTo(60);
+        final InOrder inOrder = inOrder(mPath);
+        inOrder.verify(mPath).lineTo(X, 40);
+        inOrder.verify(mPath).lineTo(X, 70);
+        inOrder.verify(mPath).lineTo(X, 60);
+    }
+
+    @Test
+    public void flushColumn_noChangeInColumn_shouldNotDraw() {
+        final int y = BatteryHistoryChart.flushColumn(mPath, X, 50 /* y */, 50 /* columnMinY */,
+                50 /* columnMaxY */, 50 /* columnLastY */);
+
+        assertThat(y).isEqualTo(50);
+        verify(mPath, never()).lineTo(anyFloat(), anyFloat());
+    }
+
+    @Test
+    public void flushColumn_noLevelPath_shouldKeepLevel() {
+        assertThat(BatteryHistoryChart.flushColumn(null /* curLevelPath */, X, 50 /* y */,
+                40 /* columnMinY */, 70 /* columnMaxY */, 60 /* columnLastY */)).isEqualTo(50);
+    }
+
+    @Test
+    public void onDraw_shouldReportBuildTimeOnceAndDrawTimeEachFrame() {
+        final BatteryHistoryChart chart = spy(new BatteryHistoryChart(
+                RuntimeEnvironment.application, Robolectric.buildAttributeSet().build()));
+        doAnswer(invocation -> {
+            SystemClock.sleep(5);
+            return null;
+        }).when(chart).drawStaticLayer(any(Canvas.class), anyInt(), anyInt());
+        doAnswer(invocation -> {
+            SystemClock.sleep(1);
+            return null;
+        }).when(chart).drawHeader(any(Canvas.class), anyInt());
+        chart.layout(0, 0, 100 /* right */, 100 /* bottom */);
+        chart.setOnChartRenderedListener(mListener);
+
+        chart.onDraw(new Canvas());
+        chart.onDraw(new Canvas());
+
+        // The static layer is only built for the first frame.
+        final InOrder inOrder = inOrder(mListener);
+        inOrder.verify(mListener).onChartRendered(longThat(time -> time > 0),
+                longThat(time -> time > 0));
+        inOrder.verify(mListener).onChartRendered(eq(0L), longThat(time -> time > 0));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.text.format.DateUtils;
+import android.util.SparseArray;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.Arrays;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryUsageHistoryStoreTest {
+    private static final int UID = 10001;
+    private static final int UID_OTHER = 10002;
+    private static final long DAY = DateUtils.DAY_IN_MILLIS;
+    private static final long HOUR = DateUtils.HOUR_IN_MILLIS;
+    private static final long START = 100 * DAY;
+
+    private File mDirectory;
+    private BatteryUsageHistoryStore mStore;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(RuntimeEnvironment.application.getFilesDir(),
+                "battery_usage_history_test_" + System.nanoTime());
+        mStore = new BatteryUsageHistoryStore(mDirectory);
+    }
+
+    @Test
+    public void queryUsage_withinOneSession_returnGrowthInWindow() {
+        mStore.appendSnapshot(START, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 10, 1000)));
+        mStore.appendSnapshot(START + HOUR, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 30, 3000),
+                new BatteryUsageHistoryStore.AppUsage(UID_OTHER, 5, 500)));
+        mStore.appendSnapshot(START + 2 * HOUR, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 70, 7000),
+                new BatteryUsageHistoryStore.AppUsage(UID_OTHER, 5, 500)));
+
+        final SparseArray<BatteryUsageHistoryStore.UsageSummary> usage =
+                mStore.queryUsage(START + HOUR / 2, START + 3 * HOUR);
+
+        assertThat(usage.get(UID).powerMah).isWithin(0.01).of(60);
+        assertThat(usage.get(UID).foregroundTimeMs).isEqualTo(6000);
+        // UID_OTHER session started before the window and has no earlier snapshot.
+        assertThat(usage.get(UID_OTHER).powerMah).isWithin(0.01).of(0);
+    }
+
+    @Test
+    public void queryUsage_acrossSessionsAndDays_sumEachSession() {
+        mStore.appendSnapshot(START, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 0, 0)));
+        mStore.appendSnapshot(START + 10 * HOUR, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 40, 4000)));
+        // Battery stats were reset by a full charge the next day.
+        final long nextSession = START + DAY;
+        mStore.appendSnapshot(nextSession + HOUR, nextSession, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 25, 2500)));
+
+        final SparseArray<BatteryUsageHistoryStore.UsageSummary> usage =
+                mStore.queryUsage(START, nextSession + 2 * HOUR);
+
+        assertThat(usage.get(UID).powerMah).isWithin(0.01).of(65);
+        assertThat(usage.get(UID).foregroundTimeMs).isEqualTo(6500);
+    }
+
+    @Test
+    public void queryUsage_windowBeforeData_returnEmpty() {
+        mStore.appendSnapshot(START, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 10, 1000)));
+
+        assertThat(mStore.queryUsage(START - 2 * DAY, START - DAY).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void queryUsage_longWindow_onlyScanDayFilesInWindowInOrder() throws Exception {
+        mStore.appendSnapshot(START, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 0, 0)));
+        mStore.appendSnapshot(START + 2 * DAY, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 20, 2000)));
+        mStore.appendSnapshot(START + 5 * DAY, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 100, 10000)));
+        assertThat(new File(mDirectory, "unrelated").createNewFile()).isTrue();
+
+        final SparseArray<BatteryUsageHistoryStore.UsageSummary> usage =
+                mStore.queryUsage(0, START + 3 * DAY);
+
+        assertThat(usage.get(UID).powerMah).isWithin(0.01).of(20);
+        assertThat(usage.get(UID).foregroundTimeMs).isEqualTo(2000);
+    }
+
+    @Test
+    public void deleteObsoleteFiles_keepRecentDays() {
+        mStore.appendSnapshot(START, START, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 10, 1000)));
+        final long later = START + (BatteryUsageHistoryStore.RETAIN_DAYS + 1) * DAY;
+        mStore.appendSnapshot(later, later, Arrays.asList(
+                new BatteryUsageHistoryStore.AppUsage(UID, 10, 1000)));
+
+        mStore.deleteObsoleteFiles(later);
+
+        assertThat(mDirectory.list()).hasLength(1);
+        assertThat(mStore.queryUsage(START - DAY, START + DAY).size()).isEqualTo(0);
+    }
+}
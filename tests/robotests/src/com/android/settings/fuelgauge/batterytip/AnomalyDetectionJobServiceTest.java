@@ -31,6 +31,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -64,6 +65,7 @@ import com.android.settings.testutils.shadow.ShadowPowerWhitelistBackend;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.Robolectric;
@@ -152,7 +154,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider,
                 mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
+        verify(mBatteryDatabaseManager, never()).enqueueAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
@@ -173,7 +175,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider,
                 mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
+        verify(mBatteryDatabaseManager, never()).enqueueAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_IGNORED,
@@ -193,7 +195,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
                 mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
+        verify(mBatteryDatabaseManager, never()).enqueueAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
@@ -208,7 +210,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
                 mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
+        verify(mBatteryDatabaseManager, never()).enqueueAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
@@ -228,7 +230,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
                 mBundle);
 
-        verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
+        verify(mBatteryDatabaseManager).enqueueAnomaly(anyInt(), anyString(), eq(6),
                 eq(AnomalyDatabaseHelper.State.AUTO_HANDLED), anyLong());
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
@@ -253,7 +255,7 @@ public class AnomalyDetectionJobServiceTest {
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
                 mBundle);
 
-        verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
+        verify(mBatteryDatabaseManager).enqueueAnomaly(anyInt(), anyString(), eq(6),
                 eq(AnomalyDatabaseHelper.State.NEW), anyLong());
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
@@ -320,4 +322,17 @@ public class AnomalyDetectionJobServiceTest {
 
         assertThat(mAnomalyDetectionJobService.mIsJobCanceled).isFalse();
     }
+
+    @Test
+    public void commitWork_flushAnomaliesBeforeCompletingItems() {
+        final List<JobWorkItem> items = new ArrayList<>();
+        items.add(mJobWorkItem);
+
+        mAnomalyDetectionJobService.commitWork(mJobParameters, mBatteryDatabaseManager, items);
+
+        final InOrder inOrder = inOrder(mBatteryDatabaseManager, mJobParameters);
+        inOrder.verify(mBatteryDatabaseManager).flushPendingAnomalies();
+        inOrder.verify(mJobParameters).completeWork(mJobWorkItem);
+        assertThat(items).isEmpty();
+    }
 }
@@ -60,121 +60,180 @@ public class UsageGraphTest {
 
     @Test
     public void calculateLocalPaths_singlePath() {
-        SparseIntArray paths = new SparseIntArray();
-        paths.append(0, 100);
-        paths.append(500, 50);
-        paths.append(501, -1);
+        PointBuffer paths = new PointBuffer();
+        paths.add(0, 100);
+        paths.add(500, 50);
+        paths.add(501, -1);
 
-        SparseIntArray localPaths = new SparseIntArray();
+        PointBuffer localPaths = new PointBuffer();
         mGraph.calculateLocalPaths(paths, localPaths);
 
         assertThat(localPaths.size()).isEqualTo(3);
-        assertThat(localPaths.keyAt(0)).isEqualTo(0);
-        assertThat(localPaths.valueAt(0)).isEqualTo(0);
-        assertThat(localPaths.keyAt(1)).isEqualTo(1000);
-        assertThat(localPaths.valueAt(1)).isEqualTo(100);
-        assertThat(localPaths.keyAt(2)).isEqualTo(1001);
-        assertThat(localPaths.valueAt(2)).isEqualTo(-1);
+        assertThat(localPaths.getX(0)).isEqualTo(0f);
+        assertThat(localPaths.getY(0)).isEqualTo(0f);
+        assertThat(localPaths.getX(1)).isEqualTo(1000f);
+        assertThat(localPaths.getY(1)).isEqualTo(100f);
+        assertThat(localPaths.getX(2)).isEqualTo(1001f);
+        assertThat(localPaths.getY(2)).isEqualTo(-1f);
     }
 
     @Test
     public void calculateLocalPaths_multiplePaths() {
-        SparseIntArray paths = new SparseIntArray();
-        paths.append(0, 100);
-        paths.append(200, 75);
-        paths.append(201, -1);
+        PointBuffer paths = new PointBuffer();
+        paths.add(0, 100);
+        paths.add(200, 75);
+        paths.add(201, -1);
 
-        paths.append(300, 50);
-        paths.append(500, 25);
-        paths.append(501, -1);
+        paths.add(300, 50);
+        paths.add(500, 25);
+        paths.add(501, -1);
 
-        SparseIntArray localPaths = new SparseIntArray();
+        PointBuffer localPaths = new PointBuffer();
         mGraph.calculateLocalPaths(paths, localPaths);
 
         assertThat(localPaths.size()).isEqualTo(6);
 
-        assertThat(localPaths.keyAt(0)).isEqualTo(0);
-        assertThat(localPaths.valueAt(0)).isEqualTo(0);
-        assertThat(localPaths.keyAt(1)).isEqualTo(400);
-        assertThat(localPaths.valueAt(1)).isEqualTo(50);
-        assertThat(localPaths.keyAt(2)).isEqualTo(401);
-        assertThat(localPaths.valueAt(2)).isEqualTo(-1);
-
-        assertThat(localPaths.keyAt(3)).isEqualTo(600);
-        assertThat(localPaths.valueAt(3)).isEqualTo(100);
-        assertThat(localPaths.keyAt(4)).isEqualTo(1000);
-        assertThat(localPaths.valueAt(4)).isEqualTo(150);
-        assertThat(localPaths.keyAt(5)).isEqualTo(1001);
-        assertThat(localPaths.valueAt(5)).isEqualTo(-1);
+        assertThat(localPaths.getX(0)).isEqualTo(0f);
+        assertThat(localPaths.getY(0)).isEqualTo(0f);
+        assertThat(localPaths.getX(1)).isEqualTo(400f);
+        assertThat(localPaths.getY(1)).isEqualTo(50f);
+        assertThat(localPaths.getX(2)).isEqualTo(401f);
+        assertThat(localPaths.getY(2)).isEqualTo(-1f);
+
+        assertThat(localPaths.getX(3)).isEqualTo(600f);
+        assertThat(localPaths.getY(3)).isEqualTo(100f);
+        assertThat(localPaths.getX(4)).isEqualTo(1000f);
+        assertThat(localPaths.getY(4)).isEqualTo(150f);
+        assertThat(localPaths.getX(5)).isEqualTo(1001f);
+        assertThat(localPaths.getY(5)).isEqualTo(-1f);
     }
 
     @Test
     public void calculateLocalPaths_similarPointMiddle() {
-        SparseIntArray paths = new SparseIntArray();
-        paths.append(0, 100);
-        paths.append(1, 99); // This point should be omitted.
-        paths.append(500, 50);
-        paths.append(501, -1);
+        PointBuffer paths = new PointBuffer();
+        paths.add(0, 100);
+        paths.add(1, 99); // This point should be omitted.
+        paths.add(500, 50);
+        paths.add(501, -1);
 
-        SparseIntArray localPaths = new SparseIntArray();
+        PointBuffer localPaths = new PointBuffer();
         mGraph.calculateLocalPaths(paths, localPaths);
 
         assertThat(localPaths.size()).isEqualTo(3);
-        assertThat(localPaths.keyAt(0)).isEqualTo(0);
-        assertThat(localPaths.valueAt(0)).isEqualTo(0);
-        assertThat(localPaths.keyAt(1)).isEqualTo(1000);
-        assertThat(localPaths.valueAt(1)).isEqualTo(100);
-        assertThat(localPaths.keyAt(2)).isEqualTo(1001);
-        assertThat(localPaths.valueAt(2)).isEqualTo(-1);
+        assertThat(localPaths.getX(0)).isEqualTo(0f);
+        assertThat(localPaths.getY(0)).isEqualTo(0f);
+        assertThat(localPaths.getX(1)).isEqualTo(1000f);
+        assertThat(localPaths.getY(1)).isEqualTo(100f);
+        assertThat(localPaths.getX(2)).isEqualTo(1001f);
+        assertThat(localPaths.getY(2)).isEqualTo(-1f);
     }
 
     @Test
     public void calculateLocalPaths_similarPointEnd() {
-        SparseIntArray paths = new SparseIntArray();
-        paths.append(0, 100);
-        paths.append(499, 51);
-        paths.append(500, 50); // This point should be kept: it's the last one.
-        paths.append(501, -1);
+        PointBuffer paths = new PointBuffer();
+        paths.add(0, 100);
+        paths.add(499, 51);
+        paths.add(500, 50); // This point should be kept: it's the last one.
+        paths.add(501, -1);
 
-        SparseIntArray localPaths = new SparseIntArray();
+        PointBuffer localPaths = new PointBuffer();
         mGraph.calculateLocalPaths(paths, localPaths);
 
         assertThat(localPaths.size()).isEqualTo(4);
-        assertThat(localPaths.keyAt(0)).isEqualTo(0);
-        assertThat(localPaths.valueAt(0)).isEqualTo(0);
-        assertThat(localPaths.keyAt(1)).isEqualTo(998);
-        assertThat(localPaths.valueAt(1)).isEqualTo(98);
-        assertThat(localPaths.keyAt(2)).isEqualTo(1000);
-        assertThat(localPaths.valueAt(2)).isEqualTo(100);
-        assertThat(localPaths.keyAt(3)).isEqualTo(1001);
-        assertThat(localPaths.valueAt(3)).isEqualTo(-1);
+        assertThat(localPaths.getX(0)).isEqualTo(0f);
+        assertThat(localPaths.getY(0)).isEqualTo(0f);
+        assertThat(localPaths.getX(1)).isEqualTo(998f);
+        assertThat(localPaths.getY(1)).isEqualTo(98f);
+        assertThat(localPaths.getX(2)).isEqualTo(1000f);
+        assertThat(localPaths.getY(2)).isEqualTo(100f);
+        assertThat(localPaths.getX(3)).isEqualTo(1001f);
+        assertThat(localPaths.getY(3)).isEqualTo(-1f);
     }
 
     @Test
     public void calculateLocalPaths_unavailableData_shouldInsertFlatPoint() {
-        SparseIntArray paths = new SparseIntArray();
-        paths.append(0, 0);
-        paths.append(199, -1);
-        paths.append(200, 25);
-        paths.append(300, 50);
-        paths.append(500, 75);
-        paths.append(501, -1);
-
-        SparseIntArray localPaths = new SparseIntArray();
+        PointBuffer paths = new PointBuffer();
+        paths.add(0, 0);
+        paths.add(199, -1);
+        paths.add(200, 25);
+        paths.add(300, 50);
+        paths.add(500, 75);
+        paths.add(501, -1);
+
+        PointBuffer localPaths = new PointBuffer();
         mGraph.calculateLocalPaths(paths, localPaths);
 
         assertThat(localPaths.size()).isEqualTo(6);
-        assertThat(localPaths.keyAt(0)).isEqualTo(0);
-        assertThat(localPaths.valueAt(0)).isEqualTo(200);
-        assertThat(localPaths.keyAt(1)).isEqualTo(399);
-        assertThat(localPaths.valueAt(1)).isEqualTo(200);
-        assertThat(localPaths.keyAt(2)).isEqualTo(400);
-        assertThat(localPaths.valueAt(2)).isEqualTo(150);
-        assertThat(localPaths.keyAt(3)).isEqualTo(600);
-        assertThat(localPaths.valueAt(3)).isEqualTo(100);
-        assertThat(localPaths.keyAt(4)).isEqualTo(1000);
-        assertThat(localPaths.valueAt(4)).isEqualTo(50);
-        assertThat(localPaths.keyAt(5)).isEqualTo(1001);
-        assertThat(localPaths.valueAt(5)).isEqualTo(-1);
+        assertThat(localPaths.getX(0)).isEqualTo(0f);
+        assertThat(localPaths.getY(0)).isEqualTo(200f);
+        assertThat(localPaths.getX(1)).isEqualTo(399f);
+        assertThat(localPaths.getY(1)).isEqualTo(200f);
+        assertThat(localPaths.getX(2)).isEqualTo(400f);
+        assertThat(localPaths.getY(2)).isEqualTo(150f);
+        assertThat(localPaths.getX(3)).isEqualTo(600f);
+        assertThat(localPaths.getY(3)).isEqualTo(100f);
+        assertThat(localPaths.getX(4)).isEqualTo(1000f);
+        assertThat(localPaths.getY(4)).isEqualTo(50f);
+        assertThat(localPaths.getX(5)).isEqualTo(1001f);
+        assertThat(localPaths.getY(5)).isEqualTo(-1f);
+    }
+
+    @Test
+    public void decimatePaths_denseColumn_keepMinAndMaxInOrder() {
+        PointBuffer paths = new PointBuffer();
+        // All of these land in pixel column 20.
+        paths.add(10, 50);
+        paths.add(10.1f, 90);
+        paths.add(10.2f, 10);
+        paths.add(10.3f, 40);
+        paths.add(500, 50);
+        paths.add(501, -1);
+
+        PointBuffer decimated = new PointBuffer();
+        mGraph.decimatePaths(paths, decimated);
+
+        assertThat(decimated.size()).isEqualTo(4);
+        assertThat(decimated.getY(0)).isEqualTo(90f);
+        assertThat(decimated.getY(1)).isEqualTo(10f);
+        assertThat(decimated.getX(2)).isEqualTo(500f);
+        assertThat(decimated.getY(3)).isEqualTo(-1f);
+    }
+
+    @Test
+    public void decimatePaths_denseColumnAtEnd_keepLastPoint() {
+        PointBuffer paths = new PointBuffer();
+        paths.add(0, 100);
+        paths.add(499.6f, 10);
+        paths.add(499.7f, 90);
+        paths.add(499.8f, 50);
+        paths.add(501, -1);
+
+        PointBuffer decimated = new PointBuffer();
+        mGraph.decimatePaths(paths, decimated);
+
+        assertThat(decimated.size()).isEqualTo(5);
+        assertThat(decimated.getY(3)).isEqualTo(50f);
+        assertThat(decimated.getY(4)).isEqualTo(-1f);
+    }
+
+    @Test
+    public void calculateLocalPaths_50kPoints_boundedByWidth() {
+        final int count = 50000;
+        PointBuffer paths = new PointBuffer();
+        for (int i = 0; i < count; i++) {
+            // A noisy saw wave covering the whole graph.
+            paths.add(i * 500f / count, (i * 7919) % 100);
+        }
+        paths.add(501, -1);
+        PointBuffer localPaths = new PointBuffer();
+
+        mGraph.calculateLocalPaths(paths, localPaths);
+        final int size = localPaths.size();
+        // Calculating again reuses the buffer rather than appending to it.
+        mGraph.calculateLocalPaths(paths, localPaths);
+
+        // At most two points per pixel column, plus the end of the path and its delimiter.
+        assertThat(localPaths.size()).isEqualTo(size);
+        assertThat(localPaths.size()).isAtMost(2 * 1000 + 2);
     }
 }
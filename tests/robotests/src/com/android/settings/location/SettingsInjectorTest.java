@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.location;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.content.res.Configuration;
+import android.location.SettingInjectorService;
+import android.os.Bundle;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import androidx.preference.Preference;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class SettingsInjectorTest {
+
+    private static final UserHandle OWNER = UserHandle.of(0);
+    private static final UserHandle PROFILE = UserHandle.of(10);
+
+    @Mock
+    private PackageManager mPackageManager;
+    @Mock
+    private UserManager mUserManager;
+    @Mock
+    private ActivityManager mActivityManager;
+
+    private Context mContext;
+    private SettingsInjector mInjector;
+    // Settings are parsed and remembered process-wide, so each test uses its own packages.
+    private String mPackagePrefix;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(RuntimeEnvironment.application);
+        doReturn(mPackageManager).when(mContext).getPackageManager();
+        doReturn(mUserManager).when(mContext).getSystemService(Context.USER_SERVICE);
+        doReturn(mActivityManager).when(mContext).getSystemService(Context.ACTIVITY_SERVICE);
+        doReturn(null).when(mContext).startServiceAsUser(any(Intent.class),
+                any(UserHandle.class));
+        when(mUserManager.getUserProfiles()).thenReturn(Arrays.asList(OWNER));
+        when(mActivityManager.isUserRunning(anyInt())).thenReturn(true);
+        when(mPackageManager.getApplicationInfo(anyString(), anyInt()))
+                .thenThrow(new PackageManager.NameNotFoundException());
+        mPackagePrefix = "com.example.test" + System.nanoTime() + ".app";
+        mInjector = createInjector();
+    }
+
+    @Test
+    public void getInjectedSettings_shouldLoadAtMostMaxConcurrentStatuses() {
+        setServices(OWNER, 5);
+
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        assertThat(getStartedServices()).hasSize(SettingsInjector.MAX_CONCURRENT_LOADS);
+    }
+
+    @Test
+    public void receivedStatus_shouldLoadNextStatus() throws Exception {
+        setServices(OWNER, 5);
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        sendStatus(getStartedServices().get(0), true /* enabled */);
+
+        assertThat(getStartedServices()).hasSize(SettingsInjector.MAX_CONCURRENT_LOADS + 1);
+    }
+
+    @Test
+    public void timedOut_shouldLoadNextStatusesUntilTooManyTimedOut() {
+        setServices(OWNER, 10);
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        // Each timed out load frees its slot, as long as few enough timed out.
+        ShadowLooper.idleMainLooper(SettingsInjector.INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
+        assertThat(getStartedServices()).hasSize(2 * SettingsInjector.MAX_CONCURRENT_LOADS);
+
+        ShadowLooper.idleMainLooper(SettingsInjector.INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
+        assertThat(getStartedServices()).hasSize(2 * SettingsInjector.MAX_CONCURRENT_LOADS);
+    }
+
+    @Test
+    public void startServiceFails_shouldNotTakeSlot() {
+        when(mUserManager.getUserProfiles()).thenReturn(Arrays.asList(OWNER, PROFILE));
+        when(mActivityManager.isUserRunning(PROFILE.getIdentifier())).thenReturn(false);
+        setServices(PROFILE, SettingsInjector.MAX_CONCURRENT_LOADS);
+        setServices(OWNER, SettingsInjector.MAX_CONCURRENT_LOADS);
+
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        assertThat(getStartedServices()).hasSize(SettingsInjector.MAX_CONCURRENT_LOADS);
+    }
+
+    @Test
+    public void getInjectedSettings_unchangedPackage_shouldParseOnce() throws Exception {
+        setServices(OWNER, 1);
+
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        verify(mInjector, times(1)).parseMetaData(any(ResolveInfo.class), eq(OWNER),
+                eq(mPackageManager));
+    }
+
+    @Test
+    public void getInjectedSettings_packageUpdated_shouldParseAgain() throws Exception {
+        final List<ResolveInfo> services = setServices(OWNER, 1);
+        final ApplicationInfo ai = services.get(0).serviceInfo.applicationInfo;
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        ai.longVersionCode++;
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+        ai.sourceDir = "/data/app/" + ai.packageName + "-2/base.apk";
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        verify(mInjector, times(3)).parseMetaData(any(ResolveInfo.class), eq(OWNER),
+                eq(mPackageManager));
+    }
+
+    @Test
+    public void getInjectedSettings_localeChanged_shouldParseAgain() throws Exception {
+        setServices(OWNER, 1);
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        final Configuration config = new Configuration(
+                mContext.getResources().getConfiguration());
+        config.setLocale(Locale.FRANCE);
+        mContext.getResources().updateConfiguration(config, null /* metrics */);
+        mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT);
+
+        verify(mInjector, times(2)).parseMetaData(any(ResolveInfo.class), eq(OWNER),
+                eq(mPackageManager));
+    }
+
+    @Test
+    public void getInjectedSettings_shouldApplyLastKnownEnabledState() throws Exception {
+        setServices(OWNER, 1);
+        final Preference pref =
+                mInjector.getInjectedSettings(mContext, UserHandle.USER_CURRENT).get(0);
+        sendStatus(getStartedServices().get(0), false /* enabled */);
+        assertThat(pref.isEnabled()).isFalse();
+
+        final Preference newPref = createInjector()
+                .getInjectedSettings(mContext, UserHandle.USER_CURRENT).get(0);
+
+        assertThat(newPref.isEnabled()).isFalse();
+    }
+
+    private SettingsInjector createInjector() throws Exception {
+        final SettingsInjector injector = spy(new SettingsInjector(mContext));
+        doAnswer(invocation -> {
+            final ServiceInfo si = ((ResolveInfo) invocation.getArgument(0)).serviceInfo;
+            return new InjectedSetting.Builder()
+                    .setPackageName(si.packageName)
+                    .setClassName(si.name)
+                    .setTitle(si.packageName)
+                    .setSettingsActivity(si.name + "Activity")
+                    .setUserHandle(invocation.getArgument(1))
+                    .build();
+        }).when(injector).parseMetaData(any(ResolveInfo.class), any(UserHandle.class),
+                any(PackageManager.class));
+        return injector;
+    }
+
+    private List<ResolveInfo> setServices(UserHandle user, int count) {
+        final List<ResolveInfo> services = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final String packageName = mPackagePrefix + user.getIdentifier() + "_" + i;
+            final ResolveInfo info = new ResolveInfo();
+            info.serviceInfo = new ServiceInfo();
+            info.serviceInfo.packageName = packageName;
+            info.serviceInfo.name = packageName + ".InjectorService";
+            info.serviceInfo.applicationInfo = new ApplicationInfo();
+            info.serviceInfo.applicationInfo.packageName = packageName;
+            info.serviceInfo.applicationInfo.flags = ApplicationInfo.FLAG_SYSTEM;
+            info.serviceInfo.applicationInfo.sourceDir = "/system/app/" + packageName + ".apk";
+            services.add(info);
+        }
+        when(mPackageManager.queryIntentServicesAsUser(any(Intent.class), anyInt(),
+                eq(user.getIdentifier()))).thenReturn(services);
+        return services;
+    }
+
+    private List<Intent> getStartedServices() {
+        final ArgumentCaptor<Intent> captor = ArgumentCaptor.forClass(Intent.class);
+        verify(mContext, atLeast(0)).startServiceAsUser(captor.capture(),
+                any(UserHandle.class));
+        return captor.getAllValues();
+    }
+
+    private static void sendStatus(Intent serviceIntent, boolean enabled) throws Exception {
+        final Messenger messenger =
+                serviceIntent.getParcelableExtra(SettingInjectorService.MESSENGER_KEY);
+        final Bundle bundle = new Bundle();
+        bundle.putBoolean(SettingInjectorService.ENABLED_KEY, enabled);
+        final Message message = Message.obtain();
+        message.setData(bundle);
+        messenger.send(message);
+    }
+}
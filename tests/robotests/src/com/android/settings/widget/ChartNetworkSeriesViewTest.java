@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.widget;
+
+import static android.text.format.DateUtils.DAY_IN_MILLIS;
+import static android.text.format.DateUtils.HOUR_IN_MILLIS;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.NetworkStats;
+import android.net.NetworkStatsHistory;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ChartNetworkSeriesViewTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 500;
+    private static final long START = 1_500_000_000_000L / HOUR_IN_MILLIS * HOUR_IN_MILLIS;
+    private static final int DAYS = 90;
+
+    private ChartDataUsageView.TimeAxis mHoriz;
+    private ChartDataUsageView.DataAxis mVert;
+    private ChartNetworkSeriesView mSeries;
+    private NetworkStatsHistory mHistory;
+
+    @Before
+    public void setUp() {
+        mHoriz = new ChartDataUsageView.TimeAxis();
+        mVert = new ChartDataUsageView.DataAxis();
+        mSeries = new ChartNetworkSeriesView(RuntimeEnvironment.application);
+        mSeries.init(mHoriz, new InvertedChartAxis(mVert));
+
+        // 90 days of hourly buckets with varying usage, in whole bytes per millisecond so
+        // partial buckets prorate exactly
+        mHistory = new NetworkStatsHistory(HOUR_IN_MILLIS, DAYS * 24);
+        for (int i = 0; i < DAYS * 24; i++) {
+            final long bucketStart = START + i * HOUR_IN_MILLIS;
+            mHistory.recordData(bucketStart, bucketStart + HOUR_IN_MILLIS,
+                    new NetworkStats.Entry((i % 24) * HOUR_IN_MILLIS, 1,
+                            (i % 7) * HOUR_IN_MILLIS, 1, 0));
+        }
+
+        final long end = START + DAYS * DAY_IN_MILLIS;
+        mHoriz.setBounds(START, end);
+        mHoriz.setSize(WIDTH);
+        mVert.setBounds(0, 100_000_000_000L);
+        mVert.setSize(HEIGHT);
+        mSeries.layout(0, 0, WIDTH, HEIGHT);
+        mSeries.setBounds(START, end);
+        mSeries.bindNetworkStats(mHistory);
+    }
+
+    @Test
+    public void getTotalBytes_shouldMatchHistory() {
+        final long[][] ranges = {
+                {START, START + DAYS * DAY_IN_MILLIS},
+                {START + HOUR_IN_MILLIS / 2, START + 5 * HOUR_IN_MILLIS},
+                {START + 3 * DAY_IN_MILLIS + 10, START + 3 * DAY_IN_MILLIS + 20},
+                {START - DAY_IN_MILLIS, START + DAY_IN_MILLIS / 3},
+                {START + 100 * DAY_IN_MILLIS, START + 101 * DAY_IN_MILLIS},
+        };
+
+        for (long[] range : ranges) {
+            final NetworkStatsHistory.Entry entry = mHistory.getValues(range[0], range[1], null);
+            assertThat(mSeries.getTotalBytes(range[0], range[1]))
+                    .isEqualTo(entry.rxBytes + entry.txBytes);
+        }
+    }
+
+    @Test
+    public void getMaxVisible_beforePathGenerated_shouldUseVisibleTotal() {
+        final NetworkStatsHistory.Entry entry = mHistory.getValues(START,
+                START + DAYS * DAY_IN_MILLIS, null);
+
+        assertThat(mSeries.getMaxVisible()).isEqualTo(entry.rxBytes + entry.txBytes);
+    }
+
+    @Test
+    public void generatePath_90DaysHourly_shouldKeepOnePointPerColumn() {
+        mSeries.generatePath();
+
+        // 2160 buckets on 1080 columns
+        assertThat(mSeries.getPointCount()).isAtMost(WIDTH + 1);
+        assertThat(mSeries.getMaxVisible()).isEqualTo(
+                mSeries.getTotalBytes(START, START + DAYS * DAY_IN_MILLIS));
+    }
+
+    @Test
+    public void generatePath_sweepDragFrames_shouldOnlyRemapVerticalAxis() {
+        mSeries.generatePath();
+        final int pointCount = mSeries.getPointCount();
+        final long max = mSeries.getMaxVisible();
+
+        // Simulate the data axis growing while a sweep is dragged, one path per frame.
+        for (int frame = 0; frame < 120; frame++) {
+            mVert.setBounds(0, 100_000_000_000L + frame * 1_000_000_000L);
+            mSeries.invalidatePath();
+            mSeries.generatePath();
+        }
+
+        assertThat(mSeries.getPointCount()).isEqualTo(pointCount);
+        assertThat(mSeries.getMaxVisible()).isEqualTo(max);
+    }
+
+    @Test
+    public void generatePath_newBounds_shouldRegeneratePoints() {
+        mSeries.generatePath();
+        final int pointCount = mSeries.getPointCount();
+
+        final long end = START + 7 * DAY_IN_MILLIS;
+        mHoriz.setBounds(START, end);
+        mSeries.setBounds(START, end);
+        mSeries.invalidatePath();
+        mSeries.generatePath();
+
+        // a week of hourly buckets spans the same width with far fewer buckets
+        assertThat(mSeries.getPointCount()).isLessThan(pointCount);
+    }
+}
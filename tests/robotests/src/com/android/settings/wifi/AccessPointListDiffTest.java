@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.wifi;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AccessPointListDiffTest {
+
+    @Test
+    public void compute_sameKeys_shouldBeEmpty() {
+        final AccessPointListDiff diff = AccessPointListDiff.compute(
+                Arrays.asList("a", "b", "c"), Arrays.asList("a", "b", "c"));
+
+        assertThat(diff.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void compute_addedAndRemoved_shouldNotBeMoveOnly() {
+        final AccessPointListDiff diff = AccessPointListDiff.compute(
+                Arrays.asList("a", "b", "c"), Arrays.asList("a", "c", "d"));
+
+        assertThat(diff.added).containsExactly("d");
+        assertThat(diff.removed).containsExactly("b");
+        assertThat(diff.moved).isFalse();
+        assertThat(diff.isMoveOnly()).isFalse();
+    }
+
+    @Test
+    public void compute_reordered_shouldBeMoveOnly() {
+        final AccessPointListDiff diff = AccessPointListDiff.compute(
+                Arrays.asList("a", "b", "c"), Arrays.asList("b", "a", "c"));
+
+        assertThat(diff.added).isEmpty();
+        assertThat(diff.removed).isEmpty();
+        assertThat(diff.isMoveOnly()).isTrue();
+    }
+
+    @Test
+    public void compute_fromEmpty_shouldAddAll() {
+        final AccessPointListDiff diff = AccessPointListDiff.compute(
+                Collections.emptyList(), Arrays.asList("a", "b"));
+
+        assertThat(diff.added).containsExactly("a", "b");
+        assertThat(diff.moved).isFalse();
+    }
+}
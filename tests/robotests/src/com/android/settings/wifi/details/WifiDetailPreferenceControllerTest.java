@@ -84,6 +84,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
 import java.net.Inet4Address;
 import java.net.InetAddress;
@@ -839,4 +840,37 @@ public class WifiDetailPreferenceControllerTest {
         verify(mockAccessPoint, times(2)).getLevel();
         verify(mockIconInjector, times(2)).getIcon(anyInt());
     }
+
+    @Test
+    public void burstOfUpdates_shouldRefreshOncePerFrame() {
+        displayAndResume();
+
+        ShadowLooper.pauseMainLooper();
+        mContext.sendBroadcast(new Intent(WifiManager.RSSI_CHANGED_ACTION));
+        mContext.sendBroadcast(new Intent(WifiManager.NETWORK_STATE_CHANGED_ACTION));
+        mContext.sendBroadcast(new Intent(WifiManager.RSSI_CHANGED_ACTION));
+        LinkProperties lp = new LinkProperties();
+        lp.addLinkAddress(Constants.IPV4_ADDR);
+        updateLinkProperties(lp);
+        ShadowLooper.unPauseMainLooper();
+
+        verify(mockConnectivityManager, times(2)).getNetworkInfo(any(Network.class));
+        verify(mockWifiManager, times(2)).getConnectionInfo();
+        verify(mockIpAddressPref).setDetailText(asString(Constants.IPV4_ADDR));
+    }
+
+    @Test
+    public void unchangedValues_shouldNotRebindPreferences() {
+        mLinkProperties.addLinkAddress(Constants.IPV4_ADDR);
+        mLinkProperties.addDnsServer(Constants.IPV6_DNS);
+        displayAndResume();
+
+        mContext.sendBroadcast(new Intent(WifiManager.RSSI_CHANGED_ACTION));
+        mContext.sendBroadcast(new Intent(WifiManager.RSSI_CHANGED_ACTION));
+
+        verify(mockWifiManager, times(3)).getConnectionInfo();
+        verify(mockMacAddressPref, times(1)).setDetailText(MAC_ADDRESS);
+        verify(mockIpAddressPref, times(1)).setDetailText(anyString());
+        verify(mockDnsPref, times(1)).setDetailText(anyString());
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.wifi.p2p;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.net.wifi.p2p.WifiP2pDevice;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceScreen;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class P2pPeerCategoryPreferenceControllerTest {
+
+    @Mock
+    private PreferenceScreen mPreferenceScreen;
+    @Mock
+    private PreferenceCategory mCategory;
+    private Context mContext;
+    private P2pPeerCategoryPreferenceController mController;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        when(mPreferenceScreen.findPreference(anyString())).thenReturn(mCategory);
+
+        mController = new P2pPeerCategoryPreferenceController(mContext);
+        mController.displayPreference(mPreferenceScreen);
+    }
+
+    @Test
+    public void updatePeers_samePeers_shouldNotAddAgain() {
+        mController.updatePeers(mContext, Arrays.asList(peer(1, WifiP2pDevice.AVAILABLE),
+                peer(2, WifiP2pDevice.AVAILABLE)));
+        mController.updatePeers(mContext, Arrays.asList(peer(2, WifiP2pDevice.AVAILABLE),
+                peer(1, WifiP2pDevice.AVAILABLE)));
+
+        verify(mCategory, times(2)).addPreference(any(Preference.class));
+        verify(mCategory, never()).removePreference(any(Preference.class));
+        assertThat(mController.getPeerCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void updatePeers_goneAndNewPeers_shouldOnlyTouchThose() {
+        mController.updatePeers(mContext, Arrays.asList(peer(1, WifiP2pDevice.AVAILABLE),
+                peer(2, WifiP2pDevice.AVAILABLE)));
+        final ArgumentCaptor<Preference> captor = ArgumentCaptor.forClass(Preference.class);
+        verify(mCategory, times(2)).addPreference(captor.capture());
+
+        mController.updatePeers(mContext, Arrays.asList(peer(2, WifiP2pDevice.AVAILABLE),
+                peer(3, WifiP2pDevice.AVAILABLE)));
+
+        verify(mCategory).removePreference(captor.getAllValues().get(0));
+        verify(mCategory, times(3)).addPreference(any(Preference.class));
+        assertThat(mController.getPeerCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void updatePeers_statusChanged_shouldRebindAndResort() {
+        mController.updatePeers(mContext, Arrays.asList(peer(1, WifiP2pDevice.AVAILABLE)));
+        final ArgumentCaptor<WifiP2pPeer> captor = ArgumentCaptor.forClass(WifiP2pPeer.class);
+        verify(mCategory).addPreference(captor.capture());
+        final WifiP2pPeer pref = captor.getValue();
+        final CharSequence summary = pref.getSummary();
+
+        mController.updatePeers(mContext, Arrays.asList(peer(1, WifiP2pDevice.CONNECTED)));
+
+        assertThat(pref.device.status).isEqualTo(WifiP2pDevice.CONNECTED);
+        assertThat(pref.getSummary()).isNotEqualTo(summary);
+        verify(mCategory).removePreference(pref);
+        verify(mCategory, times(2)).addPreference(pref);
+    }
+
+    @Test
+    public void updatePeers_discoveryBurst_shouldOnlyAddNewAndChangedPeers() {
+        final int peerCount = 256;
+        final int rounds = 200;
+        final List<WifiP2pDevice> devices = new ArrayList<>();
+        for (int i = 0; i < peerCount; i++) {
+            devices.add(peer(i, WifiP2pDevice.AVAILABLE));
+        }
+        mController.updatePeers(mContext, devices);
+
+        // Each round one peer leaves, one new peer shows up and one peer changes its status,
+        // the rest only come back as new snapshots of the same devices.
+        for (int round = 0; round < rounds; round++) {
+            final List<WifiP2pDevice> snapshot = new ArrayList<>(peerCount);
+            for (int i = round + 1; i < round + peerCount + 1; i++) {
+                snapshot.add(peer(i, i == round + peerCount / 2
+                        ? WifiP2pDevice.INVITED : WifiP2pDevice.AVAILABLE));
+            }
+            mController.updatePeers(mContext, snapshot);
+        }
+
+        // One new peer per round, plus two status changes per round after the first: the
+        // invited peer and the one invited in the previous round. A full rebuild would add
+        // peerCount preferences per round instead.
+        verify(mCategory, times(peerCount + rounds + 2 * rounds - 1))
+                .addPreference(any(Preference.class));
+        assertThat(mController.getPeerCount()).isEqualTo(peerCount);
+    }
+
+    private static WifiP2pDevice peer(int index, int status) {
+        final WifiP2pDevice device = new WifiP2pDevice();
+        device.deviceAddress = String.format("02:00:00:00:%02x:%02x", index / 256, index % 256);
+        device.deviceName = "peer" + index;
+        device.status = status;
+        return device;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.ui;
+
+import static com.android.settings.ui.testutils.SettingsTestUtils.SETTINGS_PACKAGE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.test.uiautomator.By;
+import android.support.test.uiautomator.UiDevice;
+import android.support.test.uiautomator.Until;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Measures the time from a cold start of Settings until the homepage shows its first tile.
+ * The first launch leaves a homepage snapshot behind, the measured launches start from it.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class HomepageStartupBenchmark {
+
+    private static final String FIRST_TILE = "Network & internet";
+    private static final int ITERATIONS = 10;
+    private static final int TIMEOUT_MS = 10000;
+    // Time for the homepage to stop and write its snapshot after leaving it.
+    private static final int SETTLE_MS = 2000;
+
+    private UiDevice mDevice;
+
+    @Before
+    public void setUp() throws Exception {
+        mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        try {
+            mDevice.setOrientationNatural();
+        } catch (RemoteException e) {
+            throw new RuntimeException("failed to freeze device orientaion", e);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDevice.pressHome();
+    }
+
+    @Test
+    public void coldStartToFirstMeaningfulFrame() throws Exception {
+        // Warm up, which also writes the homepage snapshot.
+        launchColdAndWaitForFirstTile();
+
+        final long[] durations = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            durations[i] = launchColdAndWaitForFirstTile();
+        }
+        Arrays.sort(durations);
+
+        final Bundle results = new Bundle();
+        results.putLong("homepage_cold_start_p50_ms", durations[ITERATIONS / 2]);
+        results.putLong("homepage_cold_start_p90_ms", durations[ITERATIONS * 9 / 10]);
+        results.putLong("homepage_cold_start_max_ms", durations[ITERATIONS - 1]);
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, results);
+    }
+
+    private long launchColdAndWaitForFirstTile() throws Exception {
+        mDevice.pressHome();
+        SystemClock.sleep(SETTLE_MS);
+        mDevice.executeShellCommand("am force-stop " + SETTINGS_PACKAGE);
+
+        final long startTime = SystemClock.uptimeMillis();
+        mDevice.executeShellCommand("am start -a android.settings.SETTINGS");
+        final boolean shown = mDevice.wait(Until.hasObject(By.text(FIRST_TILE)), TIMEOUT_MS);
+        final long duration = SystemClock.uptimeMillis() - startTime;
+
+        assertThat(shown).isTrue();
+        return duration;
+    }
+}